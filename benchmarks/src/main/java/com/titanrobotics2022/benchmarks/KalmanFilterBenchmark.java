@@ -0,0 +1,76 @@
+package com.titanrobotics2022.benchmarks;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import com.titanrobotics2022.localization.KalmanFilter;
+
+import org.ejml.data.DMatrix2;
+import org.ejml.data.DMatrix2x2;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Updates and steps Kalman filters tracking position up to several orders of
+ * derivatives, with a cycle of measurements.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class KalmanFilterBenchmark {
+    private static final int STATES = 1024;
+    private static final double EXTENT = 10, DT = 0.02;
+
+    @Param({ "0", "1", "2", "4" })
+    private int order;
+
+    @Param({ "UNIFORM", "CLUSTERED", "CENTERED" })
+    private StateDistribution distribution;
+
+    private KalmanFilter filter;
+    private final DMatrix2[] measurements = new DMatrix2[STATES];
+    private final DMatrix2x2 precision = new DMatrix2x2(100, 0, 0, 100);
+    private int next;
+
+    @Setup
+    public void setUp() {
+        filter = new KalmanFilter(order, new DMatrix2x2(1, 0, 0, 1));
+        Random random = new Random(2022);
+        double[] p = new double[2];
+        for (int s = 0; s < STATES; s++) {
+            distribution.sample(random, EXTENT, p);
+            measurements[s] = new DMatrix2(p[0], p[1]);
+        }
+    }
+
+    @Benchmark
+    public KalmanFilter update() {
+        filter.update(0, measurements[next++ & (STATES - 1)], precision);
+        return filter;
+    }
+
+    @Benchmark
+    public KalmanFilter step() {
+        filter.step(DT);
+        return filter;
+    }
+
+    @Benchmark
+    public KalmanFilter updateAndStep() {
+        filter.update(0, measurements[next++ & (STATES - 1)], precision);
+        filter.step(DT);
+        return filter;
+    }
+}
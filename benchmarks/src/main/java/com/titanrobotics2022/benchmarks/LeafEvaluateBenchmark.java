@@ -0,0 +1,91 @@
+package com.titanrobotics2022.benchmarks;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import com.titanrobotics2022.mapping.LinearSegment;
+import com.titanrobotics2022.mapping.Point;
+import com.titanrobotics2022.motion.generation.rmpflow.RMPLeaf;
+import com.titanrobotics2022.motion.generation.rmpflow.RMPRoot;
+import com.titanrobotics2022.motion.generation.rmpflow.rmps.GoalAttractor;
+import com.titanrobotics2022.motion.generation.rmpflow.rmps.PathFollowing;
+
+import org.ejml.data.DMatrixRMaj;
+import org.ejml.simple.SimpleMatrix;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Evaluates the goal attractor and path following policies on their own, for
+ * a cycle of task space states taken from pushforwards of the root.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LeafEvaluateBenchmark {
+    private static final int STATES = 1024;
+    private static final double EXTENT = 10;
+
+    @Param({ "UNIFORM", "CLUSTERED", "CENTERED" })
+    private StateDistribution distribution;
+
+    private GoalAttractor goal;
+    private PathFollowing follower;
+    private final SimpleMatrix[][] goalStates = new SimpleMatrix[STATES][], followerStates = new SimpleMatrix[STATES][];
+    private int next;
+
+    @Setup
+    public void setUp() {
+        RMPRoot root = new RMPRoot("root");
+        goal = new GoalAttractor("goal", root, new SimpleMatrix(2, 1, false, new double[] { 5, 6 }), 10, 1, 1, 10, 1,
+                1, 0.01);
+        follower = new PathFollowing("path", root, new LinearSegment(new Point(-8, -4), new Point(8, 4)), 8, 5, 0, 1,
+                0.5, 1, 0.5, 2);
+
+        Random random = new Random(2022);
+        double[] p = new double[2];
+        for (int s = 0; s < STATES; s++) {
+            distribution.sample(random, EXTENT, p);
+            root.setRootState(new DMatrixRMaj(2, 1, false, p[0], p[1]),
+                    new DMatrixRMaj(2, 1, false, random.nextGaussian(), random.nextGaussian()));
+            root.pushforward();
+            goalStates[s] = taskState(goal);
+            followerStates[s] = taskState(follower);
+        }
+        evaluateGoalAttractor(); // Sizes the leaves' workspaces
+        evaluatePathFollowing();
+    }
+
+    private static SimpleMatrix[] taskState(RMPLeaf leaf) {
+        return new SimpleMatrix[] { leaf.getX().copy(), leaf.getXdot().copy() };
+    }
+
+    private static DMatrixRMaj evaluate(RMPLeaf leaf, SimpleMatrix[] state) {
+        leaf.setX(state[0]);
+        leaf.setXdot(state[1]);
+        leaf.evaluate();
+        return leaf.getF().getDDRM();
+    }
+
+    @Benchmark
+    public DMatrixRMaj evaluateGoalAttractor() {
+        return evaluate(goal, goalStates[next++ & (STATES - 1)]);
+    }
+
+    @Benchmark
+    public DMatrixRMaj evaluatePathFollowing() {
+        return evaluate(follower, followerStates[next++ & (STATES - 1)]);
+    }
+}
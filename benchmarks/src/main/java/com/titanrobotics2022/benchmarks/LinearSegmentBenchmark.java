@@ -0,0 +1,68 @@
+package com.titanrobotics2022.benchmarks;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import com.titanrobotics2022.mapping.LinearSegment;
+import com.titanrobotics2022.mapping.Point;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Queries a line segment with a cycle of points and other segments.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LinearSegmentBenchmark {
+    private static final int STATES = 1024;
+    private static final double EXTENT = 10;
+
+    @Param({ "UNIFORM", "CLUSTERED", "CENTERED" })
+    private StateDistribution distribution;
+
+    private final LinearSegment segment = new LinearSegment(new Point(-8, -4), new Point(8, 4));
+    private final Point[] points = new Point[STATES];
+    private final LinearSegment[] others = new LinearSegment[STATES];
+    private int next;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(2022);
+        double[] p = new double[2], q = new double[2];
+        for (int s = 0; s < STATES; s++) {
+            distribution.sample(random, EXTENT, p);
+            distribution.sample(random, EXTENT, q);
+            points[s] = new Point(p[0], p[1]);
+            others[s] = new LinearSegment(points[s], new Point(q[0], q[1]));
+        }
+    }
+
+    @Benchmark
+    public double getProgress() {
+        return segment.getProgress(points[next++ & (STATES - 1)]);
+    }
+
+    @Benchmark
+    public Point getNearest() {
+        return segment.getNearest(points[next++ & (STATES - 1)]);
+    }
+
+    @Benchmark
+    public boolean intersects() {
+        return segment.intersects(others[next++ & (STATES - 1)]);
+    }
+}
@@ -0,0 +1,81 @@
+package com.titanrobotics2022.benchmarks;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import com.titanrobotics2022.motion.generation.rmpflow.RMPRoot;
+import com.titanrobotics2022.motion.generation.rmpflow.rmps.CollisionAvoidance;
+
+import org.ejml.data.DMatrixRMaj;
+import org.ejml.simple.SimpleMatrix;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Solves a tree of collision avoidance leaves for a cycle of root states.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RMPSolveBenchmark {
+    private static final int STATES = 1024; // A power of two, so the cycle wraps with a mask
+    private static final double EXTENT = 10, RADIUS = 0.2;
+
+    @Param({ "1", "10", "100", "1000" })
+    private int leaves;
+
+    @Param({ "UNIFORM", "CLUSTERED", "CENTERED" })
+    private StateDistribution distribution;
+
+    private RMPRoot root;
+    private final DMatrixRMaj[] xs = new DMatrixRMaj[STATES], x_dots = new DMatrixRMaj[STATES];
+    private final DMatrixRMaj a = new DMatrixRMaj(2, 1);
+    private int next;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(2022);
+        double[] p = new double[2];
+        double[][] centers = new double[leaves][];
+        root = new RMPRoot("root");
+        for (int i = 0; i < leaves; i++) {
+            distribution.sample(random, EXTENT, p);
+            centers[i] = p.clone();
+            new CollisionAvoidance("obstacle " + i, root, new SimpleMatrix(2, 1, false, p), RADIUS, .2, 1e-5, 0.0);
+        }
+        for (int s = 0; s < STATES; s++) {
+            do {
+                distribution.sample(random, EXTENT, p);
+            } while (insideObstacle(p, centers));
+            xs[s] = new DMatrixRMaj(2, 1, false, p[0], p[1]);
+            x_dots[s] = new DMatrixRMaj(2, 1, false, random.nextGaussian(), random.nextGaussian());
+        }
+        root.solve(xs[0], x_dots[0], a); // Sizes the tree's workspaces
+    }
+
+    private static boolean insideObstacle(double[] p, double[][] centers) {
+        for (double[] c : centers)
+            if (Math.hypot(p[0] - c[0], p[1] - c[1]) <= RADIUS)
+                return true;
+        return false;
+    }
+
+    @Benchmark
+    public DMatrixRMaj solve() {
+        int s = next++ & (STATES - 1);
+        root.solve(xs[s], x_dots[s], a);
+        return a;
+    }
+}
@@ -0,0 +1,63 @@
+package com.titanrobotics2022.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import com.titanrobotics2022.motion.generation.rmpflow.RMPRoot;
+import com.titanrobotics2022.motion.generation.rmpflow.rmps.CollisionAvoidanceField;
+import com.titanrobotics2022.motion.generation.rmpflow.rmps.Damper;
+import com.titanrobotics2022.motion.generation.rmpflow.rmps.GoalAttractor;
+import com.titanrobotics2022.motion.simulation.Dynamics;
+import com.titanrobotics2022.motion.simulation.Integrator;
+import com.titanrobotics2022.motion.simulation.Simulator;
+
+import org.ejml.simple.SimpleMatrix;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The cost of one simulated second, 100 steps of 10 ms, with each
+ * integrator. A thousand simulated seconds per wall second is 1 ms per
+ * operation.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SimulationBenchmark {
+    @Param({ "SEMI_IMPLICIT_EULER", "TRAPEZOID", "RK4" })
+    private Integrator integrator;
+
+    private Simulator sim;
+    private final double[] x0 = { -5, -5 }, v0 = { 0, 0 };
+
+    @Setup
+    public void setUp() {
+        RMPRoot root = new RMPRoot("root");
+        new GoalAttractor("goal", root, new SimpleMatrix(2, 1, false, new double[] { 5, 6 }), 10, 1, 1, 10, 1, 1,
+                0.01);
+        new Damper("damper", root, 0.5, 1);
+        CollisionAvoidanceField field = new CollisionAvoidanceField("field", root, 2, 16);
+        for (int i = 0; i < 16; i++)
+            field.addObstacle(new double[] { (i % 4) * 2 - 4, (i / 4) * 2 - 4.5 }, 0.3, .2, 1e-5, 0.0);
+        sim = new Simulator(root, 2, Dynamics.pointMass().limit(20), integrator, 0.01);
+    }
+
+    @Benchmark
+    public Simulator simulateSecond() {
+        sim.reset(x0, v0);
+        for (int i = 0; i < 100; i++)
+            sim.step();
+        return sim;
+    }
+}
@@ -0,0 +1,76 @@
+package com.titanrobotics2022.benchmarks;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import com.titanrobotics2022.motion.generation.rmpflow.RMPRoot;
+import com.titanrobotics2022.motion.generation.rmpflow.rmps.CollisionAvoidanceField;
+import com.titanrobotics2022.motion.generation.rmpflow.rmps.Damper;
+import com.titanrobotics2022.motion.generation.rmpflow.rmps.GoalAttractor;
+import com.titanrobotics2022.motion.generation.rmpflow.trace.SolveTraceWriter;
+
+import org.ejml.data.DMatrixRMaj;
+import org.ejml.simple.SimpleMatrix;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The cost of recording a tick to a {@link SolveTraceWriter}, with and
+ * without the F and M of the tree's leaves.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SolveTraceBenchmark {
+    @Param({ "false", "true" })
+    private boolean leaves;
+
+    private Path file;
+    private SolveTraceWriter writer;
+    private final DMatrixRMaj x = new DMatrixRMaj(2, 1, false, 1.0, 2.0);
+    private final DMatrixRMaj x_dot = new DMatrixRMaj(2, 1, false, 0.3, -0.4);
+    private final DMatrixRMaj a = new DMatrixRMaj(2, 1);
+    private long tick;
+
+    @Setup
+    public void setUp() throws IOException {
+        RMPRoot root = new RMPRoot("root");
+        new GoalAttractor("goal", root, new SimpleMatrix(2, 1, false, new double[] { 5, 6 }), 10, 1, 1, 10, 1, 1,
+                0.01);
+        new Damper("damper", root, 0.5, 1);
+        CollisionAvoidanceField field = new CollisionAvoidanceField("field", root, 2, 16);
+        for (int i = 0; i < 16; i++)
+            field.addObstacle(new double[] { (i % 4) * 2 - 4, (i / 4) * 2 - 4.5 }, 0.3, .2, 1e-5, 0.0);
+        root.solve(x, x_dot, a);
+
+        file = Files.createTempFile("solve-trace", ".bin");
+        writer = leaves ? new SolveTraceWriter(file, root, 2, 2, 1 << 16) : new SolveTraceWriter(file, 2, 1 << 16);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        writer.close();
+        Files.delete(file);
+    }
+
+    @Benchmark
+    public SolveTraceWriter record() {
+        writer.record(tick++, x, x_dot, a);
+        return writer;
+    }
+}
@@ -0,0 +1,47 @@
+package com.titanrobotics2022.benchmarks;
+
+import java.util.Random;
+
+/**
+ * How the planar points of a benchmark, such as obstacle centers and robot
+ * states, are spread over the field. Benchmarks take it as a parameter, since
+ * costs like Jacobians near obstacles or culling depend on where the points
+ * are and not only on how many there are.
+ */
+public enum StateDistribution {
+    /** Spread evenly over the field. */
+    UNIFORM {
+        @Override
+        void sample(Random random, double extent, double[] out) {
+            out[0] = (random.nextDouble() * 2 - 1) * extent;
+            out[1] = (random.nextDouble() * 2 - 1) * extent;
+        }
+    },
+    /** Gathered in a few tight clusters, like obstacles around field elements. */
+    CLUSTERED {
+        @Override
+        void sample(Random random, double extent, double[] out) {
+            int cluster = random.nextInt(4);
+            double cx = (cluster % 2 == 0 ? -0.5 : 0.5) * extent, cy = (cluster / 2 == 0 ? -0.5 : 0.5) * extent;
+            out[0] = cx + random.nextGaussian() * extent * 0.1;
+            out[1] = cy + random.nextGaussian() * extent * 0.1;
+        }
+    },
+    /** Close to the center of the field, where a robot sees most of it at once. */
+    CENTERED {
+        @Override
+        void sample(Random random, double extent, double[] out) {
+            out[0] = random.nextGaussian() * extent * 0.25;
+            out[1] = random.nextGaussian() * extent * 0.25;
+        }
+    };
+
+    /**
+     * Draws a point.
+     * 
+     * @param random The source of randomness
+     * @param extent Half the width of the field
+     * @param out    The point's x and y
+     */
+    abstract void sample(Random random, double extent, double[] out);
+}
@@ -0,0 +1,105 @@
+package com.titanrobotics2022.benchmarks;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import com.titanrobotics2022.motion.generation.rmpflow.AutoDiffLeaf;
+import com.titanrobotics2022.motion.generation.rmpflow.ForwardDiff;
+import com.titanrobotics2022.motion.generation.rmpflow.RMPNode;
+import com.titanrobotics2022.motion.generation.rmpflow.rmps.CollisionAvoidance;
+
+import org.ejml.data.DMatrixRMaj;
+import org.ejml.simple.SimpleMatrix;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares the hand-written task map of {@link CollisionAvoidance} with the
+ * same map differentiated automatically by an {@link AutoDiffLeaf}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TaskMapBenchmark {
+    private static final int STATES = 1024;
+    private static final double EXTENT = 10, RADIUS = 0.5;
+
+    /**
+     * |q - center| / r - 1, written once.
+     */
+    private static class AutoDiffCollisionAvoidance extends AutoDiffLeaf {
+        private final double cx, cy, r;
+
+        private AutoDiffCollisionAvoidance(RMPNode parent, double cx, double cy, double r) {
+            super("auto diff obstacle", parent);
+            this.cx = cx;
+            this.cy = cy;
+            this.r = r;
+        }
+
+        @Override
+        protected void psi(ForwardDiff ad) {
+            int dx = ad.addConstant(ad.input(0), -cx), dy = ad.addConstant(ad.input(1), -cy);
+            ad.output(ad.addConstant(ad.scale(ad.hypot(dx, dy), 1 / r), -1));
+        }
+
+        @Override
+        protected SimpleMatrix solveF(SimpleMatrix x, SimpleMatrix x_dot) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        protected SimpleMatrix solveM(SimpleMatrix x, SimpleMatrix x_dot) {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    @Param({ "UNIFORM", "CLUSTERED", "CENTERED" })
+    private StateDistribution distribution;
+
+    private final CollisionAvoidance handWritten = new CollisionAvoidance("obstacle", null,
+            new SimpleMatrix(2, 1, false, new double[] { 0, 0 }), RADIUS, .2, 1e-5, 0.0);
+    private final AutoDiffCollisionAvoidance automatic = new AutoDiffCollisionAvoidance(null, 0, 0, RADIUS);
+    private final DMatrixRMaj[] qs = new DMatrixRMaj[STATES], q_dots = new DMatrixRMaj[STATES];
+    private final DMatrixRMaj x = new DMatrixRMaj(1, 1), J = new DMatrixRMaj(1, 2), J_dot = new DMatrixRMaj(1, 2);
+    private int next;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(2022);
+        double[] p = new double[2];
+        for (int s = 0; s < STATES; s++) {
+            do {
+                distribution.sample(random, EXTENT, p);
+            } while (Math.hypot(p[0], p[1]) <= RADIUS);
+            qs[s] = new DMatrixRMaj(2, 1, false, p[0], p[1]);
+            q_dots[s] = new DMatrixRMaj(2, 1, false, random.nextGaussian(), random.nextGaussian());
+        }
+    }
+
+    @Benchmark
+    public DMatrixRMaj handWritten() {
+        int s = next++ & (STATES - 1);
+        handWritten.taskMap(qs[s], q_dots[s], x, J, J_dot);
+        return J_dot;
+    }
+
+    @Benchmark
+    public DMatrixRMaj automatic() {
+        int s = next++ & (STATES - 1);
+        automatic.taskMap(qs[s], q_dots[s], x, J, J_dot);
+        return J_dot;
+    }
+}
@@ -0,0 +1,37 @@
+package com.titanrobotics2022.demos;
+
+import java.util.concurrent.ForkJoinPool;
+
+import com.titanrobotics2022.motion.simulation.Dynamics;
+import com.titanrobotics2022.motion.simulation.Integrator;
+import com.titanrobotics2022.motion.simulation.ScenarioGenerator;
+import com.titanrobotics2022.motion.simulation.tuning.GainTuner;
+import com.titanrobotics2022.motion.simulation.tuning.TunableGains;
+import com.titanrobotics2022.motion.simulation.tuning.TuningResult;
+
+/**
+ * Tunes the gains of PathFollowing, or GoalAttractor with the argument
+ * "goal", on 64 scenarios of a 16 m by 8 m field with 30 obstacles, and
+ * prints the best gains with the distribution of their costs.
+ */
+public class GainTuningDemo {
+
+        public static void main(String[] args) {
+                boolean goal = args.length > 0 && args[0].equals("goal");
+                int evaluations = args.length > 1 ? Integer.parseInt(args[1]) : 1000;
+                TunableGains gains = goal ? TunableGains.goalAttractor() : TunableGains.pathFollowing();
+
+                ScenarioGenerator generator = new ScenarioGenerator(16, 8, 30);
+                GainTuner tuner = new GainTuner(generator, gains, Dynamics.pointMass().limit(20), Integrator.TRAPEZOID,
+                                0.02, 0.1);
+                ForkJoinPool pool = ForkJoinPool.commonPool();
+                System.out.printf("Initial score: %.4f%n", tuner.score(gains.getInitial(), pool));
+
+                long start = System.nanoTime();
+                TuningResult result = tuner.tune(evaluations, pool);
+                System.out.println(result);
+                System.out.printf("Tuned in %.1f s on %d threads%n", (System.nanoTime() - start) / 1e9,
+                                pool.getParallelism());
+        }
+
+}
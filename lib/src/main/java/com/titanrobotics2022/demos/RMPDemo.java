@@ -13,6 +13,11 @@ import com.titanrobotics2022.motion.generation.rmpflow.rmps.CollisionAvoidance;
 import com.titanrobotics2022.motion.generation.rmpflow.rmps.PathFollowing;
 import com.titanrobotics2022.mapping.LinearSegment;
 import com.titanrobotics2022.mapping.Point;
+import com.titanrobotics2022.motion.simulation.Dynamics;
+import com.titanrobotics2022.motion.simulation.Integrator;
+import com.titanrobotics2022.motion.simulation.Simulator;
+import com.titanrobotics2022.motion.simulation.Termination;
+import com.titanrobotics2022.motion.simulation.Trajectory;
 
 import org.ejml.simple.SimpleMatrix;
 
@@ -33,7 +38,6 @@ public class RMPDemo {
                                 new double[] { Math.random() * (width - 400) + 200,
                                                 Math.random() * (height - 400) + 200 });
                 SimpleMatrix x_dot = new SimpleMatrix(1, 2, false, new double[] { 0, 0 });
-                SimpleMatrix x_ddot = new SimpleMatrix(1, 2, false, new double[] { 0, 0 });
                 double v = 8, P = 5, I = 0, A = 1, B = 0.5, K = 1, h = 0.5, maxAcc = 2;
 
                 double goal_x = Math.random() * 1300 + 200, goal_y = Math.random() * 600 + 200;
@@ -89,7 +93,7 @@ public class RMPDemo {
                 // new SimpleMatrix(1, 2, false, new double[] { 200, 300 }), 20,
                 // 1, 1, 1));
 
-                ArrayList<Double> simulationData = new ArrayList<Double>();
+                Trajectory trajectory = new Trajectory(2, 100001);
                 JFrame frame = new JFrame("Path Following Demo");
                 frame.setSize(width, height);
                 frame.setVisible(true);
@@ -104,58 +108,49 @@ public class RMPDemo {
                                         g2.fillOval((int) (obs.getCenter().get(0) / 1),
                                                         (int) (obs.getCenter().get(1) / 1), (int) obs.getRadius(),
                                                         (int) obs.getRadius());
-                                g2.fillOval((int) (simulationData.get(0) / 1),
-                                                (int) (simulationData.get(1) / 1), 10, 10);
+                                int n = trajectory.size();
+                                if (n == 0)
+                                        return;
                                 g2.setColor(Color.green); // start
-                                g2.fillOval((int) (simulationData.get(0) / 1),
-                                                (int) (simulationData.get(1) / 1), 10, 10);
-                                for (int i = 6; i < simulationData.size(); i += 6) { // path
+                                g2.fillOval((int) trajectory.getPosition(0, 0), (int) trajectory.getPosition(0, 1), 10,
+                                                10);
+                                for (int i = 1; i < n; i++) { // path
                                         g2.setColor(Color.black);
-                                        g2.fillOval((int) (simulationData.get(i) / 1),
-                                                        (int) (simulationData.get(i + 1) / 1), 3, 3);
+                                        g2.fillOval((int) trajectory.getPosition(i, 0),
+                                                        (int) trajectory.getPosition(i, 1), 3, 3);
                                 }
                                 g2.setColor(Color.blue); // goal
                                 g2.fillOval((int) (goal.get(0)),
                                                 (int) (goal.get(1)), 25, 25);
                                 // state metrics
-                                g2.drawString("x0: " + simulationData.get(simulationData.size() - 6),
+                                g2.drawString("x0: " + trajectory.getPosition(n - 1, 0),
                                                 (int) (width * 0.7), 20);
-                                g2.drawString("x1: " + simulationData.get(simulationData.size() - 5),
+                                g2.drawString("x1: " + trajectory.getPosition(n - 1, 1),
                                                 (int) (width * 0.7), 40);
-                                g2.drawString("x_dot0: " + simulationData.get(simulationData.size() - 4),
+                                g2.drawString("x_dot0: " + trajectory.getVelocity(n - 1, 0),
                                                 (int) (width * 0.7), 60);
-                                g2.drawString("x_dot1: " + simulationData.get(simulationData.size() - 3),
+                                g2.drawString("x_dot1: " + trajectory.getVelocity(n - 1, 1),
                                                 (int) (width * 0.7), 80);
-                                g2.drawString("x_ddot0: " + simulationData.get(simulationData.size() - 2),
+                                g2.drawString("x_ddot0: " + trajectory.getAcceleration(n - 1, 0),
                                                 (int) (width * 0.7), 100);
-                                g2.drawString("x_ddot1: " + simulationData.get(simulationData.size() - 1),
+                                g2.drawString("x_ddot1: " + trajectory.getAcceleration(n - 1, 1),
                                                 (int) (width * 0.7), 120);
-                                g2.drawString("t: " + simulationData.size() / 6 * step, 1350, 140);
-                                g2.drawRect((int) (simulationData.get(simulationData.size() - 6) / 1),
-                                                (int) (simulationData.get(simulationData.size() - 5) / 1), 10, 10);
+                                g2.drawString("t: " + trajectory.getTime(n - 1), 1350, 140);
+                                g2.drawRect((int) trajectory.getPosition(n - 1, 0),
+                                                (int) trajectory.getPosition(n - 1, 1), 10, 10);
                         }
                 };
                 frame.add(panel);
 
                 double tolerance = 0.1;
                 int MAX_ITER = 100000;
-                for (int i = 0; Math.abs(x.minus(goal).normF()) > tolerance && i < MAX_ITER; i++) {
-                        x_ddot = root.solve(x, x_dot);
-                        // System.out.printf("x: (%f, %f)\n", x.get(0), x.get(1));
-                        // System.out.printf("x_dot: (%f, %f)\n", x_dot.get(0), x_dot.get(1));
-                        // System.out.printf("x_ddot: (%f, %f)\n", x_ddot.get(0), x_ddot.get(1));
-                        // System.out.printf("t: %f\n", step * i);
-                        double[] newState = solveIntegration(step, x_ddot, x_dot, x);
-                        x_dot.set(1, newState[3]);
-                        x_dot.set(0, newState[2]);
-                        x.set(1, newState[1]);
-                        x.set(0, newState[0]);
-                        simulationData.add(newState[0]);
-                        simulationData.add(newState[1]);
-                        simulationData.add(newState[2]);
-                        simulationData.add(newState[3]);
-                        simulationData.add(x_ddot.get(0));
-                        simulationData.add(x_ddot.get(1));
+                Simulator sim = new Simulator(root, 2, Dynamics.pointMass(), Integrator.TRAPEZOID, step);
+                sim.setTrajectory(trajectory, 1);
+                sim.addTermination(Termination.goalReached(new double[] { goal.get(0), goal.get(1) }, tolerance));
+                sim.addTermination(Termination.timeout(MAX_ITER * step));
+                sim.reset(new double[] { x.get(0), x.get(1) }, new double[] { x_dot.get(0), x_dot.get(1) });
+                while (sim.checkTerminations() == null) {
+                        sim.step();
                         panel.repaint();
                         try {
                                 Thread.sleep((long) (100 - (speed / 10 + 0.9) * 100));
@@ -165,16 +160,6 @@ public class RMPDemo {
 
         }
 
-        public static double[] solveIntegration(double deltaT, SimpleMatrix x_ddot, SimpleMatrix x_dot,
-                        SimpleMatrix x) {
-                double[] state = new double[4];
-                state[3] = x_dot.get(1) + x_ddot.get(1) * deltaT;
-                state[2] = x_dot.get(0) + x_ddot.get(0) * deltaT;
-                state[1] = x.get(1) + .5 * (x_dot.get(1) + state[3]) * deltaT;
-                state[0] = x.get(0) + .5 * (x_dot.get(0) + state[2]) * deltaT;
-                return state;
-        }
-
         public static void main(String[] args) {
                 new RMPDemo();
         }
@@ -54,6 +54,23 @@ public class KalmanFilter {
      *              measurement.
      */
     public void update(int order, DMatrix2 pred, DMatrix2x2 prec) {
+        if (KalmanUpdateEvent.isTypeEnabled()) {
+            KalmanUpdateEvent event = new KalmanUpdateEvent();
+            event.begin();
+            accumulate(order, pred, prec);
+            event.end();
+            if (event.shouldCommit()) {
+                event.order = order;
+                event.filterOrder = zs.length - 1;
+                event.dimension = 2 * zs.length;
+                event.commit();
+            }
+            return;
+        }
+        accumulate(order, pred, prec);
+    }
+
+    private void accumulate(int order, DMatrix2 pred, DMatrix2x2 prec) {
         mult(prec, pred, v);
         addEquals(zs[order], v);
         addEquals(precs[order], prec);
@@ -67,6 +84,23 @@ public class KalmanFilter {
      * @param time The duration of time to increment by.
      */
     public void step(double time) {
+        if (KalmanStepEvent.isTypeEnabled()) {
+            KalmanStepEvent event = new KalmanStepEvent();
+            event.begin();
+            propagate(time);
+            event.end();
+            if (event.shouldCommit()) {
+                event.timeStep = Math.round(time * 1e9);
+                event.filterOrder = zs.length - 1;
+                event.dimension = 2 * zs.length;
+                event.commit();
+            }
+            return;
+        }
+        propagate(time);
+    }
+
+    private void propagate(double time) {
         double alpha;
         for (int i = 0; i < zs.length; i++) {
             safeInvert(precs[i], covs[i]);
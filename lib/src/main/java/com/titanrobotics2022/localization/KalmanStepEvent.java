@@ -0,0 +1,45 @@
+package com.titanrobotics2022.localization;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+import jdk.jfr.Timespan;
+
+/**
+ * Flight Recorder event for {@link KalmanFilter#step}. Like
+ * {@link KalmanUpdateEvent}, every step is committed while the event is
+ * enabled unless a recording raises its threshold.
+ */
+@Name("com.titanrobotics2022.KalmanStep")
+@Label("Kalman Step")
+@Description("Progressing a Kalman filter by a time step")
+@Category({ "Titan Robotics", "Localization" })
+@StackTrace(false)
+@Threshold("0 ns")
+class KalmanStepEvent extends Event {
+    private static final EventType TYPE = EventType.getEventType(KalmanStepEvent.class);
+
+    @Label("Time Step")
+    @Timespan(Timespan.NANOSECONDS)
+    long timeStep;
+
+    @Label("Filter Order")
+    @Description("Maximum degree of derivative tracked by the filter")
+    int filterOrder;
+
+    @Label("Dimension")
+    @Description("Dimension of the filter's state")
+    int dimension;
+
+    /**
+     * Determines whether a recording is running with this event enabled.
+     */
+    static boolean isTypeEnabled() {
+        return TYPE.isEnabled();
+    }
+}
@@ -0,0 +1,45 @@
+package com.titanrobotics2022.localization;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * Flight Recorder event for {@link KalmanFilter#update}. An update takes
+ * microseconds, far below the 1 ms threshold of the RMP solve events, so the
+ * threshold defaults to 0 and every update is committed while the event is
+ * enabled. A recording's settings can raise it to keep only the slow ones.
+ */
+@Name("com.titanrobotics2022.KalmanUpdate")
+@Label("Kalman Update")
+@Description("Adding a measurement to a Kalman filter")
+@Category({ "Titan Robotics", "Localization" })
+@StackTrace(false)
+@Threshold("0 ns")
+class KalmanUpdateEvent extends Event {
+    private static final EventType TYPE = EventType.getEventType(KalmanUpdateEvent.class);
+
+    @Label("Measured Order")
+    @Description("Degree of derivative of the measurement")
+    int order;
+
+    @Label("Filter Order")
+    @Description("Maximum degree of derivative tracked by the filter")
+    int filterOrder;
+
+    @Label("Dimension")
+    @Description("Dimension of the filter's state")
+    int dimension;
+
+    /**
+     * Determines whether a recording is running with this event enabled.
+     */
+    static boolean isTypeEnabled() {
+        return TYPE.isEnabled();
+    }
+}
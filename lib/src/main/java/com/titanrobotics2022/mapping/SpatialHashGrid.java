@@ -0,0 +1,219 @@
+package com.titanrobotics2022.mapping;
+
+import java.util.Arrays;
+
+/**
+ * A uniform grid over points on a plane, for finding the points near a
+ * location.
+ *
+ * <p>
+ * Points are identified by nonnegative integer ids. Each grid cell is hashed
+ * into a fixed table of buckets, and each bucket is an intrusive linked list
+ * of ids stored in primitive arrays, so the grid covers an unbounded plane and
+ * inserting, moving, removing and querying points do not allocate once the
+ * grid has grown to its final capacity.
+ *
+ * <p>
+ * Queries only read the grid, so any number of threads may query it at once,
+ * as long as no thread is changing it.
+ */
+public class SpatialHashGrid {
+    private static final int EMPTY = -1;
+
+    private final double cellSize;
+    private final int[] heads; // first id in each bucket
+    private int[] next; // next id in the same bucket
+    private int[] buckets; // bucket of each id, EMPTY if not in the grid
+    private double[] xs, ys; // position of each id
+    private long[] cxs, cys; // cell of each id
+    private int size;
+
+    /**
+     * Creates an empty grid.
+     *
+     * @param cellSize The side length of a grid cell. Queries are fastest when
+     *                 this is close to the query radius.
+     * @param capacity The number of ids to allocate storage for.
+     */
+    public SpatialHashGrid(double cellSize, int capacity) {
+        if (!(cellSize > 0))
+            throw new IllegalArgumentException("Cell size must be positive.");
+        this.cellSize = cellSize;
+        capacity = Math.max(capacity, 1);
+        int tableSize = Integer.highestOneBit(Math.max(capacity * 2 - 1, 1)) * 2;
+        heads = new int[tableSize];
+        Arrays.fill(heads, EMPTY);
+        next = new int[capacity];
+        buckets = new int[capacity];
+        Arrays.fill(buckets, EMPTY);
+        xs = new double[capacity];
+        ys = new double[capacity];
+        cxs = new long[capacity];
+        cys = new long[capacity];
+    }
+
+    /**
+     * Adds a point to the grid, or moves it if it is already in the grid.
+     *
+     * @param id The id of the point
+     * @param x  The x coordinate of the point
+     * @param y  The y coordinate of the point
+     */
+    public void insert(int id, double x, double y) {
+        if (id < 0)
+            throw new IndexOutOfBoundsException(id);
+        if (id >= buckets.length)
+            grow(Math.max(id + 1, buckets.length * 2));
+        if (buckets[id] != EMPTY) {
+            move(id, x, y);
+            return;
+        }
+        xs[id] = x;
+        ys[id] = y;
+        cxs[id] = cell(x);
+        cys[id] = cell(y);
+        link(id, bucket(cxs[id], cys[id]));
+        size++;
+    }
+
+    /**
+     * Moves a point that is already in the grid. The point is only relinked if
+     * it changes cells.
+     *
+     * @param id The id of the point
+     * @param x  The new x coordinate of the point
+     * @param y  The new y coordinate of the point
+     */
+    public void move(int id, double x, double y) {
+        if (!contains(id))
+            throw new IllegalArgumentException("Point " + id + " is not in the grid.");
+        xs[id] = x;
+        ys[id] = y;
+        cxs[id] = cell(x);
+        cys[id] = cell(y);
+        int bucket = bucket(cxs[id], cys[id]);
+        if (bucket != buckets[id]) {
+            unlink(id);
+            link(id, bucket);
+        }
+    }
+
+    /**
+     * Removes a point from the grid. Does nothing if the point is not in the
+     * grid.
+     *
+     * @param id The id of the point
+     */
+    public void remove(int id) {
+        if (!contains(id))
+            return;
+        unlink(id);
+        size--;
+    }
+
+    /** Removes every point from the grid. */
+    public void clear() {
+        Arrays.fill(heads, EMPTY);
+        Arrays.fill(buckets, EMPTY);
+        size = 0;
+    }
+
+    /**
+     * Finds the points within a distance of a location.
+     *
+     * @param x      The x coordinate of the location
+     * @param y      The y coordinate of the location
+     * @param radius The maximum distance from the location
+     * @param out    An array to write the ids of the points found into. It must
+     *               be at least as long as the number of points found, which is
+     *               at most {@link #size()}.
+     * @return The number of points found.
+     */
+    public int query(double x, double y, double radius, int[] out) {
+        double radius2 = radius * radius;
+        long minX = cell(x - radius), maxX = cell(x + radius);
+        long minY = cell(y - radius), maxY = cell(y + radius);
+        int count = 0;
+        for (long cx = minX; cx <= maxX; cx++) {
+            for (long cy = minY; cy <= maxY; cy++) {
+                for (int id = heads[bucket(cx, cy)]; id != EMPTY; id = next[id]) {
+                    // Buckets are shared by cells that hash together, so only
+                    // take points in this cell, which finds each point once
+                    if (cxs[id] != cx || cys[id] != cy)
+                        continue;
+                    double dx = xs[id] - x, dy = ys[id] - y;
+                    if (dx * dx + dy * dy <= radius2)
+                        out[count++] = id;
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Determines whether a point is in the grid.
+     *
+     * @param id The id of the point
+     * @return True, if the point is in the grid, or false, otherwise.
+     */
+    public boolean contains(int id) {
+        return id >= 0 && id < buckets.length && buckets[id] != EMPTY;
+    }
+
+    /**
+     * Returns the number of points in the grid.
+     *
+     * @return The number of points in the grid.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the side length of a grid cell.
+     *
+     * @return The side length of a grid cell.
+     */
+    public double getCellSize() {
+        return cellSize;
+    }
+
+    private long cell(double coordinate) {
+        return (long) Math.floor(coordinate / cellSize);
+    }
+
+    private int bucket(long cx, long cy) {
+        long hash = cx * 0x9E3779B97F4A7C15L + cy * 0xC2B2AE3D27D4EB4FL;
+        return (int) (hash ^ (hash >>> 32)) & (heads.length - 1);
+    }
+
+    private void link(int id, int bucket) {
+        buckets[id] = bucket;
+        next[id] = heads[bucket];
+        heads[bucket] = id;
+    }
+
+    private void unlink(int id) {
+        int bucket = buckets[id];
+        if (heads[bucket] == id) {
+            heads[bucket] = next[id];
+        } else {
+            int prev = heads[bucket];
+            while (next[prev] != id)
+                prev = next[prev];
+            next[prev] = next[id];
+        }
+        buckets[id] = EMPTY;
+    }
+
+    private void grow(int capacity) {
+        int old = buckets.length;
+        next = Arrays.copyOf(next, capacity);
+        buckets = Arrays.copyOf(buckets, capacity);
+        Arrays.fill(buckets, old, capacity, EMPTY);
+        xs = Arrays.copyOf(xs, capacity);
+        ys = Arrays.copyOf(ys, capacity);
+        cxs = Arrays.copyOf(cxs, capacity);
+        cys = Arrays.copyOf(cys, capacity);
+    }
+}
@@ -0,0 +1,18 @@
+package com.titanrobotics2022.motion.control;
+
+import org.ejml.data.DMatrixRMaj;
+
+/**
+ * Receives the commands a {@link ControlLoop} produces, such as motor
+ * controllers on the robot or a simulated plant.
+ */
+@FunctionalInterface
+public interface CommandSink {
+	/**
+	 * Writes a command. The matrix is reused by the loop, so it must be copied if
+	 * it is kept.
+	 * 
+	 * @param a The desired acceleration
+	 */
+	void write(DMatrixRMaj a);
+}
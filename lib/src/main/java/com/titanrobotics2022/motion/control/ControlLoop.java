@@ -0,0 +1,289 @@
+package com.titanrobotics2022.motion.control;
+
+import java.util.concurrent.locks.LockSupport;
+
+import com.titanrobotics2022.motion.generation.rmpflow.RMPRoot;
+import com.titanrobotics2022.motion.generation.rmpflow.trace.SolveTraceWriter;
+
+import org.ejml.data.DMatrixRMaj;
+
+/**
+ * Runs an RMP tree at a fixed rate.
+ * <p>
+ * Every tick reads the state from a {@link StateSource}, solves the tree and
+ * writes the acceleration to a {@link CommandSink}, so the same loop runs
+ * against a simulation or the robot. Ticks are scheduled at absolute
+ * deadlines, start + k * period, so the period does not drift with the time
+ * each tick takes. The loop sleeps until shortly before each deadline and
+ * then spins for the rest, since sleeping alone wakes up too late to hold
+ * rates like 500 Hz.
+ * <p>
+ * A tick whose solve finishes after its deadline, the start of the next
+ * period, is a missed deadline and is handled by the loop's
+ * {@link OverrunPolicy}. Periods that have already passed when an overrunning
+ * tick finishes are skipped rather than run back to back, so the loop returns
+ * to its schedule straight away.
+ * <p>
+ * The tree is solved on the loop's thread, so it must not be solved through
+ * its root from another thread at the same time. Configure the loop before
+ * running it; only {@link #setTrace(SolveTraceWriter)}, {@link #stop()}, the
+ * statistics and {@link #isDegraded()} may be used from other threads while it
+ * runs.
+ */
+public class ControlLoop {
+	private final RMPRoot root;
+	private final long period; // nanoseconds
+	private final StateSource source;
+	private final CommandSink sink;
+	private final OverrunPolicy policy;
+	private RMPRoot degradedRoot;
+	private int recoveryTicks = 1;
+	private long spin = 200_000; // nanoseconds spent spinning before each deadline
+	private LoopClock clock; // null for System.nanoTime(), sleeping and spinning
+	private volatile SolveTraceWriter trace;
+	private final DMatrixRMaj x = new DMatrixRMaj(1, 1), x_dot = new DMatrixRMaj(1, 1), a = new DMatrixRMaj(1, 1),
+			held = new DMatrixRMaj(1, 1);
+	private boolean hasHeld; // Whether a command has been on time yet
+	private volatile boolean degraded; // Read by isDegraded() from other threads
+	private int onTime; // On time ticks in a row while degraded
+	private volatile boolean running;
+	private Thread thread;
+
+	private long ticks, missedDeadlines, skippedPeriods, degradedTicks;
+	private long totalLatency, maxLatency, totalJitter, maxJitter;
+
+	/**
+	 * Creates a control loop.
+	 * 
+	 * @param root   The root of the tree to solve
+	 * @param rate   The number of ticks per second, such as 50, 100, 200 or 500
+	 * @param source Where to read the state from
+	 * @param sink   Where to write the commands to
+	 * @param policy What to do with ticks that miss their deadline
+	 */
+	public ControlLoop(RMPRoot root, double rate, StateSource source, CommandSink sink, OverrunPolicy policy) {
+		if (!(rate > 0))
+			throw new IllegalArgumentException("Rate must be positive.");
+		this.root = root;
+		this.period = Math.round(1e9 / rate);
+		this.source = source;
+		this.sink = sink;
+		this.policy = policy;
+	}
+
+	/**
+	 * Sets the tree to solve while degraded, used by
+	 * {@link OverrunPolicy#DEGRADE}. It should be a cheaper version of the main
+	 * tree, for example with fewer obstacles.
+	 * 
+	 * @param degradedRoot  The root of the degraded tree
+	 * @param recoveryTicks The number of on time ticks in a row after which the
+	 *                      main tree is solved again
+	 */
+	public void setDegradedRoot(RMPRoot degradedRoot, int recoveryTicks) {
+		if (recoveryTicks < 1)
+			throw new IllegalArgumentException("Recovery ticks must be positive.");
+		this.degradedRoot = degradedRoot;
+		this.recoveryTicks = recoveryTicks;
+	}
+
+	/**
+	 * Sets how long before each deadline the loop stops sleeping and starts
+	 * spinning. Longer spins wake up more precisely but use more CPU.
+	 * 
+	 * @param spinNanos The spin time in nanoseconds
+	 */
+	public void setSpinNanos(long spinNanos) {
+		this.spin = spinNanos;
+	}
+
+	/**
+	 * Sets the time the loop schedules its ticks by, instead of
+	 * {@link System#nanoTime()}. The spin time is then not used.
+	 * 
+	 * @param clock The clock, or null for the system's
+	 */
+	public void setClock(LoopClock clock) {
+		this.clock = clock;
+	}
+
+	/**
+	 * Sets a trace to record every tick to, after its command is written. The
+	 * recorded time is when the tick woke up. Safe to call while the loop runs;
+	 * the change is seen from the next tick.
+	 * 
+	 * @param trace The trace to record to, or null to stop recording
+	 */
+	public void setTrace(SolveTraceWriter trace) {
+		this.trace = trace;
+	}
+
+	/**
+	 * Runs the loop on the calling thread until {@link #stop()} is called or a
+	 * number of ticks have run.
+	 * 
+	 * @param maxTicks The largest number of ticks to run
+	 */
+	public void run(long maxTicks) {
+		running = true;
+		loop(maxTicks);
+	}
+
+	/**
+	 * Runs ticks until the loop is stopped or a number of ticks have run. Does
+	 * not set the running flag itself, so a {@link #stop()} between
+	 * {@link #start()} and the new thread reaching here is not undone.
+	 */
+	private void loop(long maxTicks) {
+		long start = nanoTime();
+		long k = 0;
+		for (long tick = 0; tick < maxTicks && running; tick++) {
+			long deadline = start + k * period;
+			waitUntil(deadline);
+			long wake = nanoTime();
+
+			source.read(x, x_dot);
+			boolean wasDegraded = degraded && degradedRoot != null;
+			(wasDegraded ? degradedRoot : root).solve(x, x_dot, a);
+			long done = nanoTime();
+
+			long next = deadline + period;
+			boolean missed = done > next;
+			write(missed);
+			SolveTraceWriter trace = this.trace;
+			if (trace != null)
+				trace.record(wake, x, x_dot, a);
+			if (missed) {
+				long late = (done - next) / period + 1; // Periods that have started since
+				k += late;
+				record(wake - deadline, done - wake, true, late, wasDegraded);
+			} else {
+				record(wake - deadline, done - wake, false, 0, wasDegraded);
+			}
+			k++;
+		}
+		running = false;
+	}
+
+	private void write(boolean missed) {
+		if (!missed) {
+			sink.write(a);
+			held.setTo(a);
+			hasHeld = true;
+			if (degraded && ++onTime >= recoveryTicks)
+				degraded = false;
+			return;
+		}
+		switch (policy) {
+			case SKIP:
+				break;
+			case HOLD:
+				if (hasHeld)
+					sink.write(held);
+				break;
+			case DEGRADE:
+				sink.write(a);
+				degraded = true;
+				onTime = 0;
+				break;
+		}
+	}
+
+	private synchronized void record(long jitter, long latency, boolean missed, long skipped, boolean degraded) {
+		ticks++;
+		if (missed)
+			missedDeadlines++;
+		skippedPeriods += skipped;
+		if (degraded)
+			degradedTicks++;
+		totalLatency += latency;
+		maxLatency = Math.max(maxLatency, latency);
+		totalJitter += jitter;
+		maxJitter = Math.max(maxJitter, jitter);
+	}
+
+	private long nanoTime() {
+		return clock == null ? System.nanoTime() : clock.nanoTime();
+	}
+
+	/**
+	 * Sleeps until shortly before a deadline, then spins until the deadline.
+	 */
+	private void waitUntil(long deadline) {
+		if (clock != null) {
+			clock.waitUntil(deadline);
+			return;
+		}
+		long remaining;
+		while ((remaining = deadline - System.nanoTime()) > spin)
+			LockSupport.parkNanos(remaining - spin);
+		while (System.nanoTime() < deadline)
+			Thread.onSpinWait();
+	}
+
+	/**
+	 * Starts the loop on a new maximum priority thread.
+	 */
+	public synchronized void start() {
+		if (thread != null)
+			throw new IllegalStateException("The loop is already running.");
+		thread = new Thread(() -> loop(Long.MAX_VALUE), "ControlLoop");
+		thread.setPriority(Thread.MAX_PRIORITY);
+		thread.setDaemon(true);
+		running = true;
+		thread.start();
+	}
+
+	/**
+	 * Stops the loop after its current tick, and waits for it if it was started
+	 * with {@link #start()}.
+	 * 
+	 * @throws InterruptedException If interrupted while waiting for the loop
+	 */
+	public void stop() throws InterruptedException {
+		running = false;
+		Thread started;
+		synchronized (this) {
+			started = thread;
+			thread = null;
+		}
+		if (started != null)
+			started.join();
+	}
+
+	/**
+	 * Returns a snapshot of the loop's timing so far.
+	 * 
+	 * @return The loop's statistics
+	 */
+	public synchronized ControlLoopStatistics getStatistics() {
+		return new ControlLoopStatistics(ticks, missedDeadlines, skippedPeriods, degradedTicks, totalLatency,
+				maxLatency, totalJitter, maxJitter);
+	}
+
+	/**
+	 * Clears the loop's statistics.
+	 */
+	public synchronized void resetStatistics() {
+		ticks = missedDeadlines = skippedPeriods = degradedTicks = 0;
+		totalLatency = maxLatency = totalJitter = maxJitter = 0;
+	}
+
+	/**
+	 * Returns the period between ticks.
+	 * 
+	 * @return The period in nanoseconds
+	 */
+	public long getPeriodNanos() {
+		return period;
+	}
+
+	/**
+	 * Determines whether the loop is solving with the degraded tree.
+	 * 
+	 * @return True, if the loop is degraded, or false, otherwise.
+	 */
+	public boolean isDegraded() {
+		return degraded;
+	}
+}
@@ -0,0 +1,106 @@
+package com.titanrobotics2022.motion.control;
+
+/**
+ * A snapshot of the timing of a {@link ControlLoop}.
+ * <p>
+ * Latency is the time from a tick waking up to its command being ready.
+ * Jitter is how far a tick woke up from its deadline, which is never early,
+ * so it is the lateness of the wake up.
+ */
+public class ControlLoopStatistics {
+	private final long ticks, missedDeadlines, skippedPeriods, degradedTicks;
+	private final long totalLatency, maxLatency, totalJitter, maxJitter;
+
+	ControlLoopStatistics(long ticks, long missedDeadlines, long skippedPeriods, long degradedTicks,
+			long totalLatency, long maxLatency, long totalJitter, long maxJitter) {
+		this.ticks = ticks;
+		this.missedDeadlines = missedDeadlines;
+		this.skippedPeriods = skippedPeriods;
+		this.degradedTicks = degradedTicks;
+		this.totalLatency = totalLatency;
+		this.maxLatency = maxLatency;
+		this.totalJitter = totalJitter;
+		this.maxJitter = maxJitter;
+	}
+
+	/**
+	 * Returns the number of ticks run.
+	 * 
+	 * @return The number of ticks
+	 */
+	public long getTicks() {
+		return ticks;
+	}
+
+	/**
+	 * Returns the number of ticks whose solve finished after their deadline.
+	 * 
+	 * @return The number of missed deadlines
+	 */
+	public long getMissedDeadlines() {
+		return missedDeadlines;
+	}
+
+	/**
+	 * Returns the number of periods that had no tick because an overrunning
+	 * tick was still running when they started.
+	 * 
+	 * @return The number of skipped periods
+	 */
+	public long getSkippedPeriods() {
+		return skippedPeriods;
+	}
+
+	/**
+	 * Returns the number of ticks solved with the degraded tree.
+	 * 
+	 * @return The number of degraded ticks
+	 */
+	public long getDegradedTicks() {
+		return degradedTicks;
+	}
+
+	/**
+	 * Returns the mean solve latency.
+	 * 
+	 * @return The mean latency in nanoseconds
+	 */
+	public double getMeanLatencyNanos() {
+		return ticks == 0 ? 0 : (double) totalLatency / ticks;
+	}
+
+	/**
+	 * Returns the largest solve latency.
+	 * 
+	 * @return The largest latency in nanoseconds
+	 */
+	public long getMaxLatencyNanos() {
+		return maxLatency;
+	}
+
+	/**
+	 * Returns the mean wake up lateness.
+	 * 
+	 * @return The mean jitter in nanoseconds
+	 */
+	public double getMeanJitterNanos() {
+		return ticks == 0 ? 0 : (double) totalJitter / ticks;
+	}
+
+	/**
+	 * Returns the largest wake up lateness.
+	 * 
+	 * @return The largest jitter in nanoseconds
+	 */
+	public long getMaxJitterNanos() {
+		return maxJitter;
+	}
+
+	@Override
+	public String toString() {
+		return String.format(
+				"%d ticks, %d missed deadlines, %d skipped periods, %d degraded ticks, latency %.1f/%d ns, jitter %.1f/%d ns (mean/max)",
+				ticks, missedDeadlines, skippedPeriods, degradedTicks, getMeanLatencyNanos(), maxLatency,
+				getMeanJitterNanos(), maxJitter);
+	}
+}
@@ -0,0 +1,24 @@
+package com.titanrobotics2022.motion.control;
+
+/**
+ * The time a {@link ControlLoop} schedules its ticks by. By default a loop
+ * reads {@link System#nanoTime()} and sleeps, then spins, until each
+ * deadline; a simulation or a test can instead supply a clock that only moves
+ * when the simulated robot's work takes time, so the loop's timing is
+ * repeatable.
+ */
+public interface LoopClock {
+	/**
+	 * Returns the current time. Only differences between times are meaningful.
+	 *
+	 * @return The time in nanoseconds
+	 */
+	long nanoTime();
+
+	/**
+	 * Returns once the time has reached a deadline.
+	 *
+	 * @param deadline The time to wait for in nanoseconds
+	 */
+	void waitUntil(long deadline);
+}
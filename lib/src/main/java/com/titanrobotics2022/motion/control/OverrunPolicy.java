@@ -0,0 +1,17 @@
+package com.titanrobotics2022.motion.control;
+
+/**
+ * What a {@link ControlLoop} does with a tick whose solve finishes after the
+ * tick's deadline, the start of the next period.
+ */
+public enum OverrunPolicy {
+	/** Drops the late command, so the sink keeps the last command it received. */
+	SKIP,
+	/** Writes the last command that was on time again instead of the late one. */
+	HOLD,
+	/**
+	 * Writes the late command, then solves with the loop's degraded tree until
+	 * enough ticks in a row are on time.
+	 */
+	DEGRADE
+}
@@ -0,0 +1,18 @@
+package com.titanrobotics2022.motion.control;
+
+import org.ejml.data.DMatrixRMaj;
+
+/**
+ * Supplies the state a {@link ControlLoop} solves from, such as odometry on
+ * the robot or a simulated plant.
+ */
+@FunctionalInterface
+public interface StateSource {
+	/**
+	 * Reads the current state into caller-provided matrices.
+	 * 
+	 * @param x     The state, reshaped as needed
+	 * @param x_dot The differentiated state, reshaped as needed
+	 */
+	void read(DMatrixRMaj x, DMatrixRMaj x_dot);
+}
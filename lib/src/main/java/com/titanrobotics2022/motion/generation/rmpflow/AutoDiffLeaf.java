@@ -0,0 +1,103 @@
+package com.titanrobotics2022.motion.generation.rmpflow;
+
+import org.ejml.data.DMatrixRMaj;
+import org.ejml.simple.SimpleMatrix;
+
+/**
+ * A leaf whose task map is only written once, as {@link #psi(ForwardDiff)},
+ * and whose Jacobian and its derivative are derived from it by forward-mode
+ * automatic differentiation. A single pass gives x, J and J_dot, without
+ * allocating once the leaf's workspace has grown.
+ * <p>
+ * The {@link ForwardDiff} is the leaf's evaluation state, so the leaf and
+ * every {@link RMPEvaluationContext} differentiate in their own and the task
+ * map can be evaluated by several contexts at once, as long as psi only reads
+ * the leaf's fields. Calling the task map directly, as a solve through the
+ * tree does, uses the leaf's own workspace, so only one thread may do that at
+ * a time.
+ */
+public abstract class AutoDiffLeaf extends RMPLeaf {
+	/**
+	 * RMP leaf node with an automatically differentiated task map.
+	 * 
+	 * @param name   of leaf node
+	 * @param parent of leaf node
+	 */
+	public AutoDiffLeaf(String name, RMPNode parent) {
+		super(name, parent);
+	}
+
+	/**
+	 * The task map, written with the operations of a {@link ForwardDiff}. Read
+	 * the configuration space with {@link ForwardDiff#input(int)} and append
+	 * each component of the task space with {@link ForwardDiff#output(int)}.
+	 * 
+	 * @param ad The differentiation workspace of the pass
+	 */
+	protected abstract void psi(ForwardDiff ad);
+
+	/**
+	 * Creates the leaf's differentiation workspace. The workspace is the
+	 * leaf's whole evaluation state, so a subclass cannot add its own.
+	 * 
+	 * @return A new workspace
+	 */
+	@Override
+	protected final ForwardDiff createState() {
+		return new ForwardDiff();
+	}
+
+	@Override
+	public void taskMap(DMatrixRMaj q, DMatrixRMaj q_dot, DMatrixRMaj x, DMatrixRMaj J, DMatrixRMaj J_dot) {
+		differentiate((ForwardDiff) getState(), q, q_dot, x, J, J_dot);
+	}
+
+	@Override
+	protected void taskMap(DMatrixRMaj q, DMatrixRMaj q_dot, DMatrixRMaj x, DMatrixRMaj J, DMatrixRMaj J_dot,
+			Object state) {
+		differentiate((ForwardDiff) state, q, q_dot, x, J, J_dot);
+	}
+
+	private void differentiate(ForwardDiff ad, DMatrixRMaj q, DMatrixRMaj q_dot, DMatrixRMaj x, DMatrixRMaj J,
+			DMatrixRMaj J_dot) {
+		ad.begin(q, q_dot);
+		psi(ad);
+		ad.end(x, J, J_dot);
+	}
+
+	@Override
+	public void psi(DMatrixRMaj q, DMatrixRMaj out) {
+		differentiate((ForwardDiff) getState(), q, null, out, null, null);
+	}
+
+	@Override
+	public void j(DMatrixRMaj q, DMatrixRMaj out) {
+		differentiate((ForwardDiff) getState(), q, null, null, out, null);
+	}
+
+	@Override
+	public void j_dot(DMatrixRMaj q, DMatrixRMaj q_dot, DMatrixRMaj out) {
+		differentiate((ForwardDiff) getState(), q, q_dot, null, null, out);
+	}
+
+	@Override
+	public SimpleMatrix psi(SimpleMatrix q) {
+		DMatrixRMaj out = new DMatrixRMaj(1, 1);
+		psi(q.getDDRM(), out);
+		return SimpleMatrix.wrap(out);
+	}
+
+	@Override
+	public SimpleMatrix j(SimpleMatrix q) {
+		DMatrixRMaj out = new DMatrixRMaj(1, 1);
+		j(q.getDDRM(), out);
+		return SimpleMatrix.wrap(out);
+	}
+
+	@Override
+	public SimpleMatrix j_dot(SimpleMatrix q, SimpleMatrix q_dot) {
+		DMatrixRMaj out = new DMatrixRMaj(1, 1);
+		j_dot(q.getDDRM(), q_dot.getDDRM(), out);
+		return SimpleMatrix.wrap(out);
+	}
+}
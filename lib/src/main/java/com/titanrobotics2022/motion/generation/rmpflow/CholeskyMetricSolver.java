@@ -0,0 +1,123 @@
+package com.titanrobotics2022.motion.generation.rmpflow;
+
+import org.ejml.data.DMatrixRMaj;
+import org.ejml.dense.row.factory.LinearSolverFactory_DDRM;
+import org.ejml.interfaces.linsol.LinearSolver;
+
+/**
+ * Resolves a = M†f with a Cholesky decomposition, falling back on an SVD based
+ * Moore-Penrose inverse.
+ * <p>
+ * Resolved metrics are symmetric positive-definite in almost every tick, in
+ * which case M† = M^-1 and the Cholesky solve is much cheaper than an SVD. The
+ * pseudo-inverse is only used when the decomposition fails, because M is not
+ * positive-definite, or when its quality is below a threshold, because M is
+ * poorly conditioned. The number of solves taken by each path is counted.
+ * <p>
+ * The solver keeps the decomposition of the last metric it was given. When the
+ * next metric is exactly the same, as with leaves whose metrics are constant
+ * or a robot that has not moved since the last tick, the decomposition is
+ * reused and only the cheap solve against f is repeated. Comparing the metric
+ * costs one pass over its elements, far less than decomposing it.
+ */
+public class CholeskyMetricSolver implements MetricSolver {
+	private final LinearSolver<DMatrixRMaj, DMatrixRMaj> cholesky = LinearSolverFactory_DDRM.chol(2);
+	private final LinearSolver<DMatrixRMaj, DMatrixRMaj> fallback = LinearSolverFactory_DDRM.pseudoInverse(true);
+	private final DMatrixRMaj work = new DMatrixRMaj(1, 1); // The Cholesky solver decomposes in place
+	private final DMatrixRMaj factored = new DMatrixRMaj(1, 1); // Copy of the last metric that was decomposed
+	private final double minQuality;
+	private boolean decomposed; // Whether factored holds a decomposed metric
+	private boolean usesCholesky; // Whether the decomposition of factored is the Cholesky one
+	private long choleskyCount, fallbackCount, reuseCount;
+
+	/**
+	 * Creates a solver that falls back on the pseudo-inverse when the quality
+	 * of the decomposition is below 1e-8.
+	 */
+	public CholeskyMetricSolver() {
+		this(1e-8);
+	}
+
+	/**
+	 * Creates a solver with a custom conditioning threshold.
+	 * 
+	 * @param minQuality The minimum quality of the decomposition, as reported
+	 *                   by {@link LinearSolver#quality()}, to trust the Cholesky
+	 *                   solve. The quality is 1 for a well conditioned metric
+	 *                   and approaches 0 as it becomes singular.
+	 */
+	public CholeskyMetricSolver(double minQuality) {
+		this.minQuality = minQuality;
+	}
+
+	@Override
+	public void solve(DMatrixRMaj m, DMatrixRMaj f, DMatrixRMaj a) {
+		a.reshape(m.getNumRows(), 1);
+		if (decomposed && isFactored(m)) {
+			reuseCount++;
+		} else {
+			decomposed = false;
+			work.setTo(m);
+			usesCholesky = cholesky.setA(work) && cholesky.quality() >= minQuality;
+			if (!usesCholesky)
+				fallback.setA(m);
+			factored.setTo(m);
+			decomposed = true;
+		}
+		if (usesCholesky) {
+			cholesky.solve(f, a);
+			choleskyCount++;
+		} else {
+			fallback.solve(f, a);
+			fallbackCount++;
+		}
+	}
+
+	/**
+	 * Returns whether a metric is exactly the last one that was decomposed.
+	 */
+	private boolean isFactored(DMatrixRMaj m) {
+		if (m.getNumRows() != factored.getNumRows() || m.getNumCols() != factored.getNumCols())
+			return false;
+		double[] data = m.data, last = factored.data;
+		for (int i = m.getNumElements() - 1; i >= 0; i--)
+			if (data[i] != last[i])
+				return false;
+		return true;
+	}
+
+	/**
+	 * Returns the number of solves that used the Cholesky decomposition.
+	 * 
+	 * @return The number of Cholesky solves
+	 */
+	public long getCholeskyCount() {
+		return choleskyCount;
+	}
+
+	/**
+	 * Returns the number of solves that fell back on the pseudo-inverse.
+	 * 
+	 * @return The number of pseudo-inverse solves
+	 */
+	public long getFallbackCount() {
+		return fallbackCount;
+	}
+
+	/**
+	 * Returns the number of solves that reused the decomposition of the
+	 * previous metric. These are also counted by the path they took.
+	 * 
+	 * @return The number of solves that skipped the decomposition
+	 */
+	public long getReuseCount() {
+		return reuseCount;
+	}
+
+	/** Resets all counters to 0. */
+	public void resetCounts() {
+		choleskyCount = 0;
+		fallbackCount = 0;
+		reuseCount = 0;
+	}
+}
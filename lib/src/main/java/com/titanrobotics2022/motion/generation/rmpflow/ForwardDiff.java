@@ -0,0 +1,449 @@
+package com.titanrobotics2022.motion.generation.rmpflow;
+
+import java.util.Arrays;
+
+import org.ejml.data.DMatrixRMaj;
+
+/**
+ * Forward-mode automatic differentiation of a task map x = psi(q) over
+ * hyper-dual numbers, used by {@link AutoDiffLeaf}.
+ * <p>
+ * Every value v of a pass carries, besides itself:
+ * <ul>
+ * <li>its gradient with respect to q, so the gradients of the outputs are the
+ * rows of J</li>
+ * <li>its derivative along q_dot, dv/dt = grad(v) * q_dot</li>
+ * <li>the gradient of that derivative, d(dv/dt)/dq, whose rows for the
+ * outputs are the rows of J_dot, since the Hessian of each output is
+ * symmetric</li>
+ * </ul>
+ * so one pass through psi gives x, J and J_dot together, at a cost of O(n)
+ * per operation for an n dimensional q.
+ * <p>
+ * Values live in a primitive array and are referred to by their slot, the int
+ * returned by each operation, so a pass allocates nothing once the array has
+ * grown to fit the task map. Slots are only valid until the next pass.
+ * <p>
+ * Planar states, which every tree in this library uses, take unrolled paths
+ * through the operations. The general loops over n cost more in loop setup
+ * than in arithmetic for so few components.
+ */
+public class ForwardDiff {
+	private int n; // Input dimension
+	private int stride; // 2 * n + 2 doubles per slot: value, derivative along q_dot, gradient, its derivative
+	private double[] slots = new double[0];
+	private int size; // Number of slots in use
+	private int[] outputs = new int[4];
+	private int outputCount;
+
+	/**
+	 * Starts a new pass at a state, making q's components the first n slots.
+	 * 
+	 * @param q     The configuration space
+	 * @param q_dot The differentiated configuration space, or null for a pass
+	 *              that only needs x and J
+	 */
+	void begin(DMatrixRMaj q, DMatrixRMaj q_dot) {
+		n = q.getNumElements();
+		stride = 2 * n + 2;
+		size = 0;
+		outputCount = 0;
+		if (n == 2) { // Planar states, unrolled
+			slot();
+			slot();
+			double[] d = slots;
+			d[0] = q.data[0];
+			d[1] = q_dot == null ? 0 : q_dot.data[0];
+			d[2] = 1;
+			d[3] = d[4] = d[5] = 0;
+			d[6] = q.data[1];
+			d[7] = q_dot == null ? 0 : q_dot.data[1];
+			d[8] = d[10] = d[11] = 0;
+			d[9] = 1;
+			return;
+		}
+		for (int i = 0; i < n; i++) {
+			int s = slot() * stride;
+			slots[s] = q.data[i];
+			slots[s + 1] = q_dot == null ? 0 : q_dot.data[i];
+			for (int j = s + 2; j < s + stride; j++)
+				slots[j] = 0;
+			slots[s + 2 + i] = 1;
+		}
+	}
+
+	/**
+	 * Writes the outputs of the pass into the task space and its Jacobians.
+	 * 
+	 * @param x     The task space, reshaped as needed, or null to skip it
+	 * @param J     The Jacobian, reshaped as needed, or null to skip it
+	 * @param J_dot The derivative of the Jacobian, reshaped as needed, or null to
+	 *              skip it
+	 */
+	void end(DMatrixRMaj x, DMatrixRMaj J, DMatrixRMaj J_dot) {
+		int k = outputCount;
+		if (x != null)
+			x.reshape(k, 1);
+		if (J != null)
+			J.reshape(k, n);
+		if (J_dot != null)
+			J_dot.reshape(k, n);
+		for (int r = 0; r < k; r++) {
+			int s = outputs[r] * stride;
+			if (x != null)
+				x.data[r] = slots[s];
+			if (n == 2) { // Planar states, unrolled
+				if (J != null) {
+					J.data[2 * r] = slots[s + 2];
+					J.data[2 * r + 1] = slots[s + 3];
+				}
+				if (J_dot != null) {
+					J_dot.data[2 * r] = slots[s + 4];
+					J_dot.data[2 * r + 1] = slots[s + 5];
+				}
+				continue;
+			}
+			for (int i = 0; i < n; i++) { // Rows are too short for System.arraycopy to pay off
+				if (J != null)
+					J.data[r * n + i] = slots[s + 2 + i];
+				if (J_dot != null)
+					J_dot.data[r * n + i] = slots[s + 2 + n + i];
+			}
+		}
+	}
+
+	/**
+	 * Claims a slot, whose contents are left over from earlier passes, and
+	 * returns its index.
+	 */
+	private int slot() {
+		int end = (size + 1) * stride;
+		if (end > slots.length)
+			slots = Arrays.copyOf(slots, Math.max(2 * slots.length, end));
+		return size++;
+	}
+
+	/**
+	 * Returns the dimension of the configuration space.
+	 * 
+	 * @return The number of components of q
+	 */
+	public int getInputDimension() {
+		return n;
+	}
+
+	/**
+	 * Returns a component of the configuration space.
+	 * 
+	 * @param i The index of the component
+	 * @return The slot of q_i
+	 */
+	public int input(int i) {
+		if (i < 0 || i >= n)
+			throw new IllegalArgumentException("Input " + i + " is out of range for a dimension of " + n + ".");
+		return i;
+	}
+
+	/**
+	 * Appends a value to the task space. Outputs are appended in order.
+	 * 
+	 * @param u The slot of the value
+	 */
+	public void output(int u) {
+		if (outputCount == outputs.length)
+			outputs = Arrays.copyOf(outputs, 2 * outputs.length);
+		outputs[outputCount++] = u;
+	}
+
+	/**
+	 * Returns the value in a slot, without its derivatives. Useful for choosing
+	 * a branch, for example a sign.
+	 * 
+	 * @param u The slot
+	 * @return The value
+	 */
+	public double value(int u) {
+		return slots[u * stride];
+	}
+
+	/**
+	 * Creates a constant, whose derivatives are all zero.
+	 * 
+	 * @param c The constant
+	 * @return The slot of the constant
+	 */
+	public int constant(double c) {
+		int u = slot(), s = u * stride;
+		slots[s] = c;
+		for (int i = s + 1; i < s + stride; i++)
+			slots[i] = 0;
+		return u;
+	}
+
+	/**
+	 * Applies a function of one value given its first and second derivatives
+	 * at the value.
+	 */
+	private int unary(int u, double f, double f1, double f2) {
+		int w = slot(), s = w * stride, a = u * stride;
+		double[] d = slots;
+		double cu = d[a + 1];
+		d[s] = f;
+		d[s + 1] = f1 * cu;
+		if (n == 2) { // Planar states, unrolled
+			double b0 = d[a + 2], b1 = d[a + 3];
+			d[s + 2] = f1 * b0;
+			d[s + 3] = f1 * b1;
+			d[s + 4] = f1 * d[a + 4] + f2 * cu * b0;
+			d[s + 5] = f1 * d[a + 5] + f2 * cu * b1;
+			return w;
+		}
+		for (int i = 0; i < n; i++) {
+			double bu = d[a + 2 + i];
+			d[s + 2 + i] = f1 * bu;
+			d[s + 2 + n + i] = f1 * d[a + 2 + n + i] + f2 * cu * bu;
+		}
+		return w;
+	}
+
+	/**
+	 * Applies a function of two values given its partial derivatives and second
+	 * partial derivatives at the values.
+	 */
+	private int binary(int u, int v, double f, double fu, double fv, double fuu, double fuv, double fvv) {
+		int w = slot(), s = w * stride, a = u * stride, b = v * stride;
+		double[] d = slots;
+		double cu = d[a + 1], cv = d[b + 1];
+		d[s] = f;
+		d[s + 1] = fu * cu + fv * cv;
+		if (n == 2) { // Planar states, unrolled
+			double u0 = d[a + 2], u1 = d[a + 3], v0 = d[b + 2], v1 = d[b + 3];
+			double gu = fuu * cu + fuv * cv, gv = fuv * cu + fvv * cv;
+			d[s + 2] = fu * u0 + fv * v0;
+			d[s + 3] = fu * u1 + fv * v1;
+			d[s + 4] = fu * d[a + 4] + fv * d[b + 4] + gu * u0 + gv * v0;
+			d[s + 5] = fu * d[a + 5] + fv * d[b + 5] + gu * u1 + gv * v1;
+			return w;
+		}
+		for (int i = 0; i < n; i++) {
+			double bu = d[a + 2 + i], bv = d[b + 2 + i];
+			d[s + 2 + i] = fu * bu + fv * bv;
+			d[s + 2 + n + i] = fu * d[a + 2 + n + i] + fv * d[b + 2 + n + i] + fuu * cu * bu
+					+ fuv * (cu * bv + cv * bu) + fvv * cv * bv;
+		}
+		return w;
+	}
+
+	/**
+	 * u + v
+	 * 
+	 * @param u A slot
+	 * @param v A slot
+	 * @return The slot of the sum
+	 */
+	public int add(int u, int v) {
+		return binary(u, v, value(u) + value(v), 1, 1, 0, 0, 0);
+	}
+
+	/**
+	 * u - v
+	 * 
+	 * @param u A slot
+	 * @param v A slot
+	 * @return The slot of the difference
+	 */
+	public int sub(int u, int v) {
+		return binary(u, v, value(u) - value(v), 1, -1, 0, 0, 0);
+	}
+
+	/**
+	 * u * v
+	 * 
+	 * @param u A slot
+	 * @param v A slot
+	 * @return The slot of the product
+	 */
+	public int mul(int u, int v) {
+		double a = value(u), b = value(v);
+		return binary(u, v, a * b, b, a, 0, 1, 0);
+	}
+
+	/**
+	 * u / v
+	 * 
+	 * @param u A slot
+	 * @param v A slot
+	 * @return The slot of the quotient
+	 */
+	public int div(int u, int v) {
+		double a = value(u), b = value(v), inv = 1 / b;
+		return binary(u, v, a * inv, inv, -a * inv * inv, 0, -inv * inv, 2 * a * inv * inv * inv);
+	}
+
+	/**
+	 * u + c for a constant c
+	 * 
+	 * @param u A slot
+	 * @param c The constant
+	 * @return The slot of the sum
+	 */
+	public int addConstant(int u, double c) {
+		if (n != 2)
+			return unary(u, value(u) + c, 1, 0);
+		int w = slot(), s = w * 6, a = u * 6; // Planar states, unrolled
+		double[] d = slots;
+		d[s] = d[a] + c;
+		d[s + 1] = d[a + 1];
+		d[s + 2] = d[a + 2];
+		d[s + 3] = d[a + 3];
+		d[s + 4] = d[a + 4];
+		d[s + 5] = d[a + 5];
+		return w;
+	}
+
+	/**
+	 * c * u for a constant c
+	 * 
+	 * @param u A slot
+	 * @param c The constant
+	 * @return The slot of the product
+	 */
+	public int scale(int u, double c) {
+		if (n != 2)
+			return unary(u, c * value(u), c, 0);
+		int w = slot(), s = w * 6, a = u * 6; // Planar states, unrolled
+		double[] d = slots;
+		d[s] = c * d[a];
+		d[s + 1] = c * d[a + 1];
+		d[s + 2] = c * d[a + 2];
+		d[s + 3] = c * d[a + 3];
+		d[s + 4] = c * d[a + 4];
+		d[s + 5] = c * d[a + 5];
+		return w;
+	}
+
+	/**
+	 * -u
+	 * 
+	 * @param u A slot
+	 * @return The slot of the negation
+	 */
+	public int neg(int u) {
+		return unary(u, -value(u), -1, 0);
+	}
+
+	/**
+	 * u²
+	 * 
+	 * @param u A slot
+	 * @return The slot of the square
+	 */
+	public int square(int u) {
+		double a = value(u);
+		return unary(u, a * a, 2 * a, 2);
+	}
+
+	/**
+	 * 1 / u
+	 * 
+	 * @param u A slot
+	 * @return The slot of the reciprocal
+	 */
+	public int reciprocal(int u) {
+		double inv = 1 / value(u);
+		return unary(u, inv, -inv * inv, 2 * inv * inv * inv);
+	}
+
+	/**
+	 * √u
+	 * 
+	 * @param u A slot
+	 * @return The slot of the square root
+	 */
+	public int sqrt(int u) {
+		double r = Math.sqrt(value(u));
+		return unary(u, r, 0.5 / r, -0.25 / (r * r * r));
+	}
+
+	/**
+	 * u^p for a constant p
+	 * 
+	 * @param u A slot
+	 * @param p The exponent
+	 * @return The slot of the power
+	 */
+	public int pow(int u, double p) {
+		double a = value(u);
+		return unary(u, Math.pow(a, p), p * Math.pow(a, p - 1), p * (p - 1) * Math.pow(a, p - 2));
+	}
+
+	/**
+	 * e^u
+	 * 
+	 * @param u A slot
+	 * @return The slot of the exponential
+	 */
+	public int exp(int u) {
+		double e = Math.exp(value(u));
+		return unary(u, e, e, e);
+	}
+
+	/**
+	 * ln(u)
+	 * 
+	 * @param u A slot
+	 * @return The slot of the natural logarithm
+	 */
+	public int log(int u) {
+		double a = value(u);
+		return unary(u, Math.log(a), 1 / a, -1 / (a * a));
+	}
+
+	/**
+	 * sin(u)
+	 * 
+	 * @param u A slot
+	 * @return The slot of the sine
+	 */
+	public int sin(int u) {
+		double s = Math.sin(value(u));
+		return unary(u, s, Math.cos(value(u)), -s);
+	}
+
+	/**
+	 * cos(u)
+	 * 
+	 * @param u A slot
+	 * @return The slot of the cosine
+	 */
+	public int cos(int u) {
+		double c = Math.cos(value(u));
+		return unary(u, c, -Math.sin(value(u)), -c);
+	}
+
+	/**
+	 * The angle of the point (x, y), as {@link Math#atan2(double, double)}.
+	 * 
+	 * @param y A slot
+	 * @param x A slot
+	 * @return The slot of the angle
+	 */
+	public int atan2(int y, int x) {
+		double a = value(y), b = value(x), inv2 = 1 / (a * a + b * b), inv4 = inv2 * inv2;
+		return binary(y, x, Math.atan2(a, b), b * inv2, -a * inv2, -2 * a * b * inv4, (a * a - b * b) * inv4,
+				2 * a * b * inv4);
+	}
+
+	/**
+	 * √(u² + v²), without the overflow protection of
+	 * {@link Math#hypot(double, double)}, which is several times slower.
+	 * 
+	 * @param u A slot
+	 * @param v A slot
+	 * @return The slot of the length
+	 */
+	public int hypot(int u, int v) {
+		double a = value(u), b = value(v), r = Math.sqrt(a * a + b * b), inv = 1 / r, inv3 = inv * inv * inv;
+		return binary(u, v, r, a * inv, b * inv, b * b * inv3, -a * b * inv3, a * a * inv3);
+	}
+}
@@ -0,0 +1,151 @@
+package com.titanrobotics2022.motion.generation.rmpflow;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A fixed-size histogram of latencies in nanoseconds, with one bucket per
+ * power of two. Bucket b counts latencies in [2^(b-1), 2^b), so 65 buckets
+ * cover every non-negative long and recording never allocates.
+ * <p>
+ * A histogram has a single writer, the thread solving the node it belongs
+ * to, and can be read with {@link #snapshot()} from any thread while it is
+ * being written. Counts are kept in an atomic array so that readers never see
+ * a torn 64-bit value, which plain longs allow on 32-bit JVMs such as the
+ * roboRIO's.
+ */
+public class LatencyHistogram {
+	private static final int BUCKETS = 65;
+	private static final int COUNT = BUCKETS, TOTAL = BUCKETS + 1, MAX = BUCKETS + 2;
+	private final AtomicLongArray values = new AtomicLongArray(BUCKETS + 3);
+
+	/**
+	 * Records a latency. Only one thread may record into a histogram at a time.
+	 * 
+	 * @param nanos The latency in nanoseconds
+	 */
+	public void record(long nanos) {
+		if (nanos < 0)
+			nanos = 0;
+		int bucket = 64 - Long.numberOfLeadingZeros(nanos);
+		values.lazySet(bucket, values.get(bucket) + 1);
+		values.lazySet(TOTAL, values.get(TOTAL) + nanos);
+		if (nanos > values.get(MAX))
+			values.lazySet(MAX, nanos);
+		values.lazySet(COUNT, values.get(COUNT) + 1);
+	}
+
+	/**
+	 * Adds the latencies of another histogram, such as one recorded on
+	 * another thread. Only one thread may record into a histogram at a time.
+	 *
+	 * @param other A copy of the histogram to add
+	 */
+	public void add(Snapshot other) {
+		for (int b = 0; b < BUCKETS; b++)
+			values.lazySet(b, values.get(b) + other.counts[b]);
+		values.lazySet(TOTAL, values.get(TOTAL) + other.total);
+		if (other.max > values.get(MAX))
+			values.lazySet(MAX, other.max);
+		values.lazySet(COUNT, values.get(COUNT) + other.count);
+	}
+
+	/**
+	 * Clears the histogram. Should not be called while it is being recorded
+	 * into.
+	 */
+	public void reset() {
+		for (int i = 0; i < values.length(); i++)
+			values.set(i, 0);
+	}
+
+	/**
+	 * Copies the histogram. Safe to call from any thread while latencies are
+	 * being recorded, though a latency being recorded at the same time may only
+	 * be partly included.
+	 * 
+	 * @return A copy of the histogram
+	 */
+	public Snapshot snapshot() {
+		long[] counts = new long[BUCKETS];
+		for (int b = 0; b < BUCKETS; b++)
+			counts[b] = values.get(b);
+		return new Snapshot(counts, values.get(COUNT), values.get(TOTAL), values.get(MAX));
+	}
+
+	/**
+	 * An unchanging copy of a {@link LatencyHistogram}.
+	 */
+	public static class Snapshot {
+		private final long[] counts;
+		private final long count, total, max;
+
+		private Snapshot(long[] counts, long count, long total, long max) {
+			this.counts = counts;
+			this.count = count;
+			this.total = total;
+			this.max = max;
+		}
+
+		/**
+		 * Returns the number of latencies recorded.
+		 * 
+		 * @return The number of latencies
+		 */
+		public long getCount() {
+			return count;
+		}
+
+		/**
+		 * Returns the mean latency.
+		 * 
+		 * @return The mean latency in nanoseconds, or 0 if none were recorded
+		 */
+		public double getMean() {
+			return count == 0 ? 0 : (double) total / count;
+		}
+
+		/**
+		 * Returns the largest latency.
+		 * 
+		 * @return The largest latency in nanoseconds
+		 */
+		public long getMax() {
+			return max;
+		}
+
+		/**
+		 * Returns an upper bound on a percentile of the latencies, accurate to
+		 * within a factor of two.
+		 * 
+		 * @param percentile The percentile, between 0 and 100
+		 * @return The upper bound of the bucket the percentile falls in, in
+		 *         nanoseconds, or 0 if none were recorded
+		 */
+		public long getPercentile(double percentile) {
+			if (percentile < 0 || percentile > 100)
+				throw new IllegalArgumentException("Percentile must be between 0 and 100.");
+			long seen = 0;
+			for (long c : counts)
+				seen += c;
+			long rank = (long) Math.ceil(percentile / 100 * seen);
+			long cumulative = 0;
+			for (int b = 0; b < counts.length; b++) {
+				cumulative += counts[b];
+				if (cumulative >= rank && counts[b] > 0)
+					return b == 0 ? 0 : Math.min(max, b == 64 ? Long.MAX_VALUE : (1L << b) - 1);
+			}
+			return 0;
+		}
+
+		/**
+		 * Returns the number of latencies in a bucket, which holds latencies in
+		 * [2^(b-1), 2^b) nanoseconds, or exactly 0 for bucket 0.
+		 * 
+		 * @param bucket The bucket, from 0 to 64
+		 * @return The number of latencies in the bucket
+		 */
+		public long getBucketCount(int bucket) {
+			return counts[bucket];
+		}
+	}
+}
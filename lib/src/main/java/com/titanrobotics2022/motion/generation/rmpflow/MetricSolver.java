@@ -0,0 +1,21 @@
+package com.titanrobotics2022.motion.generation.rmpflow;
+
+import org.ejml.data.DMatrixRMaj;
+
+/**
+ * Resolves an RMP from its natural form to its canonical form, a = M†f.
+ * Implementation of operator 3 in
+ * <a href="https://arxiv.org/abs/1811.07049">RMPFlow Section 3.4</a>.
+ * 
+ * @see RMPNode#setMetricSolver(MetricSolver)
+ */
+public interface MetricSolver {
+	/**
+	 * Solves for the desired acceleration a = M†f.
+	 * 
+	 * @param m The metric. Is not modified.
+	 * @param f The force. Is not modified.
+	 * @param a The desired acceleration, reshaped as needed
+	 */
+	public void solve(DMatrixRMaj m, DMatrixRMaj f, DMatrixRMaj a);
+}
@@ -0,0 +1,20 @@
+package com.titanrobotics2022.motion.generation.rmpflow;
+
+import org.ejml.data.DMatrixRMaj;
+import org.ejml.dense.row.factory.LinearSolverFactory_DDRM;
+import org.ejml.interfaces.linsol.LinearSolver;
+
+/**
+ * Resolves a = M†f with an SVD based Moore-Penrose inverse. Works for any
+ * metric, including singular ones, but runs an SVD on every solve.
+ */
+public class PseudoInverseMetricSolver implements MetricSolver {
+	private final LinearSolver<DMatrixRMaj, DMatrixRMaj> solver = LinearSolverFactory_DDRM.pseudoInverse(true);
+
+	@Override
+	public void solve(DMatrixRMaj m, DMatrixRMaj f, DMatrixRMaj a) {
+		a.reshape(m.getNumRows(), 1);
+		solver.setA(m);
+		solver.solve(f, a);
+	}
+}
@@ -2,49 +2,211 @@ package com.titanrobotics2022.motion.generation.rmpflow;
 
 import java.util.function.BiFunction;
 import java.util.function.Function;
-import java.util.function.Supplier;
 
+import org.ejml.data.DMatrixRMaj;
 import org.ejml.simple.SimpleMatrix;
 
 /**
- * A wrapper class that allows Lambda function to be used with RMPFlow
+ * A wrapper class that allows Lambda function to be used with RMPFlow.
+ * <p>
+ * The lambdas write into caller-provided matrices, which are reshaped and
+ * zeroed before each call, so a policy written as lambdas that do not capture
+ * new objects solves without allocating, like a hand-written
+ * {@link RMPLeaf}.
  */
 public class RMP extends RMPLeaf {
-	private Function<SimpleMatrix, SimpleMatrix> psi, j;
-	private BiFunction<SimpleMatrix, SimpleMatrix, SimpleMatrix> j_dot;
-	private Supplier<SimpleMatrix> f, m;
+	/**
+	 * The task map psi or its Jacobian, written into a caller-provided matrix.
+	 */
+	@FunctionalInterface
+	public interface TaskMap {
+		/**
+		 * @param q   The configuration space
+		 * @param out The result, already reshaped and zeroed
+		 */
+		void apply(DMatrixRMaj q, DMatrixRMaj out);
+	}
 
-	public RMP(String name, RMPNode parent, Function<SimpleMatrix, SimpleMatrix> psi,
-			Function<SimpleMatrix, SimpleMatrix> j, BiFunction<SimpleMatrix, SimpleMatrix, SimpleMatrix> j_dot,
-			Supplier<SimpleMatrix> f, Supplier<SimpleMatrix> m) {
+	/**
+	 * The derivative of the Jacobian of the task map, written into a
+	 * caller-provided matrix.
+	 */
+	@FunctionalInterface
+	public interface TaskMapDerivative {
+		/**
+		 * @param q     The configuration space
+		 * @param q_dot The differentiated configuration space
+		 * @param out   The result, already reshaped and zeroed
+		 */
+		void apply(DMatrixRMaj q, DMatrixRMaj q_dot, DMatrixRMaj out);
+	}
+
+	/**
+	 * The force or the inertia matrix of the policy, written into a
+	 * caller-provided matrix.
+	 */
+	@FunctionalInterface
+	public interface Policy {
+		/**
+		 * @param x     The state in task space
+		 * @param x_dot The differentiated state in task space
+		 * @param out   The result, already reshaped and zeroed
+		 */
+		void apply(DMatrixRMaj x, DMatrixRMaj x_dot, DMatrixRMaj out);
+	}
+
+	private final int dim; // Dimension of the task space, 0 when it matches the configuration space
+	private final TaskMap psi, j;
+	private final TaskMapDerivative j_dot;
+	private final Policy f, m;
+
+	/**
+	 * An RMP over the configuration space itself, with the identity as its task
+	 * map.
+	 *
+	 * @param name   of leaf node
+	 * @param parent of leaf node
+	 * @param f      Writes F, a column vector
+	 * @param m      Writes M, a square matrix
+	 */
+	public RMP(String name, RMPNode parent, Policy f, Policy m) {
+		this(name, parent, 0, RMP::identityMap, RMP::identityJacobian, (q, q_dot, out) -> {
+		}, f, m);
+	}
+
+	/**
+	 * An RMP over a task space of the given dimension.
+	 *
+	 * @param name   of leaf node
+	 * @param parent of leaf node
+	 * @param dim    The dimension of the task space
+	 * @param psi    Writes the task map, a dim x 1 column vector
+	 * @param j      Writes the Jacobian, dim x n for an n dimensional
+	 *               configuration space
+	 * @param j_dot  Writes the derivative of the Jacobian, shaped like the
+	 *               Jacobian
+	 * @param f      Writes F, a dim x 1 column vector
+	 * @param m      Writes M, a dim x dim matrix
+	 */
+	public RMP(String name, RMPNode parent, int dim, TaskMap psi, TaskMap j, TaskMapDerivative j_dot, Policy f,
+			Policy m) {
 		super(name, parent);
+		if (dim < 0)
+			throw new IllegalArgumentException("Dimension must not be negative.");
+		if (psi == null || j == null || j_dot == null || f == null || m == null)
+			throw new IllegalArgumentException("Every function of an RMP must be given.");
+		this.dim = dim;
 		this.psi = psi;
 		this.j = j;
 		this.j_dot = j_dot;
+		this.f = f;
+		this.m = m;
+	}
+
+	/**
+	 * An RMP written with functions that return new matrices. Simpler to write,
+	 * but every call allocates.
+	 *
+	 * @param name   of leaf node
+	 * @param parent of leaf node
+	 * @param psi    The task map
+	 * @param j      The Jacobian of the task map
+	 * @param j_dot  The derivative of the Jacobian, from q and q_dot
+	 * @param f      F, from x and x_dot
+	 * @param m      M, from x and x_dot
+	 */
+	public RMP(String name, RMPNode parent, Function<SimpleMatrix, SimpleMatrix> psi,
+			Function<SimpleMatrix, SimpleMatrix> j, BiFunction<SimpleMatrix, SimpleMatrix, SimpleMatrix> j_dot,
+			BiFunction<SimpleMatrix, SimpleMatrix, SimpleMatrix> f,
+			BiFunction<SimpleMatrix, SimpleMatrix, SimpleMatrix> m) {
+		this(name, parent, 0, (q, out) -> out.setTo(psi.apply(SimpleMatrix.wrap(q)).getDDRM()),
+				(q, out) -> out.setTo(j.apply(SimpleMatrix.wrap(q)).getDDRM()),
+				(q, q_dot, out) -> out
+						.setTo(j_dot.apply(SimpleMatrix.wrap(q), SimpleMatrix.wrap(q_dot)).getDDRM()),
+				(x, x_dot, out) -> out.setTo(f.apply(SimpleMatrix.wrap(x), SimpleMatrix.wrap(x_dot)).getDDRM()),
+				(x, x_dot, out) -> out.setTo(m.apply(SimpleMatrix.wrap(x), SimpleMatrix.wrap(x_dot)).getDDRM()));
+	}
+
+	private static void identityMap(DMatrixRMaj q, DMatrixRMaj out) {
+		System.arraycopy(q.data, 0, out.data, 0, q.getNumElements());
+	}
+
+	private static void identityJacobian(DMatrixRMaj q, DMatrixRMaj out) {
+		for (int i = 0; i < out.numRows; i++)
+			out.data[i * out.numCols + i] = 1;
+	}
+
+	private int taskDimension(DMatrixRMaj q) {
+		return dim == 0 ? q.getNumElements() : dim;
+	}
+
+	@Override
+	public void psi(DMatrixRMaj q, DMatrixRMaj out) {
+		out.reshape(taskDimension(q), 1);
+		out.zero();
+		psi.apply(q, out);
+	}
+
+	@Override
+	public void j(DMatrixRMaj q, DMatrixRMaj out) {
+		out.reshape(taskDimension(q), q.getNumElements());
+		out.zero();
+		j.apply(q, out);
+	}
+
+	@Override
+	public void j_dot(DMatrixRMaj q, DMatrixRMaj q_dot, DMatrixRMaj out) {
+		out.reshape(taskDimension(q), q.getNumElements());
+		out.zero();
+		j_dot.apply(q, q_dot, out);
+	}
+
+	@Override
+	protected void solveF(DMatrixRMaj x, DMatrixRMaj x_dot, DMatrixRMaj out) {
+		out.reshape(x.getNumElements(), 1);
+		out.zero();
+		f.apply(x, x_dot, out);
+	}
+
+	@Override
+	protected void solveM(DMatrixRMaj x, DMatrixRMaj x_dot, DMatrixRMaj out) {
+		out.reshape(x.getNumElements(), x.getNumElements());
+		out.zero();
+		m.apply(x, x_dot, out);
 	}
 
 	@Override
 	public SimpleMatrix psi(SimpleMatrix q) {
-		return psi.apply(q);
+		DMatrixRMaj out = new DMatrixRMaj(1, 1);
+		psi(q.getDDRM(), out);
+		return SimpleMatrix.wrap(out);
 	}
 
 	@Override
 	public SimpleMatrix j(SimpleMatrix q) {
-		return j.apply(q);
+		DMatrixRMaj out = new DMatrixRMaj(1, 1);
+		j(q.getDDRM(), out);
+		return SimpleMatrix.wrap(out);
 	}
 
 	@Override
 	public SimpleMatrix j_dot(SimpleMatrix q, SimpleMatrix q_dot) {
-		return j_dot.apply(q, q_dot);
+		DMatrixRMaj out = new DMatrixRMaj(1, 1);
+		j_dot(q.getDDRM(), q_dot.getDDRM(), out);
+		return SimpleMatrix.wrap(out);
 	}
 
 	@Override
 	protected SimpleMatrix solveF(SimpleMatrix x, SimpleMatrix x_dot) {
-		return f.get();
+		DMatrixRMaj out = new DMatrixRMaj(1, 1);
+		solveF(x.getDDRM(), x_dot.getDDRM(), out);
+		return SimpleMatrix.wrap(out);
 	}
 
 	@Override
 	protected SimpleMatrix solveM(SimpleMatrix x, SimpleMatrix x_dot) {
-		return m.get();
+		DMatrixRMaj out = new DMatrixRMaj(1, 1);
+		solveM(x.getDDRM(), x_dot.getDDRM(), out);
+		return SimpleMatrix.wrap(out);
 	}
 }
@@ -0,0 +1,313 @@
+package com.titanrobotics2022.motion.generation.rmpflow;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.Supplier;
+
+import org.ejml.data.DMatrixRMaj;
+
+/**
+ * Solves one RMP tree for many root states at once, such as a fleet of robots
+ * sharing the same policies or the rollouts of a Monte Carlo run.
+ * <p>
+ * States are packed structure-of-arrays: with K lanes, component i of lane k
+ * is stored at index i * K + k, so each component is a contiguous run of K
+ * values.
+ * <p>
+ * When every leaf hangs off the root and has a batch kernel (see
+ * {@link RMPLeaf#hasBatchKernel(int)}), as
+ * {@link com.titanrobotics2022.motion.generation.rmpflow.rmps.CollisionAvoidance},
+ * {@link com.titanrobotics2022.motion.generation.rmpflow.rmps.GoalAttractor}
+ * and {@link com.titanrobotics2022.motion.generation.rmpflow.rmps.Damper} do,
+ * each leaf is evaluated and pulled back for all of a worker's lanes in one
+ * loop over the packed arrays, and the root's forces and metrics are
+ * accumulated packed the same way. Only the final a = M†f is resolved one lane
+ * at a time. Any other tree is evaluated one lane at a time: each lane is
+ * gathered, solved by an {@link RMPFlowPlan} compiled from the tree and
+ * scattered back. Either way every lane matches a single solve exactly.
+ * <p>
+ * Every lane has its own leaf evaluation states (see
+ * {@link RMPLeaf#createState()}), kept from one solve of the batch to the
+ * next, so a lane behaves exactly like its own tree solved with
+ * {@link RMPRoot#solve(DMatrixRMaj, DMatrixRMaj, DMatrixRMaj)} once per
+ * solve of the batch. In particular the error integral of
+ * {@link com.titanrobotics2022.motion.generation.rmpflow.rmps.PathFollowing}
+ * is integrated separately for each lane, and lanes do not depend on each
+ * other or on how many workers solve them.
+ * <p>
+ * The batch may be split across the workers of a pool. Each worker has its
+ * own plan, for its workspaces and metric solver, but the nodes are shared, as
+ * with an {@link RMPEvaluationContext}.
+ * <p>
+ * Like a plan, a batch is a snapshot of the tree's structure when it was
+ * created.
+ */
+public class RMPBatch {
+	private final RMPRoot root;
+	private final int dim;
+	private final RMPFlowPlan[] plans; // One plan per worker
+	private final Lane[] lanes; // One set of lane workspaces per worker
+	private final ForkJoinPool pool; // Pool to split the batch across, null when serial
+	private final BatchReduction reduction;
+	private final RMPLeaf[] kernels; // Leaves evaluated for all lanes at once, in plan order, or null
+	private Object[][] states = new Object[0][]; // Leaf evaluation states of each lane
+	private double[] f = new double[0], m = new double[0]; // Packed root forces and metrics of batched lanes
+
+	/**
+	 * Creates a batch that solves every lane on the calling thread.
+	 *
+	 * @param root The root of the tree to solve
+	 * @param dim  The dimension of the root state
+	 */
+	public RMPBatch(RMPRoot root, int dim) {
+		this(root, dim, null);
+	}
+
+	/**
+	 * Creates a batch that splits its lanes across the workers of a pool.
+	 *
+	 * @param root The root of the tree to solve
+	 * @param dim  The dimension of the root state
+	 * @param pool The pool to solve on, or null to solve on the calling thread
+	 */
+	public RMPBatch(RMPRoot root, int dim, ForkJoinPool pool) {
+		if (dim < 1)
+			throw new IllegalArgumentException("Dimension must be positive.");
+		this.root = root;
+		this.dim = dim;
+		this.pool = pool;
+		int workers = pool == null ? 1 : pool.getParallelism();
+		plans = new RMPFlowPlan[workers];
+		lanes = new Lane[workers];
+		for (int w = 0; w < workers; w++) {
+			plans[w] = root.compile();
+			lanes[w] = new Lane(w);
+		}
+		kernels = batchKernels(plans[0], dim);
+		reduction = pool == null ? null : new BatchReduction();
+	}
+
+	/**
+	 * Returns the leaves of a plan in plan order if they can all be evaluated
+	 * with their batch kernels, or null.
+	 */
+	private static RMPLeaf[] batchKernels(RMPFlowPlan plan, int dim) {
+		ArrayList<RMPLeaf> kernels = new ArrayList<RMPLeaf>();
+		for (int i = 1; i < plan.size(); i++) {
+			RMPNode node = plan.getNode(i);
+			if (plan.getParentIndex(i) != 0 || !(node instanceof RMPLeaf) || !((RMPLeaf) node).hasBatchKernel(dim))
+				return null;
+			if (node.getName() != null) // Unnamed nodes are not pulled back, as in the plan
+				kernels.add((RMPLeaf) node);
+		}
+		return kernels.toArray(new RMPLeaf[kernels.size()]);
+	}
+
+	/**
+	 * Solves every lane of the batch.
+	 *
+	 * @param x     The packed states, at least dim * k long
+	 * @param x_dot The packed differentiated states, at least dim * k long
+	 * @param k     The number of lanes
+	 * @param a     The packed accelerations to write, at least dim * k long
+	 */
+	public void solve(double[] x, double[] x_dot, int k, double[] a) {
+		int length = dim * k;
+		if (k < 0 || x.length < length || x_dot.length < length || a.length < length)
+			throw new IllegalArgumentException("Batch arrays are too short for " + k + " lanes.");
+		if (kernels != null) {
+			if (dim * k > f.length) {
+				f = new double[dim * k];
+				m = new double[dim * dim * k];
+			}
+		} else if (k > states.length) {
+			int lane = states.length;
+			states = Arrays.copyOf(states, k);
+			for (; lane < k; lane++)
+				states[lane] = plans[0].createStates();
+		}
+		long epoch = root.enter();
+		try {
+			if (pool == null || k < 2)
+				lanes[0].solve(x, x_dot, a, k, 0, k);
+			else
+				pool.invoke(reduction.reset(x, x_dot, a, k));
+		} finally {
+			root.leave(epoch);
+		}
+	}
+
+	/**
+	 * Solves every lane of the batch into a newly allocated array.
+	 *
+	 * @param x     The packed states, dim * k long
+	 * @param x_dot The packed differentiated states, dim * k long
+	 * @return The packed accelerations
+	 */
+	public double[] solve(double[] x, double[] x_dot) {
+		if (x.length % dim != 0 || x.length != x_dot.length)
+			throw new IllegalArgumentException("Batch arrays must hold the same whole number of states.");
+		double[] a = new double[x.length];
+		solve(x, x_dot, x.length / dim, a);
+		return a;
+	}
+
+	/**
+	 * Discards the leaf evaluation states of every lane, so each lane starts
+	 * over as if its tree had just been created.
+	 */
+	public void resetStates() {
+		states = new Object[0][];
+	}
+
+	/**
+	 * Sets how a = M†f is resolved in every worker's plan. Metric solvers may
+	 * keep workspaces and counters, so each plan gets its own.
+	 *
+	 * @param factory Creates a metric solver for each plan
+	 */
+	public void setMetricSolver(Supplier<MetricSolver> factory) {
+		for (int w = 0; w < plans.length; w++)
+			plans[w].setMetricSolver(factory.get());
+	}
+
+	/**
+	 * Returns the dimension of the root state.
+	 *
+	 * @return The dimension of the root state
+	 */
+	public int getDimension() {
+		return dim;
+	}
+
+	/**
+	 * Returns whether the lanes are evaluated with the leaves' batch kernels
+	 * rather than one at a time.
+	 *
+	 * @return Whether the batch uses batch kernels
+	 */
+	boolean isBatched() {
+		return kernels != null;
+	}
+
+	/**
+	 * Returns the number of workers the batch is split across.
+	 *
+	 * @return The number of workers, 1 when serial
+	 */
+	public int getWorkers() {
+		return plans.length;
+	}
+
+	/**
+	 * Solves a range of lanes with one worker's plan, batched or one at a time.
+	 */
+	private class Lane {
+		private final RMPFlowPlan plan;
+		private final DMatrixRMaj x = new DMatrixRMaj(dim, 1), x_dot = new DMatrixRMaj(dim, 1),
+				a = new DMatrixRMaj(dim, 1), rootF = new DMatrixRMaj(dim, 1), rootM = new DMatrixRMaj(dim, dim);
+
+		private Lane(int worker) {
+			plan = plans[worker];
+		}
+
+		private void solve(double[] xs, double[] x_dots, double[] as, int k, int from, int to) {
+			if (kernels != null) {
+				solveBatched(xs, x_dots, as, k, from, to);
+				return;
+			}
+			for (int lane = from; lane < to; lane++) {
+				for (int i = 0, j = lane; i < dim; i++, j += k) {
+					x.data[i] = xs[j];
+					x_dot.data[i] = x_dots[j];
+				}
+				plan.solve(x, x_dot, a, states[lane]);
+				for (int i = 0, j = lane; i < dim; i++, j += k)
+					as[j] = a.data[i];
+			}
+		}
+
+		/**
+		 * Runs every leaf's batch kernel over the range, in the order the plan
+		 * pulls the leaves back, then resolves each lane's root force and metric.
+		 */
+		private void solveBatched(double[] xs, double[] x_dots, double[] as, int k, int from, int to) {
+			for (int i = 0; i < dim; i++)
+				Arrays.fill(f, i * k + from, i * k + to, 0);
+			for (int e = 0; e < dim * dim; e++)
+				Arrays.fill(m, e * k + from, e * k + to, 0);
+			for (int i = kernels.length - 1; i >= 0; i--)
+				kernels[i].pullbackBatch(xs, x_dots, dim, k, from, to, f, m);
+			MetricSolver solver = plan.getMetricSolver();
+			for (int lane = from; lane < to; lane++) {
+				for (int i = 0, j = lane; i < dim; i++, j += k)
+					rootF.data[i] = f[j];
+				for (int e = 0, j = lane; e < dim * dim; e++, j += k)
+					rootM.data[e] = m[j];
+				solver.solve(rootM, rootF, a);
+				for (int i = 0, j = lane; i < dim; i++, j += k)
+					as[j] = a.data[i];
+			}
+		}
+	}
+
+	/**
+	 * Forks one chunk of lanes per worker.
+	 */
+	private class BatchReduction extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private final BatchChunk[] chunks = new BatchChunk[plans.length];
+		private int count;
+
+		private BatchReduction() {
+			for (int w = 0; w < chunks.length; w++)
+				chunks[w] = new BatchChunk(lanes[w]);
+		}
+
+		private BatchReduction reset(double[] x, double[] x_dot, double[] a, int k) {
+			reinitialize();
+			count = Math.min(chunks.length, k);
+			for (int c = 0; c < count; c++) {
+				BatchChunk chunk = chunks[c];
+				chunk.reinitialize();
+				chunk.x = x;
+				chunk.x_dot = x_dot;
+				chunk.a = a;
+				chunk.k = k;
+				chunk.from = k * c / count;
+				chunk.to = k * (c + 1) / count;
+			}
+			return this;
+		}
+
+		@Override
+		protected void compute() {
+			for (int c = 1; c < count; c++)
+				chunks[c].fork();
+			chunks[0].invoke();
+			for (int c = 1; c < count; c++)
+				chunks[c].join();
+		}
+	}
+
+	/**
+	 * Solves a contiguous range of lanes.
+	 */
+	private static class BatchChunk extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private final Lane lane;
+		private double[] x, x_dot, a;
+		private int k, from, to;
+
+		private BatchChunk(Lane lane) {
+			this.lane = lane;
+		}
+
+		@Override
+		protected void compute() {
+			lane.solve(x, x_dot, a, k, from, to);
+		}
+	}
+}
@@ -0,0 +1,85 @@
+package com.titanrobotics2022.motion.generation.rmpflow;
+
+import org.ejml.data.DMatrix2;
+import org.ejml.data.DMatrix2x2;
+
+/**
+ * A leaf of a planar RMP tree with a 1-d task space, such as the distance to
+ * an obstacle. The task space state, force and metric are scalars, and the
+ * Jacobian and its derivative are 1x2 rows stored as {@link DMatrix2}.
+ */
+public abstract class RMPDistanceLeaf2D extends RMPLeaf2D {
+	private final DMatrix2 J = new DMatrix2(), J_dot = new DMatrix2();
+
+	/**
+	 * RMP leaf node with a 1-d task space.
+	 * 
+	 * @param name   of leaf node
+	 * @param parent of leaf node
+	 */
+	public RMPDistanceLeaf2D(String name, RMPRoot2D parent) {
+		super(name, parent);
+	}
+
+	/**
+	 * Task map from the plane to a 1-d task space.
+	 * 
+	 * @param q The configuration space
+	 * @return The task space
+	 */
+	public abstract double psi(DMatrix2 q);
+
+	/**
+	 * Jacobian of the task map psi.
+	 * 
+	 * @param q   The configuration space
+	 * @param out The 1x2 Jacobian
+	 */
+	public abstract void j(DMatrix2 q, DMatrix2 out);
+
+	/**
+	 * Derivative of the Jacobian of the task map psi.
+	 * 
+	 * @param q     The configuration space
+	 * @param q_dot The differentiated configuration space
+	 * @param out   The 1x2 derivative of the Jacobian
+	 */
+	public abstract void j_dot(DMatrix2 q, DMatrix2 q_dot, DMatrix2 out);
+
+	/**
+	 * Solves for F in the 1-d task space.
+	 * 
+	 * @param x     The task space state
+	 * @param x_dot The differentiated task space state
+	 * @return F, the force motion policy
+	 */
+	protected abstract double solveF(double x, double x_dot);
+
+	/**
+	 * Solves for M in the 1-d task space.
+	 * 
+	 * @param x     The task space state
+	 * @param x_dot The differentiated task space state
+	 * @return M, the inertia matrix
+	 */
+	protected abstract double solveM(double x, double x_dot);
+
+	@Override
+	protected void pullback(DMatrix2 q, DMatrix2 q_dot, DMatrix2 f, DMatrix2x2 m) {
+		double x = psi(q);
+		j(q, J);
+		j_dot(q, q_dot, J_dot);
+		double x_dot = J.a1 * q_dot.a1 + J.a2 * q_dot.a2;
+		double curvature = J_dot.a1 * q_dot.a1 + J_dot.a2 * q_dot.a2;
+
+		double leafM = solveM(x, x_dot);
+		double leafF = solveF(x, x_dot);
+		double correction = leafF - leafM * curvature;
+		f.a1 += J.a1 * correction;
+		f.a2 += J.a2 * correction;
+		m.a11 += leafM * J.a1 * J.a1;
+		m.a12 += leafM * J.a1 * J.a2;
+		m.a21 += leafM * J.a2 * J.a1;
+		m.a22 += leafM * J.a2 * J.a2;
+	}
+}
@@ -0,0 +1,107 @@
+package com.titanrobotics2022.motion.generation.rmpflow;
+
+import org.ejml.data.DMatrixRMaj;
+import org.ejml.simple.SimpleMatrix;
+
+/**
+ * The per-thread state needed to solve an RMP tree that is shared between
+ * threads.
+ * <p>
+ * The nodes of a tree hold its definition: task maps, goals, gains and
+ * obstacles. A context holds everything a solve writes: the state, force and
+ * metric of every node, the metric solver's workspaces, and each leaf's
+ * evaluation state (see {@link RMPLeaf#createState()}). Any number of threads
+ * can solve the same tree at once, for example prediction, planning and
+ * control, each with its own context and without locking, as long as no node
+ * changes its own fields while it is evaluated.
+ * <p>
+ * A context solves a compiled {@link RMPFlowPlan}. When nodes are linked or
+ * unlinked, the plan is recompiled at the start of the next solve, keeping the
+ * evaluation states of the leaves still in the tree. Apart from recompiling, a
+ * context does not allocate after its first solve. Solving through the root
+ * itself, with {@link RMPRoot#solve(DMatrixRMaj, DMatrixRMaj, DMatrixRMaj)},
+ * uses the state stored in the nodes, which belongs to a single thread.
+ * <p>
+ * A context itself must only be used by one thread at a time.
+ */
+public class RMPEvaluationContext {
+	private final RMPRoot root;
+	private RMPFlowPlan plan;
+	private long compiledAt; // Relink count of the root when the plan was compiled
+
+	/**
+	 * Creates a context for solving a tree.
+	 * 
+	 * @param root The root of the tree to solve
+	 */
+	public RMPEvaluationContext(RMPRoot root) {
+		this.root = root;
+		compile();
+	}
+
+	private void compile() {
+		compiledAt = root.getRelinkCount(); // Read first, so a change during compiling is seen next time
+		plan = new RMPFlowPlan(root, plan, false);
+	}
+
+	/**
+	 * Solves the tree for the desired acceleration.
+	 * 
+	 * @param x     The state
+	 * @param x_dot The differentiated state
+	 * @return A matrix representing the resolved state of the RMP tree.
+	 */
+	public SimpleMatrix solve(SimpleMatrix x, SimpleMatrix x_dot) {
+		DMatrixRMaj a = new DMatrixRMaj(x.getNumElements(), 1);
+		solve(x.getDDRM(), x_dot.getDDRM(), a);
+		return SimpleMatrix.wrap(a);
+	}
+
+	/**
+	 * Solves the tree for the desired acceleration into a caller-provided
+	 * matrix.
+	 * 
+	 * @param x     The state
+	 * @param x_dot The differentiated state
+	 * @param a     The resolved acceleration, reshaped as needed
+	 */
+	public void solve(DMatrixRMaj x, DMatrixRMaj x_dot, DMatrixRMaj a) {
+		long epoch = root.enter(); // Before compiling, which reads the tree
+		try {
+			if (root.getRelinkCount() != compiledAt)
+				compile();
+			plan.solve(x, x_dot, a, plan.getStates());
+		} finally {
+			root.leave(epoch);
+		}
+	}
+
+	/**
+	 * Sets how a = M†f is resolved in this context. Defaults to a
+	 * {@link PseudoInverseMetricSolver}.
+	 * 
+	 * @param solver The metric solver, which must not be shared with another
+	 *               context
+	 */
+	public void setMetricSolver(MetricSolver solver) {
+		plan.setMetricSolver(solver);
+	}
+
+	/**
+	 * Returns how a = M†f is resolved in this context.
+	 * 
+	 * @return The metric solver
+	 */
+	public MetricSolver getMetricSolver() {
+		return plan.getMetricSolver();
+	}
+
+	/**
+	 * Returns the root of the tree this context solves.
+	 * 
+	 * @return The root of the tree
+	 */
+	public RMPRoot getRoot() {
+		return root;
+	}
+}
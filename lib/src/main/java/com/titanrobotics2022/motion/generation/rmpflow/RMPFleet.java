@@ -0,0 +1,308 @@
+package com.titanrobotics2022.motion.generation.rmpflow;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import com.titanrobotics2022.mapping.SpatialHashGrid;
+import com.titanrobotics2022.motion.generation.rmpflow.rmps.CollisionAvoidanceField;
+
+import org.ejml.data.DMatrixRMaj;
+
+/**
+ * A team of planar robots, each with its own RMP tree, that avoid each other.
+ * Implementation of Section 3.1 Pairwise Collision Avoidance from
+ * <a href="https://arxiv.org/abs/1902.05177">Multi-Objective Policy Generation
+ * for Multi-Robot Systems Using Riemannian Motion Policies</a>, with the pairs
+ * limited to a neighbor list.
+ * <p>
+ * Every robot gets a {@link CollisionAvoidanceField} leaf under its root. Each
+ * tick, the robots' positions are put in a {@link SpatialHashGrid}, and each
+ * robot's field is refilled with the robots within the neighbor radius, so a
+ * tick costs O(N * k) for k neighbors per robot instead of creating a leaf for
+ * every one of the N² pairs. Neighbors are treated as obstacles at their
+ * current positions, moving at their current velocities, whose radius is the
+ * sum of the two robots' radii. As in the paper's pairwise avoidance, each
+ * robot's barrier and damping then act on the relative position and velocity
+ * of the pair, so two robots closing on each other see their combined speed.
+ * Both robots of a pair avoid each other, so each asks for half of the
+ * relative acceleration; if each asked for all of it, the pair would swerve
+ * twice as hard as its policy intends.
+ * <p>
+ * The robots' trees are then solved, in parallel when a pool is given. Trees
+ * are solved concurrently, so a node must not be shared between robots.
+ */
+public class RMPFleet {
+	private final double neighborRadius;
+	private final double epsilon, alpha, eta; // see CollisionAvoidance
+	private final SpatialHashGrid grid;
+	private final ArrayList<CollisionAvoidanceField> fields = new ArrayList<CollisionAvoidanceField>();
+	private final ArrayList<Robot> robots = new ArrayList<Robot>();
+	private double[] radii = new double[0];
+	private int[] neighbors = new int[0]; // scratch for grid queries
+	private final double[] center = new double[2], velocity = new double[2];
+	private final ForkJoinPool pool; // Pool to solve on, null when serial
+	private final SolveReduction reduction;
+	private int neighborCount; // total neighbors found by the last tick
+
+	/**
+	 * Creates an empty fleet.
+	 *
+	 * @param neighborRadius The distance between robot centers within which
+	 *                       robots avoid each other
+	 * @param epsilon        A small positive scalar for avoidance metric
+	 * @param alpha          The positive potenial function scalar
+	 * @param eta            The positive damping matrix scalar
+	 * @param pool           The pool to solve the robots on, or null to solve on
+	 *                       the calling thread
+	 */
+	public RMPFleet(double neighborRadius, double epsilon, double alpha, double eta, ForkJoinPool pool) {
+		if (!(neighborRadius > 0))
+			throw new IllegalArgumentException("Neighbor radius must be positive.");
+		this.neighborRadius = neighborRadius;
+		this.epsilon = epsilon;
+		this.alpha = alpha;
+		this.eta = eta;
+		this.grid = new SpatialHashGrid(neighborRadius, 16);
+		this.pool = pool;
+		this.reduction = pool == null ? null : new SolveReduction(pool.getParallelism());
+	}
+
+	/**
+	 * Adds a robot to the fleet. A collision avoidance field for the other
+	 * robots is linked under its root.
+	 *
+	 * @param root   The root of the robot's tree, over a planar state
+	 * @param radius The radius of the robot
+	 * @param x      The robot's position
+	 * @param y      The robot's position
+	 * @return The index of the robot
+	 */
+	public int addRobot(RMPRoot root, double radius, double x, double y) {
+		int i = robots.size();
+		fields.add(new CollisionAvoidanceField("robots", root, 2, 8));
+		robots.add(new Robot(root));
+		if (i >= radii.length)
+			radii = Arrays.copyOf(radii, Math.max(2 * radii.length, 8));
+		radii[i] = radius;
+		setState(i, x, y, 0, 0);
+		return i;
+	}
+
+	/**
+	 * Sets the state of a robot.
+	 *
+	 * @param i     The index of the robot
+	 * @param x     The robot's position
+	 * @param y     The robot's position
+	 * @param x_dot The robot's velocity
+	 * @param y_dot The robot's velocity
+	 */
+	public void setState(int i, double x, double y, double x_dot, double y_dot) {
+		Robot robot = robots.get(i);
+		robot.x.data[0] = x;
+		robot.x.data[1] = y;
+		robot.x_dot.data[0] = x_dot;
+		robot.x_dot.data[1] = y_dot;
+		grid.insert(i, x, y);
+	}
+
+	/**
+	 * Refreshes every robot's neighbors and solves every robot's tree. Read the
+	 * results with {@link #getAcceleration(int, int)}.
+	 */
+	public void tick() {
+		refreshNeighbors();
+		int n = robots.size();
+		if (pool == null || n < 2) {
+			solve(0, n);
+			return;
+		}
+		pool.invoke(reduction.reset(n));
+	}
+
+	/**
+	 * Ticks the fleet and then integrates every robot's state with a
+	 * semi-implicit Euler step.
+	 *
+	 * @param dt The time step
+	 */
+	public void step(double dt) {
+		tick();
+		for (int i = 0; i < robots.size(); i++) {
+			Robot robot = robots.get(i);
+			for (int k = 0; k < 2; k++) {
+				robot.x_dot.data[k] += robot.a.data[k] * dt;
+				robot.x.data[k] += robot.x_dot.data[k] * dt;
+			}
+			grid.move(i, robot.x.data[0], robot.x.data[1]);
+		}
+	}
+
+	private void refreshNeighbors() {
+		int n = robots.size();
+		if (neighbors.length < n)
+			neighbors = new int[Math.max(n, 2 * neighbors.length)];
+		neighborCount = 0;
+		for (int i = 0; i < n; i++) {
+			Robot robot = robots.get(i);
+			CollisionAvoidanceField field = fields.get(i);
+			field.clear();
+			int found = grid.query(robot.x.data[0], robot.x.data[1], neighborRadius, neighbors);
+			for (int k = 0; k < found; k++) {
+				int j = neighbors[k];
+				if (j == i)
+					continue;
+				Robot other = robots.get(j);
+				center[0] = other.x.data[0];
+				center[1] = other.x.data[1];
+				velocity[0] = other.x_dot.data[0];
+				velocity[1] = other.x_dot.data[1];
+				field.addObstacle(center, velocity, 0.5, radii[i] + radii[j], epsilon, alpha, eta);
+			}
+			neighborCount += field.size();
+		}
+	}
+
+	private void solve(int from, int to) {
+		for (int i = from; i < to; i++) {
+			Robot robot = robots.get(i);
+			robot.root.solve(robot.x, robot.x_dot, robot.a);
+		}
+	}
+
+	/**
+	 * Forks one chunk of robots per worker.
+	 */
+	private class SolveReduction extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private final SolveChunk[] chunks;
+		private int count;
+
+		private SolveReduction(int workers) {
+			chunks = new SolveChunk[workers];
+			for (int c = 0; c < workers; c++)
+				chunks[c] = new SolveChunk();
+		}
+
+		private SolveReduction reset(int n) {
+			reinitialize();
+			count = Math.min(chunks.length, n);
+			for (int c = 0; c < count; c++) {
+				chunks[c].reinitialize();
+				chunks[c].from = n * c / count;
+				chunks[c].to = n * (c + 1) / count;
+			}
+			return this;
+		}
+
+		@Override
+		protected void compute() {
+			for (int c = 1; c < count; c++)
+				chunks[c].fork();
+			chunks[0].invoke();
+			for (int c = 1; c < count; c++)
+				chunks[c].join();
+		}
+	}
+
+	/**
+	 * Solves a contiguous range of robots.
+	 */
+	private class SolveChunk extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private int from, to;
+
+		@Override
+		protected void compute() {
+			solve(from, to);
+		}
+	}
+
+	/**
+	 * The state and solve workspaces of one robot.
+	 */
+	private static class Robot {
+		private final RMPRoot root;
+		private final DMatrixRMaj x = new DMatrixRMaj(2, 1), x_dot = new DMatrixRMaj(2, 1),
+				a = new DMatrixRMaj(2, 1);
+
+		private Robot(RMPRoot root) {
+			this.root = root;
+		}
+	}
+
+	/**
+	 * Returns the number of robots in the fleet.
+	 *
+	 * @return The number of robots
+	 */
+	public int size() {
+		return robots.size();
+	}
+
+	/**
+	 * Returns a robot's tree.
+	 *
+	 * @param i The index of the robot
+	 * @return The root of the robot's tree
+	 */
+	public RMPRoot getRoot(int i) {
+		return robots.get(i).root;
+	}
+
+	/**
+	 * Returns the field a robot avoids its neighbors with. It is refilled every
+	 * tick.
+	 *
+	 * @param i The index of the robot
+	 * @return The robot's collision avoidance field
+	 */
+	public CollisionAvoidanceField getField(int i) {
+		return fields.get(i);
+	}
+
+	/**
+	 * Returns a component of a robot's position.
+	 *
+	 * @param i The index of the robot
+	 * @param k 0 for x, 1 for y
+	 * @return The component of the position
+	 */
+	public double getPosition(int i, int k) {
+		return robots.get(i).x.data[k];
+	}
+
+	/**
+	 * Returns a component of a robot's velocity.
+	 *
+	 * @param i The index of the robot
+	 * @param k 0 for x, 1 for y
+	 * @return The component of the velocity
+	 */
+	public double getVelocity(int i, int k) {
+		return robots.get(i).x_dot.data[k];
+	}
+
+	/**
+	 * Returns a component of a robot's acceleration from the last tick.
+	 *
+	 * @param i The index of the robot
+	 * @param k 0 for x, 1 for y
+	 * @return The component of the acceleration
+	 */
+	public double getAcceleration(int i, int k) {
+		return robots.get(i).a.data[k];
+	}
+
+	/**
+	 * Returns the number of neighbor pairs found by the last tick, counting each
+	 * pair once per robot.
+	 *
+	 * @return The number of neighbors
+	 */
+	public int getNeighborCount() {
+		return neighborCount;
+	}
+}
@@ -0,0 +1,287 @@
+package com.titanrobotics2022.motion.generation.rmpflow;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+
+import org.ejml.data.DMatrixRMaj;
+import org.ejml.dense.row.CommonOps_DDRM;
+import org.ejml.simple.SimpleMatrix;
+
+/**
+ * A flattened, non-recursive evaluator for an RMP tree.
+ * <p>
+ * The nodes of the tree are stored in arrays in depth-first order, so every
+ * parent precedes its children. Pushforward is then a forward loop over the
+ * arrays and pullback is a reverse loop, as in
+ * <a href="https://arxiv.org/abs/1811.07049">RMPFlow Section 3.5</a>, without
+ * virtual recursion through {@link RMPNode#pushforward()} and
+ * {@link RMPNode#pullback()}.
+ * <p>
+ * The plan owns its own workspaces and its own leaf evaluation states, so
+ * solving a plan does not touch the state stored in the tree's nodes.
+ * <p>
+ * Each node gets its own workspace matrices rather than a slice of one flat
+ * array. A node does not declare its dimension, which is only known once its
+ * task map has run, and a {@link DMatrixRMaj} cannot view part of a shared
+ * array. The matrices are sized on the first solve and reused after that, so
+ * later solves do not allocate.
+ */
+public class RMPFlowPlan {
+	private final RMPRoot root;
+	private final RMPNode[] nodes; // Nodes in depth-first order, root first
+	private final int[] parents; // Index of each node's parent, -1 for the root
+	private final boolean[] leaves; // Whether each node is an RMPLeaf
+	private final boolean[] pulled; // Whether each node contributes to its parent
+	private final DMatrixRMaj[] x, x_dot, f, m, J, J_dot;
+	private final Object[] states; // Evaluation state of each leaf, see RMPLeaf.createState()
+	private final DMatrixRMaj curvature = new DMatrixRMaj(1, 1), correction = new DMatrixRMaj(1, 1),
+			mJ = new DMatrixRMaj(1, 1);
+	private MetricSolver solver = new PseudoInverseMetricSolver();
+
+	/**
+	 * Compiles an RMP tree into a flat plan.
+	 * 
+	 * @param root The root of the tree to compile
+	 */
+	public RMPFlowPlan(RMPRoot root) {
+		this(root, null, true);
+	}
+
+	/**
+	 * Compiles an RMP tree into a flat plan, keeping the metric solver of an
+	 * earlier plan and its leaf evaluation states for the leaves that are still
+	 * in the tree.
+	 * 
+	 * @param root     The root of the tree to compile
+	 * @param previous An earlier plan of the same tree, or null
+	 * @param keeps    Whether the plan may be solved after nodes are unlinked,
+	 *                 rather than recompiled like a context's plan
+	 */
+	RMPFlowPlan(RMPRoot root, RMPFlowPlan previous, boolean keeps) {
+		ArrayList<RMPNode> order = new ArrayList<RMPNode>();
+		ArrayList<Integer> parentOrder = new ArrayList<Integer>();
+		this.root = root;
+		if (keeps)
+			root.markCompiled(); // Before reading the children, see RMPRoot.markCompiled()
+		flatten(root, -1, order, parentOrder);
+
+		int n = order.size();
+		nodes = order.toArray(new RMPNode[n]);
+		parents = new int[n];
+		leaves = new boolean[n];
+		pulled = new boolean[n];
+		x = workspaces(n);
+		x_dot = workspaces(n);
+		f = workspaces(n);
+		m = workspaces(n);
+		J = workspaces(n);
+		J_dot = workspaces(n);
+		states = new Object[n];
+		for (int i = 0; i < n; i++) {
+			parents[i] = parentOrder.get(i);
+			leaves[i] = nodes[i] instanceof RMPLeaf;
+			pulled[i] = nodes[i].getName() != null;
+		}
+
+		IdentityHashMap<RMPNode, Object> kept = new IdentityHashMap<RMPNode, Object>();
+		if (previous != null) {
+			solver = previous.solver;
+			for (int i = 0; i < previous.nodes.length; i++)
+				if (previous.leaves[i])
+					kept.put(previous.nodes[i], previous.states[i]);
+		}
+		for (int i = 0; i < n; i++)
+			if (leaves[i])
+				states[i] = kept.containsKey(nodes[i]) ? kept.get(nodes[i]) : ((RMPLeaf) nodes[i]).createState();
+	}
+
+	private static void flatten(RMPNode node, int parent, ArrayList<RMPNode> order, ArrayList<Integer> parents) {
+		int index = order.size();
+		order.add(node);
+		parents.add(parent);
+		// Siblings are flattened last to first, so that the reverse pullback loop
+		// accumulates them in the same order as RMPNode.pullback() does and the
+		// plan's floating point results match the tree's exactly
+		List<RMPNode> children = node.getChildren();
+		for (int i = children.size() - 1; i >= 0; i--)
+			flatten(children.get(i), index, order, parents);
+	}
+
+	private static DMatrixRMaj[] workspaces(int n) {
+		DMatrixRMaj[] workspaces = new DMatrixRMaj[n];
+		for (int i = 0; i < n; i++)
+			workspaces[i] = new DMatrixRMaj(1, 1);
+		return workspaces;
+	}
+
+	/**
+	 * Solves the plan for the desired acceleration.
+	 * 
+	 * @param x     The state
+	 * @param x_dot The differentiated state
+	 * @return A matrix representing the resolved state of the RMP tree.
+	 */
+	public SimpleMatrix solve(SimpleMatrix x, SimpleMatrix x_dot) {
+		DMatrixRMaj a = new DMatrixRMaj(x.getNumElements(), 1);
+		solve(x.getDDRM(), x_dot.getDDRM(), a);
+		return SimpleMatrix.wrap(a);
+	}
+
+	/**
+	 * Solves the plan for the desired acceleration into a caller-provided
+	 * matrix. Produces exactly the same result as {@link RMPRoot#solve(DMatrixRMaj,
+	 * DMatrixRMaj, DMatrixRMaj)} on the compiled tree.
+	 * 
+	 * @param x     The state
+	 * @param x_dot The differentiated state
+	 * @param a     The resolved acceleration, reshaped as needed
+	 */
+	public void solve(DMatrixRMaj x, DMatrixRMaj x_dot, DMatrixRMaj a) {
+		long epoch = root.enter();
+		try {
+			solve(x, x_dot, a, states);
+		} finally {
+			root.leave(epoch);
+		}
+	}
+
+	/**
+	 * Solves the plan with the given leaf evaluation states, such as the plan's
+	 * own or those of one lane of an {@link RMPBatch}. The caller must have
+	 * entered an evaluation epoch of the root with {@link RMPRoot#enter()}.
+	 * 
+	 * @param x      The state
+	 * @param x_dot  The differentiated state
+	 * @param a      The resolved acceleration, reshaped as needed
+	 * @param states The evaluation state of each node, from
+	 *               {@link #createStates()}
+	 */
+	void solve(DMatrixRMaj x, DMatrixRMaj x_dot, DMatrixRMaj a, Object[] states) {
+		RMPRoot.setColumn(x, this.x[0]);
+		RMPRoot.setColumn(x_dot, this.x_dot[0]);
+		pushforward(states);
+		pullback(states);
+		solver.solve(m[0], f[0], a);
+	}
+
+	/**
+	 * Returns the plan's own leaf evaluation states.
+	 * 
+	 * @return The evaluation state of each node, null for nodes without one
+	 */
+	Object[] getStates() {
+		return states;
+	}
+
+	/**
+	 * Creates a new evaluation state for every leaf of the plan.
+	 * 
+	 * @return The evaluation state of each node, null for nodes without one
+	 */
+	Object[] createStates() {
+		Object[] states = new Object[nodes.length];
+		for (int i = 0; i < nodes.length; i++)
+			if (leaves[i])
+				states[i] = ((RMPLeaf) nodes[i]).createState();
+		return states;
+	}
+
+	/**
+	 * Propagates the state from the root to every node, parents first. Also
+	 * clears the force and metric of every non-leaf node for the pullback.
+	 */
+	private void pushforward(Object[] states) {
+		clear(0);
+		for (int i = 1; i < nodes.length; i++) {
+			int p = parents[i];
+			if (leaves[i])
+				((RMPLeaf) nodes[i]).taskMap(x[p], x_dot[p], x[i], J[i], J_dot[i], states[i]);
+			else
+				nodes[i].taskMap(x[p], x_dot[p], x[i], J[i], J_dot[i]);
+			CommonOps_DDRM.mult(J[i], x_dot[p], x_dot[i]);
+			if (!leaves[i])
+				clear(i);
+		}
+	}
+
+	/**
+	 * Evaluates the leaves and accumulates every node into its parent,
+	 * children first. The Jacobians computed during the pushforward are reused,
+	 * since they are evaluated at the same parent state.
+	 */
+	private void pullback(Object[] states) {
+		for (int i = nodes.length - 1; i > 0; i--) {
+			if (leaves[i])
+				((RMPLeaf) nodes[i]).evaluate(x[i], x_dot[i], f[i], m[i], states[i]);
+			if (!pulled[i])
+				continue;
+			int p = parents[i];
+
+			// f += JT * (f - (m * J_dot * x_dot)) Equation 1 in RMPFlow Computational Graph
+			CommonOps_DDRM.mult(J_dot[i], x_dot[p], curvature);
+			CommonOps_DDRM.mult(m[i], curvature, correction);
+			CommonOps_DDRM.subtract(f[i], correction, correction);
+			CommonOps_DDRM.multAddTransA(J[i], correction, f[p]);
+			// JT * M * J Equation 1 in RMPFlow Computational Graph
+			CommonOps_DDRM.mult(m[i], J[i], mJ);
+			CommonOps_DDRM.multAddTransA(J[i], mJ, m[p]);
+		}
+	}
+
+	private void clear(int i) {
+		int n = x[i].getNumElements();
+		f[i].reshape(n, 1);
+		f[i].zero();
+		m[i].reshape(n, n);
+		m[i].zero();
+	}
+
+	/**
+	 * Sets how a = M†f is resolved. Defaults to a
+	 * {@link PseudoInverseMetricSolver}.
+	 * 
+	 * @param solver The metric solver
+	 */
+	public void setMetricSolver(MetricSolver solver) {
+		this.solver = solver;
+	}
+
+	/**
+	 * Returns how a = M†f is resolved.
+	 * 
+	 * @return The metric solver
+	 */
+	public MetricSolver getMetricSolver() {
+		return solver;
+	}
+
+	/**
+	 * Returns the number of nodes in the plan, including the root.
+	 * 
+	 * @return The number of nodes
+	 */
+	public int size() {
+		return nodes.length;
+	}
+
+	/**
+	 * Returns a node of the plan.
+	 * 
+	 * @param i The index of the node in depth-first order, where 0 is the root
+	 * @return The node
+	 */
+	public RMPNode getNode(int i) {
+		return nodes[i];
+	}
+
+	/**
+	 * Returns the index of a node's parent.
+	 * 
+	 * @param i The index of the node in depth-first order
+	 * @return The index of the parent, or -1 for the root
+	 */
+	public int getParentIndex(int i) {
+		return parents[i];
+	}
+}
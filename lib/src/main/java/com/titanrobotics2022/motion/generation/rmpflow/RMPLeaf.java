@@ -1,5 +1,6 @@
 package com.titanrobotics2022.motion.generation.rmpflow;
 
+import org.ejml.data.DMatrixRMaj;
 import org.ejml.simple.SimpleMatrix;
 
 /**
@@ -8,6 +9,9 @@ import org.ejml.simple.SimpleMatrix;
  * <a href="https://arxiv.org/abs/1811.07049">RMPFlow Section 3.5</a>.
  */
 public abstract class RMPLeaf extends RMPNode {
+	private Object state; // This leaf's own evaluation state
+	private boolean stateCreated;
+
 	/**
 	 * RMP leaf node containing an RMP.
 	 * 
@@ -27,8 +31,134 @@ public abstract class RMPLeaf extends RMPNode {
 	 * Solves for the M and F of the RMP.
 	 */
 	public final void evaluate() {
-		setM(solveM(getX(), getXdot()));
-		setF(solveF(getX(), getXdot()));
+		RMPNodeProfile profile = getProfile();
+		if (profile == null) {
+			evaluate(getX().getDDRM(), getXdot().getDDRM(), getF().getDDRM(), getM().getDDRM(), getState());
+			return;
+		}
+		long start = System.nanoTime();
+		evaluate(getX().getDDRM(), getXdot().getDDRM(), getF().getDDRM(), getM().getDDRM(), getState());
+		profile.getEvaluate().record(System.nanoTime() - start);
+	}
+
+	/**
+	 * Solves for the M and F of the RMP with an evaluation state created by
+	 * {@link #createState()}. Override this instead of
+	 * {@link #evaluate(DMatrixRMaj, DMatrixRMaj, DMatrixRMaj, DMatrixRMaj)} when
+	 * the leaf has evaluation state. The default ignores the state.
+	 * 
+	 * @param x     The RMPLeaf state in task space
+	 * @param x_dot The RMPLeaf differentiated state in task space
+	 * @param f     The force motion policy, reshaped as needed
+	 * @param m     The inertia matrix, reshaped as needed
+	 * @param state The evaluation state of the context evaluating the leaf
+	 */
+	protected void evaluate(DMatrixRMaj x, DMatrixRMaj x_dot, DMatrixRMaj f, DMatrixRMaj m, Object state) {
+		evaluate(x, x_dot, f, m);
+	}
+
+	/**
+	 * Evaluates the task map, its Jacobian and the Jacobian's derivative with an
+	 * evaluation state created by {@link #createState()}, which is how plans and
+	 * evaluation contexts map a leaf. Override this instead of
+	 * {@link #taskMap(DMatrixRMaj, DMatrixRMaj, DMatrixRMaj, DMatrixRMaj, DMatrixRMaj)}
+	 * when the task map needs the state, such as a workspace. The default
+	 * ignores the state.
+	 * 
+	 * @param q     The configuration space
+	 * @param q_dot The differentiated configuration space
+	 * @param x     The task space, reshaped as needed
+	 * @param J     The Jacobian, reshaped as needed
+	 * @param J_dot The derivative of the Jacobian, reshaped as needed
+	 * @param state The evaluation state of the context evaluating the leaf
+	 */
+	protected void taskMap(DMatrixRMaj q, DMatrixRMaj q_dot, DMatrixRMaj x, DMatrixRMaj J, DMatrixRMaj J_dot,
+			Object state) {
+		taskMap(q, q_dot, x, J, J_dot);
+	}
+
+	/**
+	 * Creates the mutable state the leaf needs while it is evaluated, such as an
+	 * error integral or scratch arrays. The leaf and every
+	 * {@link RMPEvaluationContext} get their own, so a leaf that keeps all of its
+	 * other fields unchanged while it is evaluated can be evaluated from several
+	 * threads at once.
+	 * 
+	 * @return A new evaluation state, or null if the leaf has none
+	 */
+	protected Object createState() {
+		return null;
+	}
+
+	/**
+	 * Returns the leaf's own evaluation state, used when the leaf is solved
+	 * through its tree rather than an {@link RMPEvaluationContext}.
+	 * 
+	 * @return The leaf's evaluation state, or null if it has none
+	 */
+	protected final Object getState() {
+		if (!stateCreated) {
+			state = createState();
+			stateCreated = true;
+		}
+		return state;
+	}
+
+	@Override
+	public void resetStates() {
+		state = null;
+		stateCreated = false;
+	}
+
+	/**
+	 * Returns whether the leaf can be evaluated for all the lanes of an
+	 * {@link RMPBatch} at once by
+	 * {@link #pullbackBatch(double[], double[], int, int, int, int, double[], double[])},
+	 * as a child of the root of a tree with the given dimension. The default
+	 * returns false, and the batch then solves its lanes one at a time.
+	 * 
+	 * @param dim The dimension of the root state
+	 * @return Whether the leaf has a batch kernel
+	 */
+	protected boolean hasBatchKernel(int dim) {
+		return false;
+	}
+
+	/**
+	 * Evaluates the leaf for a range of lanes of an {@link RMPBatch} and adds
+	 * each lane's pulled back force and metric to the root's, with the same
+	 * floating point operations as a plan's pushforward and pullback. Arrays
+	 * are packed structure-of-arrays: component i of lane l is at i * k + l,
+	 * and entry (r, c) of a metric at (r * dim + c) * k + l, so every loop over
+	 * the lanes runs over contiguous values.
+	 * 
+	 * @param q     The root states
+	 * @param q_dot The differentiated root states
+	 * @param dim   The dimension of the root state
+	 * @param k     The number of lanes
+	 * @param from  The first lane to evaluate
+	 * @param to    One past the last lane to evaluate
+	 * @param f     The root forces to add to
+	 * @param m     The root metrics to add to
+	 */
+	protected void pullbackBatch(double[] q, double[] q_dot, int dim, int k, int from, int to, double[] f,
+			double[] m) {
+		throw new UnsupportedOperationException(getClass().getSimpleName() + " has no batch kernel.");
+	}
+
+	/**
+	 * Solves for the M and F of the RMP into caller-provided matrices.
+	 * Override this when M and F share intermediate values, so they can be
+	 * computed in a single pass.
+	 * 
+	 * @param x     The RMPLeaf state in task space
+	 * @param x_dot The RMPLeaf differentiated state in task space
+	 * @param f     The force motion policy, reshaped as needed
+	 * @param m     The inertia matrix, reshaped as needed
+	 */
+	protected void evaluate(DMatrixRMaj x, DMatrixRMaj x_dot, DMatrixRMaj f, DMatrixRMaj m) {
+		solveM(x, x_dot, m);
+		solveF(x, x_dot, f);
 	}
 
 	/**
@@ -51,4 +181,30 @@ public abstract class RMPLeaf extends RMPNode {
 	 * @return M, the inertia matrix
 	 */
 	protected abstract SimpleMatrix solveM(SimpleMatrix x, SimpleMatrix x_dot);
+
+	/**
+	 * Solves for F into a caller-provided matrix. Override this to make the
+	 * leaf allocation-free; the default delegates to
+	 * {@link #solveF(SimpleMatrix, SimpleMatrix)}.
+	 * 
+	 * @param x     The RMPLeaf state in task space
+	 * @param x_dot The RMPLeaf differentiated state in task space
+	 * @param f     The force motion policy, reshaped as needed
+	 */
+	protected void solveF(DMatrixRMaj x, DMatrixRMaj x_dot, DMatrixRMaj f) {
+		f.setTo(solveF(SimpleMatrix.wrap(x), SimpleMatrix.wrap(x_dot)).getDDRM());
+	}
+
+	/**
+	 * Solves for M into a caller-provided matrix. Override this to make the
+	 * leaf allocation-free; the default delegates to
+	 * {@link #solveM(SimpleMatrix, SimpleMatrix)}.
+	 * 
+	 * @param x     The RMPLeaf state in task space
+	 * @param x_dot The RMPLeaf differentiated state in task space
+	 * @param m     The inertia matrix, reshaped as needed
+	 */
+	protected void solveM(DMatrixRMaj x, DMatrixRMaj x_dot, DMatrixRMaj m) {
+		m.setTo(solveM(SimpleMatrix.wrap(x), SimpleMatrix.wrap(x_dot)).getDDRM());
+	}
 }
@@ -0,0 +1,52 @@
+package com.titanrobotics2022.motion.generation.rmpflow;
+
+import org.ejml.data.DMatrix2;
+import org.ejml.data.DMatrix2x2;
+
+/**
+ * A leaf of a planar RMP tree, whose root configuration space is 2-d.
+ * Counterpart of {@link RMPLeaf} for {@link RMPRoot2D}, which stores every
+ * quantity in fixed-size EJML types.
+ * 
+ * @see RMPDistanceLeaf2D
+ * @see RMPPlanarLeaf2D
+ */
+public abstract class RMPLeaf2D {
+	private final String name;
+
+	/**
+	 * RMP leaf node of a planar tree.
+	 * 
+	 * @param name   of leaf node
+	 * @param parent of leaf node
+	 */
+	public RMPLeaf2D(String name, RMPRoot2D parent) {
+		this.name = name;
+		if (parent != null)
+			parent.linkChild(this);
+	}
+
+	/**
+	 * Evaluates the RMP of this leaf and adds its pullback to the root's force
+	 * and metric. Equation 1 in RMPFlow Computational Graph:
+	 * <p>
+	 * f += JT * (f_leaf - M_leaf * J_dot * q_dot)
+	 * <p>
+	 * M += JT * M_leaf * J
+	 * 
+	 * @param q     The root state
+	 * @param q_dot The root differentiated state
+	 * @param f     The root force to add to
+	 * @param m     The root metric to add to
+	 */
+	protected abstract void pullback(DMatrix2 q, DMatrix2 q_dot, DMatrix2 f, DMatrix2x2 m);
+
+	/**
+	 * Returns the name of the leaf
+	 * 
+	 * @return The name of the leaf
+	 */
+	public String getName() {
+		return name;
+	}
+}
@@ -1,10 +1,16 @@
 package com.titanrobotics2022.motion.generation.rmpflow;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 import org.ejml.data.DMatrixRMaj;
-import org.ejml.dense.row.factory.LinearSolverFactory_DDRM;
-import org.ejml.interfaces.linsol.LinearSolver;
+import org.ejml.dense.row.CommonOps_DDRM;
 import org.ejml.simple.SimpleMatrix;
 
 import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
@@ -16,34 +22,67 @@ import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
  * <a href="https://arxiv.org/abs/1811.07049">RMPFlow</a> algorithm.
  */
 public abstract class RMPNode {
+	private static final RMPNode[] NO_CHILDREN = new RMPNode[0];
+
 	private String name; // Name of RMP
-	private RMPNode parent; // Parent node
-	private ArrayList<RMPNode> children = new ArrayList<RMPNode>(); // All child nodes
-	private SimpleMatrix x, x_dot, f, m;
-	private LinearSolver<DMatrixRMaj, DMatrixRMaj> solver = LinearSolverFactory_DDRM.pseudoInverse(true);
+	private volatile RMPNode parent; // Parent node
+	private volatile RMPNode[] linked = NO_CHILDREN; // All child nodes, replaced on every change
+	private RMPNode[] children = NO_CHILDREN; // Children seen by solves, taken from linked by the root
+	private volatile boolean relinked; // Whether any node of a root's tree has been relinked
+	private volatile long relinks; // Number of times any node of a root's tree has been relinked
+	private final DMatrixRMaj x = new DMatrixRMaj(1, 1), x_dot = new DMatrixRMaj(1, 1),
+			f = new DMatrixRMaj(1, 1), m = new DMatrixRMaj(1, 1);
+	private final SimpleMatrix xView = SimpleMatrix.wrap(x), x_dotView = SimpleMatrix.wrap(x_dot),
+			fView = SimpleMatrix.wrap(f), mView = SimpleMatrix.wrap(m);
+	private final DMatrixRMaj J = new DMatrixRMaj(1, 1), J_dot = new DMatrixRMaj(1, 1);
+	private final DMatrixRMaj curvature = new DMatrixRMaj(1, 1), correction = new DMatrixRMaj(1, 1),
+			mJ = new DMatrixRMaj(1, 1);
+	private volatile long generation; // Solve this node's state belongs to
+	private long mapped = -1; // Solve that J and J_dot were computed for
+	private MetricSolver solver = new PseudoInverseMetricSolver();
+	private ForkJoinPool pool; // Pool for a parallel pullback, null when serial
+	private int parallelThreshold; // Minimum number of children for a parallel pullback
+	private PullbackChunk[] chunks; // Per-worker partial sums of the pullback
+	private final PullbackReduction reduction = new PullbackReduction();
+	private double reuseTolerance = -1; // Largest change for which children are reused, negative when disabled
+	private int structure; // Bumped whenever the children seen by solves change
+	private int summedStructure = -1, summedDim = -1; // Structure and dimension f and m were summed for
+	private int incrementalUpdates; // Incremental pullbacks since f and m were last summed
+	private long reuseCount, evaluationCount;
+	private Contribution contribution; // This node's last pulled back RMP, when its parent is incremental
+	private volatile RMPNodeProfile profile; // Timings and contribution, null unless profiling
 
 	// See <a href="https://arxiv.org/abs/1811.07049">RMPFlow Section 3.2</a>
 	// x: current state
 	// x_dot: derivative of current state
 	// f: desired force map
 	// m: inertia matrix
+	// All of the above are workspaces owned by the node. They are reshaped in
+	// place, so they only allocate while the tree is growing into its final
+	// dimensions on the first solve, and a steady-state solve allocates nothing.
+	// J, J_dot: Jacobian of this node's task map and its time derivative,
+	// computed once per solve by the pushforward and reused by the pullback
+	// curvature, correction, mJ: pullback scratch (J_dot * x_dot,
+	// f - M * J_dot * x_dot and M * J)
 
 	/**
 	 * A node for an tree that contains mappings and functions for Riemannian Motion
 	 * Policies.
+	 * <p>
+	 * A non-null parent links the node from this constructor, before the fields
+	 * of a subclass are assigned, so a solve running on another thread could
+	 * evaluate the node half-built. Nodes added to a tree that is being solved
+	 * must be created with a null parent and linked once constructed, with
+	 * {@link #updateChildren(Collection, Collection)}.
 	 * 
 	 * @param name   of RMP node
-	 * @param parent of RMP node
+	 * @param parent of RMP node, or null to create the node unlinked
 	 */
 	public RMPNode(String name, RMPNode parent) {
 		this.name = name;
 		this.parent = parent;
 		if (parent != null) // TODO: Throw null pointer if parent doesn't exist
 			parent.linkChild(this);
-		this.x = null;
-		this.x_dot = null;
-		this.f = null;
-		this.m = null;
 	}
 
 	/**
@@ -59,24 +98,84 @@ public abstract class RMPNode {
 	}
 
 	/**
-	 * Jacobian of the task map psi
+	 * Jacobian of the task map psi. The default is the identity, the Jacobian of
+	 * the default psi.
 	 * 
 	 * @param q The configuration space
 	 * @return A transformation via Jacobian of the task map psi
 	 */
 	public SimpleMatrix j(SimpleMatrix q) {
-		return q;
+		return SimpleMatrix.identity(q.getNumElements());
 	}
 
 	/**
-	 * Second derivative Jacobian of the task map psi
+	 * Second derivative Jacobian of the task map psi. The default is zero, since
+	 * the default Jacobian is constant.
 	 * 
 	 * @param q     The configuration space
 	 * @param q_dot The configuration space
 	 * @return A transformation via second-order Jacobian of the task map psi
 	 */
 	public SimpleMatrix j_dot(SimpleMatrix q, SimpleMatrix q_dot) {
-		return q_dot;// TODO decide if to implement like goal Attractor J_dot
+		return new SimpleMatrix(q.getNumElements(), q.getNumElements());
+	}
+
+	/**
+	 * Differentiable task map that writes into a caller-provided matrix.
+	 * This is the variant used while solving. Override it to make the node
+	 * allocation-free; the default delegates to {@link #psi(SimpleMatrix)}.
+	 * 
+	 * @param q   The configuration space
+	 * @param out The task space, reshaped as needed
+	 */
+	public void psi(DMatrixRMaj q, DMatrixRMaj out) {
+		out.setTo(psi(SimpleMatrix.wrap(q)).getDDRM());
+	}
+
+	/**
+	 * Jacobian of the task map psi that writes into a caller-provided matrix.
+	 * The default delegates to {@link #j(SimpleMatrix)}.
+	 * 
+	 * @param q   The configuration space
+	 * @param out The Jacobian, reshaped as needed
+	 */
+	public void j(DMatrixRMaj q, DMatrixRMaj out) {
+		out.setTo(j(SimpleMatrix.wrap(q)).getDDRM());
+	}
+
+	/**
+	 * Second derivative Jacobian of the task map psi that writes into a
+	 * caller-provided matrix. The default delegates to
+	 * {@link #j_dot(SimpleMatrix, SimpleMatrix)}.
+	 * 
+	 * @param q     The configuration space
+	 * @param q_dot The configuration space
+	 * @param out   The derivative of the Jacobian, reshaped as needed
+	 */
+	public void j_dot(DMatrixRMaj q, DMatrixRMaj q_dot, DMatrixRMaj out) {
+		out.setTo(j_dot(SimpleMatrix.wrap(q), SimpleMatrix.wrap(q_dot)).getDDRM());
+	}
+
+	/**
+	 * Evaluates the task map, its Jacobian and the Jacobian's derivative at the
+	 * same state in one call. This is what the pushforward uses, and its results
+	 * are cached for the pullback of the same solve. Override it when the three
+	 * share intermediate values, such as a distance or a projection, so that
+	 * they are only computed once. The default calls
+	 * {@link #psi(DMatrixRMaj, DMatrixRMaj)},
+	 * {@link #j(DMatrixRMaj, DMatrixRMaj)} and
+	 * {@link #j_dot(DMatrixRMaj, DMatrixRMaj, DMatrixRMaj)}.
+	 * 
+	 * @param q     The configuration space
+	 * @param q_dot The differentiated configuration space
+	 * @param x     The task space, reshaped as needed
+	 * @param J     The Jacobian, reshaped as needed
+	 * @param J_dot The derivative of the Jacobian, reshaped as needed
+	 */
+	public void taskMap(DMatrixRMaj q, DMatrixRMaj q_dot, DMatrixRMaj x, DMatrixRMaj J, DMatrixRMaj J_dot) {
+		psi(q, x);
+		j(q, J);
+		j_dot(q, q_dot, J_dot);
 	}
 
 	/**
@@ -85,8 +184,10 @@ public abstract class RMPNode {
 	 * @param parent A RMP node parent
 	 */
 	public void linkParent(RMPNode parent) {
-		this.parent.removeChild(this);
-		parent.children.add(this);
+		RMPNode old = this.parent;
+		if (old != null)
+			old.removeChild(this);
+		parent.addChild(this);
 		this.parent = parent;
 	}
 
@@ -116,6 +217,56 @@ public abstract class RMPNode {
 		child.unlinkParent(this);
 	}
 
+	/**
+	 * Unlinks and links many children at once. The children seen by solves
+	 * change in a single step, so a solve never sees only part of the update.
+	 * 
+	 * @param unlink Children to unlink from this node
+	 * @param link   Nodes without a parent to link to this node
+	 * @throws IllegalArgumentException If a node to link already has a parent
+	 */
+	public void updateChildren(Collection<? extends RMPNode> unlink, Collection<? extends RMPNode> link) {
+		// Looked up once per child, so a list of removals would make a large update quadratic
+		Set<RMPNode> removed = Collections.newSetFromMap(new IdentityHashMap<RMPNode, Boolean>());
+		removed.addAll(unlink);
+		synchronized (this) {
+			for (RMPNode child : link)
+				if (child.parent != null)
+					throw new IllegalArgumentException("Node " + child.name + " already has a parent.");
+			RMPNode[] old = linked;
+			RMPNode[] updated = new RMPNode[old.length + link.size()];
+			int size = 0;
+			for (RMPNode child : old)
+				if (!removed.contains(child))
+					updated[size++] = child;
+			for (RMPNode child : link) {
+				updated[size++] = child;
+				child.parent = this;
+			}
+			for (RMPNode child : unlink)
+				if (child.parent == this)
+					child.parent = null;
+			linked = size == updated.length ? updated : Arrays.copyOf(updated, size);
+		}
+		markRelinked();
+	}
+
+	/**
+	 * Adds a child to the implicit parent node
+	 * 
+	 * @implNote Does not update the child's parent connection
+	 * @param child The child to add
+	 */
+	private void addChild(RMPNode child) {
+		synchronized (this) {
+			RMPNode[] old = linked;
+			RMPNode[] updated = Arrays.copyOf(old, old.length + 1);
+			updated[old.length] = child;
+			linked = updated;
+		}
+		markRelinked();
+	}
+
 	/**
 	 * Remove the child node from implicit parent node
 	 * 
@@ -124,22 +275,92 @@ public abstract class RMPNode {
 	 * @return The child that was removed, returns null if nothing was removed
 	 */
 	private RMPNode removeChild(RMPNode child) {
-		for (int i = 0; i < children.size(); i++) {
-			if (children.get(i) == child) // Object reference check
-			{
-				return children.remove(i);
-			}
+		synchronized (this) {
+			RMPNode[] old = linked;
+			int i = 0;
+			while (i < old.length && old[i] != child) // Object reference check
+				i++;
+			if (i == old.length)
+				return null;
+			RMPNode[] updated = new RMPNode[old.length - 1];
+			System.arraycopy(old, 0, updated, 0, i);
+			System.arraycopy(old, i + 1, updated, i, old.length - i - 1);
+			linked = updated;
 		}
-		return null;
+		markRelinked();
+		return child;
 	}
 
 	/**
-	 * Returns all child nodes.
+	 * Flags the root of this node's tree to pick up the new children on its next
+	 * pushforward.
+	 */
+	private void markRelinked() {
+		RMPNode node = this;
+		for (RMPNode p = node.parent; p != null; p = p.parent)
+			node = p;
+		synchronized (node) {
+			node.relinks++;
+		}
+		node.relinked = true;
+	}
+
+	/**
+	 * Makes the latest linked children of every node in this tree the children
+	 * seen by solves, if any have changed since the last call. Called by the root
+	 * at the start of every pushforward, so changes to the tree made from other
+	 * threads become visible between solves and never during one.
+	 */
+	void syncChildren() {
+		if (!relinked)
+			return;
+		relinked = false; // Cleared first, so changes made during the walk are seen next time
+		syncSubtree();
+	}
+
+	private void syncSubtree() {
+		RMPNode[] latest = linked;
+		if (latest != children) {
+			children = latest;
+			structure++;
+		}
+		for (int i = 0; i < children.length; i++)
+			children[i].syncSubtree();
+	}
+
+	/**
+	 * Returns how many times a node of this tree has been linked or unlinked,
+	 * when called on the tree's root. Evaluation contexts use this to notice
+	 * that the tree's structure has changed.
+	 * 
+	 * @return The number of changes to the tree's structure
+	 */
+	public long getRelinkCount() {
+		return relinks;
+	}
+
+	/**
+	 * Returns all child nodes. Children are linked and unlinked copy-on-write,
+	 * so the list is a copy that later changes do not affect, and it is safe to
+	 * read while another thread changes the tree. Changing the list does not
+	 * change the tree; use {@link #linkChild(RMPNode)},
+	 * {@link #unlinkChild(RMPNode)} or
+	 * {@link #updateChildren(Collection, Collection)}. Solves only see changes
+	 * from the start of the root's next pushforward.
 	 * 
 	 * @return An array list of all children nodes.
 	 */
 	public ArrayList<RMPNode> getChildren() {
-		return children;
+		return new ArrayList<RMPNode>(Arrays.asList(linked));
+	}
+
+	/**
+	 * Returns the name of the node
+	 * 
+	 * @return The name of the node
+	 */
+	public String getName() {
+		return name;
 	}
 
 	/**
@@ -159,14 +380,39 @@ public abstract class RMPNode {
 	 * Policies Section IV</a>.
 	 */
 	public void pushforward() {
+		pushforward(parent);
+	}
+
+	/**
+	 * Forward propagates the state from the node this one was reached from.
+	 * Solves pass the parent down explicitly, since another thread may unlink
+	 * this node, and clear its parent, while a solve is still using it.
+	 * 
+	 * @param parent The parent node whose state to map
+	 */
+	private void pushforward(RMPNode parent) {
 		// In the case that an RMP node does not have a psi or j function implement psi
 		// and j to return the input.
 		// TODO: Figure out above case
-		x = psi(parent.x);// psi(x)
-		x_dot = j(parent.x).mult(parent.x_dot);// j(x) * x_dot
+		RMPNodeProfile profile = this.profile;
+		long start = profile == null ? 0 : System.nanoTime();
+		generation = parent.generation;
+		taskMap(parent.x, parent.x_dot, x, J, J_dot);// psi(x), J and J_dot
+		mapped = generation;
+		CommonOps_DDRM.mult(J, parent.x_dot, x_dot);// j(x) * x_dot
+		if (profile != null)
+			profile.getPushforward().record(System.nanoTime() - start);
+
+		pushforwardChildren();
+	}
 
-		for (int i = 0; i < children.size(); i++)
-			children.get(i).pushforward();
+	/**
+	 * Pushes the state forward to every child, without mapping this node's own
+	 * state. Used by the root, whose state is set directly.
+	 */
+	void pushforwardChildren() {
+		for (int i = 0; i < children.length; i++)
+			children[i].pushforward(this);
 	}
 
 	/**
@@ -177,41 +423,443 @@ public abstract class RMPNode {
 	 * Policies Section IV</a>.
 	 */
 	public void pullback() {
-		for (int i = 0; i < children.size(); i++)
-			children.get(i).pullback();
+		if (reuseTolerance >= 0)
+			incrementalPullback();
+		else if (pool != null && children.length >= parallelThreshold)
+			pool.invoke(reduction.reset());
+		else
+			serialPullback();
+		if (profile != null)
+			shareForce();
+	}
 
-		f = x.copy();
-		f.zero();
+	/**
+	 * Names the way the next pullback of this node will combine its children.
+	 * 
+	 * @return incremental, parallel or serial
+	 */
+	String getPullbackPath() {
+		if (reuseTolerance >= 0)
+			return "incremental";
+		if (pool != null && children.length >= parallelThreshold)
+			return "parallel";
+		return "serial";
+	}
 
-		int mSize = Math.max(x.numCols(), x.numRows());
-		if (m == null)
-			m = new SimpleMatrix(mSize, mSize);
-		else
-			m.reshape(mSize, mSize);
+	/**
+	 * Counts the nodes and leaves seen by solves in this node's subtree.
+	 * 
+	 * @param counts The number of nodes and leaves to add to
+	 */
+	void count(int[] counts) {
+		counts[0]++;
+		if (this instanceof RMPLeaf)
+			counts[1]++;
+		for (int i = 0; i < children.length; i++)
+			children[i].count(counts);
+	}
+
+	/**
+	 * Pulls back every child and sums their RMPs on the calling thread.
+	 */
+	private void serialPullback() {
+		for (int i = 0; i < children.length; i++)
+			children[i].pullback();
+
+		int n = x.getNumElements();
+		f.reshape(n, 1);
+		f.zero();
+		m.reshape(n, n);
 		m.zero();
 
-		for (int i = 0; i < children.size(); i++) {
-			RMPNode child = children.get(i);
-			SimpleMatrix J_child = child.j(x);// child's Jacobian of x
-			SimpleMatrix J_dot_child = child.j_dot(x, x_dot);
-
-			if (child.f != null && child.name != null) {
-				// f + JT * (f - (m * J_dot * x_dot)) Equation 1 in RMPFlow Computational Graph
-				f = f.plus(J_child.transpose().mult(child.f.minus(
-						child.m.mult(J_dot_child).mult(x_dot))));
-				// JT * M * J Equation 1 in RMPFlow Computational Graph
-				m = m.plus(J_child.transpose().mult(child.m).mult(J_child));
+		for (int i = 0; i < children.length; i++) {
+			RMPNode child = children[i];
+			if (child.name != null)
+				child.accumulate(generation, x, x_dot, f, m);
+		}
+	}
+
+	/**
+	 * Enables or disables evaluating this node's children in parallel during the
+	 * pullback. The children are split into one contiguous chunk per worker of
+	 * the pool. Each chunk evaluates its children and sums their JT * M * J and
+	 * JT * (f - M * J_dot * x_dot) terms, and the partial sums are then added
+	 * together. Results match the serial pullback up to floating point
+	 * reordering.
+	 * 
+	 * @param pool      The pool to evaluate the children on, or null to always
+	 *                  pull back serially
+	 * @param threshold The minimum number of children for which to go parallel,
+	 *                  below which the serial pullback is used
+	 */
+	public void setParallelPullback(ForkJoinPool pool, int threshold) {
+		this.pool = pool;
+		this.parallelThreshold = threshold;
+		if (pool == null) {
+			chunks = null;
+			return;
+		}
+		chunks = new PullbackChunk[pool.getParallelism()];
+		for (int i = 0; i < chunks.length; i++)
+			chunks[i] = new PullbackChunk();
+	}
+
+	/**
+	 * Forks one chunk per worker and reduces their partial sums into f and m.
+	 */
+	private class PullbackReduction extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private int count;
+
+		private PullbackReduction reset() {
+			reinitialize();
+			int size = children.length;
+			count = Math.min(chunks.length, size);
+			for (int c = 0; c < count; c++) {
+				chunks[c].reinitialize();
+				chunks[c].from = size * c / count;
+				chunks[c].to = size * (c + 1) / count;
+			}
+			return this;
+		}
+
+		@Override
+		protected void compute() {
+			for (int c = 1; c < count; c++)
+				chunks[c].fork();
+			chunks[0].invoke();
+			for (int c = 1; c < count; c++)
+				chunks[c].join();
+
+			int n = x.getNumElements();
+			f.reshape(n, 1);
+			f.zero();
+			m.reshape(n, n);
+			m.zero();
+			for (int c = 0; c < count; c++) {
+				CommonOps_DDRM.addEquals(f, chunks[c].partialF);
+				CommonOps_DDRM.addEquals(m, chunks[c].partialM);
+			}
+		}
+	}
+
+	/**
+	 * Pulls back a contiguous range of children into partial sums.
+	 */
+	private class PullbackChunk extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private final DMatrixRMaj partialF = new DMatrixRMaj(1, 1), partialM = new DMatrixRMaj(1, 1);
+		private int from, to;
+
+		@Override
+		protected void compute() {
+			int n = x.getNumElements();
+			partialF.reshape(n, 1);
+			partialF.zero();
+			partialM.reshape(n, n);
+			partialM.zero();
+			for (int i = from; i < to; i++) {
+				RMPNode child = children[i];
+				child.pullback();
+				if (child.name != null)
+					child.accumulate(generation, x, x_dot, partialF, partialM);
 			}
 		}
 	}
 
+	/**
+	 * Enables or disables reusing the pulled back RMPs of children whose inputs
+	 * have not changed since the last pullback. A child leaf is reused when every
+	 * element of its x, x_dot, J and J_dot is within the tolerance of the values
+	 * it was last evaluated at, in which case it is not evaluated and its last
+	 * contribution to f and M is kept. Only the contributions of the children
+	 * that changed are subtracted from f and M and added back in their new form.
+	 * <p>
+	 * f and M are summed from scratch whenever a child is linked or unlinked,
+	 * and periodically to stop rounding errors from building up. Leaves whose
+	 * policy depends on anything besides their inputs must call
+	 * {@link #invalidate()} when it changes, and leaves that update internal
+	 * state while they are evaluated, such as an error integral, are not updated
+	 * while they are reused. Takes precedence over a parallel pullback.
+	 * 
+	 * @param tolerance The largest change in a child's inputs for which it is
+	 *                  reused, 0 to only reuse children whose inputs are
+	 *                  identical, or a negative number to disable reuse
+	 */
+	public void setIncrementalPullback(double tolerance) {
+		reuseTolerance = tolerance;
+		summedStructure = -1;
+		for (int i = 0; i < children.length; i++)
+			children[i].invalidate();
+	}
+
+	/**
+	 * Forces this node to be evaluated on its parent's next incremental
+	 * pullback, instead of reusing its last contribution.
+	 */
+	public void invalidate() {
+		if (contribution != null)
+			contribution.dirty = true;
+	}
+
+	/**
+	 * Returns how many times a child of this node has been reused by an
+	 * incremental pullback.
+	 * 
+	 * @return The number of reused children
+	 */
+	public long getReuseCount() {
+		return reuseCount;
+	}
+
+	/**
+	 * Returns how many times a child of this node has been evaluated by an
+	 * incremental pullback.
+	 * 
+	 * @return The number of evaluated children
+	 */
+	public long getEvaluationCount() {
+		return evaluationCount;
+	}
+
+	/**
+	 * Discards the evaluation state of every leaf in this subtree, such as an
+	 * error integral, so the next solve through the tree starts over as if the
+	 * leaves had just been created. Evaluation contexts and batches keep their
+	 * own states and are not affected.
+	 */
+	public void resetStates() {
+		for (RMPNode child : linked)
+			child.resetStates();
+	}
+
+	/**
+	 * Resets the reuse and evaluation counts.
+	 */
+	public void resetReuseCounts() {
+		reuseCount = 0;
+		evaluationCount = 0;
+	}
+
+	/**
+	 * Number of incremental pullbacks after which f and M are summed from
+	 * scratch, to stop rounding errors from building up.
+	 */
+	private static final int RESUM_INTERVAL = 1024;
+
+	/**
+	 * Pulls back only the children whose inputs have changed, replacing their
+	 * old contributions to f and M with their new ones.
+	 */
+	private void incrementalPullback() {
+		int n = x.getNumElements();
+		boolean resized = n != summedDim;
+		boolean resum = resized || structure != summedStructure || incrementalUpdates >= RESUM_INTERVAL;
+		if (resum) {
+			f.reshape(n, 1);
+			f.zero();
+			m.reshape(n, n);
+			m.zero();
+			summedStructure = structure;
+			summedDim = n;
+			incrementalUpdates = 0;
+		} else {
+			incrementalUpdates++;
+		}
+
+		for (int i = 0; i < children.length; i++) {
+			RMPNode child = children[i];
+			if (child.contribution == null)
+				child.contribution = new Contribution();
+			Contribution c = child.contribution;
+			if (!resized && c.valid && !c.dirty && child.children.length == 0 && child.unchanged(reuseTolerance)) {
+				reuseCount++;
+				if (resum) {
+					CommonOps_DDRM.addEquals(f, c.f);
+					CommonOps_DDRM.addEquals(m, c.m);
+				}
+				continue;
+			}
+
+			evaluationCount++;
+			child.pullback();
+			if (child.name == null) {
+				c.valid = false;
+				continue;
+			}
+			if (!resum && c.valid) {
+				CommonOps_DDRM.subtractEquals(f, c.f);
+				CommonOps_DDRM.subtractEquals(m, c.m);
+			}
+			c.f.reshape(n, 1);
+			c.f.zero();
+			c.m.reshape(n, n);
+			c.m.zero();
+			child.accumulate(generation, x, x_dot, c.f, c.m);
+			c.x.setTo(child.x);
+			c.x_dot.setTo(child.x_dot);
+			c.J.setTo(child.J);
+			c.J_dot.setTo(child.J_dot);
+			c.valid = true;
+			c.dirty = false;
+			CommonOps_DDRM.addEquals(f, c.f);
+			CommonOps_DDRM.addEquals(m, c.m);
+		}
+	}
+
+	/**
+	 * Determines whether this node's inputs are within a tolerance of the ones
+	 * its last contribution was computed from.
+	 */
+	private boolean unchanged(double tolerance) {
+		return within(x, contribution.x, tolerance) && within(x_dot, contribution.x_dot, tolerance)
+				&& within(J, contribution.J, tolerance) && within(J_dot, contribution.J_dot, tolerance);
+	}
+
+	private static boolean within(DMatrixRMaj a, DMatrixRMaj b, double tolerance) {
+		int n = a.getNumElements();
+		if (n != b.getNumElements())
+			return false;
+		for (int i = 0; i < n; i++)
+			if (!(Math.abs(a.data[i] - b.data[i]) <= tolerance))
+				return false;
+		return true;
+	}
+
+	/**
+	 * A node's last pulled back RMP and the inputs it was computed from.
+	 */
+	private static class Contribution {
+		private final DMatrixRMaj x = new DMatrixRMaj(1, 1), x_dot = new DMatrixRMaj(1, 1),
+				J = new DMatrixRMaj(1, 1), J_dot = new DMatrixRMaj(1, 1);
+		private final DMatrixRMaj f = new DMatrixRMaj(1, 1), m = new DMatrixRMaj(1, 1);
+		private boolean valid; // Whether f and m are included in the parent's sums
+		private boolean dirty; // Whether to evaluate even if the inputs are unchanged
+	}
+
+	/**
+	 * Adds this node's pulled back RMP to its parent's force and metric.
+	 * Equation 1 in RMPFlow Computational Graph:
+	 * <p>
+	 * f += JT * (f_child - M_child * J_dot * x_dot)
+	 * <p>
+	 * M += JT * M_child * J
+	 * <p>
+	 * J and J_dot are reused from the pushforward of the same solve, and are
+	 * only recomputed if the parent's state has changed since.
+	 * 
+	 * @param solve The parent's solve generation
+	 * @param q     The parent state
+	 * @param q_dot The parent differentiated state
+	 * @param pf    The parent force to add to
+	 * @param pm    The parent metric to add to
+	 */
+	private void accumulate(long solve, DMatrixRMaj q, DMatrixRMaj q_dot, DMatrixRMaj pf, DMatrixRMaj pm) {
+		RMPNodeProfile profile = this.profile;
+		long start = profile == null ? 0 : System.nanoTime();
+		if (mapped != solve) {
+			j(q, J);// child's Jacobian of x
+			j_dot(q, q_dot, J_dot);
+			mapped = solve;
+		}
+
+		CommonOps_DDRM.mult(J_dot, q_dot, curvature);
+		CommonOps_DDRM.mult(m, curvature, correction);
+		CommonOps_DDRM.subtract(f, correction, correction);
+		if (profile == null)
+			CommonOps_DDRM.multAddTransA(J, correction, pf);
+		else
+			profile.addPulledForce(J, correction, pf);
+
+		CommonOps_DDRM.mult(m, J, mJ);
+		CommonOps_DDRM.multAddTransA(J, mJ, pm);
+		if (profile != null)
+			profile.recordPullback(System.nanoTime() - start, m);
+	}
+
+	/**
+	 * Sets each profiled child's share of the summed force norms of the
+	 * children.
+	 */
+	private void shareForce() {
+		double total = 0;
+		for (int i = 0; i < children.length; i++) {
+			RMPNodeProfile p = children[i].profile;
+			if (p != null)
+				total += p.getForceNorm();
+		}
+		for (int i = 0; i < children.length; i++) {
+			RMPNodeProfile p = children[i].profile;
+			if (p != null)
+				p.setForceShare(total > 0 ? p.getForceNorm() / total : 0);
+		}
+	}
+
+	/**
+	 * Enables or disables profiling this node and every node below it. While
+	 * enabled, each node records its timings and contribution into an
+	 * {@link RMPNodeProfile}. While disabled, a solve only pays for checking
+	 * that each node has no profile. Nodes linked later are not profiled until
+	 * this is called again.
+	 * 
+	 * @param enabled Whether to profile the subtree
+	 */
+	public void setProfiling(boolean enabled) {
+		if (enabled) {
+			if (profile == null)
+				profile = new RMPNodeProfile();
+		} else {
+			profile = null;
+		}
+		for (RMPNode child : linked)
+			child.setProfiling(enabled);
+	}
+
+	/**
+	 * Returns this node's profile.
+	 * 
+	 * @return The profile, or null if the node is not being profiled
+	 */
+	public RMPNodeProfile getProfile() {
+		return profile;
+	}
+
+	/**
+	 * Copies the profiles of this node and every profiled node below it. Safe to
+	 * call from any thread while the tree is being solved.
+	 * 
+	 * @return A snapshot of the subtree's profiles
+	 */
+	public RMPProfileSnapshot snapshotProfile() {
+		return new RMPProfileSnapshot(this);
+	}
+
+	/**
+	 * Starts a new solve generation, so Jacobians cached from earlier solves are
+	 * no longer used. Called whenever the root state changes.
+	 */
+	void nextGeneration() {
+		generation++;
+	}
+
+	/**
+	 * Returns the number of the solve this node's state belongs to. The root
+	 * starts a new generation for every solve, and the pushforward carries it
+	 * down the tree.
+	 * 
+	 * @return The solve generation
+	 */
+	public long getGeneration() {
+		return generation;
+	}
+
 	/**
 	 * Returns the RMP's current task space state
 	 * 
 	 * @return x The RMP's current task space state
 	 */
 	public SimpleMatrix getX() {
-		return x;
+		return xView;
 	}
 
 	/**
@@ -220,7 +868,7 @@ public abstract class RMPNode {
 	 * @param x The RMP's current task space state
 	 */
 	public void setX(SimpleMatrix x) {
-		this.x = x;
+		this.x.setTo(x.getDDRM());
 	}
 
 	/**
@@ -229,7 +877,7 @@ public abstract class RMPNode {
 	 * @return RMP's current task space derivative state
 	 */
 	public SimpleMatrix getXdot() {
-		return x_dot;
+		return x_dotView;
 	}
 
 	/**
@@ -238,7 +886,7 @@ public abstract class RMPNode {
 	 * @param xdot The RMP's current task space derivative state
 	 */
 	public void setXdot(SimpleMatrix xdot) {
-		this.x_dot = xdot;
+		this.x_dot.setTo(xdot.getDDRM());
 	}
 
 	/**
@@ -247,7 +895,7 @@ public abstract class RMPNode {
 	 * @return f The force motion policy
 	 */
 	public SimpleMatrix getF() {
-		return f;
+		return fView;
 	}
 
 	/**
@@ -256,7 +904,7 @@ public abstract class RMPNode {
 	 * @param f The force motion policy
 	 */
 	public void setF(SimpleMatrix f) {
-		this.f = f;
+		this.f.setTo(f.getDDRM());
 	}
 
 	/**
@@ -265,7 +913,7 @@ public abstract class RMPNode {
 	 * @return M The inertia matrix
 	 */
 	public SimpleMatrix getM() {
-		return m;
+		return mView;
 	}
 
 	/**
@@ -274,7 +922,7 @@ public abstract class RMPNode {
 	 * @param m The inertia matrix
 	 */
 	public void setM(SimpleMatrix m) {
-		this.m = m;
+		this.m.setTo(m.getDDRM());
 	}
 
 	/**
@@ -286,10 +934,38 @@ public abstract class RMPNode {
 	 * @return A the desired acceleration which is a(x, x_dot)
 	 */
 	public SimpleMatrix getA() {
-		solver.setA(m.getDDRM());
-		DMatrixRMaj a = new DMatrixRMaj(m.getDDRM().getNumRows(), 1);
-		solver.solve(f.getDDRM(), a);
-		return new SimpleMatrix(a);
+		DMatrixRMaj a = new DMatrixRMaj(m.getNumRows(), 1);
+		getA(a);
+		return SimpleMatrix.wrap(a);
 	} // TODO: Check for exception if inversion fails and return entire RMP tree in
 		// exception throw
+
+	/**
+	 * Computes the motion policy as a = M†f into a caller-provided matrix.
+	 * 
+	 * @param a The desired acceleration, reshaped as needed
+	 * @see #getA()
+	 */
+	public void getA(DMatrixRMaj a) {
+		solver.solve(m, f, a);
+	}
+
+	/**
+	 * Sets how a = M†f is resolved. Defaults to a
+	 * {@link PseudoInverseMetricSolver}.
+	 * 
+	 * @param solver The metric solver
+	 */
+	public void setMetricSolver(MetricSolver solver) {
+		this.solver = solver;
+	}
+
+	/**
+	 * Returns how a = M†f is resolved.
+	 * 
+	 * @return The metric solver
+	 */
+	public MetricSolver getMetricSolver() {
+		return solver;
+	}
 }
\ No newline at end of file
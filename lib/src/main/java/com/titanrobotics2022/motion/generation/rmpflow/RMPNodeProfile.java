@@ -0,0 +1,115 @@
+package com.titanrobotics2022.motion.generation.rmpflow;
+
+import org.ejml.data.DMatrixRMaj;
+import org.ejml.dense.row.CommonOps_DDRM;
+import org.ejml.dense.row.NormOps_DDRM;
+
+/**
+ * The timings and contribution of one node of an RMP tree, recorded while the
+ * tree is solved once profiling is enabled with
+ * {@link RMPNode#setProfiling(boolean)}.
+ * <p>
+ * Timings are the node's own work, not its subtree's: mapping its state in
+ * the pushforward, evaluating its policy if it is a leaf, and adding its
+ * pulled back RMP to its parent's in the pullback. The contribution is the
+ * Frobenius norm of the node's metric and of the force it adds to its parent,
+ * and that force's share of the sum of the force norms of its siblings.
+ * {@link RMPProfileSnapshot} combines the shares along the path from the root
+ * into each node's share of the root force.
+ * <p>
+ * Only solves through the tree are recorded, not those through an
+ * {@link RMPFlowPlan}.
+ */
+public class RMPNodeProfile {
+	private final LatencyHistogram pushforward = new LatencyHistogram(), evaluate = new LatencyHistogram(),
+			pullback = new LatencyHistogram();
+	private volatile double metricNorm, forceNorm, forceShare;
+	private final DMatrixRMaj pulled = new DMatrixRMaj(1, 1); // JT * (f - M * J_dot * x_dot)
+
+	/**
+	 * Returns the time spent mapping the node's state in each pushforward.
+	 * 
+	 * @return The pushforward latencies
+	 */
+	public LatencyHistogram getPushforward() {
+		return pushforward;
+	}
+
+	/**
+	 * Returns the time spent evaluating the node's policy in each pullback.
+	 * Only recorded for leaves.
+	 * 
+	 * @return The evaluation latencies
+	 */
+	public LatencyHistogram getEvaluate() {
+		return evaluate;
+	}
+
+	/**
+	 * Returns the time spent adding the node's RMP to its parent's in each
+	 * pullback.
+	 * 
+	 * @return The pullback latencies
+	 */
+	public LatencyHistogram getPullback() {
+		return pullback;
+	}
+
+	/**
+	 * Returns the Frobenius norm of the node's metric from the last pullback.
+	 * 
+	 * @return The metric magnitude
+	 */
+	public double getMetricNorm() {
+		return metricNorm;
+	}
+
+	/**
+	 * Returns the norm of the force the node added to its parent in the last
+	 * pullback, JT * (f - M * J_dot * x_dot).
+	 * 
+	 * @return The pulled back force magnitude
+	 */
+	public double getForceNorm() {
+		return forceNorm;
+	}
+
+	/**
+	 * Returns the node's pulled back force norm as a fraction of the sum over
+	 * it and its siblings, from its parent's last pullback. Only set when the
+	 * parent is profiled too.
+	 * 
+	 * @return The node's share of its parent's force, between 0 and 1
+	 */
+	public double getForceShare() {
+		return forceShare;
+	}
+
+	/**
+	 * Clears the node's timings and contribution.
+	 */
+	public void reset() {
+		pushforward.reset();
+		evaluate.reset();
+		pullback.reset();
+		metricNorm = forceNorm = forceShare = 0;
+	}
+
+	/**
+	 * Adds JT * correction to the parent force, keeping its norm.
+	 */
+	void addPulledForce(DMatrixRMaj J, DMatrixRMaj correction, DMatrixRMaj pf) {
+		CommonOps_DDRM.multTransA(J, correction, pulled);
+		CommonOps_DDRM.addEquals(pf, pulled);
+		forceNorm = NormOps_DDRM.normF(pulled);
+	}
+
+	void recordPullback(long nanos, DMatrixRMaj m) {
+		pullback.record(nanos);
+		metricNorm = NormOps_DDRM.normF(m);
+	}
+
+	void setForceShare(double share) {
+		forceShare = share;
+	}
+}
@@ -0,0 +1,89 @@
+package com.titanrobotics2022.motion.generation.rmpflow;
+
+import org.ejml.data.DMatrix2;
+import org.ejml.data.DMatrix2x2;
+import static org.ejml.dense.fixed.CommonOps_DDF2.*;
+
+/**
+ * A leaf of a planar RMP tree with a 2-d task space, such as the offset from a
+ * goal. Every quantity is stored as a {@link DMatrix2} or {@link DMatrix2x2}.
+ */
+public abstract class RMPPlanarLeaf2D extends RMPLeaf2D {
+	private final DMatrix2 x = new DMatrix2(), x_dot = new DMatrix2(), leafF = new DMatrix2();
+	private final DMatrix2 curvature = new DMatrix2(), correction = new DMatrix2(), pulled = new DMatrix2();
+	private final DMatrix2x2 J = new DMatrix2x2(), J_dot = new DMatrix2x2(), leafM = new DMatrix2x2(),
+			mJ = new DMatrix2x2();
+
+	/**
+	 * RMP leaf node with a 2-d task space.
+	 * 
+	 * @param name   of leaf node
+	 * @param parent of leaf node
+	 */
+	public RMPPlanarLeaf2D(String name, RMPRoot2D parent) {
+		super(name, parent);
+	}
+
+	/**
+	 * Task map from the plane to a 2-d task space.
+	 * 
+	 * @param q   The configuration space
+	 * @param out The task space
+	 */
+	public abstract void psi(DMatrix2 q, DMatrix2 out);
+
+	/**
+	 * Jacobian of the task map psi.
+	 * 
+	 * @param q   The configuration space
+	 * @param out The Jacobian
+	 */
+	public abstract void j(DMatrix2 q, DMatrix2x2 out);
+
+	/**
+	 * Derivative of the Jacobian of the task map psi.
+	 * 
+	 * @param q     The configuration space
+	 * @param q_dot The differentiated configuration space
+	 * @param out   The derivative of the Jacobian
+	 */
+	public abstract void j_dot(DMatrix2 q, DMatrix2 q_dot, DMatrix2x2 out);
+
+	/**
+	 * Solves for F in the task space.
+	 * 
+	 * @param x     The task space state
+	 * @param x_dot The differentiated task space state
+	 * @param f     F, the force motion policy
+	 */
+	protected abstract void solveF(DMatrix2 x, DMatrix2 x_dot, DMatrix2 f);
+
+	/**
+	 * Solves for M in the task space.
+	 * 
+	 * @param x     The task space state
+	 * @param x_dot The differentiated task space state
+	 * @param m     M, the inertia matrix
+	 */
+	protected abstract void solveM(DMatrix2 x, DMatrix2 x_dot, DMatrix2x2 m);
+
+	@Override
+	protected void pullback(DMatrix2 q, DMatrix2 q_dot, DMatrix2 f, DMatrix2x2 m) {
+		psi(q, x);
+		j(q, J);
+		j_dot(q, q_dot, J_dot);
+		mult(J, q_dot, x_dot);
+
+		solveM(x, x_dot, leafM);
+		solveF(x, x_dot, leafF);
+
+		mult(J_dot, q_dot, curvature);
+		mult(leafM, curvature, correction);
+		subtract(leafF, correction, correction);
+		mult(correction, J, pulled); // JT * correction, as a row times J
+		addEquals(f, pulled);
+
+		mult(leafM, J, mJ);
+		multAddTransA(J, mJ, m);
+	}
+}
@@ -0,0 +1,176 @@
+package com.titanrobotics2022.motion.generation.rmpflow;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A copy of the profiles of a subtree, taken with
+ * {@link RMPNode#snapshotProfile()}, listed depth first from the node it was
+ * taken from.
+ * <p>
+ * Each entry's root share is the product of the force shares along the path
+ * from the snapshot's node, an estimate of how much of the resolved force the
+ * node is responsible for. It is exact for the children of the node, and
+ * ignores how the force directions of nodes further down combine.
+ */
+public class RMPProfileSnapshot {
+	private final List<Entry> entries = new ArrayList<Entry>();
+
+	RMPProfileSnapshot(RMPNode node) {
+		add(node, 0, 1);
+	}
+
+	private void add(RMPNode node, int depth, double share) {
+		RMPNodeProfile profile = node.getProfile();
+		if (profile == null)
+			return;
+		if (depth > 0)
+			share *= profile.getForceShare();
+		entries.add(new Entry(node.getName(), depth, profile, share));
+		for (RMPNode child : node.getChildren())
+			add(child, depth + 1, share);
+	}
+
+	/**
+	 * Returns the profiled nodes, depth first.
+	 * 
+	 * @return An unmodifiable list of entries
+	 */
+	public List<Entry> getEntries() {
+		return Collections.unmodifiableList(entries);
+	}
+
+	/**
+	 * Returns the profiled leaf that took the longest to evaluate on average.
+	 * 
+	 * @return The slowest leaf, or null if no leaf has been evaluated
+	 */
+	public Entry getSlowestLeaf() {
+		Entry slowest = null;
+		for (Entry entry : entries)
+			if (entry.evaluate.getCount() > 0
+					&& (slowest == null || entry.evaluate.getMean() > slowest.evaluate.getMean()))
+				slowest = entry;
+		return slowest;
+	}
+
+	/**
+	 * Returns a table of the entries, one line per node.
+	 */
+	@Override
+	public String toString() {
+		StringBuilder s = new StringBuilder(String.format("%-32s %12s %12s %12s %12s %10s %8s%n", "node",
+				"push (ns)", "eval (ns)", "pull (ns)", "eval p99", "|M|", "share"));
+		for (Entry e : entries) {
+			String indent = String.join("", Collections.nCopies(e.depth, "  "));
+			s.append(String.format("%-32s %12.0f %12.0f %12.0f %12d %10.3g %7.1f%%%n", indent + e.name,
+					e.pushforward.getMean(), e.evaluate.getMean(), e.pullback.getMean(),
+					e.evaluate.getPercentile(99), e.metricNorm, 100 * e.rootShare));
+		}
+		return s.toString();
+	}
+
+	/**
+	 * The copied profile of one node.
+	 */
+	public static class Entry {
+		private final String name;
+		private final int depth;
+		private final LatencyHistogram.Snapshot pushforward, evaluate, pullback;
+		private final double metricNorm, forceNorm, forceShare, rootShare;
+
+		private Entry(String name, int depth, RMPNodeProfile profile, double rootShare) {
+			this.name = name;
+			this.depth = depth;
+			this.pushforward = profile.getPushforward().snapshot();
+			this.evaluate = profile.getEvaluate().snapshot();
+			this.pullback = profile.getPullback().snapshot();
+			this.metricNorm = profile.getMetricNorm();
+			this.forceNorm = profile.getForceNorm();
+			this.forceShare = profile.getForceShare();
+			this.rootShare = rootShare;
+		}
+
+		/**
+		 * Returns the name of the node.
+		 * 
+		 * @return The node's name
+		 */
+		public String getName() {
+			return name;
+		}
+
+		/**
+		 * Returns how far below the snapshot's node the node is.
+		 * 
+		 * @return The depth, 0 for the snapshot's node
+		 */
+		public int getDepth() {
+			return depth;
+		}
+
+		/**
+		 * Returns the node's pushforward latencies.
+		 * 
+		 * @return The pushforward histogram
+		 */
+		public LatencyHistogram.Snapshot getPushforward() {
+			return pushforward;
+		}
+
+		/**
+		 * Returns the node's evaluation latencies, empty for inner nodes.
+		 * 
+		 * @return The evaluation histogram
+		 */
+		public LatencyHistogram.Snapshot getEvaluate() {
+			return evaluate;
+		}
+
+		/**
+		 * Returns the node's pullback latencies.
+		 * 
+		 * @return The pullback histogram
+		 */
+		public LatencyHistogram.Snapshot getPullback() {
+			return pullback;
+		}
+
+		/**
+		 * Returns the Frobenius norm of the node's metric.
+		 * 
+		 * @return The metric magnitude
+		 */
+		public double getMetricNorm() {
+			return metricNorm;
+		}
+
+		/**
+		 * Returns the norm of the force the node added to its parent.
+		 * 
+		 * @return The pulled back force magnitude
+		 */
+		public double getForceNorm() {
+			return forceNorm;
+		}
+
+		/**
+		 * Returns the node's share of the force norms of it and its siblings.
+		 * 
+		 * @return The share of the parent's force, between 0 and 1
+		 */
+		public double getForceShare() {
+			return forceShare;
+		}
+
+		/**
+		 * Returns the node's estimated share of the snapshot's node's force.
+		 * 
+		 * @return The share of the root force, between 0 and 1
+		 */
+		public double getRootShare() {
+			return rootShare;
+		}
+	}
+}
@@ -1,13 +1,33 @@
 package com.titanrobotics2022.motion.generation.rmpflow;
 
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import org.ejml.data.DMatrixRMaj;
 import org.ejml.simple.SimpleMatrix;
 
 /**
  * The root node of an RMP tree.
  * Includes implementation as described in the
  * <a href="https://arxiv.org/abs/1811.07049">RMPFlow Section 3.5</a>.
+ * <p>
+ * Every evaluation of the tree, whether through {@link #solve(DMatrixRMaj,
+ * DMatrixRMaj, DMatrixRMaj)}, an {@link RMPEvaluationContext}, an
+ * {@link RMPFlowPlan} or an {@link RMPBatch}, runs inside an evaluation epoch.
+ * Code that unlinks nodes from another thread and wants to reuse them, such as
+ * {@link com.titanrobotics2022.motion.generation.rmpflow.rmps.ObstacleSet},
+ * notes the epoch after unlinking a node and calls {@link #advanceEpoch()}
+ * later. Once the epoch is two past the noted one, every evaluation that could
+ * have seen the node has finished.
+ * <p>
+ * Plans and batches compiled with {@link #compile()} keep the nodes they were
+ * compiled with, so the epoch does not cover them: once one has been compiled,
+ * {@link #hasCompiledPlans()} is true and unlinked nodes must not be reused.
  */
 public class RMPRoot extends RMPNode {
+	private volatile long epoch; // Current evaluation epoch
+	private final AtomicIntegerArray active = new AtomicIntegerArray(2); // Evaluations in even and odd epochs
+	private volatile boolean compiled; // Whether a plan that keeps unlinked nodes was ever compiled
+
 	/**
 	 * A root node of an RMP tree.
 	 * 
@@ -24,20 +44,43 @@ public class RMPRoot extends RMPNode {
 	 * @param x_dot The differentiated state
 	 */
 	public void setRootState(SimpleMatrix x, SimpleMatrix x_dot) {
-		if (x.numRows() == 1) // Sets to column matrices
-			setX(x.transpose());
-		else
-			setX(x);
-		if (x_dot.numRows() == 1)
-			setXdot(x_dot.transpose());
-		else
-			setXdot(x_dot);
+		setRootState(x.getDDRM(), x_dot.getDDRM());
+	}
+
+	/**
+	 * Updates the states of the tree without allocating. Starts a new solve
+	 * generation, so Jacobians cached by the previous pushforward are not reused.
+	 * 
+	 * @param x     The state, as a row or column vector
+	 * @param x_dot The differentiated state, as a row or column vector
+	 */
+	public void setRootState(DMatrixRMaj x, DMatrixRMaj x_dot) {
+		setColumn(x, getX().getDDRM()); // Sets to column matrices
+		setColumn(x_dot, getXdot().getDDRM());
+		nextGeneration();
+	}
+
+	/**
+	 * Copies a vector into a column matrix. Row and column vectors share the
+	 * same row-major layout, so no transpose is needed.
+	 * 
+	 * @param src The row or column vector to copy
+	 * @param dst The column matrix to copy into
+	 */
+	static void setColumn(DMatrixRMaj src, DMatrixRMaj dst) {
+		dst.reshape(src.getNumElements(), 1);
+		System.arraycopy(src.data, 0, dst.data, 0, src.getNumElements());
 	}
 
+	/**
+	 * Propagates the root state to the whole tree. Children linked or unlinked
+	 * since the last pushforward, from any thread, are picked up here, so the
+	 * tree does not change during the rest of the solve.
+	 */
 	@Override
 	public void pushforward() {
-		for (int i = 0; i < getChildren().size(); i++)
-			getChildren().get(i).pushforward();
+		syncChildren();
+		pushforwardChildren();
 	}
 
 	/**
@@ -58,9 +101,201 @@ public class RMPRoot extends RMPNode {
 	 */
 	public SimpleMatrix solve(SimpleMatrix x, SimpleMatrix x_dot) {
 		// System.out.println("Solving...");
-		setRootState(x, x_dot);
-		pushforward();
-		pullback();
-		return resolve();
+		DMatrixRMaj a = new DMatrixRMaj(1, 1);
+		solve(x.getDDRM(), x_dot.getDDRM(), a);
+		return SimpleMatrix.wrap(a);
+	}
+
+	/**
+	 * Freezes the current structure of the tree into a flat evaluation plan.
+	 * Later changes to the tree's structure are not seen by the plan.
+	 * 
+	 * @return A plan that solves this tree without recursion.
+	 */
+	public RMPFlowPlan compile() {
+		return new RMPFlowPlan(this);
+	}
+
+	/**
+	 * Creates a context for solving this tree from another thread. Every
+	 * thread solving the tree at the same time needs its own context.
+	 * 
+	 * @return A new evaluation context for this tree
+	 */
+	public RMPEvaluationContext createContext() {
+		return new RMPEvaluationContext(this);
+	}
+
+	/**
+	 * Updates the state of the tree and solves for the desired output into a
+	 * caller-provided matrix. Once the tree's workspaces have been sized by a
+	 * first solve, this does not allocate as long as every node overrides the
+	 * in-place task map and policy methods.
+	 * 
+	 * @param x     The state
+	 * @param x_dot The differentiated state
+	 * @param a     The resolved acceleration, reshaped as needed
+	 */
+	public void solve(DMatrixRMaj x, DMatrixRMaj x_dot, DMatrixRMaj a) {
+		long epoch = enter();
+		try {
+			// Events are only created while a recording has them enabled, so other
+			// solves neither allocate events nor time themselves
+			SolveEvent solve = null;
+			SolvePhaseEvent pushforward = null, pullback = null, resolve = null;
+			if (SolveEvent.isTypeEnabled()) {
+				solve = new SolveEvent();
+				pushforward = new SolvePhaseEvent();
+				pullback = new SolvePhaseEvent();
+				resolve = new SolvePhaseEvent();
+				solve.begin();
+				pushforward.begin();
+			}
+			setRootState(x, x_dot);
+			pushforward();
+			String path = null;
+			if (solve != null) {
+				pushforward.end();
+				path = getPullbackPath();
+				pullback.begin();
+			}
+			pullback();
+			long fallbacks = 0;
+			if (solve != null) {
+				pullback.end();
+				fallbacks = getFallbackCount();
+				resolve.begin();
+			}
+			getA(a);
+			if (solve != null) {
+				resolve.end();
+				solve.end();
+				commitEvents(solve, pushforward, pullback, resolve, x, path, fallbacks);
+			}
+		} finally {
+			leave(epoch);
+		}
+	}
+
+	/**
+	 * Starts an evaluation of the tree. Every call must be followed by a call
+	 * to {@link #leave(long)} once the evaluation has stopped reading nodes.
+	 * 
+	 * @return The epoch the evaluation runs in
+	 */
+	long enter() {
+		while (true) {
+			long e = epoch;
+			active.incrementAndGet((int) (e & 1));
+			if (epoch == e) // Otherwise the epoch advanced before the evaluation was counted in it
+				return e;
+			active.decrementAndGet((int) (e & 1));
+		}
+	}
+
+	/**
+	 * Ends an evaluation of the tree.
+	 * 
+	 * @param epoch The epoch returned by {@link #enter()}
+	 */
+	void leave(long epoch) {
+		active.decrementAndGet((int) (epoch & 1));
+	}
+
+	/**
+	 * Advances the evaluation epoch if no evaluation from the epoch before the
+	 * current one is still running. A node unlinked in epoch e can be reused
+	 * once the epoch is at least e + 2. Safe to call from any thread.
+	 * 
+	 * @return The current epoch
+	 */
+	public synchronized long advanceEpoch() {
+		long e = epoch;
+		if (active.get((int) ((e + 1) & 1)) == 0) // Evaluations from epoch e - 1 have finished
+			epoch = ++e;
+		return e;
+	}
+
+	/**
+	 * Returns the current evaluation epoch. See {@link #advanceEpoch()}.
+	 * 
+	 * @return The current epoch
+	 */
+	public long getEpoch() {
+		return epoch;
+	}
+
+	/**
+	 * Notes that a plan that does not follow changes to the tree is being
+	 * compiled. Called before the plan reads the tree's children, so code that
+	 * unlinks a node and then finds this false knows no such plan holds it.
+	 */
+	void markCompiled() {
+		compiled = true;
+	}
+
+	/**
+	 * Returns whether a plan or batch that keeps the nodes it was compiled with
+	 * has ever been compiled from this tree. Plans compiled by evaluation
+	 * contexts follow changes to the tree and do not count.
+	 * 
+	 * @return Whether nodes unlinked from now on may still be solved by a plan
+	 */
+	public boolean hasCompiledPlans() {
+		return compiled;
+	}
+
+	private long getFallbackCount() {
+		MetricSolver solver = getMetricSolver();
+		return solver instanceof CholeskyMetricSolver ? ((CholeskyMetricSolver) solver).getFallbackCount() : 0;
+	}
+
+	/**
+	 * Commits the Flight Recorder events of a solve and of each of its phases
+	 * that are longer than their thresholds.
+	 */
+	private void commitEvents(SolveEvent solve, SolvePhaseEvent pushforward, SolvePhaseEvent pullback,
+			SolvePhaseEvent resolve, DMatrixRMaj x, String path, long fallbacks) {
+		MetricSolver solver = getMetricSolver();
+		String solverPath = solver.getClass().getSimpleName();
+		if (solver instanceof CholeskyMetricSolver)
+			solverPath = getFallbackCount() > fallbacks ? "pseudo-inverse fallback" : "cholesky";
+		int[] counts = null;
+		if (solve.shouldCommit()) {
+			counts = countNodes();
+			solve.tree = getName();
+			solve.nodes = counts[0];
+			solve.leaves = counts[1];
+			solve.dimension = x.getNumElements();
+			solve.pullback = path;
+			solve.solver = solverPath;
+			solve.commit();
+		}
+		counts = commitPhase(pushforward, "pushforward", counts, x, path, solverPath);
+		counts = commitPhase(pullback, "pullback", counts, x, path, solverPath);
+		commitPhase(resolve, "resolve", counts, x, path, solverPath);
+	}
+
+	private int[] commitPhase(SolvePhaseEvent event, String phase, int[] counts, DMatrixRMaj x, String path,
+			String solverPath) {
+		if (!event.shouldCommit())
+			return counts;
+		if (counts == null)
+			counts = countNodes();
+		event.tree = getName();
+		event.phase = phase;
+		event.nodes = counts[0];
+		event.leaves = counts[1];
+		event.dimension = x.getNumElements();
+		event.pullback = path;
+		event.solver = solverPath;
+		event.commit();
+		return counts;
+	}
+
+	private int[] countNodes() {
+		int[] counts = new int[2];
+		count(counts);
+		return counts;
 	}
 }
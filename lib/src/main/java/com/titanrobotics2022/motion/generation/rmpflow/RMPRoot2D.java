@@ -0,0 +1,169 @@
+package com.titanrobotics2022.motion.generation.rmpflow;
+
+import java.util.ArrayList;
+
+import org.ejml.UtilEjml;
+import org.ejml.data.DMatrix2;
+import org.ejml.data.DMatrix2x2;
+import static org.ejml.dense.fixed.CommonOps_DDF2.*;
+
+/**
+ * The root node of a planar RMP tree.
+ * <p>
+ * A fixed-size counterpart of {@link RMPRoot} for trees whose configuration
+ * space is 2-d, such as a drivetrain's position. State, forces and metrics are
+ * stored in {@link DMatrix2} and {@link DMatrix2x2}, leaves are pulled back
+ * directly into the root, and a = M†f is resolved with a closed-form 2x2
+ * pseudo-inverse instead of an SVD. Produces the same accelerations as the
+ * equivalent {@link RMPRoot} tree.
+ */
+public class RMPRoot2D {
+	private final String name;
+	private final ArrayList<RMPLeaf2D> children = new ArrayList<RMPLeaf2D>();
+	private final DMatrix2 x = new DMatrix2(), x_dot = new DMatrix2(), f = new DMatrix2();
+	private final DMatrix2x2 m = new DMatrix2x2(), mInv = new DMatrix2x2();
+
+	/**
+	 * A root node of a planar RMP tree.
+	 * 
+	 * @param name The name of the tree
+	 */
+	public RMPRoot2D(String name) {
+		this.name = name;
+	}
+
+	/**
+	 * Adds a leaf to the tree.
+	 * 
+	 * @param child A leaf
+	 */
+	public void linkChild(RMPLeaf2D child) {
+		children.add(child);
+	}
+
+	/**
+	 * Removes a leaf from the tree.
+	 * 
+	 * @param child The leaf to remove
+	 * @return True, if the leaf was in the tree, or false, otherwise.
+	 */
+	public boolean unlinkChild(RMPLeaf2D child) {
+		for (int i = 0; i < children.size(); i++) {
+			if (children.get(i) == child) { // Object reference check
+				children.remove(i);
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Returns all leaves.
+	 * 
+	 * @return An array list of all leaves.
+	 */
+	public ArrayList<RMPLeaf2D> getChildren() {
+		return children;
+	}
+
+	/**
+	 * Updates the state of the tree and solves for the desired acceleration.
+	 * 
+	 * @param x     The state
+	 * @param x_dot The differentiated state
+	 * @param a     The resolved acceleration
+	 */
+	public void solve(DMatrix2 x, DMatrix2 x_dot, DMatrix2 a) {
+		this.x.setTo(x);
+		this.x_dot.setTo(x_dot);
+		f.zero();
+		m.zero();
+		for (int i = 0; i < children.size(); i++)
+			children.get(i).pullback(this.x, this.x_dot, f, m);
+		pseudoInverse(m, mInv);
+		mult(mInv, f, a);
+	}
+
+	/**
+	 * Updates the state of the tree and solves for the desired acceleration.
+	 * 
+	 * @param x     The state
+	 * @param x_dot The differentiated state
+	 * @return The resolved acceleration
+	 */
+	public DMatrix2 solve(DMatrix2 x, DMatrix2 x_dot) {
+		DMatrix2 a = new DMatrix2();
+		solve(x, x_dot, a);
+		return a;
+	}
+
+	/**
+	 * Computes the Moore-Penrose inverse of a symmetric 2x2 matrix in closed
+	 * form. Metrics pulled back from symmetric leaf metrics are symmetric.
+	 * <p>
+	 * M is inverted directly when both of its eigenvalues are significant.
+	 * Otherwise only the eigenvalues above the same threshold used by EJML's
+	 * SVD pseudo-inverse are inverted: with M = Σ λ_i * v_i * v_iT, M† = Σ v_i
+	 * * v_iT / λ_i.
+	 * 
+	 * @param m   The symmetric matrix to invert
+	 * @param inv The pseudo-inverse. Can not be the same as `m`.
+	 */
+	public static void pseudoInverse(DMatrix2x2 m, DMatrix2x2 inv) {
+		double b = .5 * (m.a12 + m.a21);
+		double mean = .5 * (m.a11 + m.a22);
+		double radius = Math.hypot(.5 * (m.a11 - m.a22), b);
+		double l1 = mean + radius, l2 = mean - radius;
+		double tau = UtilEjml.EPS * 2 * Math.max(Math.abs(l1), Math.abs(l2));
+		boolean use1 = Math.abs(l1) > tau, use2 = Math.abs(l2) > tau;
+		if (use1 && use2 && invert(m, inv))
+			return;
+		inv.zero();
+		if (!use1 && !use2)
+			return;
+		if (radius == 0) { // m is a multiple of the identity
+			inv.a11 = inv.a22 = 1 / mean;
+			return;
+		}
+		double theta = .5 * Math.atan2(2 * b, m.a11 - m.a22);
+		double c = Math.cos(theta), s = Math.sin(theta);
+		if (use1) // v1 = (c, s)
+			addOuter(inv, c, s, 1 / l1);
+		if (use2) // v2 = (-s, c)
+			addOuter(inv, -s, c, 1 / l2);
+	}
+
+	private static void addOuter(DMatrix2x2 out, double v1, double v2, double scale) {
+		out.a11 += v1 * v1 * scale;
+		out.a12 += v1 * v2 * scale;
+		out.a21 += v2 * v1 * scale;
+		out.a22 += v2 * v2 * scale;
+	}
+
+	/**
+	 * Returns the root's current force
+	 * 
+	 * @return The force motion policy
+	 */
+	public DMatrix2 getF() {
+		return f;
+	}
+
+	/**
+	 * Returns the root's current metric
+	 * 
+	 * @return The inertia matrix
+	 */
+	public DMatrix2x2 getM() {
+		return m;
+	}
+
+	/**
+	 * Returns the name of the tree
+	 * 
+	 * @return The name of the tree
+	 */
+	public String getName() {
+		return name;
+	}
+}
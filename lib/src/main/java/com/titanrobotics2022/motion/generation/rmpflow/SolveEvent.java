@@ -0,0 +1,55 @@
+package com.titanrobotics2022.motion.generation.rmpflow;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * Flight Recorder event for a whole {@link RMPRoot} solve. Only solves longer
+ * than the threshold, 1 ms unless the recording's settings change it, are
+ * committed, so a recording shows latency spikes rather than every tick.
+ */
+@Name("com.titanrobotics2022.RMPSolve")
+@Label("RMP Solve")
+@Description("Solving an RMP tree for the acceleration of its root state")
+@Category({ "Titan Robotics", "RMPflow" })
+@StackTrace(false)
+@Threshold("1 ms")
+class SolveEvent extends Event {
+	private static final EventType TYPE = EventType.getEventType(SolveEvent.class);
+
+	@Label("Tree")
+	String tree;
+
+	@Label("Nodes")
+	@Description("Number of nodes in the tree, including the root")
+	int nodes;
+
+	@Label("Leaves")
+	int leaves;
+
+	@Label("Dimension")
+	@Description("Dimension of the root state")
+	int dimension;
+
+	@Label("Pullback Path")
+	@Description("How the root pulled back its children: serial, parallel or incremental")
+	String pullback;
+
+	@Label("Metric Solver")
+	@Description("How a = M†f was resolved")
+	String solver;
+
+	/**
+	 * Determines whether a recording is running with this event enabled, so
+	 * solves only create events while they can be recorded.
+	 */
+	static boolean isTypeEnabled() {
+		return TYPE.isEnabled();
+	}
+}
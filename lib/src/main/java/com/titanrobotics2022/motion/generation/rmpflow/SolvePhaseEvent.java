@@ -0,0 +1,49 @@
+package com.titanrobotics2022.motion.generation.rmpflow;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * Flight Recorder event for one phase of an {@link RMPRoot} solve: the
+ * pushforward, the pullback or resolving the root's acceleration. Recorded
+ * while {@link SolveEvent} is enabled, and committed when the phase is longer
+ * than its own threshold.
+ */
+@Name("com.titanrobotics2022.RMPSolvePhase")
+@Label("RMP Solve Phase")
+@Description("One phase of solving an RMP tree")
+@Category({ "Titan Robotics", "RMPflow" })
+@StackTrace(false)
+@Threshold("1 ms")
+class SolvePhaseEvent extends Event {
+	@Label("Tree")
+	String tree;
+
+	@Label("Phase")
+	@Description("pushforward, pullback or resolve")
+	String phase;
+
+	@Label("Nodes")
+	@Description("Number of nodes in the tree, including the root")
+	int nodes;
+
+	@Label("Leaves")
+	int leaves;
+
+	@Label("Dimension")
+	@Description("Dimension of the root state")
+	int dimension;
+
+	@Label("Pullback Path")
+	@Description("How the root pulled back its children: serial, parallel or incremental")
+	String pullback;
+
+	@Label("Metric Solver")
+	@Description("How a = M†f was resolved")
+	String solver;
+}
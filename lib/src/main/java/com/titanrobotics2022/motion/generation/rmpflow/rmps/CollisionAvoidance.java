@@ -3,6 +3,7 @@ package com.titanrobotics2022.motion.generation.rmpflow.rmps;
 import com.titanrobotics2022.motion.generation.rmpflow.RMPLeaf;
 import com.titanrobotics2022.motion.generation.rmpflow.RMPNode;
 
+import org.ejml.data.DMatrixRMaj;
 import org.ejml.simple.SimpleMatrix;
 
 import edu.wpi.first.math.geometry.Pose2d;
@@ -20,6 +21,7 @@ public class CollisionAvoidance extends RMPLeaf {
 	// epsilon(ɛ): small positive scalar for avoidance metric
 	private double r, alpha, eta, epsilon;
 	private SimpleMatrix center; // location of center of circular obstacle
+	private double[] c; // backing array of center
 
 	/**
 	 * A 1-d distance subtask space collision avoidance RMP Node between obstacle
@@ -45,6 +47,7 @@ public class CollisionAvoidance extends RMPLeaf {
 			this.center = center.transpose();
 		else
 			this.center = center;
+		this.c = this.center.getDDRM().data;
 	}
 
 	/**
@@ -74,7 +77,15 @@ public class CollisionAvoidance extends RMPLeaf {
 	 * @return 1-d matrix
 	 */
 	public SimpleMatrix psi(SimpleMatrix q) {
-		return new SimpleMatrix(1, 1, false, new double[] { q.minus(center).normF() / r - 1 }).transpose();
+		DMatrixRMaj out = new DMatrixRMaj(1, 1);
+		psi(q.getDDRM(), out);
+		return SimpleMatrix.wrap(out);
+	}
+
+	@Override
+	public void psi(DMatrixRMaj q, DMatrixRMaj out) {
+		out.reshape(1, 1);
+		out.data[0] = distance(q) / r - 1;
 	}
 
 	/**
@@ -85,8 +96,17 @@ public class CollisionAvoidance extends RMPLeaf {
 	 * @return // TODO: Describe what a jacobian respresents in this instance
 	 */
 	public SimpleMatrix j(SimpleMatrix q) {
-		double scale = 1 / q.minus(center).normF();
-		return q.minus(center).transpose().divide(r).scale(scale);
+		DMatrixRMaj out = new DMatrixRMaj(1, c.length);
+		j(q.getDDRM(), out);
+		return SimpleMatrix.wrap(out);
+	}
+
+	@Override
+	public void j(DMatrixRMaj q, DMatrixRMaj out) {
+		double scale = 1 / (distance(q) * r);
+		out.reshape(1, c.length);
+		for (int i = 0; i < c.length; i++)
+			out.data[i] = (q.data[i] - c[i]) * scale;
 	}
 
 	/**
@@ -108,10 +128,93 @@ public class CollisionAvoidance extends RMPLeaf {
 	 *         this instance
 	 */
 	public SimpleMatrix j_dot(SimpleMatrix q, SimpleMatrix q_dot) {
-		SimpleMatrix a = q.minus(center).mult(q.minus(center).transpose())
-				.scale(-1 / Math.pow(q.minus(center).normF(), 3));
-		SimpleMatrix b = a.plus(SimpleMatrix.identity(center.getNumElements()).scale(1 / q.minus(center).normF()));
-		return q_dot.transpose().mult(b).divide(r);
+		DMatrixRMaj out = new DMatrixRMaj(1, c.length);
+		j_dot(q.getDDRM(), q_dot.getDDRM(), out);
+		return SimpleMatrix.wrap(out);
+	}
+
+	/**
+	 * Expands j_dot(q, q_dot) = q_dotT * b / r elementwise, which avoids
+	 * forming a and b:
+	 * <p>
+	 * j_dot_i = (q_dot_i / ||q - center|| - (q_dot . (q - center)) * (q -
+	 * center)_i / ||q - center||^3) / r
+	 */
+	@Override
+	public void j_dot(DMatrixRMaj q, DMatrixRMaj q_dot, DMatrixRMaj out) {
+		double dist = distance(q);
+		double dot = 0;
+		for (int i = 0; i < c.length; i++)
+			dot += q_dot.data[i] * (q.data[i] - c[i]);
+		double s1 = 1 / (dist * r);
+		double s3 = dot / (dist * dist * dist * r);
+		out.reshape(1, c.length);
+		for (int i = 0; i < c.length; i++)
+			out.data[i] = q_dot.data[i] * s1 - (q.data[i] - c[i]) * s3;
+	}
+
+	/**
+	 * Shares the distance to the center between psi, J and J_dot.
+	 */
+	@Override
+	public void taskMap(DMatrixRMaj q, DMatrixRMaj q_dot, DMatrixRMaj x, DMatrixRMaj J, DMatrixRMaj J_dot) {
+		double dist = distance(q);
+		double dot = 0;
+		for (int i = 0; i < c.length; i++)
+			dot += q_dot.data[i] * (q.data[i] - c[i]);
+		double s1 = 1 / (dist * r);
+		double s3 = dot / (dist * dist * dist * r);
+		x.reshape(1, 1);
+		x.data[0] = dist / r - 1;
+		J.reshape(1, c.length);
+		J_dot.reshape(1, c.length);
+		for (int i = 0; i < c.length; i++) {
+			J.data[i] = (q.data[i] - c[i]) * s1;
+			J_dot.data[i] = q_dot.data[i] * s1 - (q.data[i] - c[i]) * s3;
+		}
+	}
+
+	@Override
+	protected boolean hasBatchKernel(int dim) {
+		return getClass() == CollisionAvoidance.class && dim == c.length;
+	}
+
+	/**
+	 * Fuses {@link #taskMap(DMatrixRMaj, DMatrixRMaj, DMatrixRMaj, DMatrixRMaj, DMatrixRMaj)},
+	 * the scalar force and metric and the pullback of the 1-d RMP:
+	 * <p>
+	 * f += J * (force - metric * (J_dot . q_dot))
+	 * <p>
+	 * M += metric * JT * J
+	 */
+	@Override
+	protected void pullbackBatch(double[] q, double[] q_dot, int dim, int k, int from, int to, double[] f,
+			double[] m) {
+		for (int l = from; l < to; l++) {
+			double sum = 0, dot = 0;
+			for (int i = 0, j = l; i < dim; i++, j += k) {
+				double d = q[j] - c[i];
+				sum += d * d;
+				dot += q_dot[j] * d;
+			}
+			double dist = Math.sqrt(sum);
+			double s1 = 1 / (dist * r);
+			double s3 = dot / (dist * dist * dist * r);
+			double x_dot = 0, curvature = 0;
+			for (int i = 0, j = l; i < dim; i++, j += k) {
+				x_dot += (q[j] - c[i]) * s1 * q_dot[j];
+				curvature += (q_dot[j] * s1 - (q[j] - c[i]) * s3) * q_dot[j];
+			}
+			double x = dist / r - 1;
+			double mx = metric(x, x_dot, epsilon);
+			double correction = force(x, x_dot, alpha, eta, epsilon) - mx * curvature;
+			for (int i = 0, j = l; i < dim; i++, j += k) {
+				double J_i = (q[j] - c[i]) * s1;
+				f[j] += J_i * correction;
+				for (int col = 0, jc = l; col < dim; col++, jc += k)
+					m[(i * dim + col) * k + l] += J_i * (mx * ((q[jc] - c[col]) * s1));
+			}
+		}
 	}
 
 	/**
@@ -143,27 +246,48 @@ public class CollisionAvoidance extends RMPLeaf {
 	 * @return The acceleration motion policy denoted F
 	 */
 	public SimpleMatrix solveF(SimpleMatrix x, SimpleMatrix x_dot) {
+		DMatrixRMaj out = new DMatrixRMaj(1, 1);
+		solveF(x.getDDRM(), x_dot.getDDRM(), out);
+		return SimpleMatrix.wrap(out);
+	}
+
+	@Override
+	public void solveF(DMatrixRMaj x, DMatrixRMaj x_dot, DMatrixRMaj f) {
+		f.reshape(1, 1);
+		f.data[0] = force(x.get(0, 0), x_dot.get(0, 0), alpha, eta, epsilon);
+	}
+
+	/**
+	 * Scalar form of {@link #solveF(SimpleMatrix, SimpleMatrix)}.
+	 * 
+	 * @param x       The subtask space state
+	 * @param x_dot   The subtask space derivative
+	 * @param alpha   The positive potenial function scalar
+	 * @param eta     The positive damping matrix scalar
+	 * @param epsilon A small positive scalar for avoidance metric
+	 * @return The acceleration motion policy denoted F
+	 */
+	static double force(double x, double x_dot, double alpha, double eta, double epsilon) {
 		double w;
 		double grad_w;
-		if (x.get(0, 0) < 0) {
+		if (x < 0) {
 			w = 1e10;
 			grad_w = 0;
 		} else {
-			w = 1 / Math.pow(x.get(0, 0), 4);
-			grad_w = -4 / Math.pow(x.get(0, 0), 5);
+			w = 1 / Math.pow(x, 4);
+			grad_w = -4 / Math.pow(x, 5);
 		}
 
-		double u = epsilon + Math.min(0, x_dot.get(0, 0)) * x_dot.get(0, 0);
+		double u = epsilon + Math.min(0, x_dot) * x_dot;
 		double g = w * u;
 
 		double grad_Phi = alpha * w * grad_w;
-		double xi = .5 * Math.pow(x_dot.get(0, 0), 2) * u * grad_w;
+		double xi = .5 * Math.pow(x_dot, 2) * u * grad_w;
 
-		double bx_dot = eta * g * x_dot.get(0, 0);
+		double bx_dot = eta * g * x_dot;
 
 		double f_double = -grad_Phi - xi - bx_dot;
-		return new SimpleMatrix(1, 1, false, new double[] { Math.min(Math.max(-1e10, f_double), 1e10) });
-
+		return Math.min(Math.max(-1e10, f_double), 1e10);
 	}
 
 	/**
@@ -189,20 +313,68 @@ public class CollisionAvoidance extends RMPLeaf {
 	 * @return The inertia matrix denoted M
 	 */
 	public SimpleMatrix solveM(SimpleMatrix x, SimpleMatrix x_dot) {
+		DMatrixRMaj out = new DMatrixRMaj(1, 1);
+		solveM(x.getDDRM(), x_dot.getDDRM(), out);
+		return SimpleMatrix.wrap(out);
+	}
+
+	@Override
+	public void solveM(DMatrixRMaj x, DMatrixRMaj x_dot, DMatrixRMaj m) {
+		m.reshape(1, 1);
+		m.data[0] = metric(x.get(0, 0), x_dot.get(0, 0), epsilon);
+	}
+
+	/**
+	 * Scalar form of {@link #solveM(SimpleMatrix, SimpleMatrix)}.
+	 * 
+	 * @param x       The subtask space state
+	 * @param x_dot   The subtask space derivative
+	 * @param epsilon A small positive scalar for avoidance metric
+	 * @return The inertia matrix denoted M
+	 */
+	static double metric(double x, double x_dot, double epsilon) {
 		double w;
-		if (x.get(0, 0) < 0) {
+		if (x < 0) {
 			w = 1e10;
 		} else {
-			w = 1 / Math.pow(x.get(0, 0), 4);
+			w = 1 / Math.pow(x, 4);
 		}
 
-		double u = epsilon + Math.min(0, x_dot.get(0, 0)) * x_dot.get(0, 0);
+		double u = epsilon + Math.min(0, x_dot) * x_dot;
 		double g = w * u;
 
-		double grad_u = 2 * Math.min(0, x_dot.get(0, 0));
+		double grad_u = 2 * Math.min(0, x_dot);
 
-		double m_double = g + .5 * x_dot.get(0, 0) * w * grad_u;
-		return new SimpleMatrix(1, 1, false, new double[] { Math.min(Math.max(-1e5, m_double), 1e5) });
+		double m_double = g + .5 * x_dot * w * grad_u;
+		return Math.min(Math.max(-1e5, m_double), 1e5);
+	}
+
+	/**
+	 * Returns the distance from a state to the center of the obstacle
+	 * 
+	 * @param q An R^N dimensional state
+	 * @return ||q - center||
+	 */
+	private double distance(DMatrixRMaj q) {
+		double sum = 0;
+		for (int i = 0; i < c.length; i++) {
+			double d = q.data[i] - c[i];
+			sum += d * d;
+		}
+		return Math.sqrt(sum);
+	}
+
+	/**
+	 * Moves and resizes the obstacle, so that the leaf can be reused for another
+	 * obstacle.
+	 * 
+	 * @param center The new location of the center of the obstacle
+	 * @param r      The new radius of the obstacle
+	 */
+	void reset(double[] center, double r) {
+		System.arraycopy(center, 0, c, 0, c.length);
+		this.r = r;
+		invalidate();
 	}
 
 	/**
@@ -0,0 +1,102 @@
+package com.titanrobotics2022.motion.generation.rmpflow.rmps;
+
+import com.titanrobotics2022.motion.generation.rmpflow.RMPDistanceLeaf2D;
+import com.titanrobotics2022.motion.generation.rmpflow.RMPRoot2D;
+
+import org.ejml.data.DMatrix2;
+
+/**
+ * Planar, fixed-size version of {@link CollisionAvoidance}.
+ * A 1-d distance subtask space collision avoidance between two points.
+ * Implementation of Section 3.1 Pairwise Collision Avoidance from
+ * <a href="https://arxiv.org/abs/1902.05177">Multi-Objective Policy Generation
+ * for Multi-Robot Systems Using Riemannian Motion Policies</a>
+ */
+public class CollisionAvoidance2D extends RMPDistanceLeaf2D {
+	private double r, alpha, eta, epsilon; // see CollisionAvoidance
+	private final DMatrix2 center = new DMatrix2(); // location of center of circular obstacle
+
+	/**
+	 * A 1-d distance subtask space collision avoidance RMP Node between obstacle
+	 * with radius r.
+	 * 
+	 * @param name    The name of the motion policy.
+	 * @param parent  The parent node of current RMP Node.
+	 * @param center  The location of the center of the circular obstacle.
+	 * @param r       The radius of the obstacle.
+	 * @param epsilon The positive damping matrix scalar
+	 * @param alpha   The positive potenial function scalar
+	 * @param eta     A small positive scalar for avoidance metric
+	 */
+	public CollisionAvoidance2D(String name, RMPRoot2D parent, DMatrix2 center, double r, double epsilon,
+			double alpha, double eta) {
+		super(name, parent);
+		this.r = r;
+		this.alpha = alpha;
+		this.eta = eta;
+		this.epsilon = epsilon;
+		this.center.setTo(center);
+	}
+
+	/**
+	 * z = psi(q,center) = ||q - center|| / r - 1
+	 */
+	@Override
+	public double psi(DMatrix2 q) {
+		return Math.hypot(q.a1 - center.a1, q.a2 - center.a2) / r - 1;
+	}
+
+	/**
+	 * ((q - center) / r) * 1 / ||q - center||
+	 */
+	@Override
+	public void j(DMatrix2 q, DMatrix2 out) {
+		double d1 = q.a1 - center.a1, d2 = q.a2 - center.a2;
+		double scale = 1 / (Math.hypot(d1, d2) * r);
+		out.a1 = d1 * scale;
+		out.a2 = d2 * scale;
+	}
+
+	/**
+	 * j_dot_i = (q_dot_i / ||q - center|| - (q_dot . (q - center)) * (q -
+	 * center)_i / ||q - center||^3) / r
+	 */
+	@Override
+	public void j_dot(DMatrix2 q, DMatrix2 q_dot, DMatrix2 out) {
+		double d1 = q.a1 - center.a1, d2 = q.a2 - center.a2;
+		double dist = Math.hypot(d1, d2);
+		double dot = q_dot.a1 * d1 + q_dot.a2 * d2;
+		double s1 = 1 / (dist * r);
+		double s3 = dot / (dist * dist * dist * r);
+		out.a1 = q_dot.a1 * s1 - d1 * s3;
+		out.a2 = q_dot.a2 * s1 - d2 * s3;
+	}
+
+	@Override
+	protected double solveF(double x, double x_dot) {
+		return CollisionAvoidance.force(x, x_dot, alpha, eta, epsilon);
+	}
+
+	@Override
+	protected double solveM(double x, double x_dot) {
+		return CollisionAvoidance.metric(x, x_dot, epsilon);
+	}
+
+	/**
+	 * Returns radius of the obstacle
+	 * 
+	 * @return The radius of obstacle.
+	 */
+	public double getRadius() {
+		return r;
+	}
+
+	/**
+	 * Returns the center of the obstacle
+	 * 
+	 * @return The center of the obstacle
+	 */
+	public DMatrix2 getCenter() {
+		return center;
+	}
+}
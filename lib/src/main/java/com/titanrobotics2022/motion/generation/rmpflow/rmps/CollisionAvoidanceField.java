@@ -0,0 +1,440 @@
+package com.titanrobotics2022.motion.generation.rmpflow.rmps;
+
+import java.util.Arrays;
+
+import com.titanrobotics2022.mapping.SpatialHashGrid;
+import com.titanrobotics2022.motion.generation.rmpflow.RMPLeaf;
+import com.titanrobotics2022.motion.generation.rmpflow.RMPNode;
+
+import org.ejml.data.DMatrixRMaj;
+import org.ejml.dense.row.CommonOps_DDRM;
+import org.ejml.simple.SimpleMatrix;
+
+/**
+ * Collision avoidance against many circular obstacles in a single leaf.
+ * <p>
+ * Mathematically equivalent to one {@link CollisionAvoidance} leaf per
+ * obstacle. The obstacles are stored as primitive arrays, and the leaf's task
+ * map is the identity, so its F and M are the summed pulled back contributions
+ * of every obstacle:
+ * <p>
+ * f = Σ J_iT * (f_i - m_i * J_dot_i * x_dot)
+ * <p>
+ * M = Σ J_iT * m_i * J_i
+ * <p>
+ * where J_i, f_i and m_i are the Jacobian, force and metric of the 1-d distance
+ * subtask space of obstacle i. Both sums are computed in one pass over the
+ * obstacles.
+ * <p>
+ * For planar fields, culling can be enabled with
+ * {@link #enableCulling(double, double, double)}. The obstacle centers are then
+ * kept in a {@link SpatialHashGrid}, and only obstacles whose surface is within
+ * the influence distance of the current state are evaluated. Each obstacle's f_i
+ * and m_i are scaled by a weight that falls smoothly from 1 to 0 across a blend
+ * band at the edge of the influence distance, so obstacles entering or leaving
+ * the influence distance do not make the policy discontinuous.
+ * <p>
+ * Obstacles may move at a constant velocity, such as other robots. The
+ * distance subtask space of a moving obstacle is then driven by the velocity
+ * of the state relative to the obstacle, so the barrier and its damping see
+ * the closing speed rather than the state's own speed. An obstacle that avoids
+ * the state in turn, such as another robot running the same policy, can be
+ * given a share of the responsibility: the state then only asks for that
+ * fraction of the relative acceleration, and the obstacle provides the rest,
+ * as when the pair's RMP is pulled back into both robots at once.
+ */
+public class CollisionAvoidanceField extends RMPLeaf {
+	private final int dim; // dimension of the configuration space
+	private int size; // number of obstacles
+	private double[] centers; // obstacle i's center is at [i * dim, (i + 1) * dim)
+	private double[] velocities; // obstacle i's velocity, laid out like centers
+	private double[] shares; // fraction of the avoidance of obstacle i left to the state
+	private double[] r, alpha, eta, epsilon; // see CollisionAvoidance
+	private SpatialHashGrid grid; // index of obstacle centers, null when not culling
+	private double influence, blend; // culling distance and width of the smooth cutoff
+	private double maxRadius; // largest radius ever added, to widen grid queries
+
+	/**
+	 * An empty collision avoidance field.
+	 *
+	 * @param name     The name of the motion policy.
+	 * @param parent   The parent node of current RMP Node.
+	 * @param dim      The dimension of the obstacle centers.
+	 * @param capacity The number of obstacles to allocate storage for.
+	 */
+	public CollisionAvoidanceField(String name, RMPNode parent, int dim, int capacity) {
+		super(name, parent);
+		if (dim <= 0)
+			throw new IllegalArgumentException("Dimension must be positive.");
+		this.dim = dim;
+		capacity = Math.max(capacity, 1);
+		centers = new double[capacity * dim];
+		velocities = new double[capacity * dim];
+		shares = new double[capacity];
+		r = new double[capacity];
+		alpha = new double[capacity];
+		eta = new double[capacity];
+		epsilon = new double[capacity];
+	}
+
+	/**
+	 * Adds a circular obstacle to the field.
+	 *
+	 * @param center  The location of the center of the circular obstacle.
+	 * @param r       The radius of the obstacle.
+	 * @param epsilon The positive damping matrix scalar
+	 * @param alpha   The positive potenial function scalar
+	 * @param eta     A small positive scalar for avoidance metric
+	 * @return The index of the new obstacle
+	 */
+	public int addObstacle(double[] center, double r, double epsilon, double alpha, double eta) {
+		return addObstacle(center, null, 1, r, epsilon, alpha, eta);
+	}
+
+	/**
+	 * Adds a circular obstacle moving at a constant velocity to the field.
+	 *
+	 * @param center   The location of the center of the circular obstacle.
+	 * @param velocity The velocity of the obstacle, or null if it is static.
+	 * @param share    The fraction of the avoidance the state is responsible
+	 *                 for, 1 for an obstacle that does not react and 0.5 for
+	 *                 another robot avoiding the state in the same way.
+	 * @param r        The radius of the obstacle.
+	 * @param epsilon  The positive damping matrix scalar
+	 * @param alpha    The positive potenial function scalar
+	 * @param eta      A small positive scalar for avoidance metric
+	 * @return The index of the new obstacle
+	 */
+	public int addObstacle(double[] center, double[] velocity, double share, double r, double epsilon, double alpha,
+			double eta) {
+		if (center.length != dim || (velocity != null && velocity.length != dim))
+			throw new IllegalArgumentException("Center and velocity must have dimension " + dim + ".");
+		if (!(share > 0) || share > 1)
+			throw new IllegalArgumentException("Share must be in (0, 1].");
+		if (size == this.r.length)
+			grow(size * 2);
+		int i = size++;
+		System.arraycopy(center, 0, centers, i * dim, dim);
+		if (velocity == null)
+			Arrays.fill(velocities, i * dim, (i + 1) * dim, 0);
+		else
+			System.arraycopy(velocity, 0, velocities, i * dim, dim);
+		shares[i] = share;
+		this.r[i] = r;
+		this.alpha[i] = alpha;
+		this.eta[i] = eta;
+		this.epsilon[i] = epsilon;
+		maxRadius = Math.max(maxRadius, r);
+		if (grid != null)
+			grid.insert(i, center[0], center[1]);
+		invalidate();
+		return i;
+	}
+
+	/**
+	 * Removes an obstacle from the field. The last obstacle is moved into the
+	 * removed obstacle's index.
+	 *
+	 * @param i The index of the obstacle to remove
+	 */
+	public void removeObstacle(int i) {
+		if (i < 0 || i >= size)
+			throw new IndexOutOfBoundsException(i);
+		int last = --size;
+		if (grid != null) {
+			grid.remove(last);
+			if (i != last)
+				grid.move(i, centers[last * dim], centers[last * dim + 1]);
+		}
+		System.arraycopy(centers, last * dim, centers, i * dim, dim);
+		System.arraycopy(velocities, last * dim, velocities, i * dim, dim);
+		shares[i] = shares[last];
+		r[i] = r[last];
+		alpha[i] = alpha[last];
+		eta[i] = eta[last];
+		epsilon[i] = epsilon[last];
+		invalidate();
+	}
+
+	/**
+	 * Moves an obstacle.
+	 *
+	 * @param i      The index of the obstacle
+	 * @param center The new location of the center of the obstacle
+	 */
+	public void setCenter(int i, double[] center) {
+		if (i < 0 || i >= size)
+			throw new IndexOutOfBoundsException(i);
+		System.arraycopy(center, 0, centers, i * dim, dim);
+		if (grid != null)
+			grid.move(i, center[0], center[1]);
+		invalidate();
+	}
+
+	/**
+	 * Sets the velocity of an obstacle.
+	 *
+	 * @param i        The index of the obstacle
+	 * @param velocity The new velocity of the obstacle
+	 */
+	public void setVelocity(int i, double[] velocity) {
+		if (i < 0 || i >= size)
+			throw new IndexOutOfBoundsException(i);
+		System.arraycopy(velocity, 0, velocities, i * dim, dim);
+		invalidate();
+	}
+
+	/** Removes every obstacle from the field. */
+	public void clear() {
+		size = 0;
+		if (grid != null)
+			grid.clear();
+		invalidate();
+	}
+
+	/**
+	 * Only evaluates obstacles near the current state. Obstacles are indexed
+	 * once here, and the index is then updated incrementally as obstacles are
+	 * added, moved or removed.
+	 *
+	 * @param influence The distance from an obstacle's surface beyond which it
+	 *                  is ignored
+	 * @param blend     The width of the band at the edge of the influence
+	 *                  distance over which an obstacle's weight falls from 1 to
+	 *                  0
+	 * @param cellSize  The cell size of the spatial index, typically close to
+	 *                  the influence distance
+	 */
+	public void enableCulling(double influence, double blend, double cellSize) {
+		if (dim != 2)
+			throw new UnsupportedOperationException("Culling is only supported for planar fields.");
+		if (!(blend > 0) || blend > influence)
+			throw new IllegalArgumentException("Blend must be positive and at most the influence distance.");
+		this.influence = influence;
+		this.blend = blend;
+		grid = new SpatialHashGrid(cellSize, r.length);
+		for (int i = 0; i < size; i++)
+			grid.insert(i, centers[i * dim], centers[i * dim + 1]);
+		invalidate();
+	}
+
+	/** Evaluates every obstacle on every tick. */
+	public void disableCulling() {
+		grid = null;
+		invalidate();
+	}
+
+	private void grow(int capacity) {
+		centers = Arrays.copyOf(centers, capacity * dim);
+		velocities = Arrays.copyOf(velocities, capacity * dim);
+		shares = Arrays.copyOf(shares, capacity);
+		r = Arrays.copyOf(r, capacity);
+		alpha = Arrays.copyOf(alpha, capacity);
+		eta = Arrays.copyOf(eta, capacity);
+		epsilon = Arrays.copyOf(epsilon, capacity);
+	}
+
+	@Override
+	public void psi(DMatrixRMaj q, DMatrixRMaj out) {
+		out.setTo(q);
+	}
+
+	@Override
+	public void j(DMatrixRMaj q, DMatrixRMaj out) {
+		out.reshape(dim, dim);
+		CommonOps_DDRM.setIdentity(out);
+	}
+
+	@Override
+	public void j_dot(DMatrixRMaj q, DMatrixRMaj q_dot, DMatrixRMaj out) {
+		out.reshape(dim, dim);
+		out.zero();
+	}
+
+	@Override
+	public SimpleMatrix psi(SimpleMatrix q) {
+		return q.copy();
+	}
+
+	@Override
+	public SimpleMatrix j(SimpleMatrix q) {
+		return SimpleMatrix.identity(dim);
+	}
+
+	@Override
+	public SimpleMatrix j_dot(SimpleMatrix q, SimpleMatrix q_dot) {
+		return new SimpleMatrix(dim, dim);
+	}
+
+	/**
+	 * Sums the pulled back RMPs of every obstacle. For obstacle i, with
+	 * d = q - center_i and v = q_dot - velocity_i:
+	 * <p>
+	 * z = ||d|| / r - 1, J = dT / (r * ||d||), z_dot = J * v
+	 * <p>
+	 * J_dot * v = (||v||^2 / ||d|| - (v . d)^2 / ||d||^3) / r
+	 * <p>
+	 * and f_i and m_i are the {@link CollisionAvoidance} policies at (z, z_dot).
+	 * The pulled back force is scaled by the obstacle's share.
+	 */
+	@Override
+	protected void evaluate(DMatrixRMaj x, DMatrixRMaj x_dot, DMatrixRMaj f, DMatrixRMaj m) {
+		evaluate(x, x_dot, f, m, getState());
+	}
+
+	@Override
+	protected void evaluate(DMatrixRMaj x, DMatrixRMaj x_dot, DMatrixRMaj f, DMatrixRMaj m, Object state) {
+		Scratch scratch = (Scratch) state;
+		f.reshape(dim, 1);
+		f.zero();
+		m.reshape(dim, dim);
+		m.zero();
+		double[] q = x.data, q_dot = x_dot.data;
+
+		if (grid == null) {
+			for (int i = 0; i < size; i++)
+				accumulate(i, 1, q, q_dot, scratch, f, m);
+			return;
+		}
+
+		if (scratch.candidates.length < size)
+			scratch.candidates = new int[r.length];
+		int[] candidates = scratch.candidates;
+		int count = grid.query(q[0], q[1], influence + maxRadius, candidates);
+		for (int c = 0; c < count; c++) {
+			int i = candidates[c];
+			double dx = q[0] - centers[i * dim], dy = q[1] - centers[i * dim + 1];
+			double gap = Math.sqrt(dx * dx + dy * dy) - r[i];
+			if (gap < influence)
+				accumulate(i, weight(gap), q, q_dot, scratch, f, m);
+		}
+	}
+
+	/**
+	 * Smooth cutoff weight of an obstacle, using smootherstep so the weight and
+	 * its first two derivatives are continuous.
+	 *
+	 * @param gap The distance from the state to the obstacle's surface
+	 * @return 1 inside the influence distance minus the blend, 0 beyond the
+	 *         influence distance, and a smooth transition between.
+	 */
+	private double weight(double gap) {
+		double t = (influence - gap) / blend;
+		if (t >= 1)
+			return 1;
+		if (t <= 0)
+			return 0;
+		return t * t * t * (t * (t * 6 - 15) + 10);
+	}
+
+	private void accumulate(int i, double weight, double[] q, double[] q_dot, Scratch scratch, DMatrixRMaj f,
+			DMatrixRMaj m) {
+		int offset = i * dim;
+		double[] diff = scratch.diff;
+		double dist2 = 0, dot = 0, v2 = 0;
+		for (int k = 0; k < dim; k++) {
+			double v = q_dot[k] - velocities[offset + k]; // relative to the obstacle
+			diff[k] = q[k] - centers[offset + k];
+			dist2 += diff[k] * diff[k];
+			dot += diff[k] * v;
+			v2 += v * v;
+		}
+		double dist = Math.sqrt(dist2);
+		double scale = 1 / (r[i] * dist); // J = diffT * scale
+		double z = dist / r[i] - 1;
+		double z_dot = dot * scale;
+		double curvature = (v2 - dot * dot / dist2) * scale;
+
+		double fi = weight * CollisionAvoidance.force(z, z_dot, alpha[i], eta[i], epsilon[i]);
+		double mi = weight * CollisionAvoidance.metric(z, z_dot, epsilon[i]);
+
+		double fScale = shares[i] * (fi - mi * curvature) * scale;
+		double mScale = mi * scale * scale;
+		for (int a = 0; a < dim; a++) {
+			f.data[a] += diff[a] * fScale;
+			for (int b = 0; b < dim; b++)
+				m.data[a * dim + b] += diff[a] * diff[b] * mScale;
+		}
+	}
+
+	/**
+	 * Scratch arrays for one context's evaluations.
+	 */
+	private static class Scratch {
+		private final double[] diff; // q - center
+		private int[] candidates = new int[0]; // grid query results
+
+		private Scratch(int dim) {
+			diff = new double[dim];
+		}
+	}
+
+	@Override
+	protected Object createState() {
+		return new Scratch(dim);
+	}
+
+	@Override
+	protected SimpleMatrix solveF(SimpleMatrix x, SimpleMatrix x_dot) {
+		DMatrixRMaj f = new DMatrixRMaj(dim, 1);
+		evaluate(x.getDDRM(), x_dot.getDDRM(), f, new DMatrixRMaj(dim, dim));
+		return SimpleMatrix.wrap(f);
+	}
+
+	@Override
+	protected SimpleMatrix solveM(SimpleMatrix x, SimpleMatrix x_dot) {
+		DMatrixRMaj m = new DMatrixRMaj(dim, dim);
+		evaluate(x.getDDRM(), x_dot.getDDRM(), new DMatrixRMaj(dim, 1), m);
+		return SimpleMatrix.wrap(m);
+	}
+
+	/**
+	 * Returns the number of obstacles in the field
+	 *
+	 * @return The number of obstacles
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Returns a coordinate of an obstacle's center
+	 *
+	 * @param i The index of the obstacle
+	 * @param k The coordinate
+	 * @return The k-th coordinate of the center of obstacle i
+	 */
+	public double getCenter(int i, int k) {
+		return centers[i * dim + k];
+	}
+
+	/**
+	 * Returns a component of an obstacle's velocity
+	 *
+	 * @param i The index of the obstacle
+	 * @param k The component
+	 * @return The k-th component of the velocity of obstacle i
+	 */
+	public double getVelocity(int i, int k) {
+		return velocities[i * dim + k];
+	}
+
+	/**
+	 * Returns the radius of an obstacle
+	 *
+	 * @param i The index of the obstacle
+	 * @return The radius of obstacle i
+	 */
+	public double getRadius(int i) {
+		return r[i];
+	}
+
+	/**
+	 * Returns the dimension of the obstacle centers
+	 *
+	 * @return The dimension of the configuration space
+	 */
+	public int getDimension() {
+		return dim;
+	}
+}
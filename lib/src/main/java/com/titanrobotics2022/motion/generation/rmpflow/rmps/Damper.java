@@ -3,6 +3,8 @@ package com.titanrobotics2022.motion.generation.rmpflow.rmps;
 import com.titanrobotics2022.motion.generation.rmpflow.RMPLeaf;
 import com.titanrobotics2022.motion.generation.rmpflow.RMPNode;
 
+import org.ejml.data.DMatrixRMaj;
+import org.ejml.dense.row.CommonOps_DDRM;
 import org.ejml.simple.SimpleMatrix;
 
 public class Damper extends RMPLeaf{
@@ -30,15 +32,65 @@ public class Damper extends RMPLeaf{
 		return new SimpleMatrix(2, 2);
 	}
 
+	@Override
+	public void psi(DMatrixRMaj q, DMatrixRMaj out)
+	{
+		out.setTo(q);
+	}
+
+	@Override
+	public void j(DMatrixRMaj q, DMatrixRMaj out)
+	{
+		out.reshape(2, 2);
+		CommonOps_DDRM.setIdentity(out);
+	}
+
+	@Override
+	public void j_dot(DMatrixRMaj q, DMatrixRMaj q_dot, DMatrixRMaj out)
+	{
+		out.reshape(2, 2);
+		out.zero();
+	}
+
+
+    @Override
+    protected boolean hasBatchKernel(int dim){
+        return getClass() == Damper.class && dim == 2;
+    }
+
+    // J is the identity and J_dot is zero, so the pullback adds F and M to the root's unchanged
+    @Override
+    protected void pullbackBatch(double[] q, double[] q_dot, int dim, int k, int from, int to, double[] f,
+            double[] m){
+        double scale = -(eta * w);
+        for (int j = from; j < to; j++) {
+            f[j] += scale * q_dot[j];
+            f[k + j] += scale * q_dot[k + j];
+            m[j] += w;
+            m[3 * k + j] += w;
+        }
+    }
 
     public SimpleMatrix solveF(SimpleMatrix x, SimpleMatrix x_dot){
         SimpleMatrix bx_dot = x_dot.scale(-(eta * w));
         return bx_dot;
     }
 
-    
+    @Override
+    public void solveF(DMatrixRMaj x, DMatrixRMaj x_dot, DMatrixRMaj f){
+        CommonOps_DDRM.scale(-(eta * w), x_dot, f);
+    }
+
+    // The metric is w * I so that it matches the 2x2 Jacobian during pullback
     public SimpleMatrix solveM(SimpleMatrix x, SimpleMatrix x_dot){
-        return new SimpleMatrix(1, 1, false, new double[]{w});
+        return SimpleMatrix.identity(2).scale(w);
+    }
+
+    @Override
+    public void solveM(DMatrixRMaj x, DMatrixRMaj x_dot, DMatrixRMaj m){
+        m.reshape(2, 2);
+        CommonOps_DDRM.setIdentity(m);
+        CommonOps_DDRM.scale(w, m);
     }
 
 }
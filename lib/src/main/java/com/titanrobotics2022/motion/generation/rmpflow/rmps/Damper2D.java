@@ -0,0 +1,47 @@
+package com.titanrobotics2022.motion.generation.rmpflow.rmps;
+
+import com.titanrobotics2022.motion.generation.rmpflow.RMPPlanarLeaf2D;
+import com.titanrobotics2022.motion.generation.rmpflow.RMPRoot2D;
+
+import org.ejml.data.DMatrix2;
+import org.ejml.data.DMatrix2x2;
+
+/**
+ * Planar, fixed-size version of {@link Damper}.
+ */
+public class Damper2D extends RMPPlanarLeaf2D {
+    private double w;
+    private double eta;
+
+    public Damper2D(String name, RMPRoot2D parent, double eta, double w) {
+        super(name, parent);
+        this.eta = eta;
+        this.w = w;
+    }
+
+    @Override
+    public void psi(DMatrix2 q, DMatrix2 out) {
+        out.setTo(q);
+    }
+
+    @Override
+    public void j(DMatrix2 q, DMatrix2x2 out) {
+        out.setTo(1, 0, 0, 1);
+    }
+
+    @Override
+    public void j_dot(DMatrix2 q, DMatrix2 q_dot, DMatrix2x2 out) {
+        out.zero();
+    }
+
+    @Override
+    protected void solveF(DMatrix2 x, DMatrix2 x_dot, DMatrix2 f) {
+        f.a1 = -(eta * w) * x_dot.a1;
+        f.a2 = -(eta * w) * x_dot.a2;
+    }
+
+    @Override
+    protected void solveM(DMatrix2 x, DMatrix2 x_dot, DMatrix2x2 m) {
+        m.setTo(w, 0, 0, w);
+    }
+}
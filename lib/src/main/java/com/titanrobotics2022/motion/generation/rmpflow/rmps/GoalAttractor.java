@@ -3,6 +3,9 @@ package com.titanrobotics2022.motion.generation.rmpflow.rmps;
 import com.titanrobotics2022.motion.generation.rmpflow.RMPLeaf;
 import com.titanrobotics2022.motion.generation.rmpflow.RMPNode;
 
+import org.ejml.data.DMatrixRMaj;
+import org.ejml.dense.row.CommonOps_DDRM;
+import org.ejml.dense.row.NormOps_DDRM;
 import org.ejml.simple.SimpleMatrix;
 
 /**
@@ -42,48 +45,150 @@ public class GoalAttractor extends RMPLeaf {
 		return q.minus(goal);
 	}
 
+	@Override
+	public void psi(DMatrixRMaj q, DMatrixRMaj out)
+	{
+		CommonOps_DDRM.subtract(q, goal.getDDRM(), out);
+	}
+
 	public SimpleMatrix j(SimpleMatrix q)
 	{
 		return jeye;
 	}
 
+	@Override
+	public void j(DMatrixRMaj q, DMatrixRMaj out)
+	{
+		out.reshape(goalSize, goalSize);
+		CommonOps_DDRM.setIdentity(out);
+	}
+
 	public SimpleMatrix j_dot(SimpleMatrix q, SimpleMatrix q_dot)
 	{
 		return new SimpleMatrix(goalSize, goalSize);
 	}
+
+	@Override
+	public void j_dot(DMatrixRMaj q, DMatrixRMaj q_dot, DMatrixRMaj out)
+	{
+		out.reshape(goalSize, goalSize);
+		out.zero();
+	}
 	
 	public SimpleMatrix solveF(SimpleMatrix x, SimpleMatrix x_dot)
 	{
-		double x_norm = x.normF();
+		DMatrixRMaj out = new DMatrixRMaj(goalSize, 1);
+		solveF(x.getDDRM(), x_dot.getDDRM(), out);
+		return SimpleMatrix.wrap(out);
+	}
+
+	/**
+	 * Computes -grad_Phi - bx_dot - xi elementwise, using
+	 * x_dot * x_dotT * grad_w = x_dot * (x_dot . grad_w) to avoid forming the
+	 * outer product.
+	 */
+	@Override
+	public void solveF(DMatrixRMaj x, DMatrixRMaj x_dot, DMatrixRMaj f)
+	{
+		double x_norm = NormOps_DDRM.normF(x);
 		
 		double beta = Math.exp(- Math.pow(x_norm, 2) / 2 / Math.pow(sigma, 2));
 		double w = (w_u - w_l) * beta + w_l;
 		double s = (1 - Math.exp(-2 * alpha * x_norm)) / (1 + Math.exp(-2 * alpha * x_norm));
 		
-		SimpleMatrix grad_Phi;
-		if(x_norm > tolerance)
-			grad_Phi = x.scale(s / x_norm * w * gain);
-		else
-			grad_Phi = new SimpleMatrix(x.numRows() , 1);
-		SimpleMatrix bx_dot = x_dot.scale(eta * w);
-		SimpleMatrix grad_w = x.scale(-beta * (w_u - w_l) / Math.pow(sigma, 2));
+		double grad_Phi_scale = x_norm > tolerance ? s / x_norm * w * gain : 0;
+		double grad_w_scale = -beta * (w_u - w_l) / Math.pow(sigma, 2);
 		
-		double x_dot_norm = x_dot.normF();
-		SimpleMatrix xi = grad_w.scale(Math.pow(x_dot_norm, 2)).minus(x_dot.mult(x_dot.transpose()).mult(grad_w).scale(2)).scale(-.5);
+		double x_dot_norm2 = 0, x_dot_grad_w = 0;
+		for (int i = 0; i < goalSize; i++) {
+			x_dot_norm2 += x_dot.data[i] * x_dot.data[i];
+			x_dot_grad_w += x_dot.data[i] * x.data[i] * grad_w_scale;
+		}
 		
-		return grad_Phi.scale(-1).minus(bx_dot).minus(xi);
+		f.reshape(goalSize, 1);
+		for (int i = 0; i < goalSize; i++) {
+			double grad_Phi = x.data[i] * grad_Phi_scale;
+			double bx_dot = x_dot.data[i] * eta * w;
+			double xi = (x.data[i] * grad_w_scale * x_dot_norm2 - 2 * x_dot.data[i] * x_dot_grad_w) * -.5;
+			f.data[i] = -grad_Phi - bx_dot - xi;
+		}
+	}
+	
+	@Override
+	protected boolean hasBatchKernel(int dim)
+	{
+		return getClass() == GoalAttractor.class && dim == goalSize;
+	}
+
+	/**
+	 * Fuses psi, {@link #solveF(DMatrixRMaj, DMatrixRMaj, DMatrixRMaj)},
+	 * {@link #solveM(DMatrixRMaj, DMatrixRMaj, DMatrixRMaj)} and the pullback.
+	 * J is the identity and J_dot is zero, so the pullback adds F and M to the
+	 * root's unchanged. The norm of x is computed like
+	 * {@link NormOps_DDRM#normF(org.ejml.data.DMatrixD1)}, so every lane matches
+	 * a single solve exactly.
+	 */
+	@Override
+	protected void pullbackBatch(double[] q, double[] q_dot, int dim, int k, int from, int to, double[] f,
+			double[] m)
+	{
+		double[] g = goal.getDDRM().data;
+		for (int l = from; l < to; l++) {
+			double scale = 0;
+			for (int i = 0, j = l; i < dim; i++, j += k)
+				scale = Math.max(scale, Math.abs(q[j] - g[i]));
+			double x_norm = 0;
+			if (scale != 0) {
+				double total = 0;
+				for (int i = 0, j = l; i < dim; i++, j += k) {
+					double v = (q[j] - g[i]) / scale;
+					total += v * v;
+				}
+				x_norm = scale * Math.sqrt(total);
+			}
+			
+			double beta = Math.exp(- Math.pow(x_norm, 2) / 2 / Math.pow(sigma, 2));
+			double w = (w_u - w_l) * beta + w_l;
+			double s = (1 - Math.exp(-2 * alpha * x_norm)) / (1 + Math.exp(-2 * alpha * x_norm));
+			
+			double grad_Phi_scale = x_norm > tolerance ? s / x_norm * w * gain : 0;
+			double grad_w_scale = -beta * (w_u - w_l) / Math.pow(sigma, 2);
+			
+			double x_dot_norm2 = 0, x_dot_grad_w = 0;
+			for (int i = 0, j = l; i < dim; i++, j += k) {
+				x_dot_norm2 += q_dot[j] * q_dot[j];
+				x_dot_grad_w += q_dot[j] * (q[j] - g[i]) * grad_w_scale;
+			}
+			
+			for (int i = 0, j = l; i < dim; i++, j += k) {
+				double x = q[j] - g[i];
+				double grad_Phi = x * grad_Phi_scale;
+				double bx_dot = q_dot[j] * eta * w;
+				double xi = (x * grad_w_scale * x_dot_norm2 - 2 * q_dot[j] * x_dot_grad_w) * -.5;
+				f[j] += -grad_Phi - bx_dot - xi;
+				m[(i * dim + i) * k + l] += w;
+			}
+		}
 	}
 	
 	public SimpleMatrix solveM(SimpleMatrix x, SimpleMatrix x_dot)
 	{
-		double x_norm = x.normF();
+		DMatrixRMaj out = new DMatrixRMaj(goalSize, goalSize);
+		solveM(x.getDDRM(), x_dot.getDDRM(), out);
+		return SimpleMatrix.wrap(out);
+	}
+
+	@Override
+	public void solveM(DMatrixRMaj x, DMatrixRMaj x_dot, DMatrixRMaj m)
+	{
+		double x_norm = NormOps_DDRM.normF(x);
 		
 		double beta = Math.exp(- Math.pow(x_norm, 2) / 2 / Math.pow(sigma, 2));
 		double w = (w_u - w_l) * beta + w_l;
 		
-		SimpleMatrix G = SimpleMatrix.identity(this.goal.numCols() * this.goal.numRows()).scale(w);
-
-		return G;
+		m.reshape(goalSize, goalSize);
+		CommonOps_DDRM.setIdentity(m);
+		CommonOps_DDRM.scale(w, m);
 	}
 	
 	public void updateGoal(SimpleMatrix goal)
@@ -0,0 +1,87 @@
+package com.titanrobotics2022.motion.generation.rmpflow.rmps;
+
+import com.titanrobotics2022.motion.generation.rmpflow.RMPPlanarLeaf2D;
+import com.titanrobotics2022.motion.generation.rmpflow.RMPRoot2D;
+
+import org.ejml.data.DMatrix2;
+import org.ejml.data.DMatrix2x2;
+
+/**
+ * Planar, fixed-size version of {@link GoalAttractor}.
+ * 
+ * From: <a href="https://arxiv.org/abs/1902.05177">Multi-Objective Policy Generation for Multi-Robot Systems Using Riemannian Motion Policies</a>
+ */
+public class GoalAttractor2D extends RMPPlanarLeaf2D {
+	private double w_u, w_l, sigma, alpha, eta, gain, tolerance;
+	private final DMatrix2 goal = new DMatrix2();
+
+	public GoalAttractor2D(String name, RMPRoot2D parent, DMatrix2 goal, double w_u, double w_l, double sigma
+			, double alpha, double eta, double gain, double tolerance)
+	{
+		super(name, parent);
+		this.w_u = w_u;
+		this.w_l = w_l;
+		this.sigma = sigma;
+		this.alpha = alpha;
+		this.eta = eta;
+		this.gain = gain;
+		this.tolerance = tolerance;
+		updateGoal(goal);
+	}
+
+	@Override
+	public void psi(DMatrix2 q, DMatrix2 out)
+	{
+		out.a1 = q.a1 - goal.a1;
+		out.a2 = q.a2 - goal.a2;
+	}
+
+	@Override
+	public void j(DMatrix2 q, DMatrix2x2 out)
+	{
+		out.setTo(1, 0, 0, 1);
+	}
+
+	@Override
+	public void j_dot(DMatrix2 q, DMatrix2 q_dot, DMatrix2x2 out)
+	{
+		out.zero();
+	}
+
+	@Override
+	protected void solveF(DMatrix2 x, DMatrix2 x_dot, DMatrix2 f)
+	{
+		double x_norm = Math.hypot(x.a1, x.a2);
+		
+		double beta = Math.exp(- Math.pow(x_norm, 2) / 2 / Math.pow(sigma, 2));
+		double w = (w_u - w_l) * beta + w_l;
+		double s = (1 - Math.exp(-2 * alpha * x_norm)) / (1 + Math.exp(-2 * alpha * x_norm));
+		
+		double grad_Phi_scale = x_norm > tolerance ? s / x_norm * w * gain : 0;
+		double grad_w_scale = -beta * (w_u - w_l) / Math.pow(sigma, 2);
+		
+		double x_dot_norm2 = x_dot.a1 * x_dot.a1 + x_dot.a2 * x_dot.a2;
+		double x_dot_grad_w = (x_dot.a1 * x.a1 + x_dot.a2 * x.a2) * grad_w_scale;
+		
+		double xi1 = (x.a1 * grad_w_scale * x_dot_norm2 - 2 * x_dot.a1 * x_dot_grad_w) * -.5;
+		double xi2 = (x.a2 * grad_w_scale * x_dot_norm2 - 2 * x_dot.a2 * x_dot_grad_w) * -.5;
+		f.a1 = -x.a1 * grad_Phi_scale - x_dot.a1 * eta * w - xi1;
+		f.a2 = -x.a2 * grad_Phi_scale - x_dot.a2 * eta * w - xi2;
+	}
+
+	@Override
+	protected void solveM(DMatrix2 x, DMatrix2 x_dot, DMatrix2x2 m)
+	{
+		double x_norm = Math.hypot(x.a1, x.a2);
+		
+		double beta = Math.exp(- Math.pow(x_norm, 2) / 2 / Math.pow(sigma, 2));
+		double w = (w_u - w_l) * beta + w_l;
+		
+		m.setTo(w, 0, 0, w);
+	}
+	
+	public void updateGoal(DMatrix2 goal)
+	{
+		this.goal.setTo(goal);
+	}
+}
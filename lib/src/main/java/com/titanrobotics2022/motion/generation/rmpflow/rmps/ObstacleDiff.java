@@ -0,0 +1,92 @@
+package com.titanrobotics2022.motion.generation.rmpflow.rmps;
+
+import java.util.Arrays;
+
+/**
+ * A batch of changes to an {@link ObstacleSet}, applied together by
+ * {@link ObstacleSet#apply(ObstacleDiff)}. Changes are stored in primitive
+ * arrays, so a diff can be cleared and refilled every perception frame
+ * without allocating.
+ */
+public class ObstacleDiff {
+	private int size;
+	private int[] ids = new int[16];
+	private boolean[] removals = new boolean[16];
+	private double[] xs = new double[16], ys = new double[16], radii = new double[16];
+
+	/**
+	 * Adds an obstacle, or replaces it if an obstacle with the same id is
+	 * already in the set.
+	 *
+	 * @param id The id of the obstacle
+	 * @param x  The x coordinate of the center of the obstacle
+	 * @param y  The y coordinate of the center of the obstacle
+	 * @param r  The radius of the obstacle
+	 */
+	public void put(int id, double x, double y, double r) {
+		int i = next(id);
+		xs[i] = x;
+		ys[i] = y;
+		radii[i] = r;
+	}
+
+	/**
+	 * Removes an obstacle. Does nothing if the set has no obstacle with this id.
+	 *
+	 * @param id The id of the obstacle
+	 */
+	public void remove(int id) {
+		removals[next(id)] = true;
+	}
+
+	/** Removes every change from the diff. */
+	public void clear() {
+		size = 0;
+	}
+
+	/**
+	 * Returns the number of changes in the diff.
+	 *
+	 * @return The number of changes
+	 */
+	public int size() {
+		return size;
+	}
+
+	private int next(int id) {
+		if (id < 0)
+			throw new IllegalArgumentException("Obstacle ids must be nonnegative.");
+		if (size == ids.length) {
+			int capacity = size * 2;
+			ids = Arrays.copyOf(ids, capacity);
+			removals = Arrays.copyOf(removals, capacity);
+			xs = Arrays.copyOf(xs, capacity);
+			ys = Arrays.copyOf(ys, capacity);
+			radii = Arrays.copyOf(radii, capacity);
+		}
+		int i = size++;
+		ids[i] = id;
+		removals[i] = false;
+		return i;
+	}
+
+	int getId(int i) {
+		return ids[i];
+	}
+
+	boolean isRemoval(int i) {
+		return removals[i];
+	}
+
+	double getX(int i) {
+		return xs[i];
+	}
+
+	double getY(int i) {
+		return ys[i];
+	}
+
+	double getRadius(int i) {
+		return radii[i];
+	}
+}
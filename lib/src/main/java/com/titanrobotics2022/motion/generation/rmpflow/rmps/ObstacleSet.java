@@ -0,0 +1,208 @@
+package com.titanrobotics2022.motion.generation.rmpflow.rmps;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+
+import com.titanrobotics2022.motion.generation.rmpflow.RMPEvaluationContext;
+import com.titanrobotics2022.motion.generation.rmpflow.RMPNode;
+import com.titanrobotics2022.motion.generation.rmpflow.RMPRoot;
+
+import org.ejml.simple.SimpleMatrix;
+
+/**
+ * A set of planar obstacles, each avoided by its own {@link CollisionAvoidance}
+ * leaf under a parent node, that can be updated from another thread while the
+ * tree is being solved.
+ * <p>
+ * Changes are applied in batches with {@link #apply(ObstacleDiff)}. Each batch
+ * replaces the parent's children in a single copy-on-write step, which the
+ * root picks up at the start of its next solve, so the control loop never
+ * waits on perception and never sees half of a batch. Moving an obstacle
+ * swaps in a new leaf rather than changing a leaf a solve may be reading.
+ * <p>
+ * Leaves that are removed are recycled through a pool. A removed leaf is only
+ * reused once the evaluation epoch of the tree's {@link RMPRoot} has advanced
+ * twice, which waits for every solve that could have seen the leaf to finish,
+ * whether it runs through the root, an {@link RMPEvaluationContext}, a plan or
+ * a batch. The epoch is advanced by every batch of changes, so leaves are
+ * reclaimed however the tree is solved.
+ * <p>
+ * Plans and batches compiled with {@link RMPRoot#compile()} keep evaluating
+ * the leaves they were compiled with, long after the leaves are removed, so
+ * once the tree has one ({@link RMPRoot#hasCompiledPlans()}) removed leaves
+ * are left to the garbage collector and every new obstacle gets a new leaf.
+ * Solve through the root or a context to follow the set without allocating.
+ * <p>
+ * Leaves are created without a parent and linked with
+ * {@link RMPNode#updateChildren(java.util.Collection, java.util.Collection)}
+ * once they are fully constructed, so a solve never sees a half-built leaf.
+ */
+public class ObstacleSet {
+	private final RMPNode parent;
+	private final double epsilon, alpha, eta; // see CollisionAvoidance
+	private CollisionAvoidance[] leaves = new CollisionAvoidance[16]; // Leaf of each id, null when absent
+	private int size;
+	private final ArrayDeque<CollisionAvoidance> pool = new ArrayDeque<CollisionAvoidance>();
+	private CollisionAvoidance[] retired = new CollisionAvoidance[16]; // Removed leaves, oldest first
+	private long[] retiredAt = new long[16]; // Evaluation epoch each leaf was removed in
+	private int retiredCount;
+	private final ArrayList<CollisionAvoidance> unlink = new ArrayList<CollisionAvoidance>(),
+			link = new ArrayList<CollisionAvoidance>(), // In the order they were added, may hold dropped leaves
+			dropped = new ArrayList<CollisionAvoidance>(); // Added and removed in the same batch
+	private final Set<CollisionAvoidance> linking = Collections
+			.newSetFromMap(new IdentityHashMap<CollisionAvoidance, Boolean>()); // Leaves of link still to be linked
+	private final double[] center = new double[2];
+	private long created; // Number of leaves ever created
+
+	/**
+	 * An empty set of obstacles.
+	 *
+	 * @param parent  The node to link the obstacles' leaves under, over a planar
+	 *                state
+	 * @param epsilon A small positive scalar for avoidance metric
+	 * @param alpha   The positive potenial function scalar
+	 * @param eta     The positive damping matrix scalar
+	 */
+	public ObstacleSet(RMPNode parent, double epsilon, double alpha, double eta) {
+		this.parent = parent;
+		this.epsilon = epsilon;
+		this.alpha = alpha;
+		this.eta = eta;
+	}
+
+	/**
+	 * Applies a batch of changes. Safe to call from any thread while the tree is
+	 * being solved; the changes are seen from the start of the next solve.
+	 *
+	 * @param diff The changes to apply, in order
+	 */
+	public synchronized void apply(ObstacleDiff diff) {
+		RMPRoot root = getRoot();
+		if (root != null)
+			reclaim(root.advanceEpoch());
+		for (int k = 0; k < diff.size(); k++) {
+			int id = diff.getId(k);
+			CollisionAvoidance old = id < leaves.length ? leaves[id] : null;
+			if (old != null) {
+				leaves[id] = null;
+				size--;
+				if (linking.remove(old)) // Added earlier in this batch, so never seen by a solve
+					dropped.add(old);
+				else
+					unlink.add(old);
+			}
+			if (diff.isRemoval(k))
+				continue;
+
+			center[0] = diff.getX(k);
+			center[1] = diff.getY(k);
+			CollisionAvoidance leaf = obtain(center, diff.getRadius(k));
+			if (id >= leaves.length)
+				leaves = Arrays.copyOf(leaves, Math.max(id + 1, leaves.length * 2));
+			leaves[id] = leaf;
+			size++;
+			link.add(leaf);
+			linking.add(leaf);
+		}
+		if (!dropped.isEmpty()) {
+			link.removeIf(leaf -> !linking.contains(leaf));
+			for (int k = 0; k < dropped.size(); k++)
+				pool.push(dropped.get(k));
+			dropped.clear();
+		}
+		parent.updateChildren(unlink, link);
+		// Both read after the leaves are unlinked: any solve that saw them entered in this epoch or before, and
+		// any plan compiled from now on cannot see them
+		long epoch = root != null ? root.getEpoch() : 0;
+		if (root == null || !root.hasCompiledPlans()) {
+			for (int k = 0; k < unlink.size(); k++)
+				retire(unlink.get(k), epoch);
+		}
+		unlink.clear();
+		link.clear();
+		linking.clear();
+	}
+
+	private CollisionAvoidance obtain(double[] center, double r) {
+		CollisionAvoidance leaf = pool.poll();
+		if (leaf != null) {
+			leaf.reset(center, r);
+			return leaf;
+		}
+		created++;
+		return new CollisionAvoidance("obstacle", null, new SimpleMatrix(2, 1, false, center), r, epsilon, alpha,
+				eta);
+	}
+
+	private void retire(CollisionAvoidance leaf, long epoch) {
+		if (retiredCount == retired.length) {
+			retired = Arrays.copyOf(retired, retiredCount * 2);
+			retiredAt = Arrays.copyOf(retiredAt, retiredCount * 2);
+		}
+		retired[retiredCount] = leaf;
+		retiredAt[retiredCount++] = epoch;
+	}
+
+	/**
+	 * Returns the root of the parent's tree.
+	 *
+	 * @return The root, or null if the parent is not under an {@link RMPRoot},
+	 *         in which case retired leaves wait until it is
+	 */
+	private RMPRoot getRoot() {
+		RMPNode node = parent;
+		while (node.getParent() != null)
+			node = node.getParent();
+		return node instanceof RMPRoot ? (RMPRoot) node : null;
+	}
+
+	/**
+	 * Moves the retired leaves that no solve can still be reading into the pool.
+	 *
+	 * @param epoch The current evaluation epoch
+	 */
+	private void reclaim(long epoch) {
+		int reclaimed = 0;
+		while (reclaimed < retiredCount && epoch >= retiredAt[reclaimed] + 2)
+			pool.push(retired[reclaimed++]);
+		if (reclaimed == 0)
+			return;
+		System.arraycopy(retired, reclaimed, retired, 0, retiredCount - reclaimed);
+		System.arraycopy(retiredAt, reclaimed, retiredAt, 0, retiredCount - reclaimed);
+		Arrays.fill(retired, retiredCount - reclaimed, retiredCount, null);
+		retiredCount -= reclaimed;
+	}
+
+	/**
+	 * Returns the leaf of an obstacle.
+	 *
+	 * @param id The id of the obstacle
+	 * @return The obstacle's leaf, or null if the set has no obstacle with this id
+	 */
+	public synchronized CollisionAvoidance get(int id) {
+		return id >= 0 && id < leaves.length ? leaves[id] : null;
+	}
+
+	/**
+	 * Returns the number of obstacles in the set.
+	 *
+	 * @return The number of obstacles
+	 */
+	public synchronized int size() {
+		return size;
+	}
+
+	/**
+	 * Returns the number of leaves ever created, which stops growing once the
+	 * pool covers the obstacle churn.
+	 *
+	 * @return The number of leaves created
+	 */
+	public synchronized long getCreatedCount() {
+		return created;
+	}
+}
@@ -5,6 +5,7 @@ import com.titanrobotics2022.mapping.Point;
 import com.titanrobotics2022.motion.generation.rmpflow.RMPLeaf;
 import com.titanrobotics2022.motion.generation.rmpflow.RMPNode;
 
+import org.ejml.data.DMatrixRMaj;
 import org.ejml.simple.SimpleMatrix;
 
 import edu.wpi.first.math.geometry.Rotation2d;
@@ -14,7 +15,6 @@ public class PathFollowing extends RMPLeaf {
 
     private Path path;
     private double v, P, I, A, B, maxAcc, kFore, kSide;
-    private double err = 0;
 
     // Compute desired vertical acceleration (PI loop)
     // P(c_dot - v) + I(c - d)
@@ -51,25 +51,63 @@ public class PathFollowing extends RMPLeaf {
 
     @Override
     public SimpleMatrix psi(SimpleMatrix x) {
+        DMatrixRMaj out = new DMatrixRMaj(2, 1);
+        psi(x.getDDRM(), out);
+        return SimpleMatrix.wrap(out);
+    }
+
+    @Override
+    public void psi(DMatrixRMaj x, DMatrixRMaj out) {
         double c = path.getProgress(new Point(x.get(0), x.get(1)));
         double theta = path.getRotation(c).getRadians();
+        Point pos = path.getPos(c);
         double s = -Math.signum(
-                Math.sin(theta - Math.atan2(path.getPos(c).getY() - x.get(1), path.getPos(c).getX() - x.get(0))));
-        double d = path.getPos(c).getDistance(new Translation2d(x.get(0), x.get(1))) * s;
-        return new SimpleMatrix(2, 1, true, new double[] { c, d });
+                Math.sin(theta - Math.atan2(pos.getY() - x.get(1), pos.getX() - x.get(0))));
+        double d = pos.getDistance(new Translation2d(x.get(0), x.get(1))) * s;
+        out.reshape(2, 1);
+        out.set(0, c);
+        out.set(1, d);
     }
 
     @Override
     public SimpleMatrix solveF(SimpleMatrix x, SimpleMatrix x_dot) {
-        err += getV(x) - x_dot.get(0);
-        SimpleMatrix a = new SimpleMatrix(2, 1, true,
-                new double[] { P * (getV(x) - x_dot.get(0)) + I * err,
-                        A * x.get(1) - B * x_dot.get(1) });
-        return solveM(x, x_dot).mult(a);
+        DMatrixRMaj out = new DMatrixRMaj(2, 1);
+        solveF(x.getDDRM(), x_dot.getDDRM(), out);
+        return SimpleMatrix.wrap(out);
+    }
+
+    @Override
+    public void solveF(DMatrixRMaj x, DMatrixRMaj x_dot, DMatrixRMaj f) {
+        solveF(x, x_dot, f, (double[]) getState());
+    }
+
+    // The error integral is evaluation state, so every context integrates its own
+    @Override
+    protected double[] createState() {
+        return new double[1];
+    }
+
+    @Override
+    protected void evaluate(DMatrixRMaj x, DMatrixRMaj x_dot, DMatrixRMaj f, DMatrixRMaj m, Object state) {
+        solveM(x, x_dot, m);
+        solveF(x, x_dot, f, (double[]) state);
+    }
+
+    // M is diagonal, so M * a is applied elementwise
+    private void solveF(DMatrixRMaj x, DMatrixRMaj x_dot, DMatrixRMaj f, double[] err) {
+        double v = getV(x.get(0));
+        err[0] += v - x_dot.get(0);
+        f.reshape(2, 1);
+        f.set(0, kFore * (P * (v - x_dot.get(0)) + I * err[0]));
+        f.set(1, kSide * (A * x.get(1) - B * x_dot.get(1)));
     }
 
     public double getV(SimpleMatrix x) {
-        double dist = path.getLength() - x.get(0);
+        return getV(x.get(0));
+    }
+
+    private double getV(double c) {
+        double dist = path.getLength() - c;
         return Math.min(v, Math.sqrt(2 * maxAcc * dist));
     }
 
@@ -78,24 +116,83 @@ public class PathFollowing extends RMPLeaf {
         return new SimpleMatrix(2, 2, true, new double[] { kFore, 0, 0, kSide });
     }
 
+    @Override
+    public void solveM(DMatrixRMaj x, DMatrixRMaj x_dot, DMatrixRMaj m) {
+        m.reshape(2, 2);
+        m.set(0, 0, kFore);
+        m.set(0, 1, 0);
+        m.set(1, 0, 0);
+        m.set(1, 1, kSide);
+    }
+
     @Override
     public SimpleMatrix j(SimpleMatrix q) {
+        DMatrixRMaj out = new DMatrixRMaj(2, 2);
+        j(q.getDDRM(), out);
+        return SimpleMatrix.wrap(out);
+    }
+
+    @Override
+    public void j(DMatrixRMaj q, DMatrixRMaj out) {
         double c = path.getProgress(new Point(q.get(0), q.get(1)));
-        double theta = path.getRotation(c).getRadians();
-        return new SimpleMatrix(2, 2, true,
-                new double[] { Math.cos(theta), Math.sin(theta), -Math.sin(theta), Math.cos(theta) });
+        Rotation2d theta = path.getRotation(c);
+        out.reshape(2, 2);
+        out.set(0, 0, theta.getCos());
+        out.set(0, 1, theta.getSin());
+        out.set(1, 0, -theta.getSin());
+        out.set(1, 1, theta.getCos());
     }
 
     @Override
     public SimpleMatrix j_dot(SimpleMatrix q, SimpleMatrix q_dot) {
+        DMatrixRMaj out = new DMatrixRMaj(2, 2);
+        j_dot(q.getDDRM(), q_dot.getDDRM(), out);
+        return SimpleMatrix.wrap(out);
+    }
+
+    @Override
+    public void j_dot(DMatrixRMaj q, DMatrixRMaj q_dot, DMatrixRMaj out) {
         Point pos = new Point(q.get(0), q.get(1));
         double c = path.getProgress(pos);
         Rotation2d theta = path.getRotation(c);
         Rotation2d phi = pos.minus(path.getPos(c)).getAngle();
         double dcdq = theta.getCos() * q_dot.get(0) + theta.getSin() * q_dot.get(1);
-        return new SimpleMatrix(2, 2, true,
-                new double[] { -theta.getSin(), theta.getCos(), -phi.getSin(), phi.getCos() })
-                .scale(dcdq * path.getAngularVelocity(c).getRadians());
+        double scale = dcdq * path.getAngularVelocity(c).getRadians();
+        out.reshape(2, 2);
+        out.set(0, 0, -theta.getSin() * scale);
+        out.set(0, 1, theta.getCos() * scale);
+        out.set(1, 0, -phi.getSin() * scale);
+        out.set(1, 1, phi.getCos() * scale);
+    }
+
+    // Projects onto the path once and shares it between psi, J and J_dot
+    @Override
+    public void taskMap(DMatrixRMaj q, DMatrixRMaj q_dot, DMatrixRMaj x, DMatrixRMaj J, DMatrixRMaj J_dot) {
+        Point pos = new Point(q.get(0), q.get(1));
+        double c = path.getProgress(pos);
+        Rotation2d theta = path.getRotation(c);
+        Point closest = path.getPos(c);
+        double cos = theta.getCos(), sin = theta.getSin();
+
+        double s = -Math.signum(
+                Math.sin(theta.getRadians() - Math.atan2(closest.getY() - q.get(1), closest.getX() - q.get(0))));
+        x.reshape(2, 1);
+        x.set(0, c);
+        x.set(1, closest.getDistance(pos) * s);
+
+        J.reshape(2, 2);
+        J.set(0, 0, cos);
+        J.set(0, 1, sin);
+        J.set(1, 0, -sin);
+        J.set(1, 1, cos);
+
+        Rotation2d phi = pos.minus(closest).getAngle();
+        double scale = (cos * q_dot.get(0) + sin * q_dot.get(1)) * path.getAngularVelocity(c).getRadians();
+        J_dot.reshape(2, 2);
+        J_dot.set(0, 0, -sin * scale);
+        J_dot.set(0, 1, cos * scale);
+        J_dot.set(1, 0, -phi.getSin() * scale);
+        J_dot.set(1, 1, phi.getCos() * scale);
     }
 
 }
@@ -0,0 +1,85 @@
+package com.titanrobotics2022.motion.generation.rmpflow.rmps;
+
+import com.titanrobotics2022.mapping.Path;
+import com.titanrobotics2022.mapping.Point;
+import com.titanrobotics2022.motion.generation.rmpflow.RMPPlanarLeaf2D;
+import com.titanrobotics2022.motion.generation.rmpflow.RMPRoot2D;
+
+import org.ejml.data.DMatrix2;
+import org.ejml.data.DMatrix2x2;
+
+import edu.wpi.first.math.geometry.Rotation2d;
+import edu.wpi.first.math.geometry.Translation2d;
+
+/**
+ * Planar, fixed-size version of {@link PathFollowing}.
+ */
+public class PathFollowing2D extends RMPPlanarLeaf2D {
+
+    private Path path;
+    private double v, P, I, A, B, maxAcc, kFore, kSide;
+    private double err = 0;
+
+    public PathFollowing2D(String name, RMPRoot2D parent, Path path, double v, double P, double I, double A,
+            double B, double K, double h, double maxAcc) {
+        super(name, parent);
+        this.path = path;
+        this.v = v;
+        this.P = P;
+        this.I = I;
+        this.A = A;
+        this.B = B;
+        this.maxAcc = maxAcc;
+        this.kFore = K * Math.sin(h * Math.PI / 2);
+        this.kSide = K * Math.cos(h * Math.PI / 2);
+    }
+
+    @Override
+    public void psi(DMatrix2 x, DMatrix2 out) {
+        double c = path.getProgress(new Point(x.a1, x.a2));
+        double theta = path.getRotation(c).getRadians();
+        Point pos = path.getPos(c);
+        double s = -Math.signum(
+                Math.sin(theta - Math.atan2(pos.getY() - x.a2, pos.getX() - x.a1)));
+        out.a1 = c;
+        out.a2 = pos.getDistance(new Translation2d(x.a1, x.a2)) * s;
+    }
+
+    // M is diagonal, so M * a is applied elementwise
+    @Override
+    protected void solveF(DMatrix2 x, DMatrix2 x_dot, DMatrix2 f) {
+        double v = getV(x.a1);
+        err += v - x_dot.a1;
+        f.a1 = kFore * (P * (v - x_dot.a1) + I * err);
+        f.a2 = kSide * (A * x.a2 - B * x_dot.a2);
+    }
+
+    private double getV(double c) {
+        double dist = path.getLength() - c;
+        return Math.min(v, Math.sqrt(2 * maxAcc * dist));
+    }
+
+    @Override
+    protected void solveM(DMatrix2 x, DMatrix2 x_dot, DMatrix2x2 m) {
+        m.setTo(kFore, 0, 0, kSide);
+    }
+
+    @Override
+    public void j(DMatrix2 q, DMatrix2x2 out) {
+        double c = path.getProgress(new Point(q.a1, q.a2));
+        Rotation2d theta = path.getRotation(c);
+        out.setTo(theta.getCos(), theta.getSin(), -theta.getSin(), theta.getCos());
+    }
+
+    @Override
+    public void j_dot(DMatrix2 q, DMatrix2 q_dot, DMatrix2x2 out) {
+        Point pos = new Point(q.a1, q.a2);
+        double c = path.getProgress(pos);
+        Rotation2d theta = path.getRotation(c);
+        Rotation2d phi = pos.minus(path.getPos(c)).getAngle();
+        double dcdq = theta.getCos() * q_dot.a1 + theta.getSin() * q_dot.a2;
+        double scale = dcdq * path.getAngularVelocity(c).getRadians();
+        out.setTo(-theta.getSin() * scale, theta.getCos() * scale, -phi.getSin() * scale, phi.getCos() * scale);
+    }
+
+}
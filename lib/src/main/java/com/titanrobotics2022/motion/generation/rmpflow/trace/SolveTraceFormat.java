@@ -0,0 +1,59 @@
+package com.titanrobotics2022.motion.generation.rmpflow.trace;
+
+import java.nio.ByteBuffer;
+
+/**
+ * The layout of a solve trace file. All values are little-endian.
+ * <p>
+ * The header holds the magic number, the version, the dimensions and the
+ * capacity, followed by the names of the recorded leaves, each as a 2 byte
+ * length and its UTF-8 bytes, padded to a multiple of 8 bytes.
+ * <p>
+ * The header is followed by capacity fixed-size records, used as a ring. A
+ * record holds its sequence number plus one, or 0 while it is empty or being
+ * written, the timestamp, x, x_dot and a, then for each leaf its task
+ * dimension, F and M padded to the leaf dimension, and finally a checksum of
+ * the whole record. The reader only returns records whose checksum matches,
+ * so a record torn by a power loss is dropped rather than replayed.
+ */
+final class SolveTraceFormat {
+	static final long MAGIC = 0x4543415254504d52L; // "RMPTRACE"
+	static final int VERSION = 1;
+	static final int FIXED_HEADER = 40;
+	static final int MARKER = 0, TIMESTAMP = 8, STATE = 16;
+	static final long EMPTY = 0;
+
+	private SolveTraceFormat() {
+	}
+
+	static int leafSize(int leafDim) {
+		return 8 * (1 + leafDim + leafDim * leafDim);
+	}
+
+	static int recordSize(int dim, int leafCount, int leafDim) {
+		return STATE + 8 * 3 * dim + leafCount * leafSize(leafDim) + 8;
+	}
+
+	static int align(int size) {
+		return (size + 7) & ~7;
+	}
+
+	/**
+	 * Mixes one word into a checksum.
+	 */
+	static long mix(long h, long v) {
+		h ^= v;
+		h *= 0x9E3779B97F4A7C15L;
+		return h ^ (h >>> 29);
+	}
+
+	/**
+	 * Returns the checksum of a record, over its marker and body.
+	 */
+	static long checksum(ByteBuffer buffer, int offset, int recordSize) {
+		long h = 0;
+		for (int i = offset, end = offset + recordSize - 8; i < end; i += 8)
+			h = mix(h, buffer.getLong(i));
+		return h;
+	}
+}
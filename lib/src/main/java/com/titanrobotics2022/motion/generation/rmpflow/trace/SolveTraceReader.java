@@ -0,0 +1,213 @@
+package com.titanrobotics2022.motion.generation.rmpflow.trace;
+
+import static com.titanrobotics2022.motion.generation.rmpflow.trace.SolveTraceFormat.EMPTY;
+import static com.titanrobotics2022.motion.generation.rmpflow.trace.SolveTraceFormat.FIXED_HEADER;
+import static com.titanrobotics2022.motion.generation.rmpflow.trace.SolveTraceFormat.MAGIC;
+import static com.titanrobotics2022.motion.generation.rmpflow.trace.SolveTraceFormat.MARKER;
+import static com.titanrobotics2022.motion.generation.rmpflow.trace.SolveTraceFormat.STATE;
+import static com.titanrobotics2022.motion.generation.rmpflow.trace.SolveTraceFormat.TIMESTAMP;
+import static com.titanrobotics2022.motion.generation.rmpflow.trace.SolveTraceFormat.VERSION;
+import static com.titanrobotics2022.motion.generation.rmpflow.trace.SolveTraceFormat.checksum;
+import static com.titanrobotics2022.motion.generation.rmpflow.trace.SolveTraceFormat.recordSize;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import com.titanrobotics2022.motion.generation.rmpflow.RMPRoot;
+
+import org.ejml.data.DMatrixRMaj;
+
+/**
+ * Reads a trace written by a {@link SolveTraceWriter}, oldest tick first.
+ * <p>
+ * Opening a trace finds every record whose checksum matches, so ticks that
+ * were torn by a power loss are left out, and orders them by sequence number.
+ * Records can then be read in any order into a reused
+ * {@link SolveTraceRecord}.
+ */
+public class SolveTraceReader implements Closeable {
+	private final FileChannel channel;
+	private final MappedByteBuffer buffer;
+	private final int dim, leafCount, leafDim, headerSize, recordSize;
+	private final long capacity;
+	private final List<String> leafNames;
+	private final int[] slots; // Slot of each readable record, oldest first
+	private final long[] sequences; // Sequence number of each readable record
+
+	/**
+	 * Opens a trace.
+	 *
+	 * @param file The trace file
+	 * @throws IOException If the file cannot be read or is not a solve trace
+	 */
+	public SolveTraceReader(Path file) throws IOException {
+		channel = FileChannel.open(file, StandardOpenOption.READ);
+		long size = channel.size();
+		if (size < FIXED_HEADER) {
+			channel.close();
+			throw new IOException(file + " is not a solve trace.");
+		}
+		buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+		buffer.order(ByteOrder.LITTLE_ENDIAN);
+		if (buffer.getLong(0) != MAGIC || buffer.getInt(8) != VERSION) {
+			channel.close();
+			throw new IOException(file + " is not a solve trace of version " + VERSION + ".");
+		}
+		dim = buffer.getInt(12);
+		leafCount = buffer.getInt(16);
+		leafDim = buffer.getInt(20);
+		recordSize = buffer.getInt(24);
+		headerSize = buffer.getInt(28);
+		capacity = buffer.getLong(32);
+		if (recordSize != recordSize(dim, leafCount, leafDim) || headerSize + capacity * recordSize > size) {
+			channel.close();
+			throw new IOException(file + " has a corrupt header.");
+		}
+
+		ArrayList<String> names = new ArrayList<String>(leafCount);
+		int offset = FIXED_HEADER;
+		for (int i = 0; i < leafCount; i++) {
+			byte[] name = new byte[buffer.getShort(offset)];
+			for (int k = 0; k < name.length; k++)
+				name[k] = buffer.get(offset + 2 + k);
+			names.add(new String(name, StandardCharsets.UTF_8));
+			offset += 2 + name.length;
+		}
+		leafNames = Collections.unmodifiableList(names);
+
+		// Find the records whose marker and checksum match, and order them by sequence number
+		long[] found = new long[(int) capacity];
+		int count = 0;
+		for (int slot = 0; slot < capacity; slot++) {
+			int at = offset(slot);
+			long marker = buffer.getLong(at + MARKER);
+			if (marker == EMPTY || (marker - 1) % capacity != slot
+					|| buffer.getLong(at + recordSize - 8) != checksum(buffer, at, recordSize))
+				continue;
+			found[count++] = marker - 1;
+		}
+		Arrays.sort(found, 0, count);
+		sequences = Arrays.copyOf(found, count);
+		slots = new int[count];
+		for (int i = 0; i < count; i++)
+			slots[i] = (int) (sequences[i] % capacity);
+	}
+
+	private int offset(int slot) {
+		return headerSize + slot * recordSize;
+	}
+
+	/**
+	 * Creates a record to read into.
+	 *
+	 * @return A record sized for this trace
+	 */
+	public SolveTraceRecord createRecord() {
+		return new SolveTraceRecord(dim, leafCount);
+	}
+
+	/**
+	 * Reads a tick.
+	 *
+	 * @param index  The index of the tick, 0 for the oldest readable one
+	 * @param record The record to read into
+	 */
+	public void read(int index, SolveTraceRecord record) {
+		if (index < 0 || index >= slots.length)
+			throw new IndexOutOfBoundsException("Record " + index + " of " + slots.length);
+		int offset = offset(slots[index]);
+		record.sequence = sequences[index];
+		record.timestamp = buffer.getLong(offset + TIMESTAMP);
+		int i = offset + STATE;
+		i = read(i, record.x, dim);
+		i = read(i, record.x_dot, dim);
+		i = read(i, record.a, dim);
+		for (int leaf = 0; leaf < leafCount; leaf++) {
+			int rows = (int) buffer.getLong(i);
+			record.f[leaf].reshape(rows, 1);
+			record.m[leaf].reshape(rows, rows);
+			read(i + 8, record.f[leaf], rows);
+			read(i + 8 + 8 * leafDim, record.m[leaf], rows * rows);
+			i += 8 * (1 + leafDim + leafDim * leafDim);
+		}
+	}
+
+	private int read(int offset, DMatrixRMaj out, int count) {
+		for (int k = 0; k < count; k++, offset += 8)
+			out.data[k] = Double.longBitsToDouble(buffer.getLong(offset));
+		return offset;
+	}
+
+	/**
+	 * Solves every readable tick again with a tree, such as the tree that was
+	 * recorded, rebuilt offline, or a changed version of it.
+	 *
+	 * @param root The root of the tree to replay through
+	 * @return The largest difference between a replayed and a recorded
+	 *         component of the acceleration
+	 */
+	public double replay(RMPRoot root) {
+		SolveTraceRecord record = createRecord();
+		DMatrixRMaj a = new DMatrixRMaj(dim, 1);
+		double error = 0;
+		for (int i = 0; i < slots.length; i++) {
+			read(i, record);
+			root.solve(record.x, record.x_dot, a);
+			for (int k = 0; k < dim; k++)
+				error = Math.max(error, Math.abs(a.data[k] - record.a.data[k]));
+		}
+		return error;
+	}
+
+	/**
+	 * Returns the number of ticks that can be read.
+	 *
+	 * @return The number of readable ticks
+	 */
+	public int size() {
+		return slots.length;
+	}
+
+	/**
+	 * Returns the dimension of the root state.
+	 *
+	 * @return The dimension of the root state
+	 */
+	public int getDimension() {
+		return dim;
+	}
+
+	/**
+	 * Returns the names of the recorded leaves, in the order their F and M are
+	 * stored.
+	 *
+	 * @return The names of the recorded leaves
+	 */
+	public List<String> getLeafNames() {
+		return leafNames;
+	}
+
+	/**
+	 * Returns the number of ticks the file holds.
+	 *
+	 * @return The capacity of the trace
+	 */
+	public long getCapacity() {
+		return capacity;
+	}
+
+	@Override
+	public void close() throws IOException {
+		channel.close();
+	}
+}
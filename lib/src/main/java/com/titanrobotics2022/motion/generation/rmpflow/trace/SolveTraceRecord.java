@@ -0,0 +1,92 @@
+package com.titanrobotics2022.motion.generation.rmpflow.trace;
+
+import org.ejml.data.DMatrixRMaj;
+
+/**
+ * One tick of a solve trace, read by a {@link SolveTraceReader}. A record is
+ * reused from read to read, so its matrices are overwritten by the next read.
+ */
+public class SolveTraceRecord {
+	long sequence, timestamp;
+	final DMatrixRMaj x, x_dot, a;
+	final DMatrixRMaj[] f, m; // Of each recorded leaf
+
+	SolveTraceRecord(int dim, int leafCount) {
+		x = new DMatrixRMaj(dim, 1);
+		x_dot = new DMatrixRMaj(dim, 1);
+		a = new DMatrixRMaj(dim, 1);
+		f = new DMatrixRMaj[leafCount];
+		m = new DMatrixRMaj[leafCount];
+		for (int i = 0; i < leafCount; i++) {
+			f[i] = new DMatrixRMaj(1, 1);
+			m[i] = new DMatrixRMaj(1, 1);
+		}
+	}
+
+	/**
+	 * Returns the number of ticks recorded before this one.
+	 *
+	 * @return The sequence number of the tick
+	 */
+	public long getSequence() {
+		return sequence;
+	}
+
+	/**
+	 * Returns the time the tick was recorded with.
+	 *
+	 * @return The timestamp of the tick
+	 */
+	public long getTimestamp() {
+		return timestamp;
+	}
+
+	/**
+	 * Returns the root state.
+	 *
+	 * @return The root state
+	 */
+	public DMatrixRMaj getX() {
+		return x;
+	}
+
+	/**
+	 * Returns the root differentiated state.
+	 *
+	 * @return The root differentiated state
+	 */
+	public DMatrixRMaj getXdot() {
+		return x_dot;
+	}
+
+	/**
+	 * Returns the acceleration the tree resolved.
+	 *
+	 * @return The recorded acceleration
+	 */
+	public DMatrixRMaj getA() {
+		return a;
+	}
+
+	/**
+	 * Returns the F of a recorded leaf.
+	 *
+	 * @param leaf The index of the leaf, as in
+	 *             {@link SolveTraceReader#getLeafNames()}
+	 * @return The leaf's force
+	 */
+	public DMatrixRMaj getF(int leaf) {
+		return f[leaf];
+	}
+
+	/**
+	 * Returns the M of a recorded leaf.
+	 *
+	 * @param leaf The index of the leaf, as in
+	 *             {@link SolveTraceReader#getLeafNames()}
+	 * @return The leaf's inertia matrix
+	 */
+	public DMatrixRMaj getM(int leaf) {
+		return m[leaf];
+	}
+}
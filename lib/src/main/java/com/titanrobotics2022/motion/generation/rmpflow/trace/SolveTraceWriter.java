@@ -0,0 +1,240 @@
+package com.titanrobotics2022.motion.generation.rmpflow.trace;
+
+import static com.titanrobotics2022.motion.generation.rmpflow.trace.SolveTraceFormat.EMPTY;
+import static com.titanrobotics2022.motion.generation.rmpflow.trace.SolveTraceFormat.FIXED_HEADER;
+import static com.titanrobotics2022.motion.generation.rmpflow.trace.SolveTraceFormat.MAGIC;
+import static com.titanrobotics2022.motion.generation.rmpflow.trace.SolveTraceFormat.MARKER;
+import static com.titanrobotics2022.motion.generation.rmpflow.trace.SolveTraceFormat.STATE;
+import static com.titanrobotics2022.motion.generation.rmpflow.trace.SolveTraceFormat.TIMESTAMP;
+import static com.titanrobotics2022.motion.generation.rmpflow.trace.SolveTraceFormat.VERSION;
+import static com.titanrobotics2022.motion.generation.rmpflow.trace.SolveTraceFormat.align;
+import static com.titanrobotics2022.motion.generation.rmpflow.trace.SolveTraceFormat.mix;
+import static com.titanrobotics2022.motion.generation.rmpflow.trace.SolveTraceFormat.recordSize;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+
+import com.titanrobotics2022.motion.generation.rmpflow.RMPLeaf;
+import com.titanrobotics2022.motion.generation.rmpflow.RMPNode;
+import com.titanrobotics2022.motion.generation.rmpflow.RMPRoot;
+
+import org.ejml.data.DMatrixRMaj;
+
+/**
+ * Records the inputs and results of a tree's solves to a memory-mapped file,
+ * so a tick can be replayed offline with a {@link SolveTraceReader}.
+ * <p>
+ * The file is created at its full size up front, and every page of it is
+ * touched before the first record, so recording a tick is a handful of stores
+ * into memory that neither allocates nor faults. Records have a fixed size
+ * and are written as a ring, so the file holds the latest capacity ticks.
+ * <p>
+ * The operating system writes the pages back on its own schedule. Call
+ * {@link #flush()}, at a lower rate or from another thread, to force them to
+ * the disk; every record written before the last flush survives a power
+ * loss, and later records survive if their pages were written back whole.
+ */
+public class SolveTraceWriter implements Closeable {
+	private static final int PAGE = 4096;
+
+	private final FileChannel channel;
+	private final MappedByteBuffer buffer;
+	private final int dim, leafDim, headerSize, recordSize;
+	private final long capacity;
+	private final RMPLeaf[] leaves;
+	private long sequence; // Number of records written
+	private long checksum; // Checksum of the record being written
+
+	/**
+	 * Creates a trace of the root state, velocity and acceleration only.
+	 *
+	 * @param file     The file to create, replacing it if it exists
+	 * @param dim      The dimension of the root state
+	 * @param capacity The number of ticks the file holds
+	 * @throws IOException If the file cannot be created
+	 */
+	public SolveTraceWriter(Path file, int dim, long capacity) throws IOException {
+		this(file, null, dim, 0, capacity);
+	}
+
+	/**
+	 * Creates a trace that also records the F and M of every leaf of a tree,
+	 * as they were when each record is written. The leaves are those in the
+	 * tree when the trace is created.
+	 *
+	 * @param file     The file to create, replacing it if it exists
+	 * @param root     The root of the tree whose leaves to record, or null for
+	 *                 none
+	 * @param dim      The dimension of the root state
+	 * @param leafDim  The largest task dimension of a leaf
+	 * @param capacity The number of ticks the file holds
+	 * @throws IOException If the file cannot be created
+	 */
+	public SolveTraceWriter(Path file, RMPRoot root, int dim, int leafDim, long capacity) throws IOException {
+		if (dim < 1)
+			throw new IllegalArgumentException("Dimension must be positive.");
+		if (leafDim < 0 || (root != null && leafDim < 1))
+			throw new IllegalArgumentException("Leaf dimension must be positive when recording leaves.");
+		if (capacity < 1)
+			throw new IllegalArgumentException("Capacity must be positive.");
+		ArrayList<RMPLeaf> found = new ArrayList<RMPLeaf>();
+		if (root != null)
+			collectLeaves(root, found);
+		this.leaves = found.toArray(new RMPLeaf[0]);
+		this.dim = dim;
+		this.leafDim = root == null ? 0 : leafDim;
+		this.capacity = capacity;
+
+		byte[][] names = new byte[leaves.length][];
+		int header = FIXED_HEADER;
+		for (int i = 0; i < leaves.length; i++) {
+			names[i] = leaves[i].getName().getBytes(StandardCharsets.UTF_8);
+			header += 2 + names[i].length;
+		}
+		headerSize = align(header);
+		recordSize = recordSize(dim, leaves.length, this.leafDim);
+		if (capacity > (Integer.MAX_VALUE - headerSize) / recordSize)
+			throw new IllegalArgumentException("A trace file is limited to 2 GB.");
+		int size = headerSize + (int) capacity * recordSize;
+
+		channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+				StandardOpenOption.READ, StandardOpenOption.WRITE);
+		buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+		buffer.order(ByteOrder.LITTLE_ENDIAN);
+		for (int i = 0; i < size; i += PAGE)
+			buffer.put(i, (byte) 0);
+
+		buffer.putLong(0, MAGIC);
+		buffer.putInt(8, VERSION);
+		buffer.putInt(12, dim);
+		buffer.putInt(16, leaves.length);
+		buffer.putInt(20, this.leafDim);
+		buffer.putInt(24, recordSize);
+		buffer.putInt(28, headerSize);
+		buffer.putLong(32, capacity);
+		int offset = FIXED_HEADER;
+		for (byte[] name : names) {
+			buffer.putShort(offset, (short) name.length);
+			for (int i = 0; i < name.length; i++)
+				buffer.put(offset + 2 + i, name[i]);
+			offset += 2 + name.length;
+		}
+		buffer.force();
+	}
+
+	private static void collectLeaves(RMPNode node, ArrayList<RMPLeaf> leaves) {
+		for (RMPNode child : node.getChildren()) {
+			if (child instanceof RMPLeaf)
+				leaves.add((RMPLeaf) child);
+			else
+				collectLeaves(child, leaves);
+		}
+	}
+
+	/**
+	 * Appends a tick, overwriting the oldest one once the file is full. The F
+	 * and M of the recorded leaves are those of their last solve through the
+	 * tree.
+	 *
+	 * @param timestamp The time of the tick, such as {@link System#nanoTime()}
+	 * @param x         The root state
+	 * @param x_dot     The root differentiated state
+	 * @param a         The resolved acceleration
+	 */
+	public void record(long timestamp, DMatrixRMaj x, DMatrixRMaj x_dot, DMatrixRMaj a) {
+		if (x.getNumElements() != dim || x_dot.getNumElements() != dim || a.getNumElements() != dim)
+			throw new IllegalArgumentException("The state must have the trace's dimension.");
+		int offset = headerSize + (int) (sequence % capacity) * recordSize;
+		long marker = sequence + 1;
+		buffer.putLong(offset + MARKER, EMPTY); // Invalidate the old record while it is rewritten
+		checksum = mix(0, marker);
+		int i = putLong(offset + TIMESTAMP, timestamp);
+		i = putDoubles(i, x.data, dim);
+		i = putDoubles(i, x_dot.data, dim);
+		i = putDoubles(i, a.data, dim);
+		for (RMPLeaf leaf : leaves) {
+			DMatrixRMaj f = leaf.getF().getDDRM(), m = leaf.getM().getDDRM();
+			int rows = f.getNumElements();
+			if (rows > leafDim || m.getNumElements() != rows * rows)
+				throw new IllegalStateException(
+						"Leaf " + leaf.getName() + " is larger than the trace's leaf dimension.");
+			i = putLong(i, rows);
+			i = putDoubles(i, f.data, rows);
+			i = putZeros(i, leafDim - rows);
+			i = putDoubles(i, m.data, rows * rows);
+			i = putZeros(i, leafDim * leafDim - rows * rows);
+		}
+		buffer.putLong(i, checksum);
+		buffer.putLong(offset + MARKER, marker);
+		sequence++;
+	}
+
+	private int putLong(int offset, long v) {
+		buffer.putLong(offset, v);
+		checksum = mix(checksum, v);
+		return offset + 8;
+	}
+
+	private int putDoubles(int offset, double[] values, int count) {
+		for (int k = 0; k < count; k++)
+			offset = putLong(offset, Double.doubleToRawLongBits(values[k]));
+		return offset;
+	}
+
+	private int putZeros(int offset, int count) {
+		for (int k = 0; k < count; k++)
+			offset = putLong(offset, 0);
+		return offset;
+	}
+
+	/**
+	 * Forces the records written so far to the disk. This blocks until the
+	 * disk has them, so avoid calling it every tick of a control loop.
+	 */
+	public void flush() {
+		buffer.force();
+	}
+
+	/**
+	 * Flushes the trace and closes the file.
+	 */
+	@Override
+	public void close() throws IOException {
+		flush();
+		channel.close();
+	}
+
+	/**
+	 * Returns the number of ticks recorded, including those since overwritten.
+	 *
+	 * @return The number of ticks recorded
+	 */
+	public long getRecordCount() {
+		return sequence;
+	}
+
+	/**
+	 * Returns the number of ticks the file holds.
+	 *
+	 * @return The capacity of the trace
+	 */
+	public long getCapacity() {
+		return capacity;
+	}
+
+	/**
+	 * Returns the size of each record in bytes.
+	 *
+	 * @return The record size
+	 */
+	public int getRecordSize() {
+		return recordSize;
+	}
+}
@@ -0,0 +1,65 @@
+package com.titanrobotics2022.motion.simulation;
+
+/**
+ * How a simulated robot accelerates when it is commanded an acceleration by
+ * the tree.
+ */
+@FunctionalInterface
+public interface Dynamics {
+	/**
+	 * Computes the acceleration the robot reaches.
+	 *
+	 * @param x       The position, which must not be modified
+	 * @param v       The velocity, which must not be modified
+	 * @param command The commanded acceleration, which must not be modified
+	 * @param out     The acceleration to write
+	 */
+	void accelerate(double[] x, double[] v, double[] command, double[] out);
+
+	/**
+	 * A point mass that follows every command exactly.
+	 *
+	 * @return The dynamics
+	 */
+	static Dynamics pointMass() {
+		return (x, v, command, out) -> System.arraycopy(command, 0, out, 0, out.length);
+	}
+
+	/**
+	 * A point mass slowed by viscous friction, a - c * v.
+	 *
+	 * @param friction The friction coefficient, c, in 1 / seconds
+	 * @return The dynamics
+	 */
+	static Dynamics damped(double friction) {
+		if (friction < 0)
+			throw new IllegalArgumentException("Friction must be nonnegative.");
+		return (x, v, command, out) -> {
+			for (int i = 0; i < out.length; i++)
+				out[i] = command[i] - friction * v[i];
+		};
+	}
+
+	/**
+	 * Limits the magnitude of the acceleration of these dynamics, as motors
+	 * would, keeping its direction.
+	 *
+	 * @param max The largest magnitude of the acceleration
+	 * @return The limited dynamics
+	 */
+	default Dynamics limit(double max) {
+		if (!(max > 0))
+			throw new IllegalArgumentException("Limit must be positive.");
+		return (x, v, command, out) -> {
+			accelerate(x, v, command, out);
+			double norm2 = 0;
+			for (int i = 0; i < out.length; i++)
+				norm2 += out[i] * out[i];
+			if (norm2 > max * max) {
+				double scale = max / Math.sqrt(norm2);
+				for (int i = 0; i < out.length; i++)
+					out[i] *= scale;
+			}
+		};
+	}
+}
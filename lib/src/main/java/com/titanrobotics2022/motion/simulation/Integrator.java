@@ -0,0 +1,136 @@
+package com.titanrobotics2022.motion.simulation;
+
+/**
+ * Advances a second-order system, a position and velocity whose acceleration
+ * depends on both, by one time step.
+ * <p>
+ * The acceleration is evaluated at every stage of a step, so an integrator
+ * that needs more stages solves the tree more often but follows the
+ * continuous-time policy more closely. Each integrator writes the
+ * acceleration at the start of the step to the first row of its workspace.
+ * <p>
+ * Every evaluation of a tree advances the evaluation state of its leaves, so
+ * integrators with more than one evaluation per step are only valid for
+ * trees whose leaves have no such state.
+ */
+public enum Integrator {
+	/**
+	 * Updates the velocity, then moves with the new velocity. First order, one
+	 * evaluation per step.
+	 */
+	SEMI_IMPLICIT_EULER(1, 1) {
+		@Override
+		public void step(Acceleration f, double[] x, double[] v, double dt, double[][] work) {
+			double[] a = work[0];
+			f.evaluate(x, v, a);
+			for (int i = 0; i < x.length; i++) {
+				v[i] += a[i] * dt;
+				x[i] += v[i] * dt;
+			}
+		}
+	},
+	/**
+	 * Updates the velocity, then moves with the mean of the old and new
+	 * velocities, as the demos have always done. One evaluation per step.
+	 */
+	TRAPEZOID(1, 1) {
+		@Override
+		public void step(Acceleration f, double[] x, double[] v, double dt, double[][] work) {
+			double[] a = work[0];
+			f.evaluate(x, v, a);
+			for (int i = 0; i < x.length; i++) {
+				double v_next = v[i] + a[i] * dt;
+				x[i] += 0.5 * (v[i] + v_next) * dt;
+				v[i] = v_next;
+			}
+		}
+	},
+	/**
+	 * The classic fourth order Runge-Kutta method. Four evaluations per step,
+	 * so only for trees without stateful leaves.
+	 */
+	RK4(10, 4) {
+		@Override
+		public void step(Acceleration f, double[] x, double[] v, double dt, double[][] work) {
+			double[] a1 = work[0], a2 = work[1], a3 = work[2], a4 = work[3];
+			double[] x2 = work[4], v2 = work[5], x3 = work[6], v3 = work[7], x4 = work[8], v4 = work[9];
+			int n = x.length;
+			double h = 0.5 * dt;
+			f.evaluate(x, v, a1);
+			for (int i = 0; i < n; i++) {
+				x2[i] = x[i] + h * v[i];
+				v2[i] = v[i] + h * a1[i];
+			}
+			f.evaluate(x2, v2, a2);
+			for (int i = 0; i < n; i++) {
+				x3[i] = x[i] + h * v2[i];
+				v3[i] = v[i] + h * a2[i];
+			}
+			f.evaluate(x3, v3, a3);
+			for (int i = 0; i < n; i++) {
+				x4[i] = x[i] + dt * v3[i];
+				v4[i] = v[i] + dt * a3[i];
+			}
+			f.evaluate(x4, v4, a4);
+			double sixth = dt / 6;
+			for (int i = 0; i < n; i++) {
+				x[i] += sixth * (v[i] + 2 * v2[i] + 2 * v3[i] + v4[i]);
+				v[i] += sixth * (a1[i] + 2 * a2[i] + 2 * a3[i] + a4[i]);
+			}
+		}
+	};
+
+	/**
+	 * The acceleration of the system being integrated.
+	 */
+	@FunctionalInterface
+	public interface Acceleration {
+		/**
+		 * Evaluates the acceleration at a state.
+		 *
+		 * @param x   The position, which must not be modified
+		 * @param v   The velocity, which must not be modified
+		 * @param out The acceleration to write
+		 */
+		void evaluate(double[] x, double[] v, double[] out);
+	}
+
+	private final int rows, evaluations;
+
+	private Integrator(int rows, int evaluations) {
+		this.rows = rows;
+		this.evaluations = evaluations;
+	}
+
+	/**
+	 * Advances the state by one step in place.
+	 *
+	 * @param f    The acceleration of the system
+	 * @param x    The position, overwritten with the position after the step
+	 * @param v    The velocity, overwritten with the velocity after the step
+	 * @param dt   The length of the step in seconds
+	 * @param work A workspace from {@link #createWorkspace(int)} for the
+	 *             dimension of the state
+	 */
+	public abstract void step(Acceleration f, double[] x, double[] v, double dt, double[][] work);
+
+	/**
+	 * Creates the workspace of this integrator. Reusing it across steps keeps
+	 * stepping free of allocations.
+	 *
+	 * @param dim The dimension of the position
+	 * @return A new workspace
+	 */
+	public double[][] createWorkspace(int dim) {
+		return new double[rows][dim];
+	}
+
+	/**
+	 * Returns the number of times each step evaluates the acceleration.
+	 *
+	 * @return The evaluations per step
+	 */
+	public int getEvaluations() {
+		return evaluations;
+	}
+}
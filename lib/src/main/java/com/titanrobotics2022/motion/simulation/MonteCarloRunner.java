@@ -0,0 +1,203 @@
+package com.titanrobotics2022.motion.simulation;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import com.titanrobotics2022.motion.generation.rmpflow.LatencyHistogram;
+import com.titanrobotics2022.motion.generation.rmpflow.RMPRoot;
+
+/**
+ * Simulates many generated scenarios across the cores of a
+ * {@link ForkJoinPool} and aggregates how they ended.
+ * <p>
+ * Scenario i of a run has the seed firstSeed + i, so every scenario, and in
+ * particular every failure listed by
+ * {@link MonteCarloStatistics#getFailedSeeds()}, can be run again on its own
+ * with {@link #run(long, Trajectory)} and gives the same result. Scenarios
+ * are run in batches; each batch is split into chunks that are simulated in
+ * parallel, and only the statistics of a chunk are kept, never its
+ * trajectories.
+ * <p>
+ * Each scenario gets its own tree, from the tree factory, and its own
+ * {@link Simulator}. The dynamics are shared by every thread, so they must
+ * not keep state between calls, as the ones from {@link Dynamics} do not.
+ */
+public class MonteCarloRunner {
+	private static final int CHUNK = 16; // Scenarios run by one task
+
+	private final ScenarioGenerator generator;
+	private final Function<Scenario, RMPRoot> trees;
+	private final Dynamics dynamics;
+	private final Integrator integrator;
+	private final double dt, goalTolerance;
+	private double timeout = 60;
+	private int batchSize = 4096, maxFailures = 100;
+
+	/**
+	 * Creates a runner.
+	 *
+	 * @param generator     Generates the scenario of each seed
+	 * @param trees         Creates the tree driving the robot through a
+	 *                      scenario, over a planar state
+	 * @param dynamics      How the robot follows the commanded acceleration
+	 * @param integrator    How to advance the state
+	 * @param dt            The length of a step in seconds
+	 * @param goalTolerance The distance from the goal that counts as reaching
+	 *                      it
+	 */
+	public MonteCarloRunner(ScenarioGenerator generator, Function<Scenario, RMPRoot> trees, Dynamics dynamics,
+			Integrator integrator, double dt, double goalTolerance) {
+		if (!(dt > 0))
+			throw new IllegalArgumentException("Time step must be positive.");
+		if (!(goalTolerance > 0))
+			throw new IllegalArgumentException("Goal tolerance must be positive.");
+		this.generator = generator;
+		this.trees = trees;
+		this.dynamics = dynamics;
+		this.integrator = integrator;
+		this.dt = dt;
+		this.goalTolerance = goalTolerance;
+	}
+
+	/**
+	 * Sets the simulated time after which a scenario times out. Defaults to
+	 * 60 seconds.
+	 *
+	 * @param timeout The time in seconds
+	 */
+	public void setTimeout(double timeout) {
+		if (!(timeout > 0))
+			throw new IllegalArgumentException("Timeout must be positive.");
+		this.timeout = timeout;
+	}
+
+	/**
+	 * Sets the number of scenarios run between reports of progress. Defaults
+	 * to 4096.
+	 *
+	 * @param batchSize The number of scenarios per batch
+	 */
+	public void setBatchSize(int batchSize) {
+		if (batchSize < 1)
+			throw new IllegalArgumentException("Batch size must be positive.");
+		this.batchSize = batchSize;
+	}
+
+	/**
+	 * Sets the number of failed seeds kept. Defaults to 100.
+	 *
+	 * @param maxFailures The number of seeds
+	 */
+	public void setMaxFailures(int maxFailures) {
+		if (maxFailures < 0)
+			throw new IllegalArgumentException("Number of failures must be nonnegative.");
+		this.maxFailures = maxFailures;
+	}
+
+	/**
+	 * Runs one scenario on the calling thread, such as a failure to debug.
+	 *
+	 * @param seed       The seed of the scenario
+	 * @param trajectory The trajectory to record into, or null to not record
+	 * @return How the scenario ended
+	 */
+	public ScenarioResult run(long seed, Trajectory trajectory) {
+		return run(seed, trajectory, null);
+	}
+
+	private ScenarioResult run(long seed, Trajectory trajectory, LatencyHistogram solveLatency) {
+		Scenario scenario = generator.generate(seed);
+		Simulator sim = new Simulator(trees.apply(scenario), 2, dynamics, integrator, dt);
+		if (trajectory != null)
+			sim.setTrajectory(trajectory, 1);
+		sim.setSolveLatency(solveLatency);
+		Termination goal = Termination.goalReached(scenario.getGoal(), goalTolerance);
+		Termination timedOut = Termination.timeout(timeout);
+		sim.addTermination(goal);
+		for (int i = 0; i < scenario.getObstacleCount(); i++)
+			sim.addTermination(Termination.collision(scenario.getObstacleCenter(i), scenario.getObstacleRadius(i)));
+		sim.addTermination(timedOut);
+		double[] start = scenario.getStart();
+		sim.reset(start, new double[2]);
+
+		double[] line = scenario.getGoal(); // From the start to the goal
+		line[0] -= start[0];
+		line[1] -= start[1];
+		double length2 = line[0] * line[0] + line[1] * line[1];
+		double peak = 0, sumTracking2 = 0, sumEffort = 0;
+		Termination end;
+		while ((end = sim.checkTerminations()) == null) {
+			sim.step();
+			double ax = sim.getAcceleration(0), ay = sim.getAcceleration(1), a2 = ax * ax + ay * ay;
+			peak = Math.max(peak, Math.sqrt(a2));
+			sumEffort += a2;
+			// Distance from the segment from the start to the goal
+			double dx = sim.getPosition(0) - start[0], dy = sim.getPosition(1) - start[1];
+			double t = Math.min(1, Math.max(0, (dx * line[0] + dy * line[1]) / length2));
+			dx -= t * line[0];
+			dy -= t * line[1];
+			sumTracking2 += dx * dx + dy * dy;
+		}
+		ScenarioResult.Outcome outcome = end == goal ? ScenarioResult.Outcome.REACHED_GOAL
+				: end == timedOut ? ScenarioResult.Outcome.TIMED_OUT : ScenarioResult.Outcome.COLLIDED;
+		long steps = Math.max(1, sim.getSteps());
+		return new ScenarioResult(seed, outcome, sim.getTime(), sim.getSteps(), peak, Math.sqrt(sumTracking2 / steps),
+				sumEffort / steps);
+	}
+
+	/**
+	 * Runs scenarios in parallel and aggregates their results.
+	 *
+	 * @param firstSeed The seed of the first scenario
+	 * @param count     The number of scenarios
+	 * @param pool      The pool to run on
+	 * @param progress  Receives the statistics of the scenarios run so far
+	 *                  after each batch, or null
+	 * @return The statistics of every scenario
+	 */
+	public MonteCarloStatistics runAll(long firstSeed, long count, ForkJoinPool pool,
+			Consumer<MonteCarloStatistics> progress) {
+		if (count < 0)
+			throw new IllegalArgumentException("Number of scenarios must be nonnegative.");
+		MonteCarloStatistics total = new MonteCarloStatistics(maxFailures);
+		for (long done = 0; done < count; done += batchSize) {
+			long from = firstSeed + done, to = from + Math.min(batchSize, count - done);
+			total.merge(pool.invoke(new Chunk(from, to)));
+			if (progress != null)
+				progress.accept(total.copy());
+		}
+		return total;
+	}
+
+	/**
+	 * The scenarios of a range of seeds, split in halves until small enough
+	 * to run on one thread.
+	 */
+	private class Chunk extends RecursiveTask<MonteCarloStatistics> {
+		private static final long serialVersionUID = 1L;
+		private final long from, to;
+
+		private Chunk(long from, long to) {
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected MonteCarloStatistics compute() {
+			if (to - from > CHUNK) {
+				long mid = from + (to - from) / 2;
+				Chunk right = new Chunk(mid, to);
+				right.fork();
+				MonteCarloStatistics left = new Chunk(from, mid).compute();
+				left.merge(right.join());
+				return left;
+			}
+			MonteCarloStatistics statistics = new MonteCarloStatistics(maxFailures);
+			for (long seed = from; seed < to; seed++)
+				statistics.add(run(seed, null, statistics.getSolveLatencyHistogram()));
+			return statistics;
+		}
+	}
+}
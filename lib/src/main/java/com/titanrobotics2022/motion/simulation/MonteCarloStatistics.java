@@ -0,0 +1,202 @@
+package com.titanrobotics2022.motion.simulation;
+
+import java.util.Arrays;
+
+import com.titanrobotics2022.motion.generation.rmpflow.LatencyHistogram;
+
+/**
+ * Aggregated results of many simulated scenarios, kept in constant space so
+ * that tens of thousands of scenarios can be run without keeping their
+ * trajectories.
+ * <p>
+ * The seeds of the first failures, by seed, are kept so that they can be run
+ * again with {@link MonteCarloRunner#run(long, Trajectory)}.
+ */
+public class MonteCarloStatistics {
+	private final int maxFailures;
+	private long scenarios, reached, collisions, timeouts, steps;
+	private double sumTimeToGoal, maxTimeToGoal;
+	private double sumPeakAcceleration, maxPeakAcceleration;
+	private final LatencyHistogram solveLatency = new LatencyHistogram();
+	private long[] failedSeeds = new long[0];
+
+	MonteCarloStatistics(int maxFailures) {
+		this.maxFailures = maxFailures;
+	}
+
+	void add(ScenarioResult result) {
+		scenarios++;
+		steps += result.getSteps();
+		switch (result.getOutcome()) {
+		case REACHED_GOAL:
+			reached++;
+			sumTimeToGoal += result.getTime();
+			maxTimeToGoal = Math.max(maxTimeToGoal, result.getTime());
+			break;
+		case COLLIDED:
+			collisions++;
+			break;
+		case TIMED_OUT:
+			timeouts++;
+			break;
+		}
+		if (result.getOutcome() != ScenarioResult.Outcome.REACHED_GOAL && failedSeeds.length < maxFailures) {
+			failedSeeds = Arrays.copyOf(failedSeeds, failedSeeds.length + 1);
+			failedSeeds[failedSeeds.length - 1] = result.getSeed();
+		}
+		sumPeakAcceleration += result.getPeakAcceleration();
+		maxPeakAcceleration = Math.max(maxPeakAcceleration, result.getPeakAcceleration());
+	}
+
+	/**
+	 * Adds the statistics of scenarios whose seeds all come after this one's.
+	 */
+	void merge(MonteCarloStatistics other) {
+		scenarios += other.scenarios;
+		reached += other.reached;
+		collisions += other.collisions;
+		timeouts += other.timeouts;
+		steps += other.steps;
+		sumTimeToGoal += other.sumTimeToGoal;
+		maxTimeToGoal = Math.max(maxTimeToGoal, other.maxTimeToGoal);
+		sumPeakAcceleration += other.sumPeakAcceleration;
+		maxPeakAcceleration = Math.max(maxPeakAcceleration, other.maxPeakAcceleration);
+		solveLatency.add(other.solveLatency.snapshot());
+		int keep = Math.min(other.failedSeeds.length, maxFailures - failedSeeds.length);
+		if (keep > 0) {
+			int n = failedSeeds.length;
+			failedSeeds = Arrays.copyOf(failedSeeds, n + keep);
+			System.arraycopy(other.failedSeeds, 0, failedSeeds, n, keep);
+		}
+	}
+
+	MonteCarloStatistics copy() {
+		MonteCarloStatistics copy = new MonteCarloStatistics(maxFailures);
+		copy.merge(this);
+		return copy;
+	}
+
+	LatencyHistogram getSolveLatencyHistogram() {
+		return solveLatency;
+	}
+
+	/**
+	 * Returns the number of scenarios run.
+	 *
+	 * @return The number of scenarios
+	 */
+	public long getScenarios() {
+		return scenarios;
+	}
+
+	/**
+	 * Returns the number of scenarios that reached their goal.
+	 *
+	 * @return The number of successes
+	 */
+	public long getReached() {
+		return reached;
+	}
+
+	/**
+	 * Returns the number of scenarios that ended in an obstacle.
+	 *
+	 * @return The number of collisions
+	 */
+	public long getCollisions() {
+		return collisions;
+	}
+
+	/**
+	 * Returns the number of scenarios that ran out of time.
+	 *
+	 * @return The number of timeouts
+	 */
+	public long getTimeouts() {
+		return timeouts;
+	}
+
+	/**
+	 * Returns the fraction of scenarios that reached their goal.
+	 *
+	 * @return The success rate, or 0 if no scenarios were run
+	 */
+	public double getSuccessRate() {
+		return scenarios == 0 ? 0 : (double) reached / scenarios;
+	}
+
+	/**
+	 * Returns the total number of steps simulated.
+	 *
+	 * @return The number of steps
+	 */
+	public long getSteps() {
+		return steps;
+	}
+
+	/**
+	 * Returns the mean time to reach the goal, over the scenarios that did.
+	 *
+	 * @return The mean time in seconds, or 0 if none did
+	 */
+	public double getMeanTimeToGoal() {
+		return reached == 0 ? 0 : sumTimeToGoal / reached;
+	}
+
+	/**
+	 * Returns the longest time to reach the goal.
+	 *
+	 * @return The longest time in seconds
+	 */
+	public double getMaxTimeToGoal() {
+		return maxTimeToGoal;
+	}
+
+	/**
+	 * Returns the mean over scenarios of their peak acceleration.
+	 *
+	 * @return The mean peak acceleration
+	 */
+	public double getMeanPeakAcceleration() {
+		return scenarios == 0 ? 0 : sumPeakAcceleration / scenarios;
+	}
+
+	/**
+	 * Returns the largest acceleration of any scenario.
+	 *
+	 * @return The largest peak acceleration
+	 */
+	public double getMaxPeakAcceleration() {
+		return maxPeakAcceleration;
+	}
+
+	/**
+	 * Returns the latencies of every solve of every scenario.
+	 *
+	 * @return A copy of the solve latencies
+	 */
+	public LatencyHistogram.Snapshot getSolveLatency() {
+		return solveLatency.snapshot();
+	}
+
+	/**
+	 * Returns the seeds of the first scenarios that did not reach their goal,
+	 * in order.
+	 *
+	 * @return A copy of the seeds
+	 */
+	public long[] getFailedSeeds() {
+		return failedSeeds.clone();
+	}
+
+	@Override
+	public String toString() {
+		LatencyHistogram.Snapshot latency = solveLatency.snapshot();
+		return String.format(
+				"%d scenarios: %.2f%% reached the goal, %d collisions, %d timeouts; time to goal mean %.3f s max %.3f s; "
+						+ "peak acceleration mean %.4g max %.4g; solve p50 %d ns p99 %d ns p99.9 %d ns max %d ns",
+				scenarios, 100 * getSuccessRate(), collisions, timeouts, getMeanTimeToGoal(), maxTimeToGoal,
+				getMeanPeakAcceleration(), maxPeakAcceleration, latency.getPercentile(50), latency.getPercentile(99),
+				latency.getPercentile(99.9), latency.getMax());
+	}
+}
@@ -0,0 +1,77 @@
+package com.titanrobotics2022.motion.simulation;
+
+/**
+ * A planar start, goal and set of circular obstacles, generated from a seed
+ * by a {@link ScenarioGenerator}. The same generator and seed always give the
+ * same scenario.
+ */
+public class Scenario {
+	private final long seed;
+	private final double[] start, goal;
+	private final double[][] centers;
+	private final double[] radii;
+
+	Scenario(long seed, double[] start, double[] goal, double[][] centers, double[] radii) {
+		this.seed = seed;
+		this.start = start;
+		this.goal = goal;
+		this.centers = centers;
+		this.radii = radii;
+	}
+
+	/**
+	 * Returns the seed the scenario was generated from.
+	 *
+	 * @return The seed
+	 */
+	public long getSeed() {
+		return seed;
+	}
+
+	/**
+	 * Returns the start position.
+	 *
+	 * @return A copy of the start
+	 */
+	public double[] getStart() {
+		return start.clone();
+	}
+
+	/**
+	 * Returns the goal position.
+	 *
+	 * @return A copy of the goal
+	 */
+	public double[] getGoal() {
+		return goal.clone();
+	}
+
+	/**
+	 * Returns the number of obstacles.
+	 *
+	 * @return The number of obstacles
+	 */
+	public int getObstacleCount() {
+		return radii.length;
+	}
+
+	/**
+	 * Returns the center of an obstacle.
+	 *
+	 * @param i The index of the obstacle
+	 * @return A copy of its center
+	 */
+	public double[] getObstacleCenter(int i) {
+		return centers[i].clone();
+	}
+
+	/**
+	 * Returns the radius of an obstacle.
+	 *
+	 * @param i The index of the obstacle
+	 * @return Its radius
+	 */
+	public double getObstacleRadius(int i) {
+		return radii[i];
+	}
+}
@@ -0,0 +1,159 @@
+package com.titanrobotics2022.motion.simulation;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/**
+ * Generates random {@link Scenario}s the way the demo places its start, goal
+ * and obstacles, but from an explicit seed, so that any scenario can be
+ * generated again from its seed alone.
+ * <p>
+ * The start and goal are placed in the field, away from its edges and at
+ * least a minimum distance apart. Obstacles are placed in the box spanned by
+ * the start and goal, apart from each other and from both ends. An obstacle
+ * that cannot be placed after many attempts is left out, so crowded settings
+ * give fewer obstacles rather than never finishing.
+ * <p>
+ * A generator holds no random state, so one generator can be shared by any
+ * number of threads.
+ */
+public class ScenarioGenerator {
+	private static final int ATTEMPTS = 1000;
+
+	private final double width, height;
+	private final int obstacles;
+	private double margin, minGoalDistance, minSpacing, minRadius, maxRadius;
+
+	/**
+	 * Creates a generator. The margin defaults to a tenth of the smaller side
+	 * of the field, the distance between the start and goal to a quarter of
+	 * the larger side, the spacing of obstacles to a twentieth of it, and
+	 * radii to between a fifth and a half of the spacing.
+	 *
+	 * @param width     The width of the field
+	 * @param height    The height of the field
+	 * @param obstacles The number of obstacles to place
+	 */
+	public ScenarioGenerator(double width, double height, int obstacles) {
+		if (!(width > 0) || !(height > 0))
+			throw new IllegalArgumentException("Field must have a positive size.");
+		if (obstacles < 0)
+			throw new IllegalArgumentException("Number of obstacles must be nonnegative.");
+		this.width = width;
+		this.height = height;
+		this.obstacles = obstacles;
+		margin = Math.min(width, height) / 10;
+		minGoalDistance = Math.max(width, height) / 4;
+		minSpacing = Math.max(width, height) / 20;
+		minRadius = minSpacing / 5;
+		maxRadius = minSpacing / 2;
+	}
+
+	/**
+	 * Sets the distance kept between the start or goal and the edges of the
+	 * field.
+	 *
+	 * @param margin The margin
+	 */
+	public void setMargin(double margin) {
+		if (margin < 0 || 2 * margin >= Math.min(width, height))
+			throw new IllegalArgumentException("Margin must be nonnegative and fit in the field.");
+		this.margin = margin;
+	}
+
+	/**
+	 * Sets the smallest distance between the start and goal.
+	 *
+	 * @param distance The distance
+	 */
+	public void setMinGoalDistance(double distance) {
+		if (distance < 0)
+			throw new IllegalArgumentException("Distance must be nonnegative.");
+		this.minGoalDistance = distance;
+	}
+
+	/**
+	 * Sets the smallest distance between the centers of two obstacles, or an
+	 * obstacle and the start or goal.
+	 *
+	 * @param spacing The spacing
+	 */
+	public void setMinSpacing(double spacing) {
+		if (spacing < 0)
+			throw new IllegalArgumentException("Spacing must be nonnegative.");
+		this.minSpacing = spacing;
+	}
+
+	/**
+	 * Sets the range of the radii of obstacles.
+	 *
+	 * @param min The smallest radius
+	 * @param max The largest radius
+	 */
+	public void setObstacleRadius(double min, double max) {
+		if (!(min > 0) || max < min)
+			throw new IllegalArgumentException("Radii must be positive and ordered.");
+		this.minRadius = min;
+		this.maxRadius = max;
+	}
+
+	/**
+	 * Generates the scenario of a seed.
+	 *
+	 * @param seed The seed
+	 * @return The scenario
+	 * @throws IllegalStateException If the start and goal cannot be placed
+	 *                               far enough apart in the field
+	 */
+	public Scenario generate(long seed) {
+		SplittableRandom random = new SplittableRandom(seed);
+		double[] start = randomPoint(random), goal = randomPoint(random);
+		int attempts = 0;
+		while (distance(start, goal) < minGoalDistance) {
+			if (++attempts == ATTEMPTS)
+				throw new IllegalStateException("Start and goal cannot be placed far enough apart.");
+			goal = randomPoint(random);
+		}
+
+		double minX = Math.min(start[0], goal[0]), maxX = Math.max(start[0], goal[0]);
+		double minY = Math.min(start[1], goal[1]), maxY = Math.max(start[1], goal[1]);
+		double[][] centers = new double[obstacles][];
+		double[] radii = new double[obstacles];
+		int placed = 0;
+		for (int i = 0; i < obstacles; i++) {
+			for (attempts = 0; attempts < ATTEMPTS; attempts++) {
+				double[] c = { minX + random.nextDouble() * (maxX - minX), minY + random.nextDouble() * (maxY - minY) };
+				if (isClear(c, start, goal, centers, placed)) {
+					centers[placed] = c;
+					radii[placed] = minRadius + random.nextDouble() * (maxRadius - minRadius);
+					placed++;
+					break;
+				}
+			}
+		}
+		if (placed < obstacles) {
+			centers = Arrays.copyOf(centers, placed);
+			radii = Arrays.copyOf(radii, placed);
+		}
+		return new Scenario(seed, start, goal, centers, radii);
+	}
+
+	private double[] randomPoint(SplittableRandom random) {
+		return new double[] { margin + random.nextDouble() * (width - 2 * margin),
+				margin + random.nextDouble() * (height - 2 * margin) };
+	}
+
+	private boolean isClear(double[] c, double[] start, double[] goal, double[][] centers, int placed) {
+		if (distance(c, start) < minSpacing || distance(c, goal) < minSpacing)
+			return false;
+		for (int j = 0; j < placed; j++) {
+			if (distance(c, centers[j]) < minSpacing)
+				return false;
+		}
+		return true;
+	}
+
+	private static double distance(double[] p, double[] q) {
+		return Math.hypot(p[0] - q[0], p[1] - q[1]);
+	}
+}
@@ -0,0 +1,107 @@
+package com.titanrobotics2022.motion.simulation;
+
+/**
+ * How one simulated {@link Scenario} ended.
+ */
+public class ScenarioResult {
+	/**
+	 * What ended a scenario.
+	 */
+	public enum Outcome {
+		/** The robot reached the goal. */
+		REACHED_GOAL,
+		/** The robot entered an obstacle. */
+		COLLIDED,
+		/** Time ran out before either. */
+		TIMED_OUT
+	}
+
+	private final long seed;
+	private final Outcome outcome;
+	private final double time, peakAcceleration, trackingError, controlEffort;
+	private final long steps;
+
+	ScenarioResult(long seed, Outcome outcome, double time, long steps, double peakAcceleration,
+			double trackingError, double controlEffort) {
+		this.seed = seed;
+		this.outcome = outcome;
+		this.time = time;
+		this.steps = steps;
+		this.peakAcceleration = peakAcceleration;
+		this.trackingError = trackingError;
+		this.controlEffort = controlEffort;
+	}
+
+	/**
+	 * Returns the seed of the scenario, which runs it again.
+	 *
+	 * @return The seed
+	 */
+	public long getSeed() {
+		return seed;
+	}
+
+	/**
+	 * Returns what ended the scenario.
+	 *
+	 * @return The outcome
+	 */
+	public Outcome getOutcome() {
+		return outcome;
+	}
+
+	/**
+	 * Returns the simulated time at which the scenario ended.
+	 *
+	 * @return The time in seconds
+	 */
+	public double getTime() {
+		return time;
+	}
+
+	/**
+	 * Returns the number of steps simulated.
+	 *
+	 * @return The number of steps
+	 */
+	public long getSteps() {
+		return steps;
+	}
+
+	/**
+	 * Returns the largest magnitude of the acceleration over the scenario.
+	 *
+	 * @return The peak acceleration
+	 */
+	public double getPeakAcceleration() {
+		return peakAcceleration;
+	}
+
+	/**
+	 * Returns how far the robot strayed from the straight line from the start
+	 * to the goal, as the root mean square of its distance from the line over
+	 * the steps.
+	 *
+	 * @return The RMS tracking error
+	 */
+	public double getTrackingError() {
+		return trackingError;
+	}
+
+	/**
+	 * Returns the mean over the steps of the squared magnitude of the
+	 * acceleration.
+	 *
+	 * @return The control effort
+	 */
+	public double getControlEffort() {
+		return controlEffort;
+	}
+
+	@Override
+	public String toString() {
+		return String.format(
+				"seed %d: %s after %.3f s (%d steps), peak acceleration %.4g, tracking error %.4g, effort %.4g", seed,
+				outcome, time, steps, peakAcceleration, trackingError, controlEffort);
+	}
+}
@@ -0,0 +1,283 @@
+package com.titanrobotics2022.motion.simulation;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import com.titanrobotics2022.motion.generation.rmpflow.LatencyHistogram;
+import com.titanrobotics2022.motion.generation.rmpflow.RMPRoot;
+
+import org.ejml.data.DMatrixRMaj;
+
+/**
+ * Simulates a robot driven by an RMP tree, without a display and as fast as
+ * the tree can be solved.
+ * <p>
+ * Every evaluation of the acceleration solves the tree at the state being
+ * evaluated and passes the commanded acceleration through the robot's
+ * {@link Dynamics}; the chosen {@link Integrator} decides how many
+ * evaluations a step takes. The state is kept in primitive arrays and, once
+ * the tree's workspaces have been sized by a first solve, stepping does not
+ * allocate, so a simulation runs thousands of simulated seconds per second.
+ * <p>
+ * A simulator solves its tree through the root, so parallel simulations each
+ * need their own simulator and tree.
+ * <p>
+ * Leaves with evaluation state, such as the error integral of PathFollowing,
+ * advance it at every solve, including the trial states of the later stages
+ * of {@link Integrator#RK4}. Their states are not rolled back between stages,
+ * so higher-order integrators are only valid for trees without stateful
+ * leaves; simulate those with an integrator that evaluates once per step.
+ * {@link #reset(double[], double[])} discards the leaves' states.
+ */
+public class Simulator {
+	private final RMPRoot root;
+	private final int dim;
+	private final Dynamics dynamics;
+	private final Integrator integrator;
+	private final double dt;
+	private final double[][] work;
+	private final Integrator.Acceleration field = this::evaluate;
+	private final double[] x, v, a; // a is the acceleration at the start of the last step
+	private final DMatrixRMaj xs, vs, command;
+	private final ArrayList<Termination> terminations = new ArrayList<Termination>();
+	private Trajectory trajectory;
+	private LatencyHistogram solveLatency;
+	private int recordEvery = 1;
+	private long steps, solves;
+	private Termination stoppedBy;
+
+	/**
+	 * Creates a simulator at rest at the origin.
+	 *
+	 * @param root       The root of the tree driving the robot
+	 * @param dim        The dimension of the position
+	 * @param dynamics   How the robot follows the commanded acceleration
+	 * @param integrator How to advance the state
+	 * @param dt         The length of a step in seconds
+	 */
+	public Simulator(RMPRoot root, int dim, Dynamics dynamics, Integrator integrator, double dt) {
+		if (dim < 1)
+			throw new IllegalArgumentException("Dimension must be positive.");
+		if (!(dt > 0))
+			throw new IllegalArgumentException("Time step must be positive.");
+		this.root = root;
+		this.dim = dim;
+		this.dynamics = dynamics;
+		this.integrator = integrator;
+		this.dt = dt;
+		work = integrator.createWorkspace(dim);
+		x = new double[dim];
+		v = new double[dim];
+		a = new double[dim];
+		xs = new DMatrixRMaj(dim, 1);
+		vs = new DMatrixRMaj(dim, 1);
+		command = new DMatrixRMaj(dim, 1);
+	}
+
+	/**
+	 * Adds a condition that ends {@link #run()}. Conditions are checked in the
+	 * order they were added.
+	 *
+	 * @param termination The condition
+	 */
+	public void addTermination(Termination termination) {
+		terminations.add(termination);
+	}
+
+	/**
+	 * Records the state into a trajectory, starting from the next
+	 * {@link #reset(double[], double[])}.
+	 *
+	 * @param trajectory The trajectory to append to, or null to stop recording
+	 * @param every      The number of steps between samples
+	 */
+	public void setTrajectory(Trajectory trajectory, int every) {
+		if (every < 1)
+			throw new IllegalArgumentException("Steps between samples must be positive.");
+		if (trajectory != null && trajectory.getDimension() != dim)
+			throw new IllegalArgumentException("Trajectory has the wrong dimension.");
+		this.trajectory = trajectory;
+		this.recordEvery = every;
+	}
+
+	/**
+	 * Records how long each solve of the tree takes.
+	 *
+	 * @param histogram The histogram to record into, or null to stop timing
+	 */
+	public void setSolveLatency(LatencyHistogram histogram) {
+		this.solveLatency = histogram;
+	}
+
+	/**
+	 * Starts a new simulation at time zero, clearing the trajectory, discarding
+	 * the evaluation state of the tree's leaves and recording the initial
+	 * state.
+	 *
+	 * @param x0 The initial position
+	 * @param v0 The initial velocity
+	 */
+	public void reset(double[] x0, double[] v0) {
+		if (x0.length != dim || v0.length != dim)
+			throw new IllegalArgumentException("Initial state has the wrong dimension.");
+		System.arraycopy(x0, 0, x, 0, dim);
+		System.arraycopy(v0, 0, v, 0, dim);
+		Arrays.fill(a, 0);
+		root.resetStates();
+		steps = 0;
+		solves = 0;
+		stoppedBy = null;
+		if (trajectory != null) {
+			trajectory.clear();
+			trajectory.add(0, x, v, a);
+		}
+	}
+
+	/**
+	 * Advances the simulation by one step.
+	 */
+	public void step() {
+		integrator.step(field, x, v, dt, work);
+		System.arraycopy(work[0], 0, a, 0, dim);
+		steps++;
+		if (trajectory != null && steps % recordEvery == 0)
+			trajectory.add(getTime(), x, v, a);
+	}
+
+	/**
+	 * Checks the terminations against the current state.
+	 *
+	 * @return The first termination that holds, or null if none does
+	 */
+	public Termination checkTerminations() {
+		for (int i = 0; i < terminations.size(); i++) {
+			Termination termination = terminations.get(i);
+			if (termination.test(getTime(), x, v))
+				return termination;
+		}
+		return null;
+	}
+
+	/**
+	 * Steps until a termination holds. Add a {@link Termination#timeout(double)}
+	 * to bound simulations that may never reach their goal.
+	 *
+	 * @return The termination that ended the simulation
+	 */
+	public Termination run() {
+		if (terminations.isEmpty())
+			throw new IllegalStateException("A simulation needs a termination to run.");
+		Termination termination;
+		while ((termination = checkTerminations()) == null)
+			step();
+		stoppedBy = termination;
+		return termination;
+	}
+
+	private void evaluate(double[] x, double[] v, double[] out) {
+		System.arraycopy(x, 0, xs.data, 0, dim);
+		System.arraycopy(v, 0, vs.data, 0, dim);
+		if (solveLatency == null) {
+			root.solve(xs, vs, command);
+		} else {
+			long start = System.nanoTime();
+			root.solve(xs, vs, command);
+			solveLatency.record(System.nanoTime() - start);
+		}
+		dynamics.accelerate(x, v, command.data, out);
+		solves++;
+	}
+
+	/**
+	 * Returns the simulated time, the number of steps times the time step.
+	 *
+	 * @return The time in seconds
+	 */
+	public double getTime() {
+		return steps * dt;
+	}
+
+	/**
+	 * Returns the number of steps since the last reset.
+	 *
+	 * @return The number of steps
+	 */
+	public long getSteps() {
+		return steps;
+	}
+
+	/**
+	 * Returns the number of times the tree was solved since the last reset.
+	 *
+	 * @return The number of solves
+	 */
+	public long getSolves() {
+		return solves;
+	}
+
+	/**
+	 * Returns a component of the position.
+	 *
+	 * @param i The component
+	 * @return The component of the position
+	 */
+	public double getPosition(int i) {
+		return x[i];
+	}
+
+	/**
+	 * Returns a component of the velocity.
+	 *
+	 * @param i The component
+	 * @return The component of the velocity
+	 */
+	public double getVelocity(int i) {
+		return v[i];
+	}
+
+	/**
+	 * Returns a component of the acceleration at the start of the last step.
+	 *
+	 * @param i The component
+	 * @return The component of the acceleration
+	 */
+	public double getAcceleration(int i) {
+		return a[i];
+	}
+
+	/**
+	 * Returns the termination that ended the last {@link #run()}.
+	 *
+	 * @return The termination, or null if the simulation has not ended
+	 */
+	public Termination getStoppedBy() {
+		return stoppedBy;
+	}
+
+	/**
+	 * Returns the dimension of the position.
+	 *
+	 * @return The dimension
+	 */
+	public int getDimension() {
+		return dim;
+	}
+
+	/**
+	 * Returns the length of a step.
+	 *
+	 * @return The time step in seconds
+	 */
+	public double getTimeStep() {
+		return dt;
+	}
+
+	/**
+	 * Returns the integrator advancing the state.
+	 *
+	 * @return The integrator
+	 */
+	public Integrator getIntegrator() {
+		return integrator;
+	}
+}
@@ -0,0 +1,82 @@
+package com.titanrobotics2022.motion.simulation;
+
+/**
+ * A condition that ends a simulation. A {@link Simulator} checks its
+ * terminations before every step and reports the first one that holds.
+ */
+@FunctionalInterface
+public interface Termination {
+	/**
+	 * Checks whether the simulation should end.
+	 *
+	 * @param time The simulated time in seconds
+	 * @param x    The position, which must not be modified
+	 * @param v    The velocity, which must not be modified
+	 * @return Whether the simulation should end
+	 */
+	boolean test(double time, double[] x, double[] v);
+
+	/**
+	 * Ends once the position is within a distance of a goal.
+	 *
+	 * @param goal      The goal, copied
+	 * @param tolerance The largest distance from the goal
+	 * @return The termination
+	 */
+	static Termination goalReached(double[] goal, double tolerance) {
+		return goalReached(goal, tolerance, Double.POSITIVE_INFINITY);
+	}
+
+	/**
+	 * Ends once the position is within a distance of a goal and the robot
+	 * has slowed down there.
+	 *
+	 * @param goal      The goal, copied
+	 * @param tolerance The largest distance from the goal
+	 * @param maxSpeed  The largest speed at the goal
+	 * @return The termination
+	 */
+	static Termination goalReached(double[] goal, double tolerance, double maxSpeed) {
+		double[] g = goal.clone();
+		double tolerance2 = tolerance * tolerance, maxSpeed2 = maxSpeed * maxSpeed;
+		return (time, x, v) -> {
+			double d2 = 0, s2 = 0;
+			for (int i = 0; i < g.length; i++) {
+				double d = x[i] - g[i];
+				d2 += d * d;
+				s2 += v[i] * v[i];
+			}
+			return d2 <= tolerance2 && s2 <= maxSpeed2;
+		};
+	}
+
+	/**
+	 * Ends once the position is inside a circular obstacle.
+	 *
+	 * @param center The center of the obstacle, copied
+	 * @param radius The radius of the obstacle
+	 * @return The termination
+	 */
+	static Termination collision(double[] center, double radius) {
+		double[] c = center.clone();
+		double radius2 = radius * radius;
+		return (time, x, v) -> {
+			double d2 = 0;
+			for (int i = 0; i < c.length; i++) {
+				double d = x[i] - c[i];
+				d2 += d * d;
+			}
+			return d2 < radius2;
+		};
+	}
+
+	/**
+	 * Ends once a simulated time has passed.
+	 *
+	 * @param limit The time in seconds
+	 * @return The termination
+	 */
+	static Termination timeout(double limit) {
+		return (time, x, v) -> time >= limit;
+	}
+}
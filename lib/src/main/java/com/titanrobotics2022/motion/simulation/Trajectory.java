@@ -0,0 +1,130 @@
+package com.titanrobotics2022.motion.simulation;
+
+import java.util.Arrays;
+
+/**
+ * The samples of a simulation, each a time, position, velocity and
+ * acceleration, stored contiguously in one primitive array.
+ * <p>
+ * The array doubles in size when it fills up, so a trajectory created with
+ * enough capacity for the whole simulation never allocates while recording.
+ */
+public class Trajectory {
+	private final int dim, stride;
+	private double[] data;
+	private int size;
+
+	/**
+	 * Creates an empty trajectory.
+	 *
+	 * @param dim      The dimension of the position
+	 * @param capacity The number of samples to allocate for up front
+	 */
+	public Trajectory(int dim, int capacity) {
+		if (dim < 1)
+			throw new IllegalArgumentException("Dimension must be positive.");
+		if (capacity < 1)
+			throw new IllegalArgumentException("Capacity must be positive.");
+		this.dim = dim;
+		this.stride = 1 + 3 * dim;
+		this.data = new double[capacity * stride];
+	}
+
+	/**
+	 * Creates an empty trajectory with room for 1024 samples.
+	 *
+	 * @param dim The dimension of the position
+	 */
+	public Trajectory(int dim) {
+		this(dim, 1024);
+	}
+
+	void add(double time, double[] x, double[] v, double[] a) {
+		int offset = size * stride;
+		if (offset + stride > data.length)
+			data = Arrays.copyOf(data, data.length * 2);
+		data[offset] = time;
+		System.arraycopy(x, 0, data, offset + 1, dim);
+		System.arraycopy(v, 0, data, offset + 1 + dim, dim);
+		System.arraycopy(a, 0, data, offset + 1 + 2 * dim, dim);
+		size++;
+	}
+
+	/**
+	 * Removes every sample, keeping the capacity.
+	 */
+	public void clear() {
+		size = 0;
+	}
+
+	/**
+	 * Returns the number of samples.
+	 *
+	 * @return The number of samples
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Returns the dimension of the position.
+	 *
+	 * @return The dimension
+	 */
+	public int getDimension() {
+		return dim;
+	}
+
+	/**
+	 * Returns the time of a sample.
+	 *
+	 * @param sample The index of the sample
+	 * @return The time in seconds
+	 */
+	public double getTime(int sample) {
+		return data[offset(sample, 0)];
+	}
+
+	/**
+	 * Returns a component of the position of a sample.
+	 *
+	 * @param sample The index of the sample
+	 * @param i      The component
+	 * @return The component of the position
+	 */
+	public double getPosition(int sample, int i) {
+		return data[offset(sample, i) + 1];
+	}
+
+	/**
+	 * Returns a component of the velocity of a sample.
+	 *
+	 * @param sample The index of the sample
+	 * @param i      The component
+	 * @return The component of the velocity
+	 */
+	public double getVelocity(int sample, int i) {
+		return data[offset(sample, i) + 1 + dim];
+	}
+
+	/**
+	 * Returns a component of the acceleration of a sample, the acceleration
+	 * at the start of the step that led to it. The first sample of a
+	 * simulation has none and records zero.
+	 *
+	 * @param sample The index of the sample
+	 * @param i      The component
+	 * @return The component of the acceleration
+	 */
+	public double getAcceleration(int sample, int i) {
+		return data[offset(sample, i) + 1 + 2 * dim];
+	}
+
+	private int offset(int sample, int i) {
+		if (sample < 0 || sample >= size)
+			throw new IndexOutOfBoundsException("Sample " + sample + " of " + size);
+		if (i < 0 || i >= dim)
+			throw new IndexOutOfBoundsException("Component " + i + " of " + dim);
+		return sample * stride + i;
+	}
+}
@@ -0,0 +1,288 @@
+package com.titanrobotics2022.motion.simulation.tuning;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import com.titanrobotics2022.motion.simulation.Dynamics;
+import com.titanrobotics2022.motion.simulation.Integrator;
+import com.titanrobotics2022.motion.simulation.MonteCarloRunner;
+import com.titanrobotics2022.motion.simulation.ScenarioGenerator;
+import com.titanrobotics2022.motion.simulation.ScenarioResult;
+
+import org.apache.commons.math3.analysis.MultivariateFunction;
+import org.apache.commons.math3.optim.InitialGuess;
+import org.apache.commons.math3.optim.MaxEval;
+import org.apache.commons.math3.optim.SimpleBounds;
+import org.apache.commons.math3.optim.nonlinear.scalar.GoalType;
+import org.apache.commons.math3.optim.nonlinear.scalar.ObjectiveFunction;
+import org.apache.commons.math3.optim.nonlinear.scalar.noderiv.CMAESOptimizer;
+import org.apache.commons.math3.random.MersenneTwister;
+
+/**
+ * Tunes gains with CMA-ES by simulating every candidate on the same set of
+ * generated scenarios.
+ * <p>
+ * A candidate is scored by the mean cost of its scenarios, the cost of a
+ * scenario being a weighted sum of its time to the goal, its tracking error,
+ * its control effort and whether it collided. A scenario that does not reach
+ * its goal counts as taking the whole timeout. The optimizer proposes one
+ * candidate at a time, so each candidate's scenarios are simulated in
+ * parallel on a {@link ForkJoinPool}; with 64 scenarios a candidate keeps
+ * every core of a workstation busy.
+ * <p>
+ * The search runs in the gains' bounds scaled to [0, 1], so that CMA-ES takes
+ * steps of the same relative size in every gain. Scenario seeds and the
+ * optimizer's random generator are both fixed, so a tuning run can be
+ * repeated exactly.
+ */
+public class GainTuner {
+	private final ScenarioGenerator generator;
+	private final TunableGains gains;
+	private final Dynamics dynamics;
+	private final Integrator integrator;
+	private final double dt, goalTolerance;
+	private double timeout = 30;
+	private long firstSeed;
+	private int scenarios = 64;
+	private double timeWeight = 1, trackingWeight = 1, effortWeight = 0.01, collisionWeight = 100;
+	private int populationSize; // 0 for the optimizer's default
+	private double sigma = 0.3;
+	private long seed = 1;
+
+	/**
+	 * Creates a tuner.
+	 *
+	 * @param generator     Generates the scenarios to score candidates on
+	 * @param gains         The gains to tune
+	 * @param dynamics      How the robot follows the commanded acceleration
+	 * @param integrator    How to advance the state
+	 * @param dt            The length of a step in seconds
+	 * @param goalTolerance The distance from the goal that counts as reaching
+	 *                      it
+	 */
+	public GainTuner(ScenarioGenerator generator, TunableGains gains, Dynamics dynamics, Integrator integrator,
+			double dt, double goalTolerance) {
+		if (!(dt > 0))
+			throw new IllegalArgumentException("Time step must be positive.");
+		if (!(goalTolerance > 0))
+			throw new IllegalArgumentException("Goal tolerance must be positive.");
+		this.generator = generator;
+		this.gains = gains;
+		this.dynamics = dynamics;
+		this.integrator = integrator;
+		this.dt = dt;
+		this.goalTolerance = goalTolerance;
+	}
+
+	/**
+	 * Sets the scenarios candidates are scored on. Defaults to 64 scenarios
+	 * from seed 0.
+	 *
+	 * @param firstSeed The seed of the first scenario
+	 * @param count     The number of scenarios
+	 */
+	public void setScenarios(long firstSeed, int count) {
+		if (count < 1)
+			throw new IllegalArgumentException("Number of scenarios must be positive.");
+		this.firstSeed = firstSeed;
+		this.scenarios = count;
+	}
+
+	/**
+	 * Sets the simulated time after which a scenario times out. Defaults to
+	 * 30 seconds.
+	 *
+	 * @param timeout The time in seconds
+	 */
+	public void setTimeout(double timeout) {
+		if (!(timeout > 0))
+			throw new IllegalArgumentException("Timeout must be positive.");
+		this.timeout = timeout;
+	}
+
+	/**
+	 * Sets the weights of the terms of a scenario's cost. Defaults to 1 per
+	 * second, 1 per unit of RMS tracking error, 0.01 per unit of mean squared
+	 * acceleration and 100 per collision.
+	 *
+	 * @param time      The weight of the time to the goal
+	 * @param tracking  The weight of the tracking error
+	 * @param effort    The weight of the control effort
+	 * @param collision The cost of a collision
+	 */
+	public void setWeights(double time, double tracking, double effort, double collision) {
+		if (time < 0 || tracking < 0 || effort < 0 || collision < 0)
+			throw new IllegalArgumentException("Weights must be nonnegative.");
+		this.timeWeight = time;
+		this.trackingWeight = tracking;
+		this.effortWeight = effort;
+		this.collisionWeight = collision;
+	}
+
+	/**
+	 * Sets how the optimizer searches.
+	 *
+	 * @param populationSize The number of candidates per generation, or 0
+	 *                       for 4 + 3 ln(number of gains)
+	 * @param sigma          The initial step size, as a fraction of the range
+	 *                       of each gain
+	 * @param seed           The seed of the optimizer's random generator
+	 */
+	public void setSearch(int populationSize, double sigma, long seed) {
+		if (populationSize < 0)
+			throw new IllegalArgumentException("Population size must be nonnegative.");
+		if (!(sigma > 0) || sigma > 1)
+			throw new IllegalArgumentException("Sigma must be in (0, 1].");
+		this.populationSize = populationSize;
+		this.sigma = sigma;
+		this.seed = seed;
+	}
+
+	/**
+	 * Simulates a candidate on every scenario.
+	 *
+	 * @param values The value of each gain
+	 * @param pool   The pool to simulate on
+	 * @return The result of each scenario, in the order of their seeds
+	 */
+	public ScenarioResult[] simulate(double[] values, ForkJoinPool pool) {
+		if (values.length != gains.size())
+			throw new IllegalArgumentException("Expected " + gains.size() + " gains.");
+		double[] g = values.clone();
+		MonteCarloRunner runner = new MonteCarloRunner(generator, scenario -> gains.createTree(g, scenario), dynamics,
+				integrator, dt, goalTolerance);
+		runner.setTimeout(timeout);
+		ScenarioResult[] results = new ScenarioResult[scenarios];
+		pool.invoke(new Simulation(runner, results, 0, scenarios));
+		return results;
+	}
+
+	/**
+	 * Returns the cost of one scenario. A scenario whose state diverged costs
+	 * as much as one that timed out and collided.
+	 *
+	 * @param result How the scenario ended
+	 * @return The cost
+	 */
+	public double cost(ScenarioResult result) {
+		boolean reached = result.getOutcome() == ScenarioResult.Outcome.REACHED_GOAL;
+		double cost = timeWeight * (reached ? result.getTime() : timeout) + trackingWeight * result.getTrackingError()
+				+ effortWeight * result.getControlEffort();
+		if (result.getOutcome() == ScenarioResult.Outcome.COLLIDED)
+			cost += collisionWeight;
+		return Double.isFinite(cost) ? cost : timeWeight * timeout + collisionWeight;
+	}
+
+	/**
+	 * Scores a candidate.
+	 *
+	 * @param values The value of each gain
+	 * @param pool   The pool to simulate on
+	 * @return The mean cost of the scenarios
+	 */
+	public double score(double[] values, ForkJoinPool pool) {
+		return score(simulate(values, pool));
+	}
+
+	private double score(ScenarioResult[] results) {
+		double sum = 0;
+		for (ScenarioResult result : results)
+			sum += cost(result);
+		return sum / results.length;
+	}
+
+	/**
+	 * Searches for the gains with the lowest score.
+	 *
+	 * @param maxEvaluations The number of candidates to score, such as 1000
+	 * @param pool           The pool to simulate on
+	 * @return The best candidate found, with the results of its scenarios
+	 */
+	public TuningResult tune(int maxEvaluations, ForkJoinPool pool) {
+		if (maxEvaluations < 1)
+			throw new IllegalArgumentException("Number of evaluations must be positive.");
+		int n = gains.size();
+		double[] start = new double[n], lower = new double[n], upper = new double[n], step = new double[n];
+		double[] initial = gains.getInitial();
+		for (int i = 0; i < n; i++) {
+			start[i] = (initial[i] - gains.getLower(i)) / (gains.getUpper(i) - gains.getLower(i));
+			upper[i] = 1;
+			step[i] = sigma;
+		}
+		Search search = new Search(pool, maxEvaluations);
+		int lambda = populationSize > 0 ? populationSize : 4 + (int) (3 * Math.log(n));
+		CMAESOptimizer optimizer = new CMAESOptimizer(maxEvaluations, 0, true, 0, 0, new MersenneTwister(seed), false,
+				null);
+		optimizer.optimize(new MaxEval(maxEvaluations), new ObjectiveFunction(search), GoalType.MINIMIZE,
+				new InitialGuess(start), new SimpleBounds(lower, upper), new CMAESOptimizer.Sigma(step),
+				new CMAESOptimizer.PopulationSize(lambda));
+
+		ScenarioResult[] results = simulate(search.best, pool);
+		double[] costs = new double[results.length];
+		for (int i = 0; i < results.length; i++)
+			costs[i] = cost(results[i]);
+		return new TuningResult(gains, search.best, score(results), results, costs,
+				Arrays.copyOf(search.scores, search.evaluations));
+	}
+
+	/**
+	 * Scores the candidates of the optimizer, in the scaled gains, and keeps
+	 * the best one.
+	 */
+	private class Search implements MultivariateFunction {
+		private final ForkJoinPool pool;
+		private final double[] scores;
+		private int evaluations;
+		private double[] best;
+		private double bestScore = Double.POSITIVE_INFINITY;
+
+		private Search(ForkJoinPool pool, int maxEvaluations) {
+			this.pool = pool;
+			this.scores = new double[maxEvaluations];
+		}
+
+		@Override
+		public double value(double[] x) {
+			double[] values = new double[x.length];
+			for (int i = 0; i < x.length; i++)
+				values[i] = gains.getLower(i) + x[i] * (gains.getUpper(i) - gains.getLower(i));
+			double score = score(values, pool);
+			if (evaluations < scores.length)
+				scores[evaluations++] = score;
+			if (score < bestScore) {
+				bestScore = score;
+				best = values;
+			}
+			return score;
+		}
+	}
+
+	/**
+	 * The scenarios of a range of indices, split in halves down to single
+	 * scenarios.
+	 */
+	private class Simulation extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private final MonteCarloRunner runner;
+		private final ScenarioResult[] results;
+		private final int from, to;
+
+		private Simulation(MonteCarloRunner runner, ScenarioResult[] results, int from, int to) {
+			this.runner = runner;
+			this.results = results;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from > 1) {
+				int mid = (from + to) >>> 1;
+				invokeAll(new Simulation(runner, results, from, mid), new Simulation(runner, results, mid, to));
+			} else {
+				results[from] = runner.run(firstSeed + from, null);
+			}
+		}
+	}
+}
@@ -0,0 +1,155 @@
+package com.titanrobotics2022.motion.simulation.tuning;
+
+import java.util.function.BiFunction;
+
+import com.titanrobotics2022.mapping.LinearSegment;
+import com.titanrobotics2022.mapping.Point;
+import com.titanrobotics2022.motion.generation.rmpflow.RMPNode;
+import com.titanrobotics2022.motion.generation.rmpflow.RMPRoot;
+import com.titanrobotics2022.motion.generation.rmpflow.rmps.CollisionAvoidance;
+import com.titanrobotics2022.motion.generation.rmpflow.rmps.GoalAttractor;
+import com.titanrobotics2022.motion.generation.rmpflow.rmps.PathFollowing;
+import com.titanrobotics2022.motion.simulation.Scenario;
+
+import org.ejml.simple.SimpleMatrix;
+
+/**
+ * The gains a {@link GainTuner} searches over: their names, starting values
+ * and bounds, and how to build the tree a set of gains drives a scenario
+ * with.
+ */
+public class TunableGains {
+	private final String[] names;
+	private final double[] initial, lower, upper;
+	private final BiFunction<double[], Scenario, RMPRoot> trees;
+
+	/**
+	 * Creates a set of gains.
+	 *
+	 * @param names   The name of each gain
+	 * @param initial The value of each gain to start the search from
+	 * @param lower   The smallest value of each gain
+	 * @param upper   The largest value of each gain
+	 * @param trees   Creates the tree for a scenario from values of the gains
+	 */
+	public TunableGains(String[] names, double[] initial, double[] lower, double[] upper,
+			BiFunction<double[], Scenario, RMPRoot> trees) {
+		int n = names.length;
+		if (n == 0 || initial.length != n || lower.length != n || upper.length != n)
+			throw new IllegalArgumentException("Every gain needs a name, an initial value and bounds.");
+		for (int i = 0; i < n; i++) {
+			if (!(lower[i] < upper[i]) || initial[i] < lower[i] || initial[i] > upper[i])
+				throw new IllegalArgumentException("Initial value of " + names[i] + " must be within its bounds.");
+		}
+		this.names = names.clone();
+		this.initial = initial.clone();
+		this.lower = lower.clone();
+		this.upper = upper.clone();
+		this.trees = trees;
+	}
+
+	/**
+	 * The eight gains of a {@link PathFollowing} along the straight line from
+	 * the start to the goal, starting from the demo's values, with a
+	 * {@link CollisionAvoidance} around each obstacle.
+	 *
+	 * @return The gains v, P, I, A, B, K, h and maxAcc
+	 */
+	public static TunableGains pathFollowing() {
+		return new TunableGains(new String[] { "v", "P", "I", "A", "B", "K", "h", "maxAcc" },
+				new double[] { 8, 5, 0, 1, 0.5, 1, 0.5, 2 }, new double[] { 0.5, 0, 0, -5, 0, 0.05, 0.05, 0.1 },
+				new double[] { 20, 20, 5, 5, 10, 10, 0.95, 20 }, (gains, scenario) -> {
+					RMPRoot root = new RMPRoot("root");
+					double[] start = scenario.getStart(), goal = scenario.getGoal();
+					new PathFollowing("path", root, new LinearSegment(new Point(start[0], start[1]),
+							new Point(goal[0], goal[1])), gains[0], gains[1], gains[2], gains[3], gains[4], gains[5],
+							gains[6], gains[7]);
+					addObstacles(root, scenario);
+					return root;
+				});
+	}
+
+	/**
+	 * The seven gains of a {@link GoalAttractor} at the goal, starting from
+	 * the values used in the tests, with a {@link CollisionAvoidance} around
+	 * each obstacle.
+	 *
+	 * @return The gains w_u, w_l, sigma, alpha, eta, gain and tolerance
+	 */
+	public static TunableGains goalAttractor() {
+		return new TunableGains(new String[] { "w_u", "w_l", "sigma", "alpha", "eta", "gain", "tolerance" },
+				new double[] { 10, 1, 1, 10, 1, 5, 0.01 }, new double[] { 1, 0.1, 0.1, 0.1, 0.1, 0.1, 0.001 },
+				new double[] { 50, 10, 10, 50, 10, 50, 1 }, (gains, scenario) -> {
+					RMPRoot root = new RMPRoot("root");
+					new GoalAttractor("goal", root, new SimpleMatrix(2, 1, false, scenario.getGoal()), gains[0],
+							gains[1], gains[2], gains[3], gains[4], gains[5], gains[6]);
+					addObstacles(root, scenario);
+					return root;
+				});
+	}
+
+	private static void addObstacles(RMPNode root, Scenario scenario) {
+		for (int i = 0; i < scenario.getObstacleCount(); i++)
+			new CollisionAvoidance("obstacle " + i, root, new SimpleMatrix(2, 1, false, scenario.getObstacleCenter(i)),
+					scenario.getObstacleRadius(i), .2, 1e-5, 0.0);
+	}
+
+	/**
+	 * Creates the tree for a scenario.
+	 *
+	 * @param gains    The value of each gain
+	 * @param scenario The scenario
+	 * @return The root of the tree
+	 */
+	public RMPRoot createTree(double[] gains, Scenario scenario) {
+		return trees.apply(gains, scenario);
+	}
+
+	/**
+	 * Returns the number of gains.
+	 *
+	 * @return The number of gains
+	 */
+	public int size() {
+		return names.length;
+	}
+
+	/**
+	 * Returns the name of a gain.
+	 *
+	 * @param i The index of the gain
+	 * @return Its name
+	 */
+	public String getName(int i) {
+		return names[i];
+	}
+
+	/**
+	 * Returns the value of each gain to start the search from.
+	 *
+	 * @return A copy of the initial values
+	 */
+	public double[] getInitial() {
+		return initial.clone();
+	}
+
+	/**
+	 * Returns the smallest value of a gain.
+	 *
+	 * @param i The index of the gain
+	 * @return Its lower bound
+	 */
+	public double getLower(int i) {
+		return lower[i];
+	}
+
+	/**
+	 * Returns the largest value of a gain.
+	 *
+	 * @param i The index of the gain
+	 * @return Its upper bound
+	 */
+	public double getUpper(int i) {
+		return upper[i];
+	}
+}
@@ -0,0 +1,128 @@
+package com.titanrobotics2022.motion.simulation.tuning;
+
+import java.util.Arrays;
+
+import com.titanrobotics2022.motion.simulation.ScenarioResult;
+
+/**
+ * The best gains a {@link GainTuner} found, with how they did on each
+ * scenario and the scores of every candidate tried.
+ */
+public class TuningResult {
+	private final String[] names;
+	private final double[] values;
+	private final double score;
+	private final ScenarioResult[] results;
+	private final double[] costs; // Sorted
+	private final double[] candidateScores; // In the order they were scored
+
+	TuningResult(TunableGains gains, double[] values, double score, ScenarioResult[] results, double[] costs,
+			double[] candidateScores) {
+		this.names = new String[gains.size()];
+		for (int i = 0; i < names.length; i++)
+			names[i] = gains.getName(i);
+		this.values = values.clone();
+		this.score = score;
+		this.results = results.clone();
+		this.costs = costs.clone();
+		Arrays.sort(this.costs);
+		this.candidateScores = candidateScores;
+	}
+
+	/**
+	 * Returns the best value of a gain.
+	 *
+	 * @param i The index of the gain
+	 * @return Its value
+	 */
+	public double getValue(int i) {
+		return values[i];
+	}
+
+	/**
+	 * Returns the best value of every gain.
+	 *
+	 * @return A copy of the values, in the order of the gains
+	 */
+	public double[] getValues() {
+		return values.clone();
+	}
+
+	/**
+	 * Returns the score of the best gains, the mean cost of their scenarios.
+	 *
+	 * @return The score
+	 */
+	public double getScore() {
+		return score;
+	}
+
+	/**
+	 * Returns a percentile of the costs of the best gains' scenarios.
+	 *
+	 * @param percentile The percentile, between 0 and 100
+	 * @return The cost at the percentile
+	 */
+	public double getCostPercentile(double percentile) {
+		if (percentile < 0 || percentile > 100)
+			throw new IllegalArgumentException("Percentile must be between 0 and 100.");
+		int rank = (int) Math.ceil(percentile / 100 * costs.length);
+		return costs[Math.max(0, rank - 1)];
+	}
+
+	/**
+	 * Returns the number of the best gains' scenarios with an outcome.
+	 *
+	 * @param outcome The outcome
+	 * @return The number of scenarios
+	 */
+	public int count(ScenarioResult.Outcome outcome) {
+		int count = 0;
+		for (ScenarioResult result : results) {
+			if (result.getOutcome() == outcome)
+				count++;
+		}
+		return count;
+	}
+
+	/**
+	 * Returns how the best gains did on each scenario.
+	 *
+	 * @return A copy of the results, in the order of their seeds
+	 */
+	public ScenarioResult[] getResults() {
+		return results.clone();
+	}
+
+	/**
+	 * Returns the score of every candidate tried, in the order they were
+	 * scored.
+	 *
+	 * @return A copy of the scores
+	 */
+	public double[] getCandidateScores() {
+		return candidateScores.clone();
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder s = new StringBuilder();
+		s.append(String.format("Best of %d candidates: score %.4f%n", candidateScores.length, score));
+		for (int i = 0; i < names.length; i++)
+			s.append(String.format("  %s = %.6g%n", names[i], values[i]));
+		double mean = 0, variance = 0;
+		for (double c : costs)
+			mean += c;
+		mean /= costs.length;
+		for (double c : costs)
+			variance += (c - mean) * (c - mean);
+		s.append(String.format(
+				"Cost over %d scenarios: mean %.4f, stddev %.4f, min %.4f, p50 %.4f, p90 %.4f, max %.4f%n",
+				costs.length, mean, Math.sqrt(variance / costs.length), costs[0], getCostPercentile(50),
+				getCostPercentile(90), costs[costs.length - 1]));
+		s.append(String.format("Outcomes: %d reached the goal, %d collided, %d timed out",
+				count(ScenarioResult.Outcome.REACHED_GOAL), count(ScenarioResult.Outcome.COLLIDED),
+				count(ScenarioResult.Outcome.TIMED_OUT)));
+		return s.toString();
+	}
+}
@@ -0,0 +1,125 @@
+package com.titanrobotics2022.replay;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import com.github.swrirobotics.bags.reader.BagFile;
+import com.github.swrirobotics.bags.reader.BagReader;
+import com.github.swrirobotics.bags.reader.exceptions.BagReaderException;
+import com.github.swrirobotics.bags.reader.exceptions.UninitializedFieldException;
+import com.github.swrirobotics.bags.reader.messages.serialization.MsgIterator;
+import com.github.swrirobotics.bags.reader.records.ChunkInfo;
+import com.github.swrirobotics.bags.reader.records.Connection;
+
+/**
+ * Streams the measurements of chosen topics of a ROS bag in time order.
+ * <p>
+ * Opening an indexed bag only reads its index. Messages are then read one
+ * chunk at a time per connection, so memory use does not grow with the size
+ * of the bag.
+ * Each connection is read in the order it was recorded, and the connections
+ * are merged by the stamps of their measurements.
+ */
+public class BagMeasurementStream implements Closeable {
+	private final FileChannel channel;
+	private final ConnectionStream[] streams;
+	private long count; // Measurements returned so far
+
+	/**
+	 * Opens a bag.
+	 *
+	 * @param bag      The bag file
+	 * @param decoders The decoder of each topic to read; other topics are
+	 *                 skipped
+	 * @throws IOException If the bag cannot be read
+	 */
+	public BagMeasurementStream(Path bag, Map<String, MessageDecoder> decoders) throws IOException {
+		BagFile file;
+		try {
+			file = BagReader.readFile(bag.toFile());
+		} catch (BagReaderException e) {
+			throw new IOException("Cannot read the index of " + bag, e);
+		}
+		List<ChunkInfo> chunks = file.getChunkInfos();
+		channel = file.getChannel();
+		ArrayList<ConnectionStream> found = new ArrayList<ConnectionStream>();
+		for (Connection connection : file.getConnections()) {
+			MessageDecoder decoder = decoders.get(connection.getTopic());
+			if (decoder != null)
+				found.add(new ConnectionStream(new MsgIterator(chunks, connection, channel), decoder));
+		}
+		streams = found.toArray(new ConnectionStream[0]);
+		try {
+			for (ConnectionStream stream : streams)
+				stream.advance();
+		} catch (IOException e) {
+			channel.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Reads the earliest measurement not yet read.
+	 *
+	 * @param out The measurement to write
+	 * @return Whether there was a measurement left
+	 * @throws IOException If a message cannot be decoded
+	 */
+	public boolean next(Measurement out) throws IOException {
+		ConnectionStream earliest = null;
+		for (ConnectionStream stream : streams) {
+			if (stream.pending && (earliest == null || stream.next.getTime() < earliest.next.getTime()))
+				earliest = stream;
+		}
+		if (earliest == null)
+			return false;
+		out.setTo(earliest.next);
+		earliest.advance();
+		count++;
+		return true;
+	}
+
+	/**
+	 * Returns the number of measurements read so far.
+	 *
+	 * @return The number of measurements read
+	 */
+	public long getCount() {
+		return count;
+	}
+
+	@Override
+	public void close() throws IOException {
+		channel.close();
+	}
+
+	/**
+	 * The messages of one connection, one measurement ahead.
+	 */
+	private static class ConnectionStream {
+		private final MsgIterator messages;
+		private final MessageDecoder decoder;
+		private final Measurement next = new Measurement();
+		private boolean pending;
+
+		private ConnectionStream(MsgIterator messages, MessageDecoder decoder) {
+			this.messages = messages;
+			this.decoder = decoder;
+		}
+
+		private void advance() throws IOException {
+			pending = false;
+			try {
+				while (!pending && messages.hasNext())
+					pending = decoder.decode(messages.next(), next);
+			} catch (UninitializedFieldException e) {
+				throw new IOException("A message is missing a field its decoder reads.", e);
+			}
+		}
+	}
+}
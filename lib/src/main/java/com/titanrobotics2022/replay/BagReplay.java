@@ -0,0 +1,167 @@
+package com.titanrobotics2022.replay;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.Supplier;
+
+import com.titanrobotics2022.localization.KalmanFilter;
+import com.titanrobotics2022.motion.generation.rmpflow.RMPRoot;
+
+import org.ejml.data.DMatrix2;
+import org.ejml.data.DMatrix2x2;
+import org.ejml.data.DMatrixRMaj;
+
+/**
+ * Replays logged matches through the localization and motion stack, faster
+ * than real time.
+ * <p>
+ * The measurements of the chosen topics are streamed from each bag in time
+ * order and fed to a {@link KalmanFilter}. Between measurements, the filter
+ * is stepped at a fixed control rate of bag time, and its position and
+ * velocity are solved through an RMP tree, as the robot would have done with
+ * the new controller. Every bag gets its own filter and tree, so bags can be
+ * replayed in parallel, and each replay ends with a {@link ReplaySummary}.
+ */
+public class BagReplay {
+	private final LinkedHashMap<String, MessageDecoder> decoders = new LinkedHashMap<String, MessageDecoder>();
+	private final int order;
+	private final DMatrix2x2 drift;
+	private final Supplier<RMPRoot> trees;
+	private final double period; // seconds of bag time per control tick
+
+	/**
+	 * Creates a replay with no topics.
+	 *
+	 * @param order The order of the filter, 1 or more to filter velocity
+	 * @param drift The drift of the filter, see
+	 *              {@link KalmanFilter#KalmanFilter(int, DMatrix2x2)}
+	 * @param trees Creates the tree to drive for each bag, over a planar state
+	 * @param rate  The number of control ticks per second of bag time
+	 */
+	public BagReplay(int order, DMatrix2x2 drift, Supplier<RMPRoot> trees, double rate) {
+		if (order < 0)
+			throw new IllegalArgumentException("Order must be nonnegative.");
+		if (!(rate > 0))
+			throw new IllegalArgumentException("Rate must be positive.");
+		this.order = order;
+		this.drift = drift.copy();
+		this.trees = trees;
+		this.period = 1 / rate;
+	}
+
+	/**
+	 * Feeds the messages of a topic to the filter. Measurements of a higher
+	 * order than the filter's are skipped.
+	 *
+	 * @param topic   The topic
+	 * @param decoder Turns the topic's messages into measurements
+	 */
+	public void addTopic(String topic, MessageDecoder decoder) {
+		decoders.put(topic, decoder);
+	}
+
+	/**
+	 * Replays a bag on the calling thread.
+	 *
+	 * @param bag The bag file
+	 * @return The summary of the replay
+	 * @throws IOException If the bag cannot be read
+	 */
+	public ReplaySummary run(Path bag) throws IOException {
+		long wallStart = System.nanoTime();
+		KalmanFilter filter = new KalmanFilter(order, drift);
+		RMPRoot root = trees.get();
+		Measurement m = new Measurement();
+		DMatrix2 pred = new DMatrix2();
+		DMatrixRMaj x = new DMatrixRMaj(2, 1), x_dot = new DMatrixRMaj(2, 1), a = new DMatrixRMaj(2, 1);
+
+		long measurements = 0, ticks = 0, innovations = 0, maxSolve = 0;
+		double sumInnovation2 = 0, maxInnovation = 0, sumAcceleration = 0, maxAcceleration = 0;
+		int seen = 0; // Orders that have been measured
+		double start = 0, time = 0, tick = 0;
+		try (BagMeasurementStream stream = new BagMeasurementStream(bag, decoders)) {
+			while (stream.next(m)) {
+				if (m.getOrder() > order)
+					continue;
+				if (measurements == 0)
+					start = time = tick = m.getTime();
+				// Solve the ticks that came before this measurement
+				while (tick + period <= m.getTime()) {
+					tick += period;
+					filter.step(tick - time);
+					time = tick;
+					readState(filter, pred, x, x_dot);
+					long solveStart = System.nanoTime();
+					root.solve(x, x_dot, a);
+					maxSolve = Math.max(maxSolve, System.nanoTime() - solveStart);
+					double norm = Math.hypot(a.data[0], a.data[1]);
+					sumAcceleration += norm;
+					maxAcceleration = Math.max(maxAcceleration, norm);
+					ticks++;
+				}
+				if (m.getTime() > time) {
+					filter.step(m.getTime() - time);
+					time = m.getTime();
+				}
+				if ((seen >> m.getOrder() & 1) == 1) {
+					filter.getPred(m.getOrder(), pred);
+					double dx = pred.a1 - m.getValue().a1, dy = pred.a2 - m.getValue().a2;
+					double innovation2 = dx * dx + dy * dy;
+					sumInnovation2 += innovation2;
+					maxInnovation = Math.max(maxInnovation, Math.sqrt(innovation2));
+					innovations++;
+				}
+				seen |= 1 << m.getOrder();
+				filter.update(m.getOrder(), m.getValue(), m.getPrecision());
+				measurements++;
+			}
+		}
+		filter.step(0);
+		filter.getPred(0, pred);
+		return new ReplaySummary(bag, measurements, ticks, time - start, System.nanoTime() - wallStart, maxSolve,
+				innovations == 0 ? 0 : Math.sqrt(sumInnovation2 / innovations), maxInnovation,
+				ticks == 0 ? 0 : sumAcceleration / ticks, maxAcceleration, pred.a1, pred.a2);
+	}
+
+	private void readState(KalmanFilter filter, DMatrix2 p, DMatrixRMaj x, DMatrixRMaj x_dot) {
+		filter.getPred(0, p);
+		x.data[0] = p.a1;
+		x.data[1] = p.a2;
+		if (order >= 1) {
+			filter.getPred(1, p);
+			x_dot.data[0] = p.a1;
+			x_dot.data[1] = p.a2;
+		}
+	}
+
+	/**
+	 * Replays bags in parallel, one bag per task.
+	 *
+	 * @param bags The bag files
+	 * @param pool The pool to replay on
+	 * @return The summary of each bag, in the order of the bags
+	 * @throws UncheckedIOException If a bag cannot be read
+	 */
+	public List<ReplaySummary> runAll(List<Path> bags, ForkJoinPool pool) {
+		ArrayList<ForkJoinTask<ReplaySummary>> tasks = new ArrayList<ForkJoinTask<ReplaySummary>>(bags.size());
+		for (Path bag : bags) {
+			tasks.add(pool.submit(() -> {
+				try {
+					return run(bag);
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			}));
+		}
+		ArrayList<ReplaySummary> summaries = new ArrayList<ReplaySummary>(bags.size());
+		for (ForkJoinTask<ReplaySummary> task : tasks)
+			summaries.add(task.join());
+		return summaries;
+	}
+}
@@ -0,0 +1,86 @@
+package com.titanrobotics2022.replay;
+
+import org.ejml.data.DMatrix2;
+import org.ejml.data.DMatrix2x2;
+
+/**
+ * A planar measurement decoded from a logged message, in the form
+ * {@link com.titanrobotics2022.localization.KalmanFilter#update(int, DMatrix2, DMatrix2x2)}
+ * takes it.
+ */
+public class Measurement {
+	private double time;
+	private int order;
+	private final DMatrix2 value = new DMatrix2();
+	private final DMatrix2x2 precision = new DMatrix2x2();
+
+	/**
+	 * Returns when the measurement was taken.
+	 *
+	 * @return The time of the measurement, in seconds
+	 */
+	public double getTime() {
+		return time;
+	}
+
+	/**
+	 * Sets when the measurement was taken.
+	 *
+	 * @param time The time of the measurement, in seconds
+	 */
+	public void setTime(double time) {
+		this.time = time;
+	}
+
+	/**
+	 * Returns the degree of derivative measured, 0 for a position and 1 for a
+	 * velocity.
+	 *
+	 * @return The order of the measurement
+	 */
+	public int getOrder() {
+		return order;
+	}
+
+	/**
+	 * Sets the degree of derivative measured.
+	 *
+	 * @param order 0 for a position, 1 for a velocity
+	 */
+	public void setOrder(int order) {
+		if (order < 0)
+			throw new IllegalArgumentException("Order must be nonnegative.");
+		this.order = order;
+	}
+
+	/**
+	 * Returns the measured value, which decoders write into.
+	 *
+	 * @return The measured value
+	 */
+	public DMatrix2 getValue() {
+		return value;
+	}
+
+	/**
+	 * Returns the precision (inverse covariance) of the measurement, which
+	 * decoders write into.
+	 *
+	 * @return The precision of the measurement
+	 */
+	public DMatrix2x2 getPrecision() {
+		return precision;
+	}
+
+	/**
+	 * Copies another measurement into this one.
+	 *
+	 * @param other The measurement to copy
+	 */
+	public void setTo(Measurement other) {
+		time = other.time;
+		order = other.order;
+		value.setTo(other.value);
+		precision.setTo(other.precision);
+	}
+}
@@ -0,0 +1,101 @@
+package com.titanrobotics2022.replay;
+
+import com.github.swrirobotics.bags.reader.exceptions.UninitializedFieldException;
+import com.github.swrirobotics.bags.reader.messages.serialization.MessageType;
+
+import org.ejml.data.DMatrix2x2;
+
+/**
+ * Turns a logged message into a {@link Measurement}. Decoders for common ROS
+ * messages are provided; all of them timestamp measurements with the
+ * message's header stamp.
+ * <p>
+ * A decoder is shared by every bag a {@link BagReplay} replays in parallel,
+ * so it must not keep state between calls.
+ */
+@FunctionalInterface
+public interface MessageDecoder {
+	/**
+	 * Decodes a message.
+	 *
+	 * @param message The message, which is only valid during the call
+	 * @param out     The measurement to write
+	 * @return Whether the message held a measurement
+	 * @throws UninitializedFieldException If the message lacks a field the
+	 *                                     decoder reads
+	 */
+	boolean decode(MessageType message, Measurement out) throws UninitializedFieldException;
+
+	/**
+	 * Decodes the position of a geometry_msgs/PoseStamped.
+	 *
+	 * @param precision The precision of every position
+	 * @return The decoder
+	 */
+	static MessageDecoder poseStamped(DMatrix2x2 precision) {
+		DMatrix2x2 p = precision.copy();
+		return (message, out) -> {
+			out.setTime(RosMessages.stamp(message));
+			out.setOrder(0);
+			MessageType pose = message.getField("pose");
+			RosMessages.planar(pose.getField("position"), out.getValue());
+			out.getPrecision().setTo(p);
+			return true;
+		};
+	}
+
+	/**
+	 * Decodes the position of a geometry_msgs/PoseWithCovarianceStamped, such
+	 * as a vision pose estimate.
+	 *
+	 * @param fallback The precision to use when the covariance is unset
+	 * @return The decoder
+	 */
+	static MessageDecoder poseWithCovarianceStamped(DMatrix2x2 fallback) {
+		DMatrix2x2 f = fallback.copy();
+		return (message, out) -> {
+			out.setTime(RosMessages.stamp(message));
+			out.setOrder(0);
+			MessageType pose = message.getField("pose");
+			RosMessages.planar(pose.<MessageType>getField("pose").getField("position"), out.getValue());
+			RosMessages.precision(pose, 0, f, out.getPrecision());
+			return true;
+		};
+	}
+
+	/**
+	 * Decodes the position of a nav_msgs/Odometry.
+	 *
+	 * @param fallback The precision to use when the covariance is unset
+	 * @return The decoder
+	 */
+	static MessageDecoder odometryPose(DMatrix2x2 fallback) {
+		// The pose of an odometry message is laid out like a pose with covariance
+		return poseWithCovarianceStamped(fallback);
+	}
+
+	/**
+	 * Decodes the velocity of a nav_msgs/Odometry. The twist is in the robot's
+	 * frame, so it is rotated into the odometry frame by the message's yaw.
+	 *
+	 * @param fallback The precision to use when the covariance is unset
+	 * @return The decoder
+	 */
+	static MessageDecoder odometryTwist(DMatrix2x2 fallback) {
+		DMatrix2x2 f = fallback.copy();
+		return (message, out) -> {
+			out.setTime(RosMessages.stamp(message));
+			out.setOrder(1);
+			MessageType pose = message.<MessageType>getField("pose").getField("pose");
+			double yaw = RosMessages.yaw(pose.getField("orientation"));
+			MessageType twist = message.getField("twist");
+			MessageType linear = twist.<MessageType>getField("twist").getField("linear");
+			double vx = RosMessages.float64(linear, "x"), vy = RosMessages.float64(linear, "y");
+			double c = Math.cos(yaw), s = Math.sin(yaw);
+			out.getValue().a1 = c * vx - s * vy;
+			out.getValue().a2 = s * vx + c * vy;
+			RosMessages.precision(twist, yaw, f, out.getPrecision());
+			return true;
+		};
+	}
+}
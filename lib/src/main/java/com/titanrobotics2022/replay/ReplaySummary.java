@@ -0,0 +1,165 @@
+package com.titanrobotics2022.replay;
+
+import java.nio.file.Path;
+
+/**
+ * What happened while a {@link BagReplay} replayed one bag. Compare the
+ * summaries of the same bags before and after a controller change to see how
+ * it behaves on logged matches.
+ * <p>
+ * Innovations are the distances between a measurement and the filter's
+ * prediction of it just before the update; the first measurement of each
+ * order is left out, since the filter has no prediction yet.
+ */
+public class ReplaySummary {
+	private final Path bag;
+	private final long measurements, ticks;
+	private final double duration; // seconds of bag time replayed
+	private final long wallNanos, maxSolveNanos;
+	private final double rmsInnovation, maxInnovation;
+	private final double meanAcceleration, maxAcceleration;
+	private final double finalX, finalY;
+
+	ReplaySummary(Path bag, long measurements, long ticks, double duration, long wallNanos, long maxSolveNanos,
+			double rmsInnovation, double maxInnovation, double meanAcceleration, double maxAcceleration,
+			double finalX, double finalY) {
+		this.bag = bag;
+		this.measurements = measurements;
+		this.ticks = ticks;
+		this.duration = duration;
+		this.wallNanos = wallNanos;
+		this.maxSolveNanos = maxSolveNanos;
+		this.rmsInnovation = rmsInnovation;
+		this.maxInnovation = maxInnovation;
+		this.meanAcceleration = meanAcceleration;
+		this.maxAcceleration = maxAcceleration;
+		this.finalX = finalX;
+		this.finalY = finalY;
+	}
+
+	/**
+	 * Returns the bag that was replayed.
+	 *
+	 * @return The bag file
+	 */
+	public Path getBag() {
+		return bag;
+	}
+
+	/**
+	 * Returns the number of measurements fed to the filter.
+	 *
+	 * @return The number of measurements
+	 */
+	public long getMeasurements() {
+		return measurements;
+	}
+
+	/**
+	 * Returns the number of times the tree was solved.
+	 *
+	 * @return The number of control ticks
+	 */
+	public long getTicks() {
+		return ticks;
+	}
+
+	/**
+	 * Returns the bag time covered, from the first to the last measurement.
+	 *
+	 * @return The duration in seconds
+	 */
+	public double getDuration() {
+		return duration;
+	}
+
+	/**
+	 * Returns how long the replay took.
+	 *
+	 * @return The wall-clock time in nanoseconds
+	 */
+	public long getWallNanos() {
+		return wallNanos;
+	}
+
+	/**
+	 * Returns how many times faster than real time the bag was replayed.
+	 *
+	 * @return Bag time over wall-clock time
+	 */
+	public double getRealTimeFactor() {
+		return wallNanos == 0 ? 0 : duration * 1e9 / wallNanos;
+	}
+
+	/**
+	 * Returns the longest solve of the tree.
+	 *
+	 * @return The longest solve in nanoseconds
+	 */
+	public long getMaxSolveNanos() {
+		return maxSolveNanos;
+	}
+
+	/**
+	 * Returns the root mean square of the innovations.
+	 *
+	 * @return The RMS innovation
+	 */
+	public double getRmsInnovation() {
+		return rmsInnovation;
+	}
+
+	/**
+	 * Returns the largest innovation.
+	 *
+	 * @return The largest innovation
+	 */
+	public double getMaxInnovation() {
+		return maxInnovation;
+	}
+
+	/**
+	 * Returns the mean magnitude of the commanded accelerations.
+	 *
+	 * @return The mean acceleration
+	 */
+	public double getMeanAcceleration() {
+		return meanAcceleration;
+	}
+
+	/**
+	 * Returns the largest magnitude of a commanded acceleration.
+	 *
+	 * @return The largest acceleration
+	 */
+	public double getMaxAcceleration() {
+		return maxAcceleration;
+	}
+
+	/**
+	 * Returns the filtered position at the end of the bag.
+	 *
+	 * @return The final x
+	 */
+	public double getFinalX() {
+		return finalX;
+	}
+
+	/**
+	 * Returns the filtered position at the end of the bag.
+	 *
+	 * @return The final y
+	 */
+	public double getFinalY() {
+		return finalY;
+	}
+
+	@Override
+	public String toString() {
+		return String.format(
+				"%s: %d measurements, %d ticks over %.1f s at %.0fx real time, innovation rms %.4g max %.4g, "
+						+ "acceleration mean %.4g max %.4g, slowest solve %d ns, final (%.3f, %.3f)",
+				bag.getFileName(), measurements, ticks, duration, getRealTimeFactor(), rmsInnovation, maxInnovation,
+				meanAcceleration, maxAcceleration, maxSolveNanos, finalX, finalY);
+	}
+}
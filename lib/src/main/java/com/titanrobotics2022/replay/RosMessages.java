@@ -0,0 +1,69 @@
+package com.titanrobotics2022.replay;
+
+import java.sql.Timestamp;
+
+import com.github.swrirobotics.bags.reader.exceptions.UninitializedFieldException;
+import com.github.swrirobotics.bags.reader.messages.serialization.ArrayType;
+import com.github.swrirobotics.bags.reader.messages.serialization.Float64Type;
+import com.github.swrirobotics.bags.reader.messages.serialization.MessageType;
+import com.github.swrirobotics.bags.reader.messages.serialization.TimeType;
+
+import org.ejml.data.DMatrix2;
+import org.ejml.data.DMatrix2x2;
+import org.ejml.dense.fixed.CommonOps_DDF2;
+
+/**
+ * Reads the fields of common ROS messages.
+ */
+final class RosMessages {
+	private RosMessages() {
+	}
+
+	/**
+	 * Returns the header stamp of a message, in seconds.
+	 */
+	static double stamp(MessageType message) throws UninitializedFieldException {
+		MessageType header = message.getField("header");
+		Timestamp stamp = header.<TimeType>getField("stamp").getValue();
+		return Math.floorDiv(stamp.getTime(), 1000) + stamp.getNanos() / 1e9;
+	}
+
+	static double float64(MessageType message, String name) throws UninitializedFieldException {
+		return message.<Float64Type>getField(name).getValue();
+	}
+
+	/**
+	 * Reads the x and y of a geometry_msgs/Point or geometry_msgs/Vector3.
+	 */
+	static void planar(MessageType vector, DMatrix2 out) throws UninitializedFieldException {
+		out.a1 = float64(vector, "x");
+		out.a2 = float64(vector, "y");
+	}
+
+	/**
+	 * Returns the rotation about z of a geometry_msgs/Quaternion.
+	 */
+	static double yaw(MessageType quaternion) throws UninitializedFieldException {
+		double x = float64(quaternion, "x"), y = float64(quaternion, "y"), z = float64(quaternion, "z"),
+				w = float64(quaternion, "w");
+		return Math.atan2(2 * (w * z + x * y), 1 - 2 * (y * y + z * z));
+	}
+
+	/**
+	 * Reads the precision of x and y from the row-major 6x6 covariance of a
+	 * message with covariance, rotated by an angle, falling back to a given
+	 * precision when the covariance is not positive definite, as when it is
+	 * left unset.
+	 */
+	static void precision(MessageType withCovariance, double angle, DMatrix2x2 fallback, DMatrix2x2 out) {
+		double[] cov = withCovariance.<ArrayType>getField("covariance").getAsDoubles();
+		double c = Math.cos(angle), s = Math.sin(angle);
+		// R * C * R^T
+		double a = cov[0], b = 0.5 * (cov[1] + cov[6]), d = cov[7];
+		out.a11 = c * c * a - 2 * c * s * b + s * s * d;
+		out.a12 = out.a21 = c * s * (a - d) + (c * c - s * s) * b;
+		out.a22 = s * s * a + 2 * c * s * b + c * c * d;
+		if (!(out.a11 > 0 && CommonOps_DDF2.det(out) > 0 && CommonOps_DDF2.invert(out, out)))
+			out.setTo(fallback);
+	}
+}
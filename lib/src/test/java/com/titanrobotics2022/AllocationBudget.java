@@ -0,0 +1,75 @@
+package com.titanrobotics2022;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import java.lang.management.ManagementFactory;
+
+/**
+ * Measures the bytes a call allocates on the current thread, using the
+ * per-thread allocation counters of HotSpot's ThreadMXBean, and asserts that
+ * they stay within a budget.
+ * <p>
+ * The call is warmed up first, so the budget applies to the compiled code a
+ * control loop runs in steady state, and then averaged over many calls. The
+ * lowest average of several rounds is kept, so one-off allocations by the JVM
+ * on the same thread do not count, and the bytes allocated by measuring an
+ * empty call are subtracted, so a budget of 0 means the call allocates
+ * nothing.
+ */
+public final class AllocationBudget {
+    private static final int WARMUP_CALLS = 20_000, ROUNDS = 5, CALLS_PER_ROUND = 10_000;
+    private static final com.sun.management.ThreadMXBean threads = threadBean();
+
+    private AllocationBudget() {
+    }
+
+    private static com.sun.management.ThreadMXBean threadBean() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (!(bean instanceof com.sun.management.ThreadMXBean))
+            return null;
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+        if (!threads.isThreadAllocatedMemorySupported())
+            return null;
+        threads.setThreadAllocatedMemoryEnabled(true);
+        return threads;
+    }
+
+    /**
+     * Returns the average bytes allocated by a call, after warming it up, in
+     * the round that allocated the least.
+     * Skips the calling test if the JVM cannot count allocations per thread.
+     * 
+     * @param call The call to measure
+     * @return The average bytes allocated per call
+     */
+    public static double measure(Runnable call) {
+        assumeTrue(threads != null, "Per-thread allocation counting is not supported by this JVM");
+        for (int i = 0; i < WARMUP_CALLS; i++)
+            call.run();
+        long id = Thread.currentThread().getId();
+        long least = Long.MAX_VALUE;
+        for (int round = 0; round < ROUNDS; round++) {
+            long before = threads.getThreadAllocatedBytes(id);
+            for (int i = 0; i < CALLS_PER_ROUND; i++)
+                call.run();
+            least = Math.min(least, threads.getThreadAllocatedBytes(id) - before);
+        }
+        return (double) least / CALLS_PER_ROUND;
+    }
+
+    /**
+     * Asserts that a call allocates no more than a budget on average.
+     * 
+     * @param name   The name of the call, for the failure message
+     * @param budget The most bytes the call may allocate on average
+     * @param call   The call to measure
+     */
+    public static void assertWithin(String name, long budget, Runnable call) {
+        double overhead = measure(() -> {
+        });
+        double bytes = measure(call) - overhead;
+        assertTrue(bytes <= budget, String.format("%s allocated %.1f bytes per call, over its budget of %d bytes",
+                name, bytes, budget));
+    }
+}
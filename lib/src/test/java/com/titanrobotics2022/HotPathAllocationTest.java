@@ -0,0 +1,125 @@
+package com.titanrobotics2022;
+
+import static com.titanrobotics2022.AllocationBudget.assertWithin;
+
+import com.titanrobotics2022.localization.KalmanFilter;
+import com.titanrobotics2022.mapping.LinearSegment;
+import com.titanrobotics2022.mapping.Path;
+import com.titanrobotics2022.mapping.Point;
+import com.titanrobotics2022.motion.generation.rmpflow.RMPLeaf;
+import com.titanrobotics2022.motion.generation.rmpflow.RMPRoot;
+import com.titanrobotics2022.motion.generation.rmpflow.RMPRoot2D;
+import com.titanrobotics2022.motion.generation.rmpflow.rmps.CollisionAvoidance;
+import com.titanrobotics2022.motion.generation.rmpflow.rmps.CollisionAvoidance2D;
+import com.titanrobotics2022.motion.generation.rmpflow.rmps.CollisionAvoidanceField;
+import com.titanrobotics2022.motion.generation.rmpflow.rmps.Damper;
+import com.titanrobotics2022.motion.generation.rmpflow.rmps.GoalAttractor;
+import com.titanrobotics2022.motion.generation.rmpflow.rmps.GoalAttractor2D;
+import com.titanrobotics2022.motion.generation.rmpflow.rmps.PathFollowing;
+
+import org.ejml.data.DMatrix2;
+import org.ejml.data.DMatrix2x2;
+import org.ejml.data.DMatrixRMaj;
+import org.ejml.simple.SimpleMatrix;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Allocation budgets, in bytes per call, for the methods a control loop calls
+ * every tick. Lower a budget when a method stops allocating, and only raise
+ * one on purpose.
+ * <p>
+ * The path queries work on WPILib's immutable geometry, so they allocate a
+ * 32 byte Translation2d or 40 byte Rotation2d per intermediate value, and so
+ * does path following, which uses them. Their budgets are what they allocate
+ * today without escape analysis.
+ */
+public class HotPathAllocationTest {
+    private static final long SOLVE = 0, SOLVE_WITH_PATH_FOLLOWING = 608, SOLVE_2D = 0;
+    private static final long GOAL_ATTRACTOR = 0, COLLISION_AVOIDANCE = 0, COLLISION_AVOIDANCE_FIELD = 0, DAMPER = 0;
+    private static final long PATH_FOLLOWING = 32;
+    private static final long KALMAN_UPDATE = 0, KALMAN_STEP = 0;
+    private static final long GET_PROGRESS = 224, GET_NEAREST = 392, GET_DISTANCE = 256, GET_POS = 136, INTERSECTS = 896;
+
+    RMPRoot root;
+    GoalAttractor goal;
+    CollisionAvoidance obstacle;
+    CollisionAvoidanceField field;
+    Damper damper;
+    PathFollowing follower;
+    Path path = new LinearSegment(new Point(-8, -4), new Point(8, 4));
+    DMatrixRMaj x = new DMatrixRMaj(2, 1, false, 1.0, 2.0);
+    DMatrixRMaj x_dot = new DMatrixRMaj(2, 1, false, 0.3, -0.4);
+    DMatrixRMaj a = new DMatrixRMaj(2, 1);
+
+    @BeforeEach
+    void createTree()
+    {
+        root = new RMPRoot("root");
+        goal = new GoalAttractor("goal", root, new SimpleMatrix(2, 1, false, new double[] { 5, 6 }), 10, 1, 1, 10, 1, 1,
+                0.01);
+        obstacle = new CollisionAvoidance("obstacle", root, new SimpleMatrix(2, 1, false, new double[] { 2, 3 }), 0.5,
+                .2, 1e-5, 0.0);
+        field = new CollisionAvoidanceField("field", root, 2, 16);
+        for (int i = 0; i < 16; i++)
+            field.addObstacle(new double[] { (i % 4) * 2 - 4, (i / 4) * 2 - 4.5 }, 0.3, .2, 1e-5, 0.0);
+        damper = new Damper("damper", root, 0.5, 1);
+        follower = new PathFollowing("path", root, path, 8, 5, 0, 1, 0.5, 1, 0.5, 2);
+        root.solve(x, x_dot, a);
+    }
+
+    private static Runnable evaluate(RMPLeaf leaf)
+    {
+        return leaf::evaluate;
+    }
+
+    @Test
+    void solveTest()
+    {
+        assertWithin("RMPRoot.solve with PathFollowing", SOLVE_WITH_PATH_FOLLOWING, () -> root.solve(x, x_dot, a));
+        root.unlinkChild(follower);
+        assertWithin("RMPRoot.solve", SOLVE, () -> root.solve(x, x_dot, a));
+    }
+
+    @Test
+    void solve2DTest()
+    {
+        RMPRoot2D root2D = new RMPRoot2D("root");
+        new GoalAttractor2D("goal", root2D, new DMatrix2(5, 6), 10, 1, 1, 10, 1, 1, 0.01);
+        new CollisionAvoidance2D("obstacle", root2D, new DMatrix2(2, 3), 0.5, .2, 1e-5, 0.0);
+        DMatrix2 x = new DMatrix2(1, 2), x_dot = new DMatrix2(0.3, -0.4), a = new DMatrix2();
+        assertWithin("RMPRoot2D.solve", SOLVE_2D, () -> root2D.solve(x, x_dot, a));
+    }
+
+    @Test
+    void leafEvaluateTest()
+    {
+        assertWithin("GoalAttractor.evaluate", GOAL_ATTRACTOR, evaluate(goal));
+        assertWithin("CollisionAvoidance.evaluate", COLLISION_AVOIDANCE, evaluate(obstacle));
+        assertWithin("CollisionAvoidanceField.evaluate", COLLISION_AVOIDANCE_FIELD, evaluate(field));
+        assertWithin("Damper.evaluate", DAMPER, evaluate(damper));
+        assertWithin("PathFollowing.evaluate", PATH_FOLLOWING, evaluate(follower));
+    }
+
+    @Test
+    void kalmanFilterTest()
+    {
+        KalmanFilter filter = new KalmanFilter(2, new DMatrix2x2(1, 0, 0, 1));
+        DMatrix2 measurement = new DMatrix2(1, 2);
+        DMatrix2x2 precision = new DMatrix2x2(100, 0, 0, 100);
+        assertWithin("KalmanFilter.update", KALMAN_UPDATE, () -> filter.update(0, measurement, precision));
+        assertWithin("KalmanFilter.step", KALMAN_STEP, () -> filter.step(0.02));
+    }
+
+    @Test
+    void pathQueryTest()
+    {
+        Point point = new Point(1, 3);
+        LinearSegment other = new LinearSegment(new Point(-2, 5), new Point(3, -5));
+        assertWithin("Path.getProgress", GET_PROGRESS, () -> path.getProgress(point));
+        assertWithin("Path.getNearest", GET_NEAREST, () -> path.getNearest(point));
+        assertWithin("Path.getDistance", GET_DISTANCE, () -> path.getDistance(point));
+        assertWithin("Path.getPos", GET_POS, () -> path.getPos(3));
+        assertWithin("Path.intersects", INTERSECTS, () -> path.intersects(other));
+    }
+}
@@ -0,0 +1,69 @@
+package com.titanrobotics2022.mapping;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+import org.junit.jupiter.api.Test;
+
+public class SpatialHashGridTest {
+    private static int[] bruteForce(double[] xs, double[] ys, boolean[] present, double x, double y, double radius) {
+        int[] found = new int[xs.length];
+        int count = 0;
+        for (int i = 0; i < xs.length; i++)
+            if (present[i] && Math.hypot(xs[i] - x, ys[i] - y) <= radius)
+                found[count++] = i;
+        return Arrays.copyOf(found, count);
+    }
+
+    private static int[] query(SpatialHashGrid grid, double x, double y, double radius, int capacity) {
+        int[] out = new int[capacity];
+        int count = grid.query(x, y, radius, out);
+        int[] found = Arrays.copyOf(out, count);
+        Arrays.sort(found);
+        return found;
+    }
+
+    @Test
+    void queryMatchesBruteForceTest() {
+        SplittableRandom random = new SplittableRandom(2022);
+        int n = 500;
+        double[] xs = new double[n], ys = new double[n];
+        boolean[] present = new boolean[n];
+        SpatialHashGrid grid = new SpatialHashGrid(2.0, 16);
+        for (int i = 0; i < n; i++) {
+            xs[i] = random.nextDouble(-50, 50);
+            ys[i] = random.nextDouble(-50, 50);
+            present[i] = true;
+            grid.insert(i, xs[i], ys[i]);
+        }
+        for (int i = 0; i < n; i += 3) { // move some points incrementally
+            xs[i] = random.nextDouble(-50, 50);
+            ys[i] = random.nextDouble(-50, 50);
+            grid.move(i, xs[i], ys[i]);
+        }
+        for (int i = 1; i < n; i += 7) {
+            present[i] = false;
+            grid.remove(i);
+        }
+        for (int k = 0; k < 50; k++) {
+            double x = random.nextDouble(-60, 60), y = random.nextDouble(-60, 60);
+            double radius = random.nextDouble(0, 15);
+            assertEquals(Arrays.toString(bruteForce(xs, ys, present, x, y, radius)),
+                    Arrays.toString(query(grid, x, y, radius, n)));
+        }
+    }
+
+    @Test
+    void removeTest() {
+        SpatialHashGrid grid = new SpatialHashGrid(1.0, 4);
+        grid.insert(0, 0, 0);
+        grid.insert(1, 0.5, 0.5);
+        grid.remove(0);
+        assertEquals(1, grid.size());
+        assertFalse(grid.contains(0));
+        assertEquals("[1]", Arrays.toString(query(grid, 0, 0, 1, 2)));
+    }
+}
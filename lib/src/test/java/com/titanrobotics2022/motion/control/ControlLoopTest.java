@@ -0,0 +1,213 @@
+package com.titanrobotics2022.motion.control;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.titanrobotics2022.motion.generation.rmpflow.RMPLeaf;
+import com.titanrobotics2022.motion.generation.rmpflow.RMPNode;
+import com.titanrobotics2022.motion.generation.rmpflow.RMPRoot;
+import com.titanrobotics2022.motion.generation.rmpflow.rmps.GoalAttractor;
+
+import java.time.Duration;
+import java.util.ArrayList;
+
+import org.ejml.data.DMatrixRMaj;
+import org.ejml.simple.SimpleMatrix;
+import org.junit.jupiter.api.Test;
+
+public class ControlLoopTest {
+    private static final double rate = 200;
+
+    /**
+     * A clock that only moves when waited on or advanced, so the loop's timing
+     * does not depend on the machine running the test.
+     */
+    private static class FakeClock implements LoopClock {
+        private long now;
+
+        @Override
+        public long nanoTime()
+        {
+            return now;
+        }
+
+        @Override
+        public void waitUntil(long deadline)
+        {
+            now = Math.max(now, deadline);
+        }
+
+        void advance(long nanos)
+        {
+            now += nanos;
+        }
+    }
+
+    /**
+     * Pulls towards the origin, and takes long enough to miss the deadline on
+     * chosen calls.
+     */
+    private static class SlowLeaf extends RMPLeaf {
+        private final FakeClock clock;
+        private final long slowNanos;
+        private final int every;
+        private int calls;
+
+        SlowLeaf(RMPNode parent, FakeClock clock, long slowMillis, int every)
+        {
+            super("slow", parent);
+            this.clock = clock;
+            this.slowNanos = slowMillis * 1_000_000;
+            this.every = every;
+        }
+
+        @Override
+        protected void evaluate(DMatrixRMaj x, DMatrixRMaj x_dot, DMatrixRMaj f, DMatrixRMaj m)
+        {
+            if (++calls % every == 0)
+                clock.advance(slowNanos);
+            super.evaluate(x, x_dot, f, m);
+        }
+
+        @Override
+        public SimpleMatrix psi(SimpleMatrix q)
+        {
+            return q;
+        }
+
+        @Override
+        public SimpleMatrix j(SimpleMatrix q)
+        {
+            return SimpleMatrix.identity(q.numRows());
+        }
+
+        @Override
+        public SimpleMatrix j_dot(SimpleMatrix q, SimpleMatrix q_dot)
+        {
+            return new SimpleMatrix(q.numRows(), q.numRows());
+        }
+
+        @Override
+        protected SimpleMatrix solveF(SimpleMatrix x, SimpleMatrix x_dot)
+        {
+            return x.scale(-1);
+        }
+
+        @Override
+        protected SimpleMatrix solveM(SimpleMatrix x, SimpleMatrix x_dot)
+        {
+            return SimpleMatrix.identity(x.numRows());
+        }
+    }
+
+    private static StateSource fixedState()
+    {
+        return (x, x_dot) -> {
+            x.reshape(2, 1);
+            x_dot.reshape(2, 1);
+            x.set(0, 1);
+            x.set(1, 2);
+            x_dot.zero();
+        };
+    }
+
+    @Test
+    void runsAtConfiguredRateTest()
+    {
+        RMPRoot root = new RMPRoot("root");
+        new GoalAttractor("goal", root, new SimpleMatrix(1, 2, false, new double[] { 5, 6 }), 10, 1, 1, 10, 1, 1, 0.01);
+        ArrayList<double[]> commands = new ArrayList<double[]>();
+        ControlLoop loop = new ControlLoop(root, rate, fixedState(), a -> commands.add(a.data.clone()),
+                OverrunPolicy.SKIP);
+
+        int ticks = 20;
+        long start = System.nanoTime();
+        loop.run(ticks);
+        double elapsed = (System.nanoTime() - start) / 1e9;
+
+        ControlLoopStatistics stats = loop.getStatistics();
+        assertEquals(ticks, stats.getTicks());
+        assertEquals(ticks - stats.getMissedDeadlines(), commands.size());
+        assertTrue(elapsed >= (ticks - 1) / rate, "Ran faster than the rate: " + elapsed + " s");
+        assertTrue(elapsed < 10 * ticks / rate, "Ran far slower than the rate: " + elapsed + " s");
+        assertTrue(stats.getMaxLatencyNanos() > 0);
+    }
+
+    @Test
+    void stopRightAfterStartTest()
+    {
+        RMPRoot root = new RMPRoot("root");
+        new GoalAttractor("goal", root, new SimpleMatrix(1, 2, false, new double[] { 5, 6 }), 10, 1, 1, 10, 1, 1, 0.01);
+        ControlLoop loop = new ControlLoop(root, rate, fixedState(), a -> {
+        }, OverrunPolicy.SKIP);
+        assertTimeoutPreemptively(Duration.ofSeconds(10), () -> {
+            for (int i = 0; i < 200; i++) {
+                loop.start();
+                loop.stop();
+            }
+        });
+    }
+
+    @Test
+    void holdRewritesLastOnTimeCommandTest()
+    {
+        FakeClock clock = new FakeClock();
+        RMPRoot root = new RMPRoot("root");
+        new SlowLeaf(root, clock, 12, 4);
+        ArrayList<double[]> commands = new ArrayList<double[]>();
+        ControlLoop loop = new ControlLoop(root, rate, fixedState(), a -> commands.add(a.data.clone()),
+                OverrunPolicy.HOLD);
+        loop.setClock(clock);
+        loop.run(12);
+
+        // Each slow tick takes 12 ms of a 5 ms period, so the two periods it ran into are skipped
+        ControlLoopStatistics stats = loop.getStatistics();
+        assertEquals(3, stats.getMissedDeadlines());
+        assertEquals(6, stats.getSkippedPeriods());
+        assertEquals(0, stats.getMaxJitterNanos());
+        assertEquals(12, commands.size());
+        for (double[] command : commands) {
+            assertEquals(-1, command[0], 1e-12);
+            assertEquals(-2, command[1], 1e-12);
+        }
+    }
+
+    @Test
+    void skipDropsLateCommandsTest()
+    {
+        FakeClock clock = new FakeClock();
+        RMPRoot root = new RMPRoot("root");
+        new SlowLeaf(root, clock, 12, 4);
+        int[] writes = new int[1];
+        ControlLoop loop = new ControlLoop(root, rate, fixedState(), a -> writes[0]++, OverrunPolicy.SKIP);
+        loop.setClock(clock);
+        loop.run(12);
+
+        assertEquals(3, loop.getStatistics().getMissedDeadlines());
+        assertEquals(9, writes[0]);
+    }
+
+    @Test
+    void degradeSolvesDegradedTreeUntilRecoveredTest()
+    {
+        FakeClock clock = new FakeClock();
+        RMPRoot root = new RMPRoot("root");
+        new SlowLeaf(root, clock, 12, 4);
+        RMPRoot degradedRoot = new RMPRoot("degraded");
+        new SlowLeaf(degradedRoot, clock, 0, Integer.MAX_VALUE);
+        int[] writes = new int[1];
+        ControlLoop loop = new ControlLoop(root, rate, fixedState(), a -> writes[0]++, OverrunPolicy.DEGRADE);
+        loop.setClock(clock);
+        loop.setDegradedRoot(degradedRoot, 2);
+        loop.run(12);
+
+        // Ticks 4 and 10 miss, and each is followed by two degraded ticks
+        ControlLoopStatistics stats = loop.getStatistics();
+        assertEquals(12, writes[0]);
+        assertEquals(2, stats.getMissedDeadlines());
+        assertEquals(4, stats.getDegradedTicks());
+        assertFalse(loop.isDegraded());
+    }
+}
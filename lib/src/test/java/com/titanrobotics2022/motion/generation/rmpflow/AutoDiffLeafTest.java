@@ -0,0 +1,181 @@
+package com.titanrobotics2022.motion.generation.rmpflow;
+
+import static com.titanrobotics2022.AllocationBudget.assertWithin;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import com.titanrobotics2022.motion.generation.rmpflow.rmps.CollisionAvoidance;
+
+import org.ejml.data.DMatrixRMaj;
+import org.ejml.simple.SimpleMatrix;
+import org.junit.jupiter.api.Test;
+
+public class AutoDiffLeafTest {
+    private static final double delta = 1e-12;
+
+    /**
+     * The task map of {@link CollisionAvoidance}, |q - center| / r - 1, with the
+     * same policy.
+     */
+    static class AutoDiffCollisionAvoidance extends AutoDiffLeaf {
+        private final CollisionAvoidance policy;
+        private final double cx, cy, r;
+
+        AutoDiffCollisionAvoidance(RMPNode parent, double cx, double cy, double r)
+        {
+            super("auto diff obstacle", parent);
+            this.cx = cx;
+            this.cy = cy;
+            this.r = r;
+            policy = new CollisionAvoidance("policy", null, new SimpleMatrix(2, 1, false, new double[] { cx, cy }), r,
+                    .2, 1e-5, 0.0);
+        }
+
+        @Override
+        protected void psi(ForwardDiff ad)
+        {
+            int dx = ad.addConstant(ad.input(0), -cx), dy = ad.addConstant(ad.input(1), -cy);
+            ad.output(ad.addConstant(ad.scale(ad.hypot(dx, dy), 1 / r), -1));
+        }
+
+        @Override
+        protected SimpleMatrix solveF(SimpleMatrix x, SimpleMatrix x_dot)
+        {
+            return policy.solveF(x, x_dot);
+        }
+
+        @Override
+        protected SimpleMatrix solveM(SimpleMatrix x, SimpleMatrix x_dot)
+        {
+            return policy.solveM(x, x_dot);
+        }
+    }
+
+    /**
+     * A nonlinear map exercising every operation.
+     */
+    static class NonlinearLeaf extends AutoDiffLeaf {
+        NonlinearLeaf()
+        {
+            super("nonlinear", null);
+        }
+
+        @Override
+        protected void psi(ForwardDiff ad)
+        {
+            // A planar state gets a third input derived from the other two
+            int x = ad.input(0), y = ad.input(1), z = ad.getInputDimension() > 2 ? ad.input(2) : ad.mul(x, y);
+            ad.output(ad.atan2(y, x));
+            ad.output(ad.mul(ad.sin(x), ad.exp(ad.scale(y, 0.5))));
+            ad.output(ad.div(ad.cos(z), ad.addConstant(ad.square(x), 2)));
+            ad.output(ad.sub(ad.log(ad.hypot(y, z)), ad.sqrt(ad.addConstant(ad.pow(x, 4), 1))));
+            ad.output(ad.mul(ad.reciprocal(ad.add(z, ad.constant(3))), ad.neg(ad.mul(x, y))));
+        }
+
+        @Override
+        protected SimpleMatrix solveF(SimpleMatrix x, SimpleMatrix x_dot)
+        {
+            return new SimpleMatrix(x.numRows(), 1);
+        }
+
+        @Override
+        protected SimpleMatrix solveM(SimpleMatrix x, SimpleMatrix x_dot)
+        {
+            return SimpleMatrix.identity(x.numRows());
+        }
+    }
+
+    @Test
+    void matchesHandWrittenTaskMapTest()
+    {
+        CollisionAvoidance handWritten = new CollisionAvoidance("obstacle", null,
+                new SimpleMatrix(2, 1, false, new double[] { 1, -2 }), 0.7, .2, 1e-5, 0.0);
+        AutoDiffCollisionAvoidance automatic = new AutoDiffCollisionAvoidance(null, 1, -2, 0.7);
+        DMatrixRMaj q = new DMatrixRMaj(2, 1, false, 3, 1.5), q_dot = new DMatrixRMaj(2, 1, false, -0.4, 0.9);
+        DMatrixRMaj x = new DMatrixRMaj(1, 1), J = new DMatrixRMaj(1, 1), J_dot = new DMatrixRMaj(1, 1);
+        DMatrixRMaj ax = new DMatrixRMaj(1, 1), aJ = new DMatrixRMaj(1, 1), aJ_dot = new DMatrixRMaj(1, 1);
+        handWritten.taskMap(q, q_dot, x, J, J_dot);
+        automatic.taskMap(q, q_dot, ax, aJ, aJ_dot);
+
+        assertEquals(x.get(0), ax.get(0), delta);
+        assertEquals(1, aJ.getNumRows());
+        assertEquals(2, aJ.getNumCols());
+        for (int i = 0; i < 2; i++) {
+            assertEquals(J.get(i), aJ.get(i), delta);
+            assertEquals(J_dot.get(i), aJ_dot.get(i), delta);
+        }
+    }
+
+    @Test
+    void matchesFiniteDifferencesTest()
+    {
+        assertMatchesFiniteDifferences(new DMatrixRMaj(3, 1, false, 0.8, -1.3, 0.4),
+                new DMatrixRMaj(3, 1, false, 0.5, 0.2, -0.7));
+    }
+
+    @Test
+    void planarMatchesFiniteDifferencesTest()
+    {
+        assertMatchesFiniteDifferences(new DMatrixRMaj(2, 1, false, 0.8, -1.3), new DMatrixRMaj(2, 1, false, 0.5, 0.2));
+    }
+
+    private static void assertMatchesFiniteDifferences(DMatrixRMaj q, DMatrixRMaj q_dot)
+    {
+        NonlinearLeaf leaf = new NonlinearLeaf();
+        int n = q.getNumElements();
+        DMatrixRMaj x = new DMatrixRMaj(1, 1), J = new DMatrixRMaj(1, 1), J_dot = new DMatrixRMaj(1, 1);
+        leaf.taskMap(q, q_dot, x, J, J_dot);
+        assertEquals(5, J.getNumRows());
+        assertEquals(n, J.getNumCols());
+
+        double h = 1e-6;
+        DMatrixRMaj plus = new DMatrixRMaj(1, 1), minus = new DMatrixRMaj(1, 1);
+        for (int i = 0; i < n; i++) {
+            DMatrixRMaj qp = q.copy(), qm = q.copy();
+            qp.data[i] += h;
+            qm.data[i] -= h;
+            leaf.psi(qp, plus);
+            leaf.psi(qm, minus);
+            for (int k = 0; k < 5; k++)
+                assertEquals((plus.get(k) - minus.get(k)) / (2 * h), J.get(k, i), 1e-8);
+        }
+
+        DMatrixRMaj qp = q.copy(), qm = q.copy();
+        for (int i = 0; i < n; i++) {
+            qp.data[i] += h * q_dot.data[i];
+            qm.data[i] -= h * q_dot.data[i];
+        }
+        leaf.j(qp, plus);
+        leaf.j(qm, minus);
+        for (int k = 0; k < 5 * n; k++)
+            assertEquals((plus.get(k) - minus.get(k)) / (2 * h), J_dot.get(k), 1e-8);
+    }
+
+    @Test
+    void solveMatchesHandWrittenLeafTest()
+    {
+        RMPRoot handWritten = new RMPRoot("root"), automatic = new RMPRoot("root");
+        new CollisionAvoidance("obstacle", handWritten, new SimpleMatrix(2, 1, false, new double[] { 2, 3 }), 0.5, .2,
+                1e-5, 0.0);
+        new AutoDiffCollisionAvoidance(automatic, 2, 3, 0.5);
+        DMatrixRMaj x = new DMatrixRMaj(2, 1, false, 1, 2), x_dot = new DMatrixRMaj(2, 1, false, 0.3, -0.4);
+        DMatrixRMaj expected = new DMatrixRMaj(2, 1), actual = new DMatrixRMaj(2, 1);
+        handWritten.solve(x, x_dot, expected);
+        automatic.solve(x, x_dot, actual);
+        for (int i = 0; i < 2; i++)
+            assertEquals(expected.get(i), actual.get(i), 1e-9 * Math.abs(expected.get(i)));
+
+        // A plan differentiates in its own workspace rather than the leaf's
+        automatic.compile().solve(x, x_dot, actual);
+        for (int i = 0; i < 2; i++)
+            assertEquals(expected.get(i), actual.get(i), 1e-9 * Math.abs(expected.get(i)));
+    }
+
+    @Test
+    void taskMapDoesNotAllocateTest()
+    {
+        AutoDiffCollisionAvoidance leaf = new AutoDiffCollisionAvoidance(null, 1, -2, 0.7);
+        DMatrixRMaj q = new DMatrixRMaj(2, 1, false, 3, 1.5), q_dot = new DMatrixRMaj(2, 1, false, -0.4, 0.9);
+        DMatrixRMaj x = new DMatrixRMaj(1, 1), J = new DMatrixRMaj(1, 1), J_dot = new DMatrixRMaj(1, 1);
+        assertWithin("AutoDiffLeaf.taskMap", 0, () -> leaf.taskMap(q, q_dot, x, J, J_dot));
+    }
+}
@@ -0,0 +1,84 @@
+package com.titanrobotics2022.motion.generation.rmpflow;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import com.titanrobotics2022.motion.generation.rmpflow.rmps.Damper;
+
+import org.ejml.data.DMatrixRMaj;
+import org.junit.jupiter.api.Test;
+
+public class CholeskyMetricSolverTest {
+    private static final double delta = 1e-9;
+
+    private static void assertSolvesLike(DMatrixRMaj m, DMatrixRMaj f, CholeskyMetricSolver solver) {
+        DMatrixRMaj expected = new DMatrixRMaj(1, 1), actual = new DMatrixRMaj(1, 1);
+        DMatrixRMaj mCopy = m.copy();
+        new PseudoInverseMetricSolver().solve(m, f, expected);
+        solver.solve(m, f, actual);
+        assertEquals(expected.getNumRows(), actual.getNumRows());
+        for (int i = 0; i < expected.getNumElements(); i++)
+            assertEquals(expected.get(i), actual.get(i), delta);
+        for (int i = 0; i < m.getNumElements(); i++) // The metric must not be modified
+            assertEquals(mCopy.get(i), m.get(i));
+    }
+
+    @Test
+    void positiveDefiniteUsesCholeskyTest() {
+        CholeskyMetricSolver solver = new CholeskyMetricSolver();
+        assertSolvesLike(new DMatrixRMaj(2, 2, true, 4, 1, 1, 3), new DMatrixRMaj(2, 1, true, 1, -2), solver);
+        assertSolvesLike(new DMatrixRMaj(3, 3, true, 5, 1, 0, 1, 4, 1, 0, 1, 3), new DMatrixRMaj(3, 1, true, 1, 2, 3), solver);
+        assertEquals(2, solver.getCholeskyCount());
+        assertEquals(0, solver.getFallbackCount());
+    }
+
+    @Test
+    void singularFallsBackTest() {
+        CholeskyMetricSolver solver = new CholeskyMetricSolver();
+        assertSolvesLike(new DMatrixRMaj(2, 2, true, 4, 2, 2, 1), new DMatrixRMaj(2, 1, true, 1, -2), solver);
+        assertSolvesLike(new DMatrixRMaj(2, 2, true, 0, 0, 0, 0), new DMatrixRMaj(2, 1, true, 0, 0), solver);
+        assertSolvesLike(new DMatrixRMaj(2, 2, true, 1, 0, 0, -1), new DMatrixRMaj(2, 1, true, 1, 1), solver);
+        assertEquals(0, solver.getCholeskyCount());
+        assertEquals(3, solver.getFallbackCount());
+    }
+
+    @Test
+    void unchangedMetricReusesDecompositionTest() {
+        CholeskyMetricSolver solver = new CholeskyMetricSolver();
+        DMatrixRMaj m = new DMatrixRMaj(2, 2, true, 4, 1, 1, 3);
+        assertSolvesLike(m, new DMatrixRMaj(2, 1, true, 1, -2), solver);
+        assertSolvesLike(m.copy(), new DMatrixRMaj(2, 1, true, 3, 5), solver);
+        assertEquals(1, solver.getReuseCount());
+        assertEquals(2, solver.getCholeskyCount());
+
+        m.set(1, 1, 3.5);
+        assertSolvesLike(m, new DMatrixRMaj(2, 1, true, 3, 5), solver);
+        assertSolvesLike(new DMatrixRMaj(2, 2, true, 4, 2, 2, 1), new DMatrixRMaj(2, 1, true, 1, -2), solver);
+        assertSolvesLike(new DMatrixRMaj(2, 2, true, 4, 2, 2, 1), new DMatrixRMaj(2, 1, true, -1, 2), solver);
+        assertSolvesLike(new DMatrixRMaj(3, 3, true, 5, 1, 0, 1, 4, 1, 0, 1, 3), new DMatrixRMaj(3, 1, true, 1, 2, 3), solver);
+        assertEquals(2, solver.getReuseCount());
+        assertEquals(4, solver.getCholeskyCount());
+        assertEquals(2, solver.getFallbackCount());
+
+        solver.resetCounts();
+        assertEquals(0, solver.getReuseCount());
+    }
+
+    @Test
+    void treeUsesConfiguredSolverTest() {
+        RMPRoot root = new RMPRoot("root");
+        new Damper("damper", root, 1, 2);
+        CholeskyMetricSolver solver = new CholeskyMetricSolver();
+        root.setMetricSolver(solver);
+        DMatrixRMaj a = new DMatrixRMaj(1, 1);
+        root.solve(new DMatrixRMaj(2, 1, true, 1, 2), new DMatrixRMaj(2, 1, true, 1, -1), a);
+        assertEquals(-1, a.get(0), delta);
+        assertEquals(1, a.get(1), delta);
+        assertEquals(1, solver.getCholeskyCount());
+
+        // The damper's metric is constant, so later ticks reuse the decomposition
+        root.solve(new DMatrixRMaj(2, 1, true, 3, 0), new DMatrixRMaj(2, 1, true, 2, 4), a);
+        assertEquals(-2, a.get(0), delta);
+        assertEquals(-4, a.get(1), delta);
+        assertEquals(1, solver.getReuseCount());
+    }
+}
@@ -0,0 +1,129 @@
+package com.titanrobotics2022.motion.generation.rmpflow;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.titanrobotics2022.mapping.LinearSegment;
+import com.titanrobotics2022.mapping.Point;
+import com.titanrobotics2022.motion.generation.rmpflow.rmps.CollisionAvoidance;
+import com.titanrobotics2022.motion.generation.rmpflow.rmps.Damper;
+import com.titanrobotics2022.motion.generation.rmpflow.rmps.GoalAttractor;
+import com.titanrobotics2022.motion.generation.rmpflow.rmps.PathFollowing;
+
+import java.util.concurrent.ForkJoinPool;
+
+import org.ejml.simple.SimpleMatrix;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class RMPBatchTest {
+    private static final int lanes = 37;
+
+    RMPRoot root;
+    double[] x = new double[2 * lanes], x_dot = new double[2 * lanes];
+
+    @BeforeEach
+    void createTree()
+    {
+        root = new RMPRoot("root");
+        new GoalAttractor("goal", root, new SimpleMatrix(1, 2, false, new double[] { 5, 6 }), 10, 1, 1, 10, 1, 1, 0.01);
+        for (int i = 0; i < 10; i++)
+            new CollisionAvoidance("obstacle " + i, root, new SimpleMatrix(1, 2, false, new double[] { i * 0.7 - 3, 3 + i % 2 }), 0.5, .2, 1e-5, 0.0);
+        for (int k = 0; k < lanes; k++) {
+            x[k] = Math.cos(k) * 2;
+            x[lanes + k] = Math.sin(k * 0.3) * 2;
+            x_dot[k] = 0.1 * (k % 5) - 0.2;
+            x_dot[lanes + k] = -0.05 * (k % 3);
+        }
+    }
+
+    private void assertLanesMatchSolve(double[] a)
+    {
+        for (int k = 0; k < lanes; k++) {
+            SimpleMatrix expected = root.solve(new SimpleMatrix(2, 1, false, new double[] { x[k], x[lanes + k] }),
+                    new SimpleMatrix(2, 1, false, new double[] { x_dot[k], x_dot[lanes + k] }));
+            assertEquals(expected.get(0), a[k]);
+            assertEquals(expected.get(1), a[lanes + k]);
+        }
+    }
+
+    @Test
+    void serialBatchMatchesSolveTest()
+    {
+        RMPBatch batch = new RMPBatch(root, 2);
+        assertTrue(batch.isBatched());
+        assertLanesMatchSolve(batch.solve(x, x_dot));
+    }
+
+    @Test
+    void dampedBatchMatchesSolveTest()
+    {
+        new Damper("damper", root, 0.5, 2);
+        RMPBatch batch = new RMPBatch(root, 2);
+        assertTrue(batch.isBatched());
+        assertLanesMatchSolve(batch.solve(x, x_dot));
+    }
+
+    @Test
+    void parallelBatchMatchesSolveTest()
+    {
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            RMPBatch batch = new RMPBatch(root, 2, pool);
+            assertEquals(4, batch.getWorkers());
+            double[] a = new double[2 * lanes];
+            for (int i = 0; i < 3; i++)
+                batch.solve(x, x_dot, lanes, a);
+            assertLanesMatchSolve(a);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private static RMPRoot createPathTree()
+    {
+        RMPRoot root = new RMPRoot("root");
+        new PathFollowing("path", root, new LinearSegment(new Point(-4, 0), new Point(6, 2)), 3, 2, 0.5, 1, 0.5, 1,
+                0.5, 2);
+        new CollisionAvoidance("obstacle", root, new SimpleMatrix(1, 2, false, new double[] { 1, 2 }), 0.5, .2, 1e-5,
+                0.0);
+        return root;
+    }
+
+    @Test
+    void statefulLanesDoNotDependOnWorkersTest()
+    {
+        double[] serial = new double[2 * lanes], parallel = new double[2 * lanes];
+        RMPBatch one = new RMPBatch(createPathTree(), 2);
+        ForkJoinPool pool = new ForkJoinPool(3);
+        try {
+            RMPBatch three = new RMPBatch(createPathTree(), 2, pool);
+            assertFalse(three.isBatched());
+            for (int i = 0; i < 3; i++) {
+                one.solve(x, x_dot, lanes, serial);
+                three.solve(x, x_dot, lanes, parallel);
+                assertArrayEquals(serial, parallel);
+            }
+        } finally {
+            pool.shutdown();
+        }
+
+        // Each lane integrates its own error, like its own tree solved once per batch solve
+        for (int k = 0; k < lanes; k += 9) {
+            RMPRoot lane = createPathTree();
+            SimpleMatrix xs = new SimpleMatrix(2, 1, false, new double[] { x[k], x[lanes + k] });
+            SimpleMatrix x_dots = new SimpleMatrix(2, 1, false, new double[] { x_dot[k], x_dot[lanes + k] });
+            SimpleMatrix expected = null;
+            for (int i = 0; i < 3; i++)
+                expected = lane.solve(xs, x_dots);
+            assertEquals(expected.get(0), serial[k]);
+            assertEquals(expected.get(1), serial[lanes + k]);
+        }
+
+        one.resetStates();
+        one.solve(x, x_dot, lanes, serial);
+        assertArrayEquals(new RMPBatch(createPathTree(), 2).solve(x, x_dot), serial);
+    }
+}
@@ -0,0 +1,96 @@
+package com.titanrobotics2022.motion.generation.rmpflow;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import com.titanrobotics2022.motion.generation.rmpflow.rmps.CollisionAvoidance;
+import com.titanrobotics2022.motion.generation.rmpflow.rmps.CollisionAvoidanceField;
+import com.titanrobotics2022.motion.generation.rmpflow.rmps.GoalAttractor;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.ejml.data.DMatrixRMaj;
+import org.ejml.simple.SimpleMatrix;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class RMPEvaluationContextTest {
+    private static final int threads = 4, states = 200;
+
+    RMPRoot root;
+
+    @BeforeEach
+    void createTree()
+    {
+        root = new RMPRoot("root");
+        new GoalAttractor("goal", root, new SimpleMatrix(1, 2, false, new double[] { 5, 6 }), 10, 1, 1, 10, 1, 1, 0.01);
+        new CollisionAvoidance("obstacle", root, new SimpleMatrix(1, 2, false, new double[] { 2, 3 }), 0.5, .2, 1e-5, 0.0);
+        CollisionAvoidanceField field = new CollisionAvoidanceField("field", root, 2, 64);
+        for (int i = 0; i < 64; i++)
+            field.addObstacle(new double[] { (i % 8) * 1.5 - 6, (i / 8) * 1.5 - 6 }, 0.3, .2, 1e-5, 0.0);
+        field.enableCulling(2, 0.5, 2);
+    }
+
+    private static DMatrixRMaj state(int i)
+    {
+        return new DMatrixRMaj(2, 1, false, Math.cos(i * 0.37) * 5, Math.sin(i * 0.23) * 5);
+    }
+
+    private static DMatrixRMaj velocity(int i)
+    {
+        return new DMatrixRMaj(2, 1, false, 0.1 * (i % 7) - 0.3, -0.05 * (i % 5));
+    }
+
+    @Test
+    void concurrentContextsMatchTreeSolveTest() throws Exception
+    {
+        double[][] expected = new double[states][];
+        DMatrixRMaj a = new DMatrixRMaj(2, 1);
+        for (int i = 0; i < states; i++) {
+            root.solve(state(i), velocity(i), a);
+            expected[i] = a.data.clone();
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<double[][]>> results = new ArrayList<Future<double[][]>>();
+            for (int t = 0; t < threads; t++)
+                results.add(executor.submit(() -> {
+                    RMPEvaluationContext context = root.createContext();
+                    DMatrixRMaj out = new DMatrixRMaj(2, 1);
+                    double[][] actual = new double[states][];
+                    for (int i = 0; i < states; i++) {
+                        context.solve(state(i), velocity(i), out);
+                        actual[i] = out.data.clone();
+                    }
+                    return actual;
+                }));
+            for (Future<double[][]> result : results) {
+                double[][] actual = result.get();
+                for (int i = 0; i < states; i++) {
+                    assertEquals(expected[i][0], actual[i][0]);
+                    assertEquals(expected[i][1], actual[i][1]);
+                }
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    void contextSeesRelinkedNodesTest()
+    {
+        RMPEvaluationContext context = root.createContext();
+        DMatrixRMaj a = new DMatrixRMaj(2, 1), expected = new DMatrixRMaj(2, 1);
+        context.solve(state(1), velocity(1), a);
+
+        new CollisionAvoidance("new obstacle", root, new SimpleMatrix(1, 2, false, new double[] { 4, 2 }), 0.5, .2, 1e-5, 0.0);
+        context.solve(state(1), velocity(1), a);
+        root.solve(state(1), velocity(1), expected);
+        assertEquals(expected.get(0), a.get(0));
+        assertEquals(expected.get(1), a.get(1));
+    }
+}
@@ -0,0 +1,108 @@
+package com.titanrobotics2022.motion.generation.rmpflow;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.titanrobotics2022.motion.generation.rmpflow.rmps.GoalAttractor;
+
+import java.util.concurrent.ForkJoinPool;
+
+import org.ejml.simple.SimpleMatrix;
+import org.junit.jupiter.api.Test;
+
+public class RMPFleetTest {
+    private static final double radius = 0.25;
+
+    /**
+     * Places robots on a ring, each attracted to the opposite side of it.
+     */
+    private RMPFleet createRing(int n, ForkJoinPool pool)
+    {
+        RMPFleet fleet = new RMPFleet(1.5, .2, 1e-5, 0.0, pool);
+        for (int i = 0; i < n; i++) {
+            double angle = 2 * Math.PI * i / n;
+            RMPRoot root = new RMPRoot("robot " + i);
+            new GoalAttractor("goal", root, new SimpleMatrix(1, 2, false,
+                    new double[] { -4 * Math.cos(angle), -4 * Math.sin(angle) }), 10, 1, 1, 10, 1, 1, 0.01);
+            fleet.addRobot(root, radius, 4 * Math.cos(angle), 4 * Math.sin(angle));
+        }
+        return fleet;
+    }
+
+    @Test
+    void onlyNearbyRobotsAreNeighborsTest()
+    {
+        RMPFleet fleet = new RMPFleet(1.0, .2, 1e-5, 0.0, null);
+        for (int i = 0; i < 3; i++)
+            fleet.addRobot(new RMPRoot("robot " + i), radius, i == 2 ? 10 : i * 0.8, 0);
+        fleet.tick();
+        assertEquals(2, fleet.getNeighborCount());
+        assertEquals(1, fleet.getField(0).size());
+        assertEquals(1, fleet.getField(1).size());
+        assertEquals(0, fleet.getField(2).size());
+        assertEquals(2 * radius, fleet.getField(0).getRadius(0));
+    }
+
+    @Test
+    void parallelTickMatchesSerialTest()
+    {
+        RMPFleet serial = createRing(12, null);
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            RMPFleet parallel = createRing(12, pool);
+            for (int t = 0; t < 50; t++) {
+                serial.step(0.02);
+                parallel.step(0.02);
+            }
+            for (int i = 0; i < 12; i++)
+                for (int k = 0; k < 2; k++)
+                    assertEquals(serial.getPosition(i, k), parallel.getPosition(i, k));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    void robotsPassWithoutCollidingTest()
+    {
+        RMPFleet fleet = new RMPFleet(1.5, .2, 1e-5, 0.0, null);
+        for (int i = 0; i < 2; i++) {
+            double side = i == 0 ? -1 : 1;
+            RMPRoot root = new RMPRoot("robot " + i);
+            new GoalAttractor("goal", root, new SimpleMatrix(1, 2, false, new double[] { -3 * side, 0.1 * side }),
+                    10, 1, 1, 10, 1, 1, 0.01);
+            fleet.addRobot(root, radius, 3 * side, 0.1 * side);
+        }
+        for (int t = 0; t < 1000; t++) {
+            fleet.step(0.01);
+            double dx = fleet.getPosition(0, 0) - fleet.getPosition(1, 0);
+            double dy = fleet.getPosition(0, 1) - fleet.getPosition(1, 1);
+            assertTrue(Math.hypot(dx, dy) > 2 * radius, "Robots collided");
+        }
+        assertTrue(fleet.getPosition(0, 0) > 2.5, "Robot 0 did not reach its goal");
+        assertTrue(fleet.getPosition(1, 0) < -2.5, "Robot 1 did not reach its goal");
+    }
+
+    @Test
+    void headOnRobotsDoNotCollideTest()
+    {
+        RMPFleet fleet = new RMPFleet(1.5, .2, 1e-5, 0.0, null);
+        for (int i = 0; i < 2; i++) {
+            double side = i == 0 ? -1 : 1;
+            RMPRoot root = new RMPRoot("robot " + i);
+            new GoalAttractor("goal", root, new SimpleMatrix(1, 2, false, new double[] { -3 * side, 0 }), 10, 1, 1,
+                    10, 1, 1, 0.01);
+            fleet.addRobot(root, radius, 0.7 * side, 0);
+            fleet.setState(i, 0.7 * side, 0, -4 * side, 0);
+        }
+        fleet.tick();
+        assertEquals(-4, fleet.getField(0).getVelocity(0, 0));
+        assertEquals(4, fleet.getField(1).getVelocity(0, 0));
+        // Seeing the closing speed rather than their own speed, the robots brake early enough to keep a margin
+        for (int t = 0; t < 1000; t++) {
+            fleet.step(0.01);
+            double gap = Math.abs(fleet.getPosition(0, 0) - fleet.getPosition(1, 0));
+            assertTrue(gap > 2 * radius + 0.04, "Robots collided at step " + t);
+        }
+    }
+}
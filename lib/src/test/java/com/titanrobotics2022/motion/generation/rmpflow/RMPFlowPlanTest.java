@@ -0,0 +1,72 @@
+package com.titanrobotics2022.motion.generation.rmpflow;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import com.titanrobotics2022.motion.generation.rmpflow.rmps.CollisionAvoidance;
+import com.titanrobotics2022.motion.generation.rmpflow.rmps.GoalAttractor;
+
+import org.ejml.data.DMatrixRMaj;
+import org.ejml.dense.row.CommonOps_DDRM;
+import org.ejml.simple.SimpleMatrix;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class RMPFlowPlanTest {
+    private static final double delta = 1e-9;
+
+    RMPRoot root;
+    RMPNode branch;
+
+    @BeforeEach
+    void createThreeLayerTree()
+    {
+        root = new RMPRoot("root");
+        branch = new RMPNode("branch", root) {
+            @Override
+            public void psi(DMatrixRMaj q, DMatrixRMaj out) {
+                out.setTo(q);
+            }
+
+            @Override
+            public void j(DMatrixRMaj q, DMatrixRMaj out) {
+                out.reshape(q.getNumElements(), q.getNumElements());
+                CommonOps_DDRM.setIdentity(out);
+            }
+
+            @Override
+            public void j_dot(DMatrixRMaj q, DMatrixRMaj q_dot, DMatrixRMaj out) {
+                out.reshape(q.getNumElements(), q.getNumElements());
+                out.zero();
+            }
+        };
+        new GoalAttractor("goal", root, new SimpleMatrix(1, 2, false, new double[] { 5, 6 }), 10, 1, 1, 10, 1, 1, 0.01);
+        for (int i = 0; i < 5; i++)
+            new CollisionAvoidance("obstacle " + i, branch, new SimpleMatrix(1, 2, false, new double[] { i, 3 }), 0.5, .2, 1e-5, 0.0);
+    }
+
+    @Test
+    void flattenedOrderTest()
+    {
+        RMPFlowPlan plan = root.compile();
+        assertEquals(8, plan.size());
+        assertEquals(root, plan.getNode(0));
+        assertEquals(-1, plan.getParentIndex(0));
+        for (int i = 1; i < plan.size(); i++)
+            assertEquals(plan.getNode(i).getParent(), plan.getNode(plan.getParentIndex(i)));
+    }
+
+    @Test
+    void planMatchesTreeTest()
+    {
+        RMPFlowPlan plan = root.compile();
+        SimpleMatrix x = new SimpleMatrix(1, 2, false, new double[] { 1.0, 2.0 });
+        SimpleMatrix x_dot = new SimpleMatrix(1, 2, false, new double[] { 0.3, -0.4 });
+        for (int i = 0; i < 3; i++) {
+            SimpleMatrix expected = root.solve(x, x_dot);
+            SimpleMatrix actual = plan.solve(x, x_dot);
+            assertEquals(expected.get(0), actual.get(0), delta);
+            assertEquals(expected.get(1), actual.get(1), delta);
+            x = x.plus(x_dot.scale(0.1));
+        }
+    }
+}
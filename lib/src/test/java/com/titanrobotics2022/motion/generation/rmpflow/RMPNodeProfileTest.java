@@ -0,0 +1,88 @@
+package com.titanrobotics2022.motion.generation.rmpflow;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.titanrobotics2022.motion.generation.rmpflow.rmps.CollisionAvoidance;
+import com.titanrobotics2022.motion.generation.rmpflow.rmps.GoalAttractor;
+
+import java.util.List;
+
+import org.ejml.data.DMatrixRMaj;
+import org.ejml.simple.SimpleMatrix;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class RMPNodeProfileTest {
+    private static final int solves = 50;
+
+    RMPRoot root;
+    DMatrixRMaj x = new DMatrixRMaj(2, 1, false, 1.0, 2.0);
+    DMatrixRMaj x_dot = new DMatrixRMaj(2, 1, false, 0.3, -0.4);
+
+    @BeforeEach
+    void createTree()
+    {
+        root = new RMPRoot("root");
+        new GoalAttractor("goal", root, new SimpleMatrix(1, 2, false, new double[] { 5, 6 }), 10, 1, 1, 10, 1, 1, 0.01);
+        new CollisionAvoidance("obstacle 1", root, new SimpleMatrix(1, 2, false, new double[] { 2, 3 }), 0.5, .2, 1e-5, 0.0);
+        new CollisionAvoidance("obstacle 2", root, new SimpleMatrix(1, 2, false, new double[] { 0, 3 }), 0.5, .2, 1e-5, 0.0);
+    }
+
+    @Test
+    void histogramPercentileTest()
+    {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 100; i++)
+            histogram.record(i * 10);
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+        assertEquals(100, snapshot.getCount());
+        assertEquals(505, snapshot.getMean(), 1e-12);
+        assertEquals(1000, snapshot.getMax());
+        assertEquals(511, snapshot.getPercentile(50)); // 500 falls in [256, 512)
+        assertEquals(1000, snapshot.getPercentile(100));
+    }
+
+    @Test
+    void profilingDoesNotChangeSolveTest()
+    {
+        DMatrixRMaj expected = new DMatrixRMaj(2, 1), a = new DMatrixRMaj(2, 1);
+        root.solve(x, x_dot, expected);
+        root.setProfiling(true);
+        root.solve(x, x_dot, a);
+        for (int i = 0; i < 2; i++)
+            assertEquals(expected.get(i), a.get(i), 0);
+    }
+
+    @Test
+    void profileRecordsEverySolveTest()
+    {
+        assertNull(root.getProfile());
+        root.setProfiling(true);
+        DMatrixRMaj a = new DMatrixRMaj(2, 1);
+        for (int i = 0; i < solves; i++)
+            root.solve(x, x_dot, a);
+
+        List<RMPProfileSnapshot.Entry> entries = root.snapshotProfile().getEntries();
+        assertEquals(4, entries.size());
+        assertEquals("root", entries.get(0).getName());
+        double shares = 0;
+        for (RMPProfileSnapshot.Entry entry : entries.subList(1, entries.size())) {
+            assertEquals(1, entry.getDepth());
+            assertEquals(solves, entry.getPushforward().getCount());
+            assertEquals(solves, entry.getEvaluate().getCount());
+            assertEquals(solves, entry.getPullback().getCount());
+            assertTrue(entry.getMetricNorm() > 0);
+            shares += entry.getRootShare();
+        }
+        assertEquals(1, shares, 1e-12);
+        assertNotNull(root.snapshotProfile().getSlowestLeaf());
+
+        root.setProfiling(false);
+        for (RMPNode child : root.getChildren())
+            assertNull(child.getProfile());
+        assertTrue(root.snapshotProfile().getEntries().isEmpty());
+    }
+}
@@ -0,0 +1,63 @@
+package com.titanrobotics2022.motion.generation.rmpflow;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import com.titanrobotics2022.motion.generation.rmpflow.rmps.CollisionAvoidance;
+import com.titanrobotics2022.motion.generation.rmpflow.rmps.CollisionAvoidance2D;
+import com.titanrobotics2022.motion.generation.rmpflow.rmps.Damper;
+import com.titanrobotics2022.motion.generation.rmpflow.rmps.Damper2D;
+import com.titanrobotics2022.motion.generation.rmpflow.rmps.GoalAttractor;
+import com.titanrobotics2022.motion.generation.rmpflow.rmps.GoalAttractor2D;
+
+import org.ejml.data.DMatrix2;
+import org.ejml.data.DMatrix2x2;
+import org.ejml.simple.SimpleMatrix;
+import org.junit.jupiter.api.Test;
+
+public class RMPRoot2DTest {
+    private static final double delta = 1e-9;
+
+    @Test
+    void solveMatchesGenericTreeTest()
+    {
+        RMPRoot generic = new RMPRoot("generic");
+        RMPRoot2D planar = new RMPRoot2D("planar");
+        new GoalAttractor("goal", generic, new SimpleMatrix(1, 2, false, new double[] { 5, 6 }), 10, 1, 1, 10, 1, 1, 0.01);
+        new GoalAttractor2D("goal", planar, new DMatrix2(5, 6), 10, 1, 1, 10, 1, 1, 0.01);
+        new Damper("damper", generic, 0.5, 0.1);
+        new Damper2D("damper", planar, 0.5, 0.1);
+        for (int i = 0; i < 10; i++) {
+            double cx = i * 0.4 - 1, cy = 3 - (i % 3) * 0.4;
+            new CollisionAvoidance("obstacle " + i, generic, new SimpleMatrix(1, 2, false, new double[] { cx, cy }), 0.3, .2, 1e-5, 0.1);
+            new CollisionAvoidance2D("obstacle " + i, planar, new DMatrix2(cx, cy), 0.3, .2, 1e-5, 0.1);
+        }
+
+        SimpleMatrix x = new SimpleMatrix(1, 2, false, new double[] { 1.0, 2.0 });
+        SimpleMatrix x_dot = new SimpleMatrix(1, 2, false, new double[] { 0.3, 0.4 });
+        SimpleMatrix expected = generic.solve(x, x_dot);
+        DMatrix2 actual = planar.solve(new DMatrix2(1.0, 2.0), new DMatrix2(0.3, 0.4));
+        assertEquals(expected.get(0), actual.a1, delta * Math.abs(expected.get(0)) + delta);
+        assertEquals(expected.get(1), actual.a2, delta * Math.abs(expected.get(1)) + delta);
+    }
+
+    @Test
+    void pseudoInverseOfSingularMatrixTest()
+    {
+        DMatrix2x2[] cases = {
+            new DMatrix2x2(4, 2, 2, 1), // rank 1
+            new DMatrix2x2(0, 0, 0, 3), // rank 1, axis aligned
+            new DMatrix2x2(2, 0, 0, 2), // multiple of the identity
+            new DMatrix2x2(0, 0, 0, 0),
+            new DMatrix2x2(3, 1, 1, -2), // indefinite
+        };
+        for (DMatrix2x2 m : cases) {
+            DMatrix2x2 inv = new DMatrix2x2();
+            RMPRoot2D.pseudoInverse(m, inv);
+            SimpleMatrix expected = new SimpleMatrix(2, 2, true, new double[] { m.a11, m.a12, m.a21, m.a22 }).pseudoInverse();
+            assertEquals(expected.get(0, 0), inv.a11, delta);
+            assertEquals(expected.get(0, 1), inv.a12, delta);
+            assertEquals(expected.get(1, 0), inv.a21, delta);
+            assertEquals(expected.get(1, 1), inv.a22, delta);
+        }
+    }
+}
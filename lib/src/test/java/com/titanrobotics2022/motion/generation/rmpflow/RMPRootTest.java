@@ -0,0 +1,196 @@
+package com.titanrobotics2022.motion.generation.rmpflow;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.titanrobotics2022.motion.generation.rmpflow.rmps.CollisionAvoidance;
+import com.titanrobotics2022.motion.generation.rmpflow.rmps.CollisionAvoidanceField;
+import com.titanrobotics2022.motion.generation.rmpflow.rmps.GoalAttractor;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+import org.ejml.data.DMatrixRMaj;
+import org.ejml.simple.SimpleMatrix;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class RMPRootTest {
+    private static final double delta = 1e-9;
+
+    RMPRoot root;
+    SimpleMatrix x = new SimpleMatrix(1, 2, false, new double[] { 1.0, 2.0 });
+    SimpleMatrix x_dot = new SimpleMatrix(1, 2, false, new double[] { 0.3, -0.4 });
+
+    @BeforeEach
+    void createTree()
+    {
+        root = new RMPRoot("root");
+        new GoalAttractor("goal", root, new SimpleMatrix(1, 2, false, new double[] { 5, 6 }), 10, 1, 1, 10, 1, 1, 0.01);
+        new CollisionAvoidance("obstacle 1", root, new SimpleMatrix(1, 2, false, new double[] { 2, 3 }), 0.5, .2, 1e-5, 0.0);
+        new CollisionAvoidance("obstacle 2", root, new SimpleMatrix(1, 2, false, new double[] { 0, 3 }), 0.5, .2, 1e-5, 0.0);
+    }
+
+    /**
+     * Resolves the tree with freshly allocated matrices, as a reference for the
+     * in-place solve.
+     */
+    private SimpleMatrix referenceSolve(SimpleMatrix x, SimpleMatrix x_dot)
+    {
+        SimpleMatrix q = x.transpose(), q_dot = x_dot.transpose();
+        SimpleMatrix f = new SimpleMatrix(2, 1), m = new SimpleMatrix(2, 2);
+        for (RMPNode node : root.getChildren()) {
+            RMPLeaf child = (RMPLeaf) node;
+            SimpleMatrix J = child.j(q), J_dot = child.j_dot(q, q_dot);
+            SimpleMatrix cx = child.psi(q), cx_dot = J.mult(q_dot);
+            SimpleMatrix cf = child.solveF(cx, cx_dot), cm = child.solveM(cx, cx_dot);
+            f = f.plus(J.transpose().mult(cf.minus(cm.mult(J_dot).mult(q_dot))));
+            m = m.plus(J.transpose().mult(cm).mult(J));
+        }
+        return m.pseudoInverse().mult(f);
+    }
+
+    @Test
+    void solveMatchesReferenceTest()
+    {
+        SimpleMatrix expected = referenceSolve(x, x_dot);
+        SimpleMatrix actual = root.solve(x, x_dot);
+        assertEquals(expected.get(0), actual.get(0), delta * Math.abs(expected.get(0)) + delta);
+        assertEquals(expected.get(1), actual.get(1), delta * Math.abs(expected.get(1)) + delta);
+    }
+
+    @Test
+    void inPlaceSolveMatchesSolveTest()
+    {
+        SimpleMatrix expected = root.solve(x, x_dot);
+        DMatrixRMaj a = new DMatrixRMaj(1, 1);
+        for (int i = 0; i < 3; i++)
+            root.solve(x.getDDRM(), x_dot.getDDRM(), a);
+        assertEquals(2, a.getNumRows());
+        assertEquals(expected.get(0), a.get(0), delta);
+        assertEquals(expected.get(1), a.get(1), delta);
+    }
+
+    @Test
+    void parallelPullbackMatchesSerialTest()
+    {
+        for (int i = 0; i < 100; i++)
+            new CollisionAvoidance("obstacle " + (i + 3), root,
+                    new SimpleMatrix(1, 2, false, new double[] { i * 0.1 - 4, 3 + i % 3 }), 0.5, .2, 1e-5, 0.0);
+        SimpleMatrix expected = root.solve(x, x_dot);
+
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            root.setParallelPullback(pool, 8);
+            for (int i = 0; i < 3; i++) {
+                SimpleMatrix actual = root.solve(x, x_dot);
+                assertEquals(expected.get(0), actual.get(0), delta * Math.abs(expected.get(0)) + delta);
+                assertEquals(expected.get(1), actual.get(1), delta * Math.abs(expected.get(1)) + delta);
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    void jacobiansComputedOncePerSolveTest()
+    {
+        int[] calls = new int[1];
+        new GoalAttractor("counted", root, new SimpleMatrix(1, 2, false, new double[] { -1, 4 }), 10, 1, 1, 10, 1, 1, 0.01) {
+            @Override
+            public void j(DMatrixRMaj q, DMatrixRMaj out) {
+                calls[0]++;
+                super.j(q, out);
+            }
+        };
+        SimpleMatrix expected = referenceSolve(x, x_dot);
+        calls[0] = 0;
+        DMatrixRMaj a = new DMatrixRMaj(1, 1);
+        for (int i = 0; i < 3; i++)
+            root.solve(x.getDDRM(), x_dot.getDDRM(), a);
+        assertEquals(3, calls[0]);
+        assertEquals(expected.get(0), a.get(0), delta * Math.abs(expected.get(0)) + delta);
+        assertEquals(expected.get(1), a.get(1), delta * Math.abs(expected.get(1)) + delta);
+    }
+
+    @Test
+    void incrementalPullbackReusesUnchangedLeavesTest()
+    {
+        SimpleMatrix expected = root.solve(x, x_dot);
+        root.setIncrementalPullback(0);
+        root.solve(x, x_dot);
+        assertEquals(0, root.getReuseCount());
+        assertEquals(3, root.getEvaluationCount());
+        SimpleMatrix actual = root.solve(x, x_dot);
+        assertEquals(3, root.getReuseCount());
+        assertEquals(3, root.getEvaluationCount());
+        assertEquals(expected.get(0), actual.get(0), delta);
+        assertEquals(expected.get(1), actual.get(1), delta);
+    }
+
+    @Test
+    void incrementalPullbackMatchesFullSolveTest()
+    {
+        CollisionAvoidanceField field = new CollisionAvoidanceField("field", root, 2, 2);
+        field.addObstacle(new double[] { -1, 0 }, 0.5, .2, 1e-5, 0.0);
+        root.setIncrementalPullback(1e-12);
+        SimpleMatrix state = x;
+        for (int i = 0; i < 20; i++) {
+            if (i % 5 == 0)
+                field.setCenter(0, new double[] { -1, i * 0.1 });
+            if (i % 2 == 0) // Only every other tick moves
+                state = state.plus(x_dot.scale(0.05));
+            SimpleMatrix expected = referenceSolve(state, x_dot);
+            SimpleMatrix actual = root.solve(state, x_dot);
+            assertEquals(expected.get(0), actual.get(0), delta * Math.abs(expected.get(0)) + delta);
+            assertEquals(expected.get(1), actual.get(1), delta * Math.abs(expected.get(1)) + delta);
+        }
+        assertTrue(root.getReuseCount() > 0);
+    }
+
+    @Test
+    void solveEmitsFlightRecorderEventsTest() throws Exception
+    {
+        DMatrixRMaj expected = new DMatrixRMaj(2, 1), a = new DMatrixRMaj(2, 1);
+        root.solve(x.getDDRM(), x_dot.getDDRM(), expected);
+        Path file = Files.createTempFile("solve", ".jfr");
+        try (Recording recording = new Recording()) {
+            recording.enable(SolveEvent.class).withThreshold(Duration.ZERO);
+            recording.enable(SolvePhaseEvent.class).withThreshold(Duration.ZERO);
+            recording.start();
+            root.solve(x.getDDRM(), x_dot.getDDRM(), a);
+            recording.stop();
+            recording.dump(file);
+        }
+        assertEquals(expected.get(0), a.get(0), 0);
+        assertEquals(expected.get(1), a.get(1), 0);
+
+        List<RecordedEvent> events = RecordingFile.readAllEvents(file);
+        Files.delete(file);
+        int solves = 0, phases = 0;
+        for (RecordedEvent event : events) {
+            String name = event.getEventType().getName();
+            if (name.equals("com.titanrobotics2022.RMPSolve"))
+                solves++;
+            else if (name.equals("com.titanrobotics2022.RMPSolvePhase"))
+                phases++;
+            else
+                continue;
+            assertEquals("root", event.getString("tree"));
+            assertEquals(4, event.getInt("nodes"));
+            assertEquals(3, event.getInt("leaves"));
+            assertEquals(2, event.getInt("dimension"));
+            assertEquals("serial", event.getString("pullback"));
+            assertEquals("PseudoInverseMetricSolver", event.getString("solver"));
+        }
+        assertEquals(1, solves);
+        assertEquals(3, phases);
+    }
+}
@@ -0,0 +1,82 @@
+package com.titanrobotics2022.motion.generation.rmpflow;
+
+import static com.titanrobotics2022.AllocationBudget.assertWithin;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import com.titanrobotics2022.motion.generation.rmpflow.rmps.Damper;
+
+import org.ejml.data.DMatrixRMaj;
+import org.ejml.dense.row.CommonOps_DDRM;
+import org.ejml.simple.SimpleMatrix;
+import org.junit.jupiter.api.Test;
+
+public class RMPTest {
+    private static final double delta = 1e-12;
+    private static final double eta = 0.5, w = 2, k = 3;
+
+    DMatrixRMaj x = new DMatrixRMaj(2, 1, false, 1.0, 2.0);
+    DMatrixRMaj x_dot = new DMatrixRMaj(2, 1, false, 0.3, -0.4);
+
+    private static RMP lambdaDamper(RMPNode parent)
+    {
+        return new RMP("damper", parent, (x, x_dot, f) -> CommonOps_DDRM.scale(-(eta * w), x_dot, f),
+                (x, x_dot, m) -> {
+                    for (int i = 0; i < m.numRows; i++)
+                        m.set(i, i, w);
+                });
+    }
+
+    /**
+     * A spring along the first axis, written with primitive lambdas.
+     */
+    private static RMP lambdaSpring(RMPNode parent)
+    {
+        return new RMP("spring", parent, 1, (q, out) -> out.data[0] = q.data[0], (q, out) -> out.data[0] = 1,
+                (q, q_dot, out) -> {
+                }, (x, x_dot, f) -> f.data[0] = -k * x.data[0], (x, x_dot, m) -> m.data[0] = 1);
+    }
+
+    private static void assertSolvesEqual(RMPRoot expected, RMPRoot actual, DMatrixRMaj x, DMatrixRMaj x_dot)
+    {
+        DMatrixRMaj a = new DMatrixRMaj(2, 1), b = new DMatrixRMaj(2, 1);
+        expected.solve(x, x_dot, a);
+        actual.solve(x, x_dot, b);
+        for (int i = 0; i < 2; i++)
+            assertEquals(a.get(i), b.get(i), delta);
+    }
+
+    @Test
+    void lambdaMatchesHandWrittenLeafTest()
+    {
+        RMPRoot handWritten = new RMPRoot("root"), lambda = new RMPRoot("root");
+        new Damper("damper", handWritten, eta, w);
+        lambdaDamper(lambda);
+        assertSolvesEqual(handWritten, lambda, x, x_dot);
+    }
+
+    @Test
+    void allocatingFunctionsMatchPrimitiveLambdasTest()
+    {
+        RMPRoot primitive = new RMPRoot("root"), allocating = new RMPRoot("root");
+        lambdaSpring(primitive);
+        new Damper("damper", primitive, eta, w);
+        new RMP("spring", allocating, q -> new SimpleMatrix(1, 1, false, new double[] { q.get(0) }),
+                q -> new SimpleMatrix(1, 2, false, new double[] { 1, 0 }), (q, q_dot) -> new SimpleMatrix(1, 2),
+                (x, x_dot) -> x.scale(-k), (x, x_dot) -> SimpleMatrix.identity(1));
+        new Damper("damper", allocating, eta, w);
+        assertSolvesEqual(primitive, allocating, x, x_dot);
+        assertSolvesEqual(primitive, allocating, new DMatrixRMaj(2, 1, false, -4.0, 0.5), x_dot);
+    }
+
+    @Test
+    void solveDoesNotAllocateTest()
+    {
+        RMPRoot root = new RMPRoot("root");
+        lambdaSpring(root);
+        lambdaDamper(root);
+        DMatrixRMaj a = new DMatrixRMaj(2, 1);
+        root.solve(x, x_dot, a);
+        assertEquals(-k * x.get(0) - eta * w * x_dot.get(0), a.get(0) * (1 + w), delta);
+        assertWithin("RMPRoot.solve with lambda RMPs", 0, () -> root.solve(x, x_dot, a));
+    }
+}
@@ -0,0 +1,116 @@
+package com.titanrobotics2022.motion.generation.rmpflow.rmps;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import com.titanrobotics2022.motion.generation.rmpflow.RMPRoot;
+
+import org.ejml.simple.SimpleMatrix;
+import org.junit.jupiter.api.Test;
+
+public class CollisionAvoidanceFieldTest {
+    private static final double delta = 1e-9;
+
+    @Test
+    void MatchesIndividualLeavesTest()
+    {
+        RMPRoot leaves = new RMPRoot("leaves");
+        RMPRoot field = new RMPRoot("field");
+        SimpleMatrix goal = new SimpleMatrix(1, 2, false, new double[] {5, 6});
+        new GoalAttractor("goal", leaves, goal, 10, 1, 1, 10, 1, 1, 0.01);
+        new GoalAttractor("goal", field, goal, 10, 1, 1, 10, 1, 1, 0.01);
+        CollisionAvoidanceField obstacles = new CollisionAvoidanceField("obstacles", field, 2, 4);
+        for (int i = 0; i < 20; i++) {
+            double[] center = {i * 0.3 - 2, 3 + (i % 4) * 0.5};
+            double radius = 0.2 + (i % 3) * 0.1;
+            new CollisionAvoidance("obstacle " + i, leaves, new SimpleMatrix(1, 2, false, center), radius, .2, 1e-5, 0.1);
+            obstacles.addObstacle(center, radius, .2, 1e-5, 0.1);
+        }
+        assertEquals(20, obstacles.size());
+
+        SimpleMatrix x = new SimpleMatrix(1, 2, false, new double[] {1.0, 2.0});
+        SimpleMatrix x_dot = new SimpleMatrix(1, 2, false, new double[] {0.3, 0.4});
+        SimpleMatrix expected = leaves.solve(x, x_dot);
+        SimpleMatrix actual = field.solve(x, x_dot);
+        assertEquals(expected.get(0), actual.get(0), delta * Math.abs(expected.get(0)) + delta);
+        assertEquals(expected.get(1), actual.get(1), delta * Math.abs(expected.get(1)) + delta);
+    }
+
+    @Test
+    void RemoveObstacleMovesLastTest()
+    {
+        CollisionAvoidanceField obstacles = new CollisionAvoidanceField("obstacles", new RMPRoot("root"), 2, 1);
+        obstacles.addObstacle(new double[] {0, 0}, 1, .2, 1e-5, 0);
+        obstacles.addObstacle(new double[] {1, 2}, 2, .2, 1e-5, 0);
+        obstacles.addObstacle(new double[] {3, 4}, 3, .2, 1e-5, 0);
+        obstacles.removeObstacle(0);
+        assertEquals(2, obstacles.size());
+        assertEquals(3, obstacles.getCenter(0, 0));
+        assertEquals(4, obstacles.getCenter(0, 1));
+        assertEquals(3, obstacles.getRadius(0));
+    }
+
+    @Test
+    void MovingObstacleUsesRelativeVelocityTest()
+    {
+        double[] center = {1, 1}, velocity = {-0.5, 0.2};
+        CollisionAvoidanceField moving = new CollisionAvoidanceField("moving", new RMPRoot("moving"), 2, 1);
+        CollisionAvoidanceField still = new CollisionAvoidanceField("still", new RMPRoot("still"), 2, 1);
+        moving.addObstacle(center, velocity, 1, 0.5, .2, 1e-5, 0.1);
+        still.addObstacle(center, 0.5, .2, 1e-5, 0.1);
+
+        SimpleMatrix x = new SimpleMatrix(2, 1, false, new double[] {0.2, 0.4});
+        SimpleMatrix x_dot = new SimpleMatrix(2, 1, false, new double[] {0.3, 0.4});
+        SimpleMatrix relative = new SimpleMatrix(2, 1, false, new double[] {0.8, 0.2});
+        assertEquals(0, moving.solveM(x, x_dot).minus(still.solveM(x, relative)).elementMaxAbs());
+        assertEquals(0, moving.solveF(x, x_dot).minus(still.solveF(x, relative)).elementMaxAbs());
+
+        CollisionAvoidanceField half = new CollisionAvoidanceField("half", new RMPRoot("half"), 2, 1);
+        half.addObstacle(center, velocity, 0.5, 0.5, .2, 1e-5, 0.1);
+        assertEquals(0, half.solveM(x, x_dot).minus(moving.solveM(x, x_dot)).elementMaxAbs());
+        assertEquals(0, half.solveF(x, x_dot).minus(moving.solveF(x, x_dot).scale(0.5)).elementMaxAbs(), delta);
+    }
+
+    private static double gap(CollisionAvoidanceField field, int i)
+    {
+        return Math.hypot(field.getCenter(i, 0) - 1, field.getCenter(i, 1) - 2) - field.getRadius(i);
+    }
+
+    private static void removeBeyond(CollisionAvoidanceField field, double distance)
+    {
+        for (int i = field.size() - 1; i >= 0; i--)
+            if (gap(field, i) >= distance)
+                field.removeObstacle(i);
+    }
+
+    @Test
+    void CullingMatchesFullFieldNearbyTest()
+    {
+        RMPRoot full = new RMPRoot("full");
+        RMPRoot culled = new RMPRoot("culled");
+        CollisionAvoidanceField all = new CollisionAvoidanceField("all", full, 2, 16);
+        CollisionAvoidanceField near = new CollisionAvoidanceField("near", culled, 2, 16);
+        near.enableCulling(3, 1, 3);
+        for (int i = 0; i < 40; i++) {
+            double[] center = {i * 0.5 - 10, 3 + (i % 4) * 0.5};
+            all.addObstacle(center, 0.3, .2, 1e-5, 0.1);
+            near.addObstacle(center, 0.3, .2, 1e-5, 0.1);
+        }
+        // Keep only obstacles fully inside the influence distance in the full
+        // field, and none in the blend band in either field
+        removeBeyond(all, 2);
+        for (int i = near.size() - 1; i >= 0; i--) {
+            double gap = gap(near, i);
+            if (gap >= 2 && gap < 3)
+                near.removeObstacle(i);
+        }
+
+        SimpleMatrix x = new SimpleMatrix(1, 2, false, new double[] {1.0, 2.0});
+        SimpleMatrix x_dot = new SimpleMatrix(1, 2, false, new double[] {0.3, 0.4});
+        full.solve(x, x_dot);
+        culled.solve(x, x_dot);
+        for (int i = 0; i < 4; i++)
+            assertEquals(full.getM().get(i), culled.getM().get(i), delta * Math.abs(full.getM().get(i)) + delta);
+        for (int i = 0; i < 2; i++)
+            assertEquals(full.getF().get(i), culled.getF().get(i), delta * Math.abs(full.getF().get(i)) + delta);
+    }
+}
@@ -1,13 +1,17 @@
 package com.titanrobotics2022.motion.generation.rmpflow.rmps;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import com.titanrobotics2022.motion.generation.rmpflow.RMPRoot;
 
+import org.ejml.data.DMatrixRMaj;
 import org.ejml.simple.SimpleMatrix;
 import org.junit.jupiter.api.Test;
 
 public class CollisionAvoidanceTest {
+    private static final double delta = 1e-12;
+
     RMPRoot r = new RMPRoot("root");
     @Test
     void ConvertCenterToColumnMartixTest()
@@ -15,4 +19,43 @@ public class CollisionAvoidanceTest {
         CollisionAvoidance policy = new CollisionAvoidance("Collision Avoidance Test", r, new SimpleMatrix(1, 2,  false, new double[] {0, 0}), 1.0, .2, 1e-5, 0.0);
         assertTrue(policy.getCenter().numCols() == 1);
     }
-}
\ No newline at end of file
+
+    @Test
+    void TaskMapMatchesMatrixFormTest()
+    {
+        SimpleMatrix center = new SimpleMatrix(2, 1, false, new double[] {1, -2});
+        double radius = 0.7;
+        CollisionAvoidance policy = new CollisionAvoidance("Collision Avoidance Test", r, center, radius, .2, 1e-5, 0.0);
+        SimpleMatrix q = new SimpleMatrix(2, 1, false, new double[] {3, 1.5});
+        SimpleMatrix q_dot = new SimpleMatrix(2, 1, false, new double[] {-0.4, 0.9});
+
+        SimpleMatrix diff = q.minus(center);
+        double norm = diff.normF();
+        SimpleMatrix J = diff.transpose().divide(radius).scale(1 / norm);
+        SimpleMatrix b = diff.mult(diff.transpose()).scale(-1 / Math.pow(norm, 3))
+                .plus(SimpleMatrix.identity(2).scale(1 / norm));
+        SimpleMatrix J_dot = q_dot.transpose().mult(b).divide(radius);
+
+        assertEquals(norm / radius - 1, policy.psi(q).get(0), delta);
+        for (int i = 0; i < 2; i++) {
+            assertEquals(J.get(i), policy.j(q).get(i), delta);
+            assertEquals(J_dot.get(i), policy.j_dot(q, q_dot).get(i), delta);
+        }
+    }
+
+    @Test
+    void FusedTaskMapMatchesSeparateTest()
+    {
+        CollisionAvoidance policy = new CollisionAvoidance("Collision Avoidance Test", r, new SimpleMatrix(2, 1, false, new double[] {1, -2}), 0.7, .2, 1e-5, 0.0);
+        DMatrixRMaj q = new DMatrixRMaj(2, 1, false, 3, 1.5);
+        DMatrixRMaj q_dot = new DMatrixRMaj(2, 1, false, -0.4, 0.9);
+        DMatrixRMaj x = new DMatrixRMaj(1, 1), J = new DMatrixRMaj(1, 1), J_dot = new DMatrixRMaj(1, 1);
+        policy.taskMap(q, q_dot, x, J, J_dot);
+
+        assertEquals(policy.psi(SimpleMatrix.wrap(q)).get(0), x.get(0), delta);
+        for (int i = 0; i < 2; i++) {
+            assertEquals(policy.j(SimpleMatrix.wrap(q)).get(i), J.get(i), delta);
+            assertEquals(policy.j_dot(SimpleMatrix.wrap(q), SimpleMatrix.wrap(q_dot)).get(i), J_dot.get(i), delta);
+        }
+    }
+}
@@ -0,0 +1,255 @@
+package com.titanrobotics2022.motion.generation.rmpflow.rmps;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.titanrobotics2022.motion.generation.rmpflow.RMPEvaluationContext;
+import com.titanrobotics2022.motion.generation.rmpflow.RMPFlowPlan;
+import com.titanrobotics2022.motion.generation.rmpflow.RMPLeaf;
+import com.titanrobotics2022.motion.generation.rmpflow.RMPRoot;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.ejml.data.DMatrixRMaj;
+import org.ejml.simple.SimpleMatrix;
+import org.junit.jupiter.api.Test;
+
+public class ObstacleSetTest {
+    private static final double delta = 1e-9;
+
+    SimpleMatrix x = new SimpleMatrix(2, 1, false, new double[] { 1.0, 2.0 });
+    SimpleMatrix x_dot = new SimpleMatrix(2, 1, false, new double[] { 0.3, -0.4 });
+
+    @Test
+    void appliedObstaclesMatchLinkedLeavesTest()
+    {
+        RMPRoot expectedRoot = new RMPRoot("expected");
+        new CollisionAvoidance("obstacle", expectedRoot, new SimpleMatrix(2, 1, false, new double[] { 2, 3 }), 0.5, .2, 1e-5, 0.0);
+        new CollisionAvoidance("obstacle", expectedRoot, new SimpleMatrix(2, 1, false, new double[] { -1, 1 }), 0.4, .2, 1e-5, 0.0);
+        SimpleMatrix expected = expectedRoot.solve(x, x_dot);
+
+        RMPRoot root = new RMPRoot("root");
+        ObstacleSet obstacles = new ObstacleSet(root, .2, 1e-5, 0.0);
+        ObstacleDiff diff = new ObstacleDiff();
+        diff.put(3, 0, 0, 1);
+        diff.put(7, -1, 1, 0.4);
+        diff.put(3, 2, 3, 0.5); // Replaces obstacle 3
+        diff.put(9, 5, 5, 1);
+        diff.remove(9);
+        obstacles.apply(diff);
+
+        assertEquals(2, obstacles.size());
+        assertEquals(2, root.getChildren().size());
+        assertNull(obstacles.get(9));
+        assertEquals(0.5, obstacles.get(3).getRadius());
+        SimpleMatrix actual = root.solve(x, x_dot);
+        assertEquals(expected.get(0), actual.get(0), delta);
+        assertEquals(expected.get(1), actual.get(1), delta);
+    }
+
+    @Test
+    void removedLeavesAreRecycledTest()
+    {
+        RMPRoot root = new RMPRoot("root");
+        ObstacleSet obstacles = new ObstacleSet(root, .2, 1e-5, 0.0);
+        ObstacleDiff diff = new ObstacleDiff();
+        for (int t = 0; t < 100; t++) {
+            diff.clear();
+            for (int id = 0; id < 10; id++)
+                diff.put(id, Math.cos(t + id) * 5, Math.sin(t + id) * 5, 0.5);
+            obstacles.apply(diff);
+            root.solve(x, x_dot);
+        }
+        assertEquals(10, root.getChildren().size());
+        assertTrue(obstacles.getCreatedCount() <= 40, "Created " + obstacles.getCreatedCount() + " leaves");
+    }
+
+    @Test
+    void leavesOfCompiledPlansAreNotReusedTest()
+    {
+        RMPRoot root = new RMPRoot("root");
+        ObstacleSet obstacles = new ObstacleSet(root, .2, 1e-5, 0.0);
+        ObstacleDiff diff = new ObstacleDiff();
+        diff.put(0, 2, 3, 0.5);
+        obstacles.apply(diff);
+        RMPFlowPlan plan = root.compile();
+        SimpleMatrix expected = plan.solve(x, x_dot);
+        for (int t = 0; t < 10; t++) {
+            diff.clear();
+            diff.put(0, -1 - t, 1, 0.4);
+            obstacles.apply(diff);
+            root.solve(x, x_dot);
+        }
+        assertEquals(11, obstacles.getCreatedCount());
+        SimpleMatrix actual = plan.solve(x, x_dot);
+        assertEquals(expected.get(0), actual.get(0));
+        assertEquals(expected.get(1), actual.get(1));
+    }
+
+    @Test
+    void concurrentUpdatesDoNotDisturbSolvesTest() throws InterruptedException
+    {
+        RMPRoot root = new RMPRoot("root");
+        ObstacleSet obstacles = new ObstacleSet(root, .2, 1e-5, 0.0);
+        AtomicBoolean running = new AtomicBoolean(true);
+        Thread perception = new Thread(() -> {
+            ObstacleDiff diff = new ObstacleDiff();
+            for (int t = 0; running.get(); t++) {
+                diff.clear();
+                for (int id = 0; id < 20; id++) {
+                    if ((t + id) % 3 == 0)
+                        diff.remove(id);
+                    else
+                        diff.put(id, 4 + Math.cos(t * 0.1 + id), Math.sin(t * 0.1 + id), 0.5);
+                }
+                obstacles.apply(diff);
+            }
+        });
+        perception.start();
+        try {
+            for (int i = 0; i < 2000; i++) {
+                SimpleMatrix a = root.solve(x, x_dot);
+                assertTrue(Double.isFinite(a.get(0)) && Double.isFinite(a.get(1)));
+            }
+        } finally {
+            running.set(false);
+            perception.join();
+        }
+    }
+
+    private static void moveAll(ObstacleSet obstacles, ObstacleDiff diff, int t)
+    {
+        diff.clear();
+        for (int id = 0; id < 10; id++)
+            diff.put(id, 4 + Math.cos(t * 0.1 + id), Math.sin(t * 0.1 + id), 0.5);
+        obstacles.apply(diff);
+    }
+
+    /**
+     * A leaf that holds up the first evaluation after it is armed until it is
+     * released.
+     */
+    private static class GateLeaf extends RMPLeaf {
+        private final AtomicBoolean armed = new AtomicBoolean();
+        private final CountDownLatch entered = new CountDownLatch(1), release = new CountDownLatch(1);
+
+        private GateLeaf(RMPRoot root)
+        {
+            super("gate", root);
+        }
+
+        @Override
+        protected void evaluate(DMatrixRMaj x, DMatrixRMaj x_dot, DMatrixRMaj f, DMatrixRMaj m)
+        {
+            if (armed.getAndSet(false)) {
+                entered.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            f.reshape(x.getNumElements(), 1);
+            f.zero();
+            m.reshape(x.getNumElements(), x.getNumElements());
+            m.zero();
+        }
+
+        @Override
+        protected SimpleMatrix solveF(SimpleMatrix x, SimpleMatrix x_dot)
+        {
+            return new SimpleMatrix(x.getNumElements(), 1);
+        }
+
+        @Override
+        protected SimpleMatrix solveM(SimpleMatrix x, SimpleMatrix x_dot)
+        {
+            return new SimpleMatrix(x.getNumElements(), x.getNumElements());
+        }
+    }
+
+    @Test
+    void leavesAreNotReusedWhileAContextIsSolvingTest() throws InterruptedException
+    {
+        RMPRoot root = new RMPRoot("root");
+        GateLeaf gate = new GateLeaf(root);
+        ObstacleSet obstacles = new ObstacleSet(root, .2, 1e-5, 0.0);
+        ObstacleDiff diff = new ObstacleDiff();
+        moveAll(obstacles, diff, 0);
+        CollisionAvoidance[] seen = new CollisionAvoidance[10];
+        double[] seenX = new double[10];
+        for (int id = 0; id < 10; id++) {
+            seen[id] = obstacles.get(id);
+            seenX[id] = seen[id].getCenter().get(0);
+        }
+
+        RMPEvaluationContext context = root.createContext();
+        SimpleMatrix expected = context.solve(x, x_dot);
+        gate.armed.set(true);
+        AtomicReference<SimpleMatrix> result = new AtomicReference<SimpleMatrix>();
+        Thread control = new Thread(() -> result.set(context.solve(x, x_dot)));
+        control.start();
+        gate.entered.await();
+        try {
+            // Solves through the root and further changes must not recycle the leaves the context is evaluating
+            for (int t = 1; t <= 50; t++) {
+                moveAll(obstacles, diff, t);
+                root.solve(x, x_dot);
+            }
+            for (int id = 0; id < 10; id++)
+                assertEquals(seenX[id], seen[id].getCenter().get(0));
+        } finally {
+            gate.release.countDown();
+            control.join();
+        }
+        assertEquals(expected.get(0), result.get().get(0));
+        assertEquals(expected.get(1), result.get().get(1));
+
+        // Solving only through contexts still lets removed leaves be recycled
+        long created = obstacles.getCreatedCount();
+        for (int t = 51; t <= 150; t++) {
+            moveAll(obstacles, diff, t);
+            context.solve(x, x_dot);
+        }
+        assertTrue(obstacles.getCreatedCount() <= created + 30, "Created " + obstacles.getCreatedCount() + " leaves");
+    }
+
+    @Test
+    void concurrentContextsAndUpdatesTest() throws InterruptedException
+    {
+        RMPRoot root = new RMPRoot("root");
+        ObstacleSet obstacles = new ObstacleSet(root, .2, 1e-5, 0.0);
+        AtomicBoolean running = new AtomicBoolean(true);
+        AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        Thread[] controls = new Thread[3];
+        for (int c = 0; c < controls.length; c++) {
+            RMPEvaluationContext context = root.createContext();
+            controls[c] = new Thread(() -> {
+                try {
+                    while (running.get()) {
+                        SimpleMatrix a = context.solve(x, x_dot);
+                        assertTrue(Double.isFinite(a.get(0)) && Double.isFinite(a.get(1)));
+                    }
+                } catch (Throwable e) {
+                    failure.compareAndSet(null, e);
+                }
+            });
+            controls[c].start();
+        }
+        ObstacleDiff diff = new ObstacleDiff();
+        try {
+            for (int t = 0; t < 2000; t++)
+                moveAll(obstacles, diff, t);
+        } finally {
+            running.set(false);
+            for (Thread control : controls)
+                control.join();
+        }
+        if (failure.get() != null)
+            throw new AssertionError(failure.get());
+        assertEquals(10, obstacles.size());
+    }
+}
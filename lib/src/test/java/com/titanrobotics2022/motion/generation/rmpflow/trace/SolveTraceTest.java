@@ -0,0 +1,136 @@
+package com.titanrobotics2022.motion.generation.rmpflow.trace;
+
+import static com.titanrobotics2022.AllocationBudget.assertWithin;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import com.titanrobotics2022.motion.generation.rmpflow.RMPRoot;
+import com.titanrobotics2022.motion.generation.rmpflow.rmps.CollisionAvoidance;
+import com.titanrobotics2022.motion.generation.rmpflow.rmps.GoalAttractor;
+
+import org.ejml.data.DMatrixRMaj;
+import org.ejml.simple.SimpleMatrix;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class SolveTraceTest {
+    @TempDir
+    Path dir;
+
+    DMatrixRMaj x = new DMatrixRMaj(2, 1), x_dot = new DMatrixRMaj(2, 1), a = new DMatrixRMaj(2, 1);
+
+    private static RMPRoot createTree()
+    {
+        RMPRoot root = new RMPRoot("root");
+        new GoalAttractor("goal", root, new SimpleMatrix(2, 1, false, new double[] { 5, 6 }), 10, 1, 1, 10, 1, 1,
+                0.01);
+        new CollisionAvoidance("obstacle", root, new SimpleMatrix(2, 1, false, new double[] { 2, 3 }), 0.5, .2, 1e-5,
+                0.0);
+        return root;
+    }
+
+    private void tick(RMPRoot root, int t)
+    {
+        x.set(0, Math.cos(0.1 * t));
+        x.set(1, Math.sin(0.1 * t));
+        x_dot.set(0, -0.1 * Math.sin(0.1 * t));
+        x_dot.set(1, 0.1 * Math.cos(0.1 * t));
+        root.solve(x, x_dot, a);
+    }
+
+    @Test
+    void recordsAndReplaysTicksTest() throws IOException
+    {
+        RMPRoot root = createTree();
+        Path file = dir.resolve("trace.bin");
+        double[][] forces = new double[20][];
+        try (SolveTraceWriter writer = new SolveTraceWriter(file, root, 2, 2, 64)) {
+            for (int t = 0; t < 20; t++) {
+                tick(root, t);
+                writer.record(1000 + t, x, x_dot, a);
+                forces[t] = root.getChildren().get(1).getF().getDDRM().data.clone();
+            }
+        }
+
+        try (SolveTraceReader reader = new SolveTraceReader(file)) {
+            assertEquals(20, reader.size());
+            assertEquals(Arrays.asList("goal", "obstacle"), reader.getLeafNames());
+            SolveTraceRecord record = reader.createRecord();
+            reader.read(7, record);
+            tick(root, 7);
+            assertEquals(7, record.getSequence());
+            assertEquals(1007, record.getTimestamp());
+            assertArrayEquals(x.data, record.getX().data);
+            assertArrayEquals(x_dot.data, record.getXdot().data);
+            assertArrayEquals(a.data, record.getA().data);
+            assertArrayEquals(forces[7], record.getF(1).data);
+            assertEquals(1, record.getM(1).getNumElements());
+            assertEquals(2, record.getF(0).getNumElements());
+            assertEquals(0, reader.replay(createTree()));
+        }
+    }
+
+    @Test
+    void ringKeepsLatestTicksTest() throws IOException
+    {
+        RMPRoot root = createTree();
+        Path file = dir.resolve("ring.bin");
+        try (SolveTraceWriter writer = new SolveTraceWriter(file, 2, 4)) {
+            for (int t = 0; t < 10; t++) {
+                tick(root, t);
+                writer.record(t, x, x_dot, a);
+            }
+        }
+
+        try (SolveTraceReader reader = new SolveTraceReader(file)) {
+            SolveTraceRecord record = reader.createRecord();
+            assertEquals(4, reader.size());
+            for (int i = 0; i < 4; i++) {
+                reader.read(i, record);
+                assertEquals(6 + i, record.getSequence());
+                assertEquals(6 + i, record.getTimestamp());
+            }
+        }
+    }
+
+    @Test
+    void tornRecordIsDroppedTest() throws IOException
+    {
+        RMPRoot root = createTree();
+        Path file = dir.resolve("torn.bin");
+        int recordSize;
+        try (SolveTraceWriter writer = new SolveTraceWriter(file, 2, 8)) {
+            recordSize = writer.getRecordSize();
+            for (int t = 0; t < 3; t++) {
+                tick(root, t);
+                writer.record(t, x, x_dot, a);
+            }
+        }
+        try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw")) {
+            raf.seek(40 + recordSize + 24); // x of the second record
+            raf.writeLong(Double.doubleToRawLongBits(42));
+        }
+
+        try (SolveTraceReader reader = new SolveTraceReader(file)) {
+            SolveTraceRecord record = reader.createRecord();
+            assertEquals(2, reader.size());
+            reader.read(1, record);
+            assertEquals(2, record.getSequence());
+        }
+    }
+
+    @Test
+    void recordDoesNotAllocateTest() throws IOException
+    {
+        RMPRoot root = createTree();
+        tick(root, 3);
+        try (SolveTraceWriter writer = new SolveTraceWriter(dir.resolve("budget.bin"), root, 2, 2, 1024)) {
+            assertWithin("SolveTraceWriter.record", 0, () -> writer.record(0, x, x_dot, a));
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package com.titanrobotics2022.motion.simulation;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+
+import com.titanrobotics2022.motion.generation.rmpflow.RMPRoot;
+import com.titanrobotics2022.motion.generation.rmpflow.rmps.CollisionAvoidance;
+import com.titanrobotics2022.motion.generation.rmpflow.rmps.GoalAttractor;
+
+import org.ejml.simple.SimpleMatrix;
+import org.junit.jupiter.api.Test;
+
+public class MonteCarloRunnerTest {
+    private static final int scenarios = 200;
+
+    private static RMPRoot createTree(Scenario scenario)
+    {
+        RMPRoot root = new RMPRoot("root");
+        new GoalAttractor("goal", root, new SimpleMatrix(2, 1, false, scenario.getGoal()), 10, 1, 1, 10, 1, 5, 0.01);
+        for (int i = 0; i < scenario.getObstacleCount(); i++)
+            new CollisionAvoidance("obstacle " + i, root, new SimpleMatrix(2, 1, false, scenario.getObstacleCenter(i)),
+                    scenario.getObstacleRadius(i), .2, 1e-5, 0.0);
+        return root;
+    }
+
+    private static MonteCarloRunner createRunner()
+    {
+        ScenarioGenerator generator = new ScenarioGenerator(20, 10, 8);
+        MonteCarloRunner runner = new MonteCarloRunner(generator, MonteCarloRunnerTest::createTree,
+                Dynamics.pointMass().limit(20), Integrator.TRAPEZOID, 0.01, 0.1);
+        runner.setTimeout(20);
+        runner.setBatchSize(64);
+        return runner;
+    }
+
+    @Test
+    void generatorIsReproducibleTest()
+    {
+        ScenarioGenerator generator = new ScenarioGenerator(20, 10, 8);
+        Scenario a = generator.generate(42), b = generator.generate(42), c = generator.generate(43);
+        assertArrayEquals(a.getStart(), b.getStart());
+        assertArrayEquals(a.getGoal(), b.getGoal());
+        assertEquals(a.getObstacleCount(), b.getObstacleCount());
+        for (int i = 0; i < a.getObstacleCount(); i++) {
+            assertArrayEquals(a.getObstacleCenter(i), b.getObstacleCenter(i));
+            assertEquals(a.getObstacleRadius(i), b.getObstacleRadius(i));
+        }
+        assertNotEquals(a.getStart()[0], c.getStart()[0]);
+
+        double[] start = a.getStart(), goal = a.getGoal();
+        assertTrue(Math.hypot(start[0] - goal[0], start[1] - goal[1]) >= 5);
+        for (int i = 0; i < a.getObstacleCount(); i++) {
+            double[] center = a.getObstacleCenter(i);
+            assertTrue(Math.hypot(center[0] - start[0], center[1] - start[1]) >= 1);
+            assertTrue(center[0] >= Math.min(start[0], goal[0]) && center[0] <= Math.max(start[0], goal[0]));
+        }
+    }
+
+    @Test
+    void parallelRunMatchesSerialRunTest()
+    {
+        MonteCarloRunner runner = createRunner();
+        ArrayList<Long> progress = new ArrayList<Long>();
+        ForkJoinPool pool = new ForkJoinPool(4);
+        MonteCarloStatistics parallel;
+        try {
+            parallel = runner.runAll(1000, scenarios, pool, s -> progress.add(s.getScenarios()));
+        } finally {
+            pool.shutdown();
+        }
+        assertEquals(Arrays.asList(64L, 128L, 192L, 200L), progress);
+
+        long reached = 0, collisions = 0;
+        ArrayList<Long> failed = new ArrayList<Long>();
+        for (long seed = 1000; seed < 1000 + scenarios; seed++) {
+            ScenarioResult result = runner.run(seed, null);
+            if (result.getOutcome() == ScenarioResult.Outcome.REACHED_GOAL)
+                reached++;
+            else
+                failed.add(seed);
+            if (result.getOutcome() == ScenarioResult.Outcome.COLLIDED)
+                collisions++;
+        }
+        assertEquals(scenarios, parallel.getScenarios());
+        assertEquals(reached, parallel.getReached());
+        assertEquals(collisions, parallel.getCollisions());
+        assertEquals(scenarios - reached - collisions, parallel.getTimeouts());
+        assertTrue(parallel.getSuccessRate() > 0.9, parallel.toString());
+        long[] seeds = parallel.getFailedSeeds();
+        assertEquals(failed.size(), seeds.length);
+        for (int i = 0; i < seeds.length; i++)
+            assertEquals(failed.get(i), seeds[i]);
+
+        assertTrue(parallel.getMeanTimeToGoal() > 0 && parallel.getMeanTimeToGoal() <= parallel.getMaxTimeToGoal());
+        assertTrue(parallel.getMaxPeakAcceleration() <= 20 + 1e-9);
+        assertEquals(parallel.getSteps() * Integrator.TRAPEZOID.getEvaluations(),
+                parallel.getSolveLatency().getCount());
+    }
+
+    @Test
+    void failedSeedRunsAgainTest()
+    {
+        MonteCarloRunner runner = createRunner();
+        runner.setMaxFailures(3);
+        MonteCarloStatistics statistics = runner.runAll(0, scenarios, ForkJoinPool.commonPool(), null);
+        assertTrue(statistics.getFailedSeeds().length > 0 && statistics.getFailedSeeds().length <= 3);
+        for (long seed : statistics.getFailedSeeds()) {
+            Trajectory trajectory = new Trajectory(2);
+            ScenarioResult result = runner.run(seed, trajectory);
+            assertNotEquals(ScenarioResult.Outcome.REACHED_GOAL, result.getOutcome());
+            assertEquals(result.getSteps() + 1, trajectory.size());
+            assertEquals(result.getTime(), trajectory.getTime(trajectory.size() - 1), 1e-9);
+        }
+    }
+}
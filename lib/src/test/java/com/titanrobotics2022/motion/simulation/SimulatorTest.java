@@ -0,0 +1,153 @@
+package com.titanrobotics2022.motion.simulation;
+
+import static com.titanrobotics2022.AllocationBudget.assertWithin;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.titanrobotics2022.mapping.LinearSegment;
+import com.titanrobotics2022.mapping.Point;
+import com.titanrobotics2022.motion.generation.rmpflow.RMP;
+import com.titanrobotics2022.motion.generation.rmpflow.RMPRoot;
+import com.titanrobotics2022.motion.generation.rmpflow.rmps.CollisionAvoidance;
+import com.titanrobotics2022.motion.generation.rmpflow.rmps.GoalAttractor;
+import com.titanrobotics2022.motion.generation.rmpflow.rmps.PathFollowing;
+
+import org.ejml.simple.SimpleMatrix;
+import org.junit.jupiter.api.Test;
+
+public class SimulatorTest {
+    private static final double k = 4; // Spring constant of the oscillator
+
+    /**
+     * An undamped oscillator, a = -k x, whose exact motion from x = 1 at rest
+     * is cos(sqrt(k) t).
+     */
+    private static double oscillatorError(Integrator integrator, double dt, double duration)
+    {
+        RMPRoot root = new RMPRoot("root");
+        new RMP("spring", root, (x, x_dot, f) -> f.data[0] = -k * x.data[0], (x, x_dot, m) -> m.data[0] = 1);
+        Simulator sim = new Simulator(root, 1, Dynamics.pointMass(), integrator, dt);
+        sim.reset(new double[] { 1 }, new double[] { 0 });
+        sim.addTermination(Termination.timeout(duration - dt / 2));
+        sim.run();
+        return Math.abs(sim.getPosition(0) - Math.cos(Math.sqrt(k) * sim.getTime()));
+    }
+
+    private static RMPRoot createTree(double[] goal, double[] obstacle)
+    {
+        RMPRoot root = new RMPRoot("root");
+        new GoalAttractor("goal", root, new SimpleMatrix(2, 1, false, goal), 10, 1, 1, 10, 1, 1, 0.01);
+        if (obstacle != null)
+            new CollisionAvoidance("obstacle", root, new SimpleMatrix(2, 1, false, obstacle), 0.5, .2, 1e-5, 0.0);
+        return root;
+    }
+
+    @Test
+    void integratorsConvergeAtTheirOrderTest()
+    {
+        double euler = oscillatorError(Integrator.SEMI_IMPLICIT_EULER, 0.01, 2);
+        double trapezoid = oscillatorError(Integrator.TRAPEZOID, 0.01, 2);
+        double rk4 = oscillatorError(Integrator.RK4, 0.01, 2);
+        assertTrue(rk4 < 1e-8, "RK4 error " + rk4);
+        assertTrue(rk4 < euler * 1e-4 && rk4 < trapezoid * 1e-4);
+        double ratio = oscillatorError(Integrator.RK4, 0.02, 2) / rk4;
+        assertTrue(ratio > 12 && ratio < 20, "RK4 error ratio " + ratio);
+        ratio = oscillatorError(Integrator.SEMI_IMPLICIT_EULER, 0.02, 2) / euler;
+        assertTrue(ratio > 1.5 && ratio < 2.5, "Euler error ratio " + ratio);
+    }
+
+    @Test
+    void trapezoidMatchesDemoStepTest()
+    {
+        double[] goal = { 5, 6 }, x0 = { 1, 2 }, v0 = { 0.3, -0.4 };
+        double dt = 0.02;
+        RMPRoot root = createTree(goal, null);
+        SimpleMatrix a = root.solve(new SimpleMatrix(2, 1, false, x0), new SimpleMatrix(2, 1, false, v0));
+        Simulator sim = new Simulator(createTree(goal, null), 2, Dynamics.pointMass(), Integrator.TRAPEZOID, dt);
+        sim.reset(x0, v0);
+        sim.step();
+        for (int i = 0; i < 2; i++) {
+            double v = v0[i] + a.get(i) * dt;
+            assertEquals(v, sim.getVelocity(i), 1e-12);
+            assertEquals(x0[i] + 0.5 * (v0[i] + v) * dt, sim.getPosition(i), 1e-12);
+            assertEquals(a.get(i), sim.getAcceleration(i), 1e-12);
+        }
+    }
+
+    @Test
+    void reachesGoalTest()
+    {
+        double[] goal = { 5, 6 };
+        Simulator sim = new Simulator(createTree(goal, new double[] { 2, 3 }), 2, Dynamics.pointMass().limit(20),
+                Integrator.RK4, 0.01);
+        Trajectory trajectory = new Trajectory(2, 16);
+        sim.setTrajectory(trajectory, 1);
+        Termination reached = Termination.goalReached(goal, 0.05, 0.1);
+        Termination collided = Termination.collision(new double[] { 2, 3 }, 0.5);
+        Termination timeout = Termination.timeout(60);
+        sim.addTermination(reached);
+        sim.addTermination(collided);
+        sim.addTermination(timeout);
+        sim.reset(new double[] { 0, 0 }, new double[] { 0, 0 });
+        assertSame(reached, sim.run());
+        assertSame(reached, sim.getStoppedBy());
+        assertTrue(sim.getTime() < 60);
+        assertEquals(4 * sim.getSteps(), sim.getSolves());
+        assertEquals(sim.getSteps() + 1, trajectory.size());
+        assertEquals(0, trajectory.getPosition(0, 0));
+        assertEquals(sim.getTime(), trajectory.getTime(trajectory.size() - 1), 1e-9);
+        assertEquals(sim.getPosition(1), trajectory.getPosition(trajectory.size() - 1, 1));
+    }
+
+    @Test
+    void collisionAndTimeoutTest()
+    {
+        double[] goal = { 5, 5 };
+        Simulator sim = new Simulator(createTree(goal, null), 2, Dynamics.damped(0.1), Integrator.SEMI_IMPLICIT_EULER,
+                0.01);
+        Termination collided = Termination.collision(new double[] { 2.5, 2.5 }, 0.5);
+        Termination timeout = Termination.timeout(30);
+        sim.addTermination(collided);
+        sim.addTermination(timeout);
+        sim.reset(new double[] { 0, 0 }, new double[] { 0, 0 });
+        assertSame(collided, sim.run());
+
+        sim.reset(goal, new double[] { 0, 0 });
+        assertSame(timeout, sim.run());
+        assertEquals(3000, sim.getSteps());
+
+        assertThrows(IllegalStateException.class, () -> new Simulator(new RMPRoot("root"), 2, Dynamics.pointMass(),
+                Integrator.RK4, 0.01).run());
+    }
+
+    @Test
+    void resetDiscardsLeafStatesTest()
+    {
+        RMPRoot root = new RMPRoot("root");
+        new PathFollowing("path", root, new LinearSegment(new Point(0, 0), new Point(10, 0)), 8, 5, 2, 1, 0.5, 1, 0.5,
+                2);
+        Simulator sim = new Simulator(root, 2, Dynamics.pointMass(), Integrator.TRAPEZOID, 0.02);
+        sim.addTermination(Termination.timeout(1));
+        double[] x0 = { 0, 0.5 }, v0 = { 0, 0 };
+        sim.reset(x0, v0);
+        sim.run();
+        double x = sim.getPosition(0), y = sim.getPosition(1);
+        sim.reset(x0, v0);
+        sim.run();
+        assertEquals(x, sim.getPosition(0));
+        assertEquals(y, sim.getPosition(1));
+    }
+
+    @Test
+    void stepDoesNotAllocateTest()
+    {
+        Simulator sim = new Simulator(createTree(new double[] { 5, 6 }, new double[] { 2, 3 }), 2,
+                Dynamics.damped(0.1).limit(20), Integrator.RK4, 0.001);
+        sim.setTrajectory(new Trajectory(2, 1 << 20), 10);
+        sim.reset(new double[] { 0, 0 }, new double[] { 0, 0 });
+        sim.step();
+        assertWithin("Simulator.step with RK4", 0, sim::step);
+    }
+}
@@ -0,0 +1,79 @@
+package com.titanrobotics2022.motion.simulation.tuning;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.ForkJoinPool;
+
+import com.titanrobotics2022.motion.simulation.Dynamics;
+import com.titanrobotics2022.motion.simulation.Integrator;
+import com.titanrobotics2022.motion.simulation.ScenarioGenerator;
+import com.titanrobotics2022.motion.simulation.ScenarioResult;
+
+import org.junit.jupiter.api.Test;
+
+public class GainTunerTest {
+    private static final int scenarios = 6, evaluations = 30;
+
+    private static GainTuner createTuner()
+    {
+        GainTuner tuner = new GainTuner(new ScenarioGenerator(16, 8, 4), TunableGains.goalAttractor(),
+                Dynamics.pointMass().limit(20), Integrator.TRAPEZOID, 0.02, 0.1);
+        tuner.setScenarios(100, scenarios);
+        tuner.setTimeout(20);
+        tuner.setSearch(6, 0.3, 7);
+        return tuner;
+    }
+
+    @Test
+    void tuningImprovesOnInitialGainsTest()
+    {
+        GainTuner tuner = createTuner();
+        ForkJoinPool pool = ForkJoinPool.commonPool();
+        double initial = tuner.score(TunableGains.goalAttractor().getInitial(), pool);
+        TuningResult result = tuner.tune(evaluations, pool);
+        assertTrue(result.getScore() < initial, result.toString());
+        assertEquals(result.getScore(), tuner.score(result.getValues(), pool), 1e-12);
+
+        double[] candidates = result.getCandidateScores();
+        assertTrue(candidates.length > 0 && candidates.length <= evaluations);
+        for (double score : candidates)
+            assertTrue(score >= result.getScore() - 1e-12);
+        TunableGains gains = TunableGains.goalAttractor();
+        for (int i = 0; i < gains.size(); i++)
+            assertTrue(result.getValue(i) >= gains.getLower(i) && result.getValue(i) <= gains.getUpper(i));
+
+        assertEquals(scenarios, result.getResults().length);
+        assertEquals(scenarios, result.count(ScenarioResult.Outcome.REACHED_GOAL)
+                + result.count(ScenarioResult.Outcome.COLLIDED) + result.count(ScenarioResult.Outcome.TIMED_OUT));
+        assertTrue(result.getCostPercentile(0) <= result.getCostPercentile(50));
+        assertTrue(result.getCostPercentile(50) <= result.getCostPercentile(100));
+    }
+
+    @Test
+    void tuningIsRepeatableTest()
+    {
+        ForkJoinPool pool = new ForkJoinPool(2);
+        try {
+            TuningResult a = createTuner().tune(evaluations, pool), b = createTuner().tune(evaluations, pool);
+            assertArrayEquals(a.getValues(), b.getValues());
+            assertArrayEquals(a.getCandidateScores(), b.getCandidateScores());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    void failuresCostTheTimeoutTest()
+    {
+        GainTuner tuner = createTuner();
+        tuner.setWeights(1, 0, 0, 100);
+        for (ScenarioResult result : tuner.simulate(TunableGains.goalAttractor().getInitial(),
+                ForkJoinPool.commonPool())) {
+            double expected = result.getOutcome() == ScenarioResult.Outcome.REACHED_GOAL ? result.getTime()
+                    : result.getOutcome() == ScenarioResult.Outcome.COLLIDED ? 120 : 20;
+            assertEquals(expected, tuner.cost(result), 1e-12);
+        }
+    }
+}
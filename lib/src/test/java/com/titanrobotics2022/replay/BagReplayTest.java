@@ -0,0 +1,124 @@
+package com.titanrobotics2022.replay;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import com.titanrobotics2022.motion.generation.rmpflow.RMPRoot;
+import com.titanrobotics2022.motion.generation.rmpflow.rmps.GoalAttractor;
+
+import org.ejml.data.DMatrix2x2;
+import org.ejml.simple.SimpleMatrix;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class BagReplayTest {
+    private static final double start = 100, duration = 5, heading = 0.5;
+    private static final DMatrix2x2 precision = new DMatrix2x2(100, 0, 0, 100);
+
+    @TempDir
+    Path dir;
+
+    /**
+     * Drives straight along a heading, logging odometry at 50 Hz and poses at
+     * 10 Hz.
+     */
+    private Path createBag(String name, double speed) throws IOException
+    {
+        BagWriter writer = new BagWriter();
+        int odom = writer.connection("/odom", "nav_msgs/Odometry", BagWriter.ODOMETRY);
+        int pose = writer.connection("/pose", "geometry_msgs/PoseStamped", BagWriter.POSE_STAMPED);
+        double c = Math.cos(heading), s = Math.sin(heading);
+        for (int i = 0; i <= 250; i++) {
+            double t = i / 50.0, d = speed * t;
+            writer.message(odom, start + t, BagWriter.odometry(start + t, d * c, d * s, heading, speed, 0));
+            if (i % 5 == 0)
+                writer.message(pose, start + t, BagWriter.poseStamped(start + t, d * c, d * s));
+        }
+        Path file = dir.resolve(name);
+        writer.write(file);
+        return file;
+    }
+
+    private static BagReplay createReplay()
+    {
+        BagReplay replay = new BagReplay(1, new DMatrix2x2(1e-3, 0, 0, 1e-3),
+                () -> {
+                    RMPRoot root = new RMPRoot("root");
+                    new GoalAttractor("goal", root, new SimpleMatrix(2, 1, false, new double[] { 5, 6 }), 10, 1, 1,
+                            10, 1, 1, 0.01);
+                    return root;
+                }, 50);
+        replay.addTopic("/odom", MessageDecoder.odometryTwist(precision));
+        replay.addTopic("/pose", MessageDecoder.poseStamped(precision));
+        return replay;
+    }
+
+    @Test
+    void streamMergesTopicsInTimeOrderTest() throws IOException
+    {
+        HashMap<String, MessageDecoder> decoders = new HashMap<String, MessageDecoder>();
+        decoders.put("/odom", MessageDecoder.odometryTwist(precision));
+        decoders.put("/pose", MessageDecoder.poseStamped(precision));
+        Measurement m = new Measurement();
+        int velocities = 0, positions = 0;
+        double last = Double.NEGATIVE_INFINITY;
+        try (BagMeasurementStream stream = new BagMeasurementStream(createBag("merge.bag", 1), decoders)) {
+            while (stream.next(m)) {
+                assertTrue(m.getTime() >= last);
+                last = m.getTime();
+                if (m.getOrder() == 1) {
+                    velocities++;
+                    assertEquals(Math.cos(heading), m.getValue().a1, 1e-12);
+                    assertEquals(Math.sin(heading), m.getValue().a2, 1e-12);
+                } else {
+                    positions++;
+                }
+            }
+            assertEquals(velocities + positions, stream.getCount());
+        }
+        assertEquals(251, velocities);
+        assertEquals(51, positions);
+        assertEquals(start + duration, last, 1e-9);
+    }
+
+    @Test
+    void replayTracksLoggedMotionTest() throws IOException
+    {
+        ReplaySummary summary = createReplay().run(createBag("track.bag", 1));
+        assertEquals(302, summary.getMeasurements());
+        assertEquals(250, summary.getTicks());
+        assertEquals(duration, summary.getDuration(), 1e-9);
+        assertEquals(duration * Math.cos(heading), summary.getFinalX(), 0.05);
+        assertEquals(duration * Math.sin(heading), summary.getFinalY(), 0.05);
+        assertTrue(summary.getRmsInnovation() < 0.1, summary.toString());
+        assertTrue(summary.getMeanAcceleration() > 0);
+    }
+
+    @Test
+    void parallelReplayMatchesSerialTest() throws IOException
+    {
+        List<Path> bags = Arrays.asList(createBag("a.bag", 0.5), createBag("b.bag", 1), createBag("c.bag", 2));
+        BagReplay replay = createReplay();
+        ForkJoinPool pool = new ForkJoinPool(3);
+        try {
+            List<ReplaySummary> parallel = replay.runAll(bags, pool);
+            for (int i = 0; i < bags.size(); i++) {
+                ReplaySummary serial = replay.run(bags.get(i));
+                assertEquals(bags.get(i), parallel.get(i).getBag());
+                assertEquals(serial.getTicks(), parallel.get(i).getTicks());
+                assertEquals(serial.getRmsInnovation(), parallel.get(i).getRmsInnovation());
+                assertEquals(serial.getMaxAcceleration(), parallel.get(i).getMaxAcceleration());
+                assertEquals(serial.getFinalX(), parallel.get(i).getFinalX());
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+}
@@ -0,0 +1,201 @@
+package com.titanrobotics2022.replay;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Writes small uncompressed ROS bags (format 2.0) with a single chunk, for
+ * tests.
+ */
+class BagWriter {
+    static final String HEADER = "uint32 seq\ntime stamp\nstring frame_id\n";
+    static final String SEPARATOR = "================================================================================\n";
+    static final String POINT = "float64 x\nfloat64 y\nfloat64 z\n";
+    static final String QUATERNION = "float64 x\nfloat64 y\nfloat64 z\nfloat64 w\n";
+    static final String POSE_STAMPED = "Header header\ngeometry_msgs/Pose pose\n" + SEPARATOR + "MSG: std_msgs/Header\n"
+            + HEADER + SEPARATOR + "MSG: geometry_msgs/Pose\nPoint position\nQuaternion orientation\n" + SEPARATOR
+            + "MSG: geometry_msgs/Point\n" + POINT + SEPARATOR + "MSG: geometry_msgs/Quaternion\n" + QUATERNION;
+    static final String ODOMETRY = "Header header\nstring child_frame_id\ngeometry_msgs/PoseWithCovariance pose\n"
+            + "geometry_msgs/TwistWithCovariance twist\n" + SEPARATOR + "MSG: std_msgs/Header\n" + HEADER + SEPARATOR
+            + "MSG: geometry_msgs/PoseWithCovariance\nPose pose\nfloat64[36] covariance\n" + SEPARATOR
+            + "MSG: geometry_msgs/Pose\nPoint position\nQuaternion orientation\n" + SEPARATOR
+            + "MSG: geometry_msgs/Point\n" + POINT + SEPARATOR + "MSG: geometry_msgs/Quaternion\n" + QUATERNION
+            + SEPARATOR + "MSG: geometry_msgs/TwistWithCovariance\nTwist twist\nfloat64[36] covariance\n" + SEPARATOR
+            + "MSG: geometry_msgs/Twist\nVector3 linear\nVector3 angular\n" + SEPARATOR + "MSG: geometry_msgs/Vector3\n"
+            + POINT;
+
+    private final ArrayList<byte[]> connections = new ArrayList<byte[]>();
+    private final ArrayList<int[]> messageCounts = new ArrayList<int[]>();
+    private final ByteArrayOutputStream chunk = new ByteArrayOutputStream();
+    private final ArrayList<ArrayList<long[]>> index = new ArrayList<ArrayList<long[]>>(); // time, offset
+    private long startTime = Long.MAX_VALUE, endTime = Long.MIN_VALUE;
+
+    /**
+     * Adds a connection and returns its id.
+     */
+    int connection(String topic, String type, String definition) throws IOException {
+        int id = connections.size();
+        ByteArrayOutputStream data = new ByteArrayOutputStream();
+        field(data, "topic", string(topic));
+        field(data, "type", string(type));
+        field(data, "md5sum", string("*"));
+        field(data, "message_definition", string(definition));
+        ByteArrayOutputStream header = new ByteArrayOutputStream();
+        field(header, "op", new byte[] { 0x07 });
+        field(header, "conn", ints(id));
+        field(header, "topic", string(topic));
+        byte[] record = record(header.toByteArray(), data.toByteArray());
+        connections.add(record);
+        messageCounts.add(new int[1]);
+        index.add(new ArrayList<long[]>());
+        chunk.write(record);
+        return id;
+    }
+
+    /**
+     * Adds a message, whose time is also used as its record time.
+     */
+    void message(int connection, double time, byte[] data) throws IOException {
+        long nanos = Math.round(time * 1e9);
+        ByteArrayOutputStream header = new ByteArrayOutputStream();
+        field(header, "op", new byte[] { 0x02 });
+        field(header, "conn", ints(connection));
+        field(header, "time", time(nanos));
+        index.get(connection).add(new long[] { nanos, chunk.size() });
+        messageCounts.get(connection)[0]++;
+        startTime = Math.min(startTime, nanos);
+        endTime = Math.max(endTime, nanos);
+        chunk.write(record(header.toByteArray(), data));
+    }
+
+    void write(Path file) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write("#ROSBAG V2.0\n".getBytes(StandardCharsets.US_ASCII));
+        int bagHeaderPos = out.size();
+        out.write(new byte[4096]); // Filled in once the index position is known
+
+        long chunkPos = out.size();
+        ByteArrayOutputStream header = new ByteArrayOutputStream();
+        field(header, "op", new byte[] { 0x05 });
+        field(header, "compression", string("none"));
+        field(header, "size", ints(chunk.size()));
+        out.write(record(header.toByteArray(), chunk.toByteArray()));
+        for (int c = 0; c < connections.size(); c++) {
+            ArrayList<long[]> entries = index.get(c);
+            header = new ByteArrayOutputStream();
+            field(header, "op", new byte[] { 0x04 });
+            field(header, "ver", ints(1));
+            field(header, "conn", ints(c));
+            field(header, "count", ints(entries.size()));
+            ByteBuffer data = le(12 * entries.size());
+            for (long[] entry : entries) {
+                data.put(time(entry[0]));
+                data.putInt((int) entry[1]);
+            }
+            out.write(record(header.toByteArray(), data.array()));
+        }
+
+        long indexPos = out.size();
+        for (byte[] connection : connections)
+            out.write(connection);
+        header = new ByteArrayOutputStream();
+        field(header, "op", new byte[] { 0x06 });
+        field(header, "ver", ints(1));
+        field(header, "chunk_pos", longs(chunkPos));
+        field(header, "start_time", time(startTime));
+        field(header, "end_time", time(endTime));
+        field(header, "count", ints(connections.size()));
+        ByteBuffer data = le(8 * connections.size());
+        for (int c = 0; c < connections.size(); c++) {
+            data.putInt(c);
+            data.putInt(messageCounts.get(c)[0]);
+        }
+        out.write(record(header.toByteArray(), data.array()));
+
+        byte[] bytes = out.toByteArray();
+        header = new ByteArrayOutputStream();
+        field(header, "op", new byte[] { 0x03 });
+        field(header, "index_pos", longs(indexPos));
+        field(header, "conn_count", ints(connections.size()));
+        field(header, "chunk_count", ints(1));
+        byte[] h = header.toByteArray();
+        byte[] padding = new byte[4096 - 8 - h.length];
+        Arrays.fill(padding, (byte) ' ');
+        System.arraycopy(record(h, padding), 0, bytes, bagHeaderPos, 4096);
+        Files.write(file, bytes);
+    }
+
+    /**
+     * Serializes a nav_msgs/Odometry.
+     */
+    static byte[] odometry(double time, double x, double y, double yaw, double vx, double vy) {
+        ByteBuffer b = le(4 + 8 + 4 + 4 + 7 * 8 + 36 * 8 + 6 * 8 + 36 * 8);
+        header(b, time);
+        b.putInt(0); // child_frame_id
+        b.putDouble(x).putDouble(y).putDouble(0);
+        b.putDouble(0).putDouble(0).putDouble(Math.sin(yaw / 2)).putDouble(Math.cos(yaw / 2));
+        for (int i = 0; i < 36; i++)
+            b.putDouble(0);
+        b.putDouble(vx).putDouble(vy).putDouble(0).putDouble(0).putDouble(0).putDouble(0);
+        for (int i = 0; i < 36; i++)
+            b.putDouble(0);
+        return b.array();
+    }
+
+    /**
+     * Serializes a geometry_msgs/PoseStamped.
+     */
+    static byte[] poseStamped(double time, double x, double y) {
+        ByteBuffer b = le(4 + 8 + 4 + 7 * 8);
+        header(b, time);
+        b.putDouble(x).putDouble(y).putDouble(0);
+        b.putDouble(0).putDouble(0).putDouble(0).putDouble(1);
+        return b.array();
+    }
+
+    private static void header(ByteBuffer b, double time) {
+        b.putInt(0);
+        b.put(time(Math.round(time * 1e9)));
+        b.putInt(0); // frame_id
+    }
+
+    private static ByteBuffer le(int size) {
+        return ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    private static byte[] record(byte[] header, byte[] data) {
+        ByteBuffer b = le(8 + header.length + data.length);
+        b.putInt(header.length).put(header).putInt(data.length).put(data);
+        return b.array();
+    }
+
+    private static void field(ByteArrayOutputStream out, String name, byte[] value) throws IOException {
+        byte[] key = (name + "=").getBytes(StandardCharsets.US_ASCII);
+        out.write(le(4).putInt(key.length + value.length).array());
+        out.write(key);
+        out.write(value);
+    }
+
+    private static byte[] string(String s) {
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static byte[] ints(int v) {
+        return le(4).putInt(v).array();
+    }
+
+    private static byte[] longs(long v) {
+        return le(8).putLong(v).array();
+    }
+
+    private static byte[] time(long nanos) {
+        return le(8).putInt((int) (nanos / 1_000_000_000)).putInt((int) (nanos % 1_000_000_000)).array();
+    }
+}